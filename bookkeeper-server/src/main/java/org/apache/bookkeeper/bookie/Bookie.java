@@ -19,7 +19,10 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCounted;
 import java.io.IOException;
+import java.util.List;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.util.Watcher;
@@ -57,6 +60,26 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+
+    /**
+     * Read an entry, possibly as a {@link FileRegion} of the entry log if it's bigger than the given size, so
+     * that it can be sent to the network without being copied in user space.
+     *
+     * @return either a {@link ByteBuf} or a {@link FileRegion} with the entry
+     */
+    default ReferenceCounted readEntryOrRegion(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, NoLedgerException, BookieException {
+        return readEntry(ledgerId, entryId);
+    }
+
+    /**
+     * Read several entries of a ledger, possibly with a few coalesced reads of the entry logs.
+     *
+     * @return the entries, in the same order as the entry ids. The list stops before the first entry that
+     *         cannot be read, which is only reported by an exception if it's the first one.
+     */
+    List<ByteBuf> readEntries(long ledgerId, long[] entryIds)
+            throws IOException, NoLedgerException, BookieException;
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
@@ -32,7 +32,9 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -52,6 +54,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -98,6 +101,8 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    // Journals of the streams removed from the configuration, only replayed and checkpointed
+    final List<Journal> staleJournals;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -430,15 +435,34 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         JournalAliveListener journalAliveListener =
                 () -> BookieImpl.this.triggerBookieShutdown(ExitCode.BOOKIE_EXCEPTION);
-        // instantiate the journals
+        // instantiate the journals, one per journal stream of each journal directory
         journals = Lists.newArrayList();
-        for (int i = 0; i < journalDirectories.size(); i++) {
-            journals.add(new Journal(i, journalDirectories.get(i),
+        List<File> journalStreamDirectories = Journal.getJournalStreamDirectories(journalDirectories,
+                conf.getJournalStreamsPerDirectory());
+        for (int i = 0; i < journalStreamDirectories.size(); i++) {
+            File journalStreamDirectory = journalStreamDirectories.get(i);
+            if (!journalStreamDirectory.exists() && !journalStreamDirectory.mkdirs()) {
+                throw new IOException("Unable to create journal stream directory " + journalStreamDirectory);
+            }
+            journals.add(new Journal(i, journalStreamDirectory,
+                    conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
+        }
+        // If the number of streams per directory was lowered without checkpointing all the journals, the entries
+        // of the removed streams are replayed, and their last log marks move along with the other journals
+        staleJournals = Lists.newArrayList();
+        for (Map.Entry<Integer, File> staleStream : Journal.getStaleJournalStreamDirectories(journalDirectories,
+                conf.getJournalStreamsPerDirectory()).entrySet()) {
+            LOG.warn("Journal stream directory {} is beyond the {} configured journal streams per directory,"
+                    + " it will be replayed but not written to", staleStream.getValue(),
+                    conf.getJournalStreamsPerDirectory());
+            staleJournals.add(new Journal(staleStream.getKey(), staleStream.getValue(),
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
         }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
-        CheckpointSource checkpointSource = new CheckpointSourceList(journals);
+        List<Journal> checkpointedJournals = Lists.newArrayList(journals);
+        checkpointedJournals.addAll(staleJournals);
+        CheckpointSource checkpointSource = new CheckpointSourceList(checkpointedJournals);
 
         this.ledgerStorage = storage;
         boolean isDbLedgerStorage = ledgerStorage instanceof DbLedgerStorage;
@@ -509,9 +533,15 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
 
         long startTs = System.currentTimeMillis();
+        LongAdder replayedEntries = new LongAdder();
+        LongAdder replayedBytes = new LongAdder();
         JournalScanner scanner = new JournalScanner() {
             @Override
             public void process(int journalVersion, long offset, ByteBuffer recBuff) throws IOException {
+                replayedEntries.increment();
+                replayedBytes.add(recBuff.remaining());
+                bookieStats.getJournalReplayEntries().inc();
+                bookieStats.getJournalReplayBytes().addCount(recBuff.remaining());
                 long ledgerId = recBuff.getLong();
                 long entryId = recBuff.getLong();
                 try {
@@ -595,11 +625,28 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             }
         };
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
+        // Ledgers are hashed to the journals, and all the entries of a ledger are in the same journal, so the
+        // journals don't need to be merged and are replayed one after the other. The stale journals were written
+        // before the current configuration, so they are replayed first.
+        List<Journal> replayedJournals = Lists.newArrayList(staleJournals);
+        replayedJournals.addAll(journals);
+        int numReplayThreads = conf.getNumJournalReplayThreads();
+        if (numReplayThreads > 1) {
+            try (ParallelJournalScanner parallelScanner = new ParallelJournalScanner(scanner, numReplayThreads,
+                    conf.getJournalMaxMemorySizeMb() * 1024 * 1024)) {
+                for (Journal journal : replayedJournals) {
+                    replay(journal, parallelScanner);
+                }
+            }
+        } else {
+            for (Journal journal : replayedJournals) {
+                replay(journal, scanner);
+            }
         }
         long elapsedTs = System.currentTimeMillis() - startTs;
-        LOG.info("Finished replaying journal in {} ms.", elapsedTs);
+        LOG.info("Finished replaying journal in {} ms: {} entries, {} bytes, {} MB/s.", elapsedTs,
+                replayedEntries.sum(), replayedBytes.sum(),
+                String.format("%.2f", replayedBytes.sum() * 1000.0 / Math.max(1, elapsedTs) / (1024 * 1024)));
     }
 
     /**
@@ -632,6 +679,10 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             }
             LOG.info("Replaying journal {} from position {}", id, logPosition);
             long scanOffset = journal.scanJournal(id, logPosition, scanner);
+            if (scanner instanceof ParallelJournalScanner) {
+                // The entries must be in the ledger storage before the last log mark is moved past them
+                ((ParallelJournalScanner) scanner).flush();
+            }
             // Update LastLogMark after completely replaying journal
             // scanOffset will point to EOF position
             // After LedgerStorage flush, SyncThread should persist this to disk
@@ -1131,6 +1182,68 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    @Override
+    public ReferenceCounted readEntryOrRegion(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        long entrySize = 0;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading {}@{}", entryId, ledgerId);
+            }
+            ReferenceCounted entry = handle.readEntryOrRegion(entryId, minRegionSize);
+            if (entry instanceof FileRegion) {
+                entrySize = ((FileRegion) entry).count();
+            } else {
+                entrySize = ((ByteBuf) entry).readableBytes();
+            }
+            bookieStats.getReadBytes().addCount(entrySize);
+            success = true;
+            return entry;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(entrySize);
+            }
+        }
+    }
+
+    @Override
+    public List<ByteBuf> readEntries(long ledgerId, long[] entryIds)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        long entriesSize = 0;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading {} entries from {}", entryIds.length, ledgerId);
+            }
+            List<ByteBuf> entries = handle.readEntries(entryIds);
+            for (ByteBuf entry : entries) {
+                entriesSize += entry.readableBytes();
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entry.readableBytes());
+            }
+            bookieStats.getReadBytes().addCount(entriesSize);
+            success = true;
+            return entries;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(entriesSize);
+            }
+        }
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
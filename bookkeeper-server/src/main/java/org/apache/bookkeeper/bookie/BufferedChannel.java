@@ -86,11 +86,20 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
 
     public BufferedChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
             long unpersistedBytesBound) throws IOException {
+        this(fc, allocator.directBuffer(writeCapacity), readCapacity, unpersistedBytesBound);
+    }
+
+    /**
+     * Create a buffered channel with the given write buffer, for subclasses that have requirements on the
+     * memory of the write buffer.
+     */
+    protected BufferedChannel(FileChannel fc, ByteBuf writeBuffer, int readCapacity,
+            long unpersistedBytesBound) throws IOException {
         super(fc, readCapacity);
-        this.writeCapacity = writeCapacity;
+        this.writeCapacity = writeBuffer.capacity();
         this.position = fc.position();
         this.writeBufferStartPosition.set(position);
-        this.writeBuffer = allocator.directBuffer(writeCapacity);
+        this.writeBuffer = writeBuffer;
         this.unpersistedBytes = new AtomicLong(0);
         this.unpersistedBytesBound = unpersistedBytesBound;
         this.doRegularFlushes = unpersistedBytesBound > 0;
@@ -264,6 +273,10 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
             } else if (readBufferStartPosition <= pos && pos < readBufferStartPosition + readBuffer.writerIndex()) {
                 int positionInBuffer = (int) (pos - readBufferStartPosition);
                 int bytesToCopy = Math.min(readBuffer.writerIndex() - positionInBuffer, dest.writableBytes());
+                if (writeBuffer != null) {
+                    // The file may already hold older data of the write buffer, e.g. a partial block
+                    bytesToCopy = (int) Math.min(bytesToCopy, writeBufferStartPosition.get() - pos);
+                }
                 dest.writeBytes(readBuffer, positionInBuffer, bytesToCopy);
                 pos += bytesToCopy;
                 length -= bytesToCopy;
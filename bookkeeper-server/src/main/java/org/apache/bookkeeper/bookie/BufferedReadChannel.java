@@ -25,6 +25,7 @@ package org.apache.bookkeeper.bookie;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
@@ -99,6 +100,31 @@ public class BufferedReadChannel extends BufferedChannelBase  {
         return (int) (currentPosition - pos);
     }
 
+    /**
+     * Read straight from the FileChannel into dest, without going through the read buffer. This is meant
+     * for large reads, which would otherwise be split in many reads of the size of the read buffer.
+     * @param dest
+     * @param pos
+     * @param length
+     * @return The total number of bytes read, which is less than length only if the end of the file
+     *         is reached.
+     * @throws IOException if I/O error occurs
+     */
+    public int readUnbuffered(ByteBuf dest, long pos, int length) throws IOException {
+        FileChannel fc = validateAndGetFileChannel();
+        ByteBuffer nioBuffer = dest.nioBuffer(dest.writerIndex(), length);
+        int bytesRead = 0;
+        while (nioBuffer.hasRemaining()) {
+            int rc = fc.read(nioBuffer, pos + bytesRead);
+            if (rc <= 0) {
+                break;
+            }
+            bytesRead += rc;
+        }
+        dest.writerIndex(dest.writerIndex() + bytesRead);
+        return bytesRead;
+    }
+
     public synchronized void clear() {
         readBuffer.clear();
     }
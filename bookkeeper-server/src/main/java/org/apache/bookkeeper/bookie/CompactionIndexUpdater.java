@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Updates the locations of the compacted entries in the ledger storage index.
+ *
+ * <p>Updating the index ends with flushing it, which is costly. When several compactions run concurrently, the
+ * locations they submit while an update is in progress are batched, and applied with a single update and flush
+ * of the index by one of the waiting compactions, like a group commit.
+ */
+class CompactionIndexUpdater {
+
+    private final EntryLogger entryLogger;
+    private final CompactableLedgerStorage ledgerStorage;
+    private final OpStatsLogger updateStats;
+    private final OpStatsLogger batchSizeStats;
+
+    private Batch currentBatch = new Batch();
+    private boolean updating = false;
+
+    /**
+     * The locations submitted while the previous batch was applied.
+     */
+    private static class Batch {
+        final List<EntryLocation> locations = new ArrayList<>();
+        boolean flushEntryLogger = false;
+        boolean done = false;
+        IOException failure = null;
+    }
+
+    CompactionIndexUpdater(EntryLogger entryLogger, CompactableLedgerStorage ledgerStorage) {
+        this(entryLogger, ledgerStorage, NullStatsLogger.INSTANCE.getOpStatsLogger("index-update"),
+                NullStatsLogger.INSTANCE.getOpStatsLogger("index-update-batch-size"));
+    }
+
+    CompactionIndexUpdater(EntryLogger entryLogger, CompactableLedgerStorage ledgerStorage,
+                           OpStatsLogger updateStats, OpStatsLogger batchSizeStats) {
+        this.entryLogger = entryLogger;
+        this.ledgerStorage = ledgerStorage;
+        this.updateStats = updateStats;
+        this.batchSizeStats = batchSizeStats;
+    }
+
+    /**
+     * Update the locations of compacted entries, and flush the index. Returns once the locations are durable
+     * in the index.
+     *
+     * @param locations the new locations of the entries
+     * @param flushEntryLogger whether the entry logger holding the compacted entries must be flushed before the
+     *                         index points to them
+     * @throws IOException if the index couldn't be updated
+     */
+    void update(List<EntryLocation> locations, boolean flushEntryLogger) throws IOException {
+        Batch batch;
+        boolean leader;
+        synchronized (this) {
+            batch = currentBatch;
+            batch.locations.addAll(locations);
+            batch.flushEntryLogger |= flushEntryLogger;
+            while (updating && !batch.done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while updating the index of compacted entries", e);
+                }
+            }
+            leader = !batch.done;
+            if (leader) {
+                updating = true;
+                currentBatch = new Batch();
+            }
+        }
+
+        if (leader) {
+            IOException failure = null;
+            try {
+                apply(batch);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            } finally {
+                synchronized (this) {
+                    batch.failure = failure;
+                    batch.done = true;
+                    updating = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (batch.failure != null) {
+                throw new IOException("Failed to update the index of compacted entries", batch.failure);
+            }
+        }
+    }
+
+    private void apply(Batch batch) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            // The index must only point to compacted entries once they are flushed into the entry log
+            if (batch.flushEntryLogger) {
+                entryLogger.flush();
+            }
+            ledgerStorage.updateEntriesLocations(batch.locations);
+            ledgerStorage.flushEntriesLocationsIndex();
+            success = true;
+        } finally {
+            if (success) {
+                updateStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                batchSizeStats.registerSuccessfulValue(batch.locations.size());
+            } else {
+                updateStats.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
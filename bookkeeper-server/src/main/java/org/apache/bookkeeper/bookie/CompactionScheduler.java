@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ranks the entry logs to compact, and bounds the bytes rewritten by a compaction run.
+ *
+ * <p>Compacting an entry log costs reading it and rewriting its remaining data, and frees its garbage. With the
+ * {@link Policy#USAGE} policy, the entry logs are compacted by buckets of usage, in the order of the entry log
+ * metadata map. The other policies rank all the candidates:
+ * <ul>
+ * <li>{@link Policy#GREEDY} compacts first the entry logs freeing the most bytes per byte rewritten.</li>
+ * <li>{@link Policy#COST_BENEFIT} is the cost-benefit policy of log-structured file systems, which also favors
+ * the older entry logs, whose remaining data is less likely to be deleted soon: an entry log with usage u is
+ * ranked by (1 - u) * age / (1 + u). The entry logs are written once, so their age is estimated from their id.
+ * </li>
+ * </ul>
+ *
+ * <p>The rewrite budget is shared by the compactions of a run, which can reserve it concurrently.
+ */
+class CompactionScheduler {
+
+    /**
+     * Policy to rank the entry logs to compact.
+     */
+    enum Policy {
+        USAGE,
+        GREEDY,
+        COST_BENEFIT;
+
+        static Policy parse(String name) {
+            for (Policy policy : values()) {
+                if (policy.name().replace("_", "").equalsIgnoreCase(name.replace("_", ""))) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown compaction scheduling policy: " + name);
+        }
+    }
+
+    /**
+     * An entry log that can be compacted.
+     */
+    static class Candidate {
+        final long entryLogId;
+        final double usage;
+        final long remainingSize;
+        final long totalSize;
+        double score;
+
+        Candidate(long entryLogId, double usage, long remainingSize, long totalSize) {
+            this.entryLogId = entryLogId;
+            this.usage = usage;
+            this.remainingSize = remainingSize;
+            this.totalSize = totalSize;
+        }
+    }
+
+    private final Policy policy;
+    private final long maxRewriteBytesPerRun;
+    private final AtomicLong rewriteBytes = new AtomicLong();
+
+    /**
+     * @param maxRewriteBytesPerRun max bytes rewritten by a compaction run, or 0 for no limit
+     */
+    CompactionScheduler(Policy policy, long maxRewriteBytesPerRun) {
+        this.policy = policy;
+        this.maxRewriteBytesPerRun = maxRewriteBytesPerRun;
+    }
+
+    Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the candidates, in the order in which they should be compacted
+     */
+    List<Candidate> rank(List<Candidate> candidates) {
+        List<Candidate> ranked = new ArrayList<>(candidates);
+        if (policy == Policy.USAGE) {
+            return ranked;
+        }
+        long newestEntryLogId = 0;
+        for (Candidate candidate : ranked) {
+            newestEntryLogId = Math.max(newestEntryLogId, candidate.entryLogId);
+        }
+        for (Candidate candidate : ranked) {
+            double usage = Math.min(1.0, Math.max(0.0, candidate.usage));
+            if (policy == Policy.GREEDY) {
+                // Freed bytes per rewritten byte, the empty entry logs come first
+                candidate.score = usage > 0 ? (1 - usage) / usage : Double.MAX_VALUE;
+            } else {
+                long age = Math.max(1, newestEntryLogId - candidate.entryLogId + 1);
+                candidate.score = (1 - usage) * age / (1 + usage);
+            }
+        }
+        ranked.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        return ranked;
+    }
+
+    /**
+     * Start a new compaction run, with the full rewrite budget.
+     */
+    void startRun() {
+        rewriteBytes.set(0);
+    }
+
+    /**
+     * Reserve the budget to rewrite the remaining data of an entry log.
+     *
+     * @return false if the entry log doesn't fit in what is left of the budget of the run
+     */
+    boolean tryReserve(long bytes) {
+        if (maxRewriteBytesPerRun <= 0) {
+            rewriteBytes.addAndGet(bytes);
+            return true;
+        }
+        while (true) {
+            long current = rewriteBytes.get();
+            if (current + bytes > maxRewriteBytesPerRun) {
+                return false;
+            }
+            if (rewriteBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the bytes reserved to be rewritten in the current run
+     */
+    long getRewriteBytes() {
+        return rewriteBytes.get();
+    }
+}
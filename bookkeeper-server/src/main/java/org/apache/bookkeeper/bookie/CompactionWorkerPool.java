@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of workers compacting independent entry logs in parallel.
+ *
+ * <p>Each worker has its own compactor, since a compactor holds the state of the compaction in progress. So each
+ * worker also has its own {@link AbstractLogCompactor.Throttler}, and the compaction rate applies per worker.
+ *
+ * <p>Compactions are submitted by the garbage collector thread, which waits for an idle worker, so that it can
+ * stop submitting when the compaction run is over its time limit or the garbage collector is shutting down.
+ */
+class CompactionWorkerPool {
+    private static final Logger LOG = LoggerFactory.getLogger(CompactionWorkerPool.class);
+
+    private final int numWorkers;
+    private final ExecutorService executor;
+    private final List<AbstractLogCompactor> compactors;
+    private final BlockingQueue<AbstractLogCompactor> idleCompactors;
+    private volatile boolean cancelled = false;
+
+    CompactionWorkerPool(String name, int numWorkers, Supplier<AbstractLogCompactor> compactorFactory) {
+        this.numWorkers = numWorkers;
+        this.executor = Executors.newFixedThreadPool(numWorkers, new DefaultThreadFactory(name));
+        this.compactors = new ArrayList<>(numWorkers);
+        this.idleCompactors = new ArrayBlockingQueue<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            AbstractLogCompactor compactor = compactorFactory.get();
+            compactors.add(compactor);
+            idleCompactors.add(compactor);
+        }
+    }
+
+    /**
+     * Run a compaction on the next idle worker, waiting for one if they are all busy.
+     *
+     * @param compaction the compaction, run with the compactor of the worker
+     */
+    void submit(Consumer<AbstractLogCompactor> compaction) throws InterruptedException {
+        AbstractLogCompactor compactor = idleCompactors.take();
+        try {
+            executor.execute(() -> {
+                try {
+                    compaction.accept(compactor);
+                } catch (Throwable t) {
+                    LOG.error("Unexpected error in compaction worker", t);
+                } finally {
+                    idleCompactors.add(compactor);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            idleCompactors.add(compactor);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for all the submitted compactions to complete, even if interrupted, since the compactions must not
+     * outlive the compaction run.
+     */
+    void awaitIdle() {
+        List<AbstractLogCompactor> taken = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            taken.add(Uninterruptibles.takeUninterruptibly(idleCompactors));
+        }
+        idleCompactors.addAll(taken);
+    }
+
+    /**
+     * Stop the compactions in progress when they are throttled, and stop accepting new ones.
+     */
+    void cancel() {
+        cancelled = true;
+        for (AbstractLogCompactor compactor : compactors) {
+            compactor.throttler.cancelledAcquire();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Shutdown the workers. The workers are not interrupted, an interrupted compaction could close the entry
+     * logger or the index with a ClosedByInterruptException.
+     */
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            LOG.warn("Compaction workers didn't terminate in time");
+        }
+    }
+}
@@ -31,7 +31,9 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
 import java.io.File;
@@ -40,7 +42,6 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.FileChannel;
@@ -53,13 +54,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogChannels;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.EntryReadPlanner;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -287,6 +288,8 @@ public class DefaultEntryLogger implements EntryLogger {
 
     private final ByteBufAllocator allocator;
 
+    private final EntryReadPlanner readPlanner = new EntryReadPlanner();
+
     final ServerConfiguration conf;
 
     /**
@@ -414,10 +417,9 @@ public class DefaultEntryLogger implements EntryLogger {
 
     /**
      * Each thread local buffered read channel can share the same file handle because reads are not relative
-     * and don't cause a change in the channel's position. We use this map to store the file channels. Each
-     * file channel is mapped to a log id which represents an open log file.
+     * and don't cause a change in the channel's position. The file regions of large entries share it too.
      */
-    private final ConcurrentMap<Long, FileChannel> logid2FileChannel = new ConcurrentHashMap<Long, FileChannel>();
+    private final EntryLogChannels logChannels = new EntryLogChannels(this::findFile);
 
     /**
      * Put the logId, bc pair in the map responsible for the current thread.
@@ -434,14 +436,7 @@ public class DefaultEntryLogger implements EntryLogger {
      * @param logId
      */
     public void removeFromChannelsAndClose(long logId) {
-        FileChannel fileChannel = logid2FileChannel.remove(logId);
-        if (null != fileChannel) {
-            try {
-                fileChannel.close();
-            } catch (IOException e) {
-                LOG.warn("Exception while closing channel for log file:" + logId);
-            }
-        }
+        logChannels.remove(logId);
     }
 
     public BufferedReadChannel getFromChannels(long logId) {
@@ -814,11 +809,69 @@ public class DefaultEntryLogger implements EntryLogger {
         return internalReadEntry(ledgerId, entryId, entryLocation, true /* validateEntry */);
     }
 
+    @Override
+    public ReferenceCounted readEntryOrRegion(long ledgerId, long entryId, long entryLocation, int minRegionSize)
+            throws IOException, Bookie.NoEntryException {
+        long entryLogId = logIdForOffset(entryLocation);
+        long pos = posForOffset(entryLocation);
+
+        int entrySize;
+        try {
+            BufferedReadChannel fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+        }
+
+        if (entrySize < minRegionSize) {
+            return internalReadEntry(ledgerId, entryId, entryLocation, false /* validateEntry */);
+        }
+
+        // The region keeps the shared channel open until it's transferred, even if the entry log gets removed in
+        // the meantime
+        FileRegion region = logChannels.newRegion(entryLogId, pos, entrySize);
+        if (region == null) {
+            // The entry is still in the write buffer of the current log
+            return internalReadEntry(ledgerId, entryId, entryLocation, false /* validateEntry */);
+        }
+        return region;
+    }
+
     @Override
     public ByteBuf readEntry(long location) throws IOException, Bookie.NoEntryException {
         return internalReadEntry(location, -1L, -1L, false /* validateEntry */);
     }
 
+    @Override
+    public ByteBuf[] readEntries(long ledgerId, long[] entryIds, long[] entryLocations)
+            throws IOException, Bookie.NoEntryException {
+        return readPlanner.readEntries(this, this::readLogRange, ledgerId, entryIds, entryLocations);
+    }
+
+    private ByteBuf readLogRange(long entryLogId, long pos, int size) throws IOException {
+        BufferedReadChannel fc = getChannelForLogId(entryLogId);
+        ByteBuf data = allocator.buffer(size, size);
+        try {
+            int rc;
+            if (entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+                // Part of the range might still be in the write buffer
+                rc = readFromLogChannel(entryLogId, fc, data, pos);
+            } else {
+                rc = fc.readUnbuffered(data, pos, size);
+            }
+            if (rc != size) {
+                throw new IOException("Short read from entry log " + entryLogId + "@" + pos
+                        + " (" + rc + "!=" + size + ")");
+            }
+            return data;
+        } catch (IOException e) {
+            ReferenceCountUtil.release(data);
+            throw e;
+        }
+    }
+
 
     private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException, Bookie.NoEntryException {
@@ -886,15 +939,7 @@ public class DefaultEntryLogger implements EntryLogger {
         if (fc != null) {
             return fc;
         }
-        File file = findFile(entryLogId);
-        // get channel is used to open an existing entry log file
-        // it would be better to open using read mode
-        FileChannel newFc = new RandomAccessFile(file, "r").getChannel();
-        FileChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, newFc);
-        if (null != oldFc) {
-            newFc.close();
-            newFc = oldFc;
-        }
+        FileChannel newFc = logChannels.get(entryLogId);
         // We set the position of the write buffer of this buffered channel to Long.MAX_VALUE
         // so that there are no overlaps with the write buffer while reading
         fc = new BufferedReadChannel(newFc, conf.getReadBufferBytes());
@@ -1166,11 +1211,7 @@ public class DefaultEntryLogger implements EntryLogger {
         LOG.info("Stopping EntryLogger");
         try {
             flush();
-            for (FileChannel fc : logid2FileChannel.values()) {
-                fc.close();
-            }
-            // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
-            logid2FileChannel.clear();
+            logChannels.removeAll();
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1182,9 +1223,7 @@ public class DefaultEntryLogger implements EntryLogger {
             // we have no idea how to avoid io exception during shutting down, so just ignore it
             LOG.error("Error flush entry log during shutting down, which may cause entry log corrupted.", ie);
         } finally {
-            for (FileChannel fc : logid2FileChannel.values()) {
-                IOUtils.close(LOG, fc);
-            }
+            logChannels.removeAll();
 
             entryLogManager.forceClose();
             synchronized (compactionLogLock) {
@@ -0,0 +1,247 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * A {@link BufferedChannel} that writes with direct I/O, bypassing the page cache.
+ *
+ * <p>The write buffer is allocated with the memory alignment required by direct I/O, and it is always written at
+ * offsets and with sizes aligned to the block size. When a flush ends in the middle of a block, the block is
+ * padded with zeros and written, and its data is kept at the start of the buffer, to be written again with the
+ * next flush. The journal pads its flushes to the journal alignment size, so with a block size equal to the
+ * journal alignment size no block is written twice.
+ *
+ * <p>All the writes to the file, including the preallocation of its blocks, go through the direct I/O file
+ * descriptor, so that they are never mixed with writes through the page cache. The data is made durable with
+ * fdatasync, the file channel is only used to read.
+ */
+public class DirectBufferedChannel extends BufferedChannel {
+
+    // Alignment of the memory of the write buffer, which works for all the devices
+    static final int MEMORY_ALIGNMENT = 4096;
+
+    private final NativeIO nativeIO;
+    private final String filename;
+    private final int fd;
+    private final long bufferPointer;
+    private final int blockSize;
+    // Aligned block of zeros, to preallocate the file when fallocate is not supported
+    private long zeroBlockPointer = 0;
+    // End of the data written by the last flush, which is made durable by the next force write
+    private volatile long flushedPosition;
+    private boolean closed = false;
+
+    public static DirectBufferedChannel open(NativeIO nativeIO, File file, FileChannel fc, int writeCapacity,
+                                             int blockSize) throws IOException {
+        checkArgument(blockSize > 0 && MEMORY_ALIGNMENT % blockSize == 0,
+                "Block size (%s) must be a divisor of %s", blockSize, MEMORY_ALIGNMENT);
+        int capacity = Math.max(MEMORY_ALIGNMENT, writeCapacity - writeCapacity % MEMORY_ALIGNMENT);
+        String filename = file.getPath();
+
+        int fd;
+        try {
+            fd = nativeIO.open(filename, NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        long pointer;
+        try {
+            pointer = nativeIO.posix_memalign(MEMORY_ALIGNMENT, capacity);
+        } catch (NativeIOException ne) {
+            closeQuietly(nativeIO, fd);
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("size", capacity).kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        try {
+            return new DirectBufferedChannel(nativeIO, filename, fd, pointer, capacity, fc, blockSize);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(nativeIO, fd);
+            try {
+                nativeIO.free(pointer);
+            } catch (NativeIOException ne) {
+                e.addSuppressed(ne);
+            }
+            throw e;
+        }
+    }
+
+    private DirectBufferedChannel(NativeIO nativeIO, String filename, int fd, long bufferPointer, int capacity,
+                                  FileChannel fc, int blockSize) throws IOException {
+        // A wrapped memory address is readable up to its capacity, the write buffer starts empty
+        super(fc, Unpooled.wrappedBuffer(bufferPointer, capacity, false).clear(), capacity, 0);
+        this.nativeIO = nativeIO;
+        this.filename = filename;
+        this.fd = fd;
+        this.bufferPointer = bufferPointer;
+        this.blockSize = blockSize;
+
+        // Start at the beginning of the current block, with the data already written in it, e.g. the file header
+        long blockStart = position - position % blockSize;
+        int dataInBlock = (int) (position - blockStart);
+        if (dataInBlock > 0) {
+            writeBuffer.writerIndex(dataInBlock);
+            int read = 0;
+            while (read < dataInBlock) {
+                int rc = fc.read(writeBuffer.nioBuffer(read, dataInBlock - read), blockStart + read);
+                if (rc <= 0) {
+                    throw new IOException(exMsg("Short read of the current block").kv("file", filename)
+                            .kv("position", position).kv("blockSize", blockSize).toString());
+                }
+                read += rc;
+            }
+        }
+        writeBufferStartPosition.set(blockStart);
+        flushedPosition = position;
+    }
+
+    /**
+     * Allocate the blocks of a range of the file, so that syncing the data later written in the range doesn't
+     * update the file metadata. If the file system doesn't support fallocate, the last block of the range is
+     * written with zeros, unless it will be written with data by the next flush.
+     */
+    synchronized void preallocate(long offset, long length) throws IOException {
+        try {
+            if (nativeIO.fallocate(fd, 0, offset, length) == 0) {
+                return;
+            }
+        } catch (NativeIOException ne) {
+            // Not supported by the file system
+        }
+
+        long end = offset + length;
+        long zeroBlockOffset = end - blockSize - (end - blockSize) % blockSize;
+        // The current block may hold flushed data, which is only in the write buffer until the next flush
+        long nextBlockOffset = position + (blockSize - position % blockSize) % blockSize;
+        if (zeroBlockOffset < nextBlockOffset) {
+            return;
+        }
+        if (zeroBlockPointer == 0) {
+            try {
+                zeroBlockPointer = nativeIO.posix_memalign(MEMORY_ALIGNMENT, blockSize);
+            } catch (NativeIOException ne) {
+                throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                        .kv("size", blockSize).kv("errno", ne.getErrno()).toString(), ne);
+            }
+            Unpooled.wrappedBuffer(zeroBlockPointer, blockSize, false).setZero(0, blockSize);
+        }
+        pwrite(zeroBlockPointer, blockSize, zeroBlockOffset);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        int length = writeBuffer.writerIndex();
+        if (length == 0) {
+            return;
+        }
+
+        int fullBlocksLength = length - length % blockSize;
+        int alignedLength = fullBlocksLength == length ? length : fullBlocksLength + blockSize;
+        writeBuffer.setZero(length, alignedLength - length);
+
+        long offset = writeBufferStartPosition.get();
+        pwrite(bufferPointer, alignedLength, offset);
+
+        // Keep the data of the last partial block, it will be written again with the rest of the block
+        int partialBlockLength = length - fullBlocksLength;
+        if (partialBlockLength > 0 && fullBlocksLength > 0) {
+            writeBuffer.setBytes(0, writeBuffer, fullBlocksLength, partialBlockLength);
+        }
+        writeBuffer.writerIndex(partialBlockLength);
+        writeBufferStartPosition.addAndGet(fullBlocksLength);
+        flushedPosition = offset + length;
+    }
+
+    private void pwrite(long pointer, int length, long offset) throws IOException {
+        try {
+            int written = nativeIO.pwrite(fd, pointer, length, offset);
+            if (written != length) {
+                throw new IOException(exMsg("Incomplete write").kv("file", filename).kv("offset", offset)
+                        .kv("writeSize", length).kv("bytesWritten", written).toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename).kv("offset", offset)
+                    .kv("writeSize", length).kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    @Override
+    public long forceWrite(boolean forceMetadata) throws IOException {
+        // All the data written with the flushes is covered, including the last partial block
+        long positionForceWrite = flushedPosition;
+        try {
+            if (forceMetadata) {
+                nativeIO.fsync(fd);
+            } else {
+                nativeIO.fdatasync(fd);
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        }
+        return positionForceWrite;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        super.close();
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        } finally {
+            try {
+                nativeIO.free(bufferPointer);
+                if (zeroBlockPointer != 0) {
+                    nativeIO.free(zeroBlockPointer);
+                }
+            } catch (NativeIOException ne) {
+                // Only fails if the pointer is invalid
+            }
+        }
+    }
+
+    private static void closeQuietly(NativeIO nativeIO, int fd) {
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            // Already failing
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     final CompactionScannerFactory scannerFactory = new CompactionScannerFactory();
     final EntryLogger entryLogger;
     final CompactableLedgerStorage ledgerStorage;
+    final CompactionIndexUpdater indexUpdater;
     private final int maxOutstandingRequests;
 
     public EntryLogCompactor(
@@ -49,10 +50,20 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
+        this(conf, entryLogger, ledgerStorage, logRemover, new CompactionIndexUpdater(entryLogger, ledgerStorage));
+    }
+
+    EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            CompactionIndexUpdater indexUpdater) {
         super(conf, logRemover);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
+        this.indexUpdater = indexUpdater;
     }
 
     @Override
@@ -117,9 +128,7 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             // Before updating the index, we want to wait until all the compacted entries are flushed into the
             // entryLog
             try {
-                entryLogger.flush();
-                ledgerStorage.updateEntriesLocations(offsets);
-                ledgerStorage.flushEntriesLocationsIndex();
+                indexUpdater.update(offsets, true);
             } finally {
                 offsets.clear();
             }
@@ -30,12 +30,15 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
@@ -89,6 +92,10 @@ public class GarbageCollectorThread implements Runnable {
     // Entry Logger Handle
     final EntryLogger entryLogger;
     final AbstractLogCompactor compactor;
+    // Ranks the entry logs to compact and bounds the bytes rewritten by each compaction
+    final CompactionScheduler compactionScheduler;
+    // Compacts entry logs in parallel, null when compacting on the gc thread
+    final CompactionWorkerPool compactionWorkers;
 
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
@@ -166,7 +173,9 @@ public class GarbageCollectorThread implements Runnable {
 
         this.numActiveEntryLogs = 0;
         this.totalEntryLogSize = 0L;
-        this.garbageCollector = new ScanAndCompareGarbageCollector(ledgerManager, ledgerStorage, conf, statsLogger);
+        this.garbageCollector = conf.isGcIncrementalEnabled()
+                ? new IncrementalGarbageCollector(ledgerManager, ledgerStorage, conf, statsLogger)
+                : new ScanAndCompareGarbageCollector(ledgerManager, ledgerStorage, conf, statsLogger);
         this.gcStats = new GarbageCollectorStats(
             statsLogger,
             () -> numActiveEntryLogs,
@@ -210,10 +219,35 @@ public class GarbageCollectorThread implements Runnable {
                 }
             }
         };
-        if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+        // The compactors share the index updater, which batches the index updates of concurrent compactions
+        CompactionIndexUpdater indexUpdater = new CompactionIndexUpdater(entryLogger, ledgerStorage,
+                gcStats.getCompactionIndexUpdateRuntime(), gcStats.getCompactionIndexUpdateBatchSize());
+        Supplier<AbstractLogCompactor> compactorFactory = () -> conf.getUseTransactionalCompaction()
+                ? new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover, indexUpdater)
+                : new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover, indexUpdater);
+        this.compactor = compactorFactory.get();
+
+        int numCompactionThreads = conf.getNumCompactionThreads();
+        if (numCompactionThreads > 1 && conf.getUseTransactionalCompaction()
+                && entryLogger instanceof DefaultEntryLogger) {
+            // The default entry logger has a single compaction log at a time
+            LOG.warn("Transactional compaction with the default entry logger can't run in parallel,"
+                    + " ignoring numCompactionThreads={}", numCompactionThreads);
+            numCompactionThreads = 1;
+        }
+        if (numCompactionThreads > 1) {
+            this.compactionWorkers = new CompactionWorkerPool("GarbageCollectorThread-compaction",
+                    numCompactionThreads, compactorFactory);
         } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactionWorkers = null;
+        }
+
+        try {
+            this.compactionScheduler = new CompactionScheduler(
+                    CompactionScheduler.Policy.parse(conf.getCompactionSchedulingPolicy()),
+                    conf.getCompactionMaxRewriteBytesPerRun());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
         }
 
         this.throttler = new AbstractLogCompactor.Throttler(conf);
@@ -264,6 +298,8 @@ public class GarbageCollectorThread implements Runnable {
                + minorCompactionThreshold + ", interval=" + minorCompactionInterval);
         LOG.info("Major Compaction : enabled=" + enableMajorCompaction + ", threshold="
                + majorCompactionThreshold + ", interval=" + majorCompactionInterval);
+        LOG.info("Compaction scheduling : policy=" + compactionScheduler.getPolicy() + ", maxRewriteBytesPerRun="
+               + conf.getCompactionMaxRewriteBytesPerRun() + ", threads=" + numCompactionThreads);
 
         lastMinorCompactionTime = lastMajorCompactionTime = System.currentTimeMillis();
     }
@@ -539,9 +575,10 @@ public class GarbageCollectorThread implements Runnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
-     * Those entry log files whose remaining size percentage is higher than threshold
-     * would not be compacted.
+     * Compaction will be executed from low unused space to high unused space, or in the order
+     * of the compaction scheduling policy. Those entry log files whose remaining size percentage
+     * is higher than threshold would not be compacted, and neither would those whose remaining
+     * data doesn't fit in the rewrite budget of the run.
      * </p>
      */
     @VisibleForTesting
@@ -550,7 +587,7 @@ public class GarbageCollectorThread implements Runnable {
 
         final int numBuckets = 10;
         int[] entryLogUsageBuckets = new int[numBuckets];
-        int[] compactedBuckets = new int[numBuckets];
+        AtomicIntegerArray compactedBuckets = new AtomicIntegerArray(numBuckets);
 
         ArrayList<LinkedList<Long>> compactableBuckets = new ArrayList<>(numBuckets);
         for (int i = 0; i < numBuckets; i++) {
@@ -560,6 +597,7 @@ public class GarbageCollectorThread implements Runnable {
         long start = System.currentTimeMillis();
         MutableLong end = new MutableLong(start);
         MutableLong timeDiff = new MutableLong(0);
+        List<CompactionScheduler.Candidate> candidates = new ArrayList<>();
 
         entryLogMetaMap.forEach((entryLogId, meta) -> {
             double usage = meta.getUsage();
@@ -582,48 +620,30 @@ public class GarbageCollectorThread implements Runnable {
             }
 
             compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
+            candidates.add(new CompactionScheduler.Candidate(meta.getEntryLogId(), usage,
+                    meta.getRemainingSize(), meta.getTotalSize()));
         });
 
         LOG.info(
                 "Compaction: entry log usage buckets before compaction [10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}",
                 entryLogUsageBuckets);
 
-        final int maxBucket = calculateUsageIndex(numBuckets, threshold);
-        stopCompaction:
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
-            while (!entryLogIds.isEmpty()) {
-                if (timeDiff.getValue() < maxTimeMillis) {
-                    end.setValue(System.currentTimeMillis());
-                    timeDiff.setValue(end.getValue() - start);
-                }
-
-                if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
-                    // We allow the usage limit calculation to continue so that we get an accurate
-                    // report of where the usage was prior to running compaction.
-                    break stopCompaction;
-                }
-
-                final int bucketIndex = currBucket;
-                final long logId = entryLogIds.remove();
-
-                entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
-                    if (meta == null) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Metadata for entry log {} already deleted", logId);
-                        }
-                        return;
-                    }
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                                meta.getEntryLogId(), meta.getUsage(), threshold);
-                    }
-
-                    long priorRemainingSize = meta.getRemainingSize();
-                    compactEntryLog(meta);
-                    gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
-                    compactedBuckets[bucketIndex]++;
-                });
+        compactionScheduler.startRun();
+        // The workers compact while the gc thread holds the compacting flag, so that shutdown waits for them
+        if (compactionWorkers != null && !compacting.compareAndSet(false, true)) {
+            LOG.info("Skipping compaction, the garbage collector is shutting down");
+            return;
+        }
+        try {
+            scheduleCompactions(threshold, maxTimeMillis, compactableBuckets, candidates, compactedBuckets,
+                    start, end, timeDiff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while scheduling compactions");
+        } finally {
+            if (compactionWorkers != null) {
+                compactionWorkers.awaitIdle();
+                compacting.set(false);
             }
         }
 
@@ -638,6 +658,122 @@ public class GarbageCollectorThread implements Runnable {
         LOG.info(
                 "Compaction: entry log usage buckets[10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}, compacted {}",
                 entryLogUsageBuckets, compactedBuckets);
+        LOG.info("Compaction: rewrote {} bytes with policy {}", compactionScheduler.getRewriteBytes(),
+                compactionScheduler.getPolicy());
+    }
+
+    /**
+     * Compact the candidate entry logs in the order of the scheduling policy, until the time limit of the run.
+     */
+    private void scheduleCompactions(double threshold, long maxTimeMillis,
+                                     List<LinkedList<Long>> compactableBuckets,
+                                     List<CompactionScheduler.Candidate> candidates,
+                                     AtomicIntegerArray compactedBuckets,
+                                     long start, MutableLong end, MutableLong timeDiff)
+            throws EntryLogMetadataMapException, InterruptedException {
+        final int numBuckets = compactedBuckets.length();
+        if (compactionScheduler.getPolicy() == CompactionScheduler.Policy.USAGE) {
+            final int maxBucket = calculateUsageIndex(numBuckets, threshold);
+            stopCompaction:
+            for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
+                LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
+                while (!entryLogIds.isEmpty()) {
+                    if (timeDiff.getValue() < maxTimeMillis) {
+                        end.setValue(System.currentTimeMillis());
+                        timeDiff.setValue(end.getValue() - start);
+                    }
+
+                    if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || isCompactionStopped()) {
+                        // We allow the usage limit calculation to continue so that we get an accurate
+                        // report of where the usage was prior to running compaction.
+                        break stopCompaction;
+                    }
+
+                    scheduleCompaction(entryLogIds.remove(), threshold, compactedBuckets, currBucket);
+                }
+            }
+        } else {
+            for (CompactionScheduler.Candidate candidate : compactionScheduler.rank(candidates)) {
+                if (timeDiff.getValue() < maxTimeMillis) {
+                    end.setValue(System.currentTimeMillis());
+                    timeDiff.setValue(end.getValue() - start);
+                }
+
+                if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || isCompactionStopped()) {
+                    break;
+                }
+
+                scheduleCompaction(candidate.entryLogId, threshold, compactedBuckets,
+                        calculateUsageIndex(numBuckets, candidate.usage));
+            }
+        }
+    }
+
+    private boolean isCompactionStopped() {
+        return !running || (compactionWorkers != null && compactionWorkers.isCancelled());
+    }
+
+    /**
+     * Compact an entry log on the gc thread, or submit it to the next idle compaction worker.
+     */
+    private void scheduleCompaction(long logId, double threshold, AtomicIntegerArray compactedBuckets, int bucket)
+            throws EntryLogMetadataMapException, InterruptedException {
+        if (compactionWorkers == null) {
+            if (compactEntryLogWithinBudget(logId, threshold, null)) {
+                compactedBuckets.incrementAndGet(bucket);
+            }
+            return;
+        }
+        compactionWorkers.submit(workerCompactor -> {
+            try {
+                if (compactEntryLogWithinBudget(logId, threshold, workerCompactor)) {
+                    compactedBuckets.incrementAndGet(bucket);
+                }
+            } catch (EntryLogMetadataMapException e) {
+                LOG.warn("Failed to compact entry log {} due to entry-log metadata-map error", logId, e);
+            }
+        });
+    }
+
+    /**
+     * Compact an entry log, if its remaining data fits in the rewrite budget of the compaction run.
+     *
+     * @param workerCompactor the compactor of the compaction worker, or null to compact on the gc thread
+     * @return whether the entry log was compacted
+     */
+    private boolean compactEntryLogWithinBudget(long logId, double threshold, AbstractLogCompactor workerCompactor)
+            throws EntryLogMetadataMapException {
+        MutableBoolean compacted = new MutableBoolean(false);
+        entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
+            if (meta == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Metadata for entry log {} already deleted", logId);
+                }
+                return;
+            }
+            long priorRemainingSize = meta.getRemainingSize();
+            if (!compactionScheduler.tryReserve(priorRemainingSize)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Skipping entry log {} with {} remaining bytes, over the rewrite budget",
+                            meta.getEntryLogId(), priorRemainingSize);
+                }
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                        meta.getEntryLogId(), meta.getUsage(), threshold);
+            }
+
+            if (workerCompactor == null) {
+                compactEntryLog(meta);
+            } else {
+                compactEntryLog(workerCompactor, meta);
+            }
+            gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
+            gcStats.getRewrittenSpaceViaCompaction().addCount(priorRemainingSize);
+            compacted.setTrue();
+        });
+        return compacted.booleanValue();
     }
 
     /**
@@ -667,6 +803,9 @@ public class GarbageCollectorThread implements Runnable {
 
         throttler.cancelledAcquire();
         compactor.throttler.cancelledAcquire();
+        if (compactionWorkers != null) {
+            compactionWorkers.cancel();
+        }
         while (!compacting.compareAndSet(false, true)) {
             // Wait till the thread stops compacting
             Thread.sleep(100);
@@ -675,6 +814,9 @@ public class GarbageCollectorThread implements Runnable {
         this.running = false;
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        if (compactionWorkers != null) {
+            compactionWorkers.shutdown();
+        }
         try {
             entryLogMetaMap.close();
         } catch (Exception e) {
@@ -716,15 +858,30 @@ public class GarbageCollectorThread implements Runnable {
 
         try {
             // Do the actual compaction
-            compactor.compact(entryLogMeta);
-        } catch (Exception e) {
-            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            compactEntryLog(compactor, entryLogMeta);
         } finally {
             // Mark compaction done
             compacting.set(false);
         }
     }
 
+    private void compactEntryLog(AbstractLogCompactor logCompactor, EntryLogMetadata entryLogMeta) {
+        long startTime = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            success = logCompactor.compact(entryLogMeta);
+        } catch (Exception e) {
+            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+        }
+        if (success) {
+            gcStats.getCompactEntryLogRuntime().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        } else {
+            gcStats.getCompactEntryLogRuntime().registerFailedEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        }
+    }
+
     /**
      * Method to read in all of the entry logs (those that we haven't done so yet),
      * and find the set of ledger ID's that make up each entry log file.
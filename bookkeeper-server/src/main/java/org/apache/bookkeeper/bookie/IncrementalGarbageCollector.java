@@ -0,0 +1,206 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Garbage collector implementation checking a bounded number of the ledgers of the bookie on each garbage
+ * collection.
+ *
+ * <p>
+ * Garbage collection is processed as below:
+ * <ul>
+ * <li> read the metadata of the next ledgers of the bookie, in ledger id order, starting after the last ledger
+ * checked by the previous garbage collection, and wrapping around once all the ledgers were checked
+ * <li> the metadata reads are limited in number per garbage collection and in rate, and the number per garbage
+ * collection is capped to the reads the rate allows within the garbage collection interval, so that a garbage
+ * collection is done before the next one is due
+ * <li> garbage collect the ledgers whose metadata no longer exists
+ * <li> periodically, garbage collect with the full scan and compare of {@link ScanAndCompareGarbageCollector},
+ * which also garbage collects the over-replicated ledgers
+ * </ul>
+ * </p>
+ *
+ * <p>Between two full comparisons, the metadata store is read for a bounded number of ledgers, instead of listing
+ * all its ledgers on every garbage collection, and no watch is kept on the metadata store. A deleted ledger is
+ * garbage collected within the number of ledgers of the bookie divided by the number of ledgers checked per
+ * garbage collection. Only the ledgers to check are kept in memory, not the whole list of ledgers of the bookie.
+ */
+public class IncrementalGarbageCollector extends ScanAndCompareGarbageCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalGarbageCollector.class);
+
+    private final LedgerManager ledgerManager;
+    private final CompactableLedgerStorage ledgerStorage;
+    private final long zkOpTimeoutMs;
+    private final long fullReconciliationIntervalMillis;
+    private final int ledgersPerRun;
+    private final RateLimiter metadataReadRateLimiter;
+    private long lastFullReconciliationTimeMillis = 0;
+    // First ledger id to check with the next garbage collection
+    private long nextLedgerId = 0;
+
+    public IncrementalGarbageCollector(LedgerManager ledgerManager, CompactableLedgerStorage ledgerStorage,
+            ServerConfiguration conf, StatsLogger statsLogger) throws IOException {
+        super(ledgerManager, ledgerStorage, conf, statsLogger);
+        this.ledgerManager = ledgerManager;
+        this.ledgerStorage = ledgerStorage;
+        this.zkOpTimeoutMs = conf.getZkTimeout() * 2;
+        this.fullReconciliationIntervalMillis = conf.getGcFullReconciliationWaitTimeMillis();
+        this.ledgersPerRun = ledgersPerRun(conf);
+        this.metadataReadRateLimiter = RateLimiter.create(conf.getGcIncrementalMetadataReadRate());
+        LOG.info("Incremental Garbage Collection : fullReconciliationInterval={}, ledgersPerRun={},"
+                + " metadataReadRate={}", fullReconciliationIntervalMillis, ledgersPerRun,
+                conf.getGcIncrementalMetadataReadRate());
+    }
+
+    /**
+     * Get the number of ledgers checked per garbage collection: the configured max, capped to the number of metadata
+     * reads the rate allows within the garbage collection interval.
+     */
+    static int ledgersPerRun(ServerConfiguration conf) {
+        int maxLedgersPerRun = Math.max(1, conf.getGcIncrementalMaxLedgersPerRun());
+        long readsPerInterval = (long) conf.getGcIncrementalMetadataReadRate() * conf.getGcWaitTime() / 1000;
+        if (readsPerInterval >= maxLedgersPerRun) {
+            return maxLedgersPerRun;
+        }
+        int ledgersPerRun = (int) Math.max(1, readsPerInterval);
+        LOG.warn("Only {} of the {} ledgers per incremental garbage collection can be read at {} reads/s within"
+                + " the garbage collection interval of {} ms, checking {} ledgers per garbage collection",
+                readsPerInterval, maxLedgersPerRun, conf.getGcIncrementalMetadataReadRate(), conf.getGcWaitTime(),
+                ledgersPerRun);
+        return ledgersPerRun;
+    }
+
+    @VisibleForTesting
+    int getLedgersPerRun() {
+        return ledgersPerRun;
+    }
+
+    @Override
+    public void gc(GarbageCleaner garbageCleaner) {
+        if (null == ledgerManager) {
+            // if ledger manager is null, the bookie is not started to connect to metadata store.
+            // so skip garbage collection
+            return;
+        }
+
+        if (System.currentTimeMillis() - lastFullReconciliationTimeMillis >= fullReconciliationIntervalMillis) {
+            LOG.info("Start full reconciliation of the ledgers with the metadata store");
+            super.gc(garbageCleaner);
+            lastFullReconciliationTimeMillis = System.currentTimeMillis();
+            return;
+        }
+
+        try {
+            checkNextLedgers(garbageCleaner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while checking the metadata of the ledgers");
+        } catch (Throwable t) {
+            // ignore exception, collecting garbage next time
+            LOG.warn("Exception when checking the metadata of the ledgers", t);
+        }
+    }
+
+    /**
+     * Read the metadata of the next ledgers of the bookie, and garbage collect the ones that no longer exist.
+     */
+    private void checkNextLedgers(GarbageCleaner garbageCleaner) throws IOException, InterruptedException {
+        // The ledger storage doesn't list its ledgers in ledger id order, so only the smallest ledger ids from the
+        // next ledger on are kept while listing them, in a heap whose head is the largest one kept
+        PriorityQueue<Long> nextLedgers = new PriorityQueue<>(ledgersPerRun + 1, Comparator.reverseOrder());
+        int numRemainingLedgers = 0;
+        for (long ledgerId : ledgerStorage.getActiveLedgersInRange(nextLedgerId, Long.MAX_VALUE)) {
+            numRemainingLedgers++;
+            if (nextLedgers.size() < ledgersPerRun) {
+                nextLedgers.add(ledgerId);
+            } else if (ledgerId < nextLedgers.peek()) {
+                nextLedgers.poll();
+                nextLedgers.add(ledgerId);
+            }
+        }
+        if (nextLedgerId == 0) {
+            this.activeLedgerCounter = numRemainingLedgers;
+        }
+        if (nextLedgers.isEmpty()) {
+            nextLedgerId = 0;
+            return;
+        }
+
+        long[] ledgersToCheck = new long[nextLedgers.size()];
+        for (int i = 0; i < ledgersToCheck.length; i++) {
+            ledgersToCheck[i] = nextLedgers.poll();
+        }
+        Arrays.sort(ledgersToCheck);
+        long lastLedgerId = ledgersToCheck[ledgersToCheck.length - 1];
+
+        ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+        CountDownLatch latch = new CountDownLatch(ledgersToCheck.length);
+        for (long ledgerId : ledgersToCheck) {
+            metadataReadRateLimiter.acquire();
+            ledgerManager.readLedgerMetadata(ledgerId).whenComplete((metadata, exception) -> {
+                if (exception instanceof BKException.BKNoSuchLedgerExistsOnMetadataServerException) {
+                    deletedLedgers.add(ledgerId);
+                } else if (exception != null) {
+                    LOG.warn("Failed to get metadata for ledger {}. {}: {}",
+                            ledgerId, exception.getClass().getName(), exception.getMessage());
+                }
+                latch.countDown();
+            });
+        }
+
+        if (latch.await(zkOpTimeoutMs, TimeUnit.MILLISECONDS)) {
+            // Wrap around once the last ledger of the bookie was checked
+            nextLedgerId = numRemainingLedgers == ledgersToCheck.length ? 0 : lastLedgerId + 1;
+        } else {
+            LOG.warn("Timed out waiting for the metadata of {} ledgers, they are checked again in the next cycle",
+                    latch.getCount());
+        }
+        for (long ledgerId : deletedLedgers.items()) {
+            garbageCleaner.clean(ledgerId);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Checked the metadata of {} ledgers out of {} remaining, next ledger {}",
+                    ledgersToCheck.length, numRemainingLedgers, nextLedgerId);
+        }
+        if (!deletedLedgers.isEmpty()) {
+            LOG.info("Garbage collected {} ledgers deleted from the metadata store", deletedLedgers.size());
+        }
+    }
+}
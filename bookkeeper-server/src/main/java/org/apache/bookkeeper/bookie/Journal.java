@@ -41,6 +41,8 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
@@ -92,7 +94,67 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
     }
 
+    // Prefix of the subdirectories of a journal directory where the journal streams, except the first one, write
+    static final String JOURNAL_STREAM_DIR_PREFIX = "stream-";
 
+    /**
+     * Get the directories of all the journal streams, in journal index order.
+     *
+     * <p>Each journal directory has {@code streamsPerDirectory} journal streams, each being a {@link Journal}
+     * with its own thread, journal files, group commits and last log mark. The first stream of a journal
+     * directory writes into the directory itself, the other ones into subdirectories.
+     *
+     * @param journalDirectories the journal directories
+     * @param streamsPerDirectory the number of journal streams per journal directory
+     * @return the journal directory of each journal index
+     */
+    public static List<File> getJournalStreamDirectories(List<File> journalDirectories, int streamsPerDirectory) {
+        List<File> streamDirectories = new ArrayList<>(journalDirectories.size() * streamsPerDirectory);
+        for (int stream = 0; stream < streamsPerDirectory; stream++) {
+            for (File journalDirectory : journalDirectories) {
+                streamDirectories.add(stream == 0
+                        ? journalDirectory
+                        : new File(journalDirectory, JOURNAL_STREAM_DIR_PREFIX + stream));
+            }
+        }
+        return streamDirectories;
+    }
+
+    /**
+     * Get the directories of the journal streams left over from a configuration with more streams per journal
+     * directory, that still hold journal files.
+     *
+     * <p>Their entries may not have been checkpointed before the number of streams was lowered, so they must still
+     * be replayed. The journal index of a stream directory doesn't depend on the number of streams, as long as the
+     * journal directories are the same.
+     *
+     * @param journalDirectories the journal directories
+     * @param streamsPerDirectory the number of journal streams per journal directory
+     * @return the journal directory of each stale journal index
+     */
+    public static SortedMap<Integer, File> getStaleJournalStreamDirectories(List<File> journalDirectories,
+                                                                            int streamsPerDirectory) {
+        SortedMap<Integer, File> staleDirectories = new TreeMap<>();
+        for (int i = 0; i < journalDirectories.size(); i++) {
+            File[] streamDirectories = journalDirectories.get(i).listFiles(
+                    f -> f.isDirectory() && f.getName().startsWith(JOURNAL_STREAM_DIR_PREFIX));
+            if (streamDirectories == null) {
+                continue;
+            }
+            for (File streamDirectory : streamDirectories) {
+                int stream;
+                try {
+                    stream = Integer.parseInt(streamDirectory.getName().substring(JOURNAL_STREAM_DIR_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (stream >= streamsPerDirectory && !listJournalIds(streamDirectory, null).isEmpty()) {
+                    staleDirectories.put(stream * journalDirectories.size() + i, streamDirectory);
+                }
+            }
+        }
+        return staleDirectories;
+    }
 
     /**
      * List all journal ids by a specified journal id filer.
@@ -537,8 +599,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncNanos, TimeUnit.NANOSECONDS);
+                if (groupCommitController != null && syncData) {
+                    groupCommitController.recordCommitLatency(fsyncNanos);
+                }
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
@@ -617,10 +682,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // sizes the group commits when adaptive group commit is enabled, null otherwise
+    private final JournalGroupCommitController groupCommitController;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
     private final int journalAlignmentSize;
+    // should the records of each group commit be compressed together
+    private final boolean journalCompressionEnabled;
     // control PageCache flush interval when syncData disabled to reduce disk io util
     private final long journalPageCacheFlushIntervalMSec;
     // Whether reuse journal files, it will use maxBackupJournal as the journal file pool.
@@ -676,7 +745,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
 
         // Adjust the journal max memory in case there are multiple journals configured.
-        long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length * 1024 * 1024;
+        long journalMaxMemory = conf.getJournalMaxMemorySizeMb()
+                / (conf.getJournalDirNames().length * conf.getJournalStreamsPerDirectory()) * 1024 * 1024;
         this.memoryLimitController = new MemoryLimitController(journalMaxMemory);
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
@@ -693,6 +763,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
+        this.journalCompressionEnabled = conf.getJournalCompressionEnabled()
+                && journalFormatVersionToWrite >= JournalChannel.V7;
+        if (conf.getJournalCompressionEnabled() && !journalCompressionEnabled) {
+            // Rejected by the validation of the configuration, but it is not validated by every caller
+            LOG.warn("Journal compression is disabled: it requires journalFormatVersionToWrite >= {}, but it is {}",
+                    JournalChannel.V7, journalFormatVersionToWrite);
+        }
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
         this.journalReuseFiles = conf.getJournalReuseFiles();
         this.callbackTime = journalStatsLogger.getThreadScopedCounter("callback-time");
@@ -702,10 +779,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        this.groupCommitController = conf.getJournalAdaptiveGroupCommit()
+                ? new JournalGroupCommitController(maxGroupWaitInNanos, bufferedEntriesThreshold, MathUtils.nowInNano())
+                : null;
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
-        if (conf.getJournalDirs().length == 1) {
+        if (conf.getJournalDirs().length == 1 && journalIndex == 0) {
             lastMarkFileName = LAST_MARK_DEFAULT_NAME;
         } else {
             lastMarkFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
@@ -840,7 +920,51 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 }
                 boolean isPaddingRecord = false;
                 if (len < 0) {
-                    if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
+                    if (len == JournalBlockCompressor.COMPRESSED_BLOCK_MASK
+                            && journalVersion >= JournalChannel.V7) {
+                        ByteBuffer blockHeader = ByteBuffer.allocate(JournalBlockCompressor.BLOCK_HEADER_SIZE - 4);
+                        fullRead(recLog, blockHeader);
+                        if (blockHeader.remaining() != 0) {
+                            break;
+                        }
+                        blockHeader.flip();
+                        int uncompressedLen = blockHeader.getInt();
+                        int compressedLen = blockHeader.getInt();
+                        int checksum = blockHeader.getInt();
+                        // Like a plain record, a block that doesn't fit in the file is where the writes left off
+                        if (!JournalBlockCompressor.isValidHeader(uncompressedLen, compressedLen)
+                                || compressedLen > recLog.fc.size() - recLog.fc.position()) {
+                            LOG.warn("Invalid compressed block header at offset {} of journal {}: uncompressed"
+                                    + " length {}, compressed length {}, treating it as the end of the journal",
+                                    offset, journalId, uncompressedLen, compressedLen);
+                            break;
+                        }
+                        recBuff.clear();
+                        if (recBuff.remaining() < compressedLen) {
+                            recBuff = ByteBuffer.allocate(compressedLen);
+                        }
+                        recBuff.limit(compressedLen);
+                        if (fullRead(recLog, recBuff) != compressedLen) {
+                            break;
+                        }
+                        recBuff.flip();
+                        ByteBuffer records;
+                        try {
+                            records = JournalBlockCompressor.decompress(recBuff, uncompressedLen, checksum);
+                        } catch (IOException e) {
+                            // A block torn by a crash is the last one, while a corrupted block in the middle of
+                            // the journal would lose the entries acknowledged after it
+                            if (!isEndOfJournal(recLog)) {
+                                throw new IOException("Corrupted compressed block at offset " + offset
+                                        + " of journal " + journalId, e);
+                            }
+                            LOG.warn("Undecodable compressed block at offset {} of journal {}, treating it as the"
+                                    + " end of the journal: {}", offset, journalId, e.getMessage());
+                            break;
+                        }
+                        scanRecords(journalVersion, offset, records, scanner);
+                        continue;
+                    } else if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
                         lenBuff.clear();
                         fullRead(recLog, lenBuff);
@@ -879,6 +1003,31 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
+    /**
+     * Check whether nothing was written after the current position of the journal, which is then the end of the
+     * journal, possibly followed by the zeros of the preallocated space.
+     */
+    private static boolean isEndOfJournal(JournalChannel recLog) throws IOException {
+        ByteBuffer lenBuff = ByteBuffer.allocate(4);
+        fullRead(recLog, lenBuff);
+        return lenBuff.remaining() != 0 || lenBuff.getInt(0) == 0;
+    }
+
+    /**
+     * Scan the records decompressed from a block, which are all reported at the offset of the block. The records
+     * were validated when decompressing the block.
+     */
+    private static void scanRecords(int journalVersion, long offset, ByteBuffer records, JournalScanner scanner)
+            throws IOException {
+        while (records.hasRemaining()) {
+            int len = records.getInt();
+            ByteBuffer record = records.slice();
+            record.limit(len);
+            records.position(records.position() + len);
+            scanner.process(journalVersion, offset, record);
+        }
+    }
+
     /**
      * record an add entry operation in journal.
      */
@@ -958,6 +1107,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         ByteBuf lenBuff = Unpooled.buffer(4);
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
+        // With compression, the records of a group commit are buffered here and written as a single block
+        JournalBlockCompressor blockCompressor = null;
+        ByteBuf groupRecords = null;
+        if (journalCompressionEnabled) {
+            blockCompressor = new JournalBlockCompressor(allocator);
+            groupRecords = allocator.directBuffer(64 * KB);
+        }
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
@@ -977,6 +1133,17 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             long dequeueStartTime = 0L;
             long lastFlushTimeMs = System.currentTimeMillis();
 
+            // Group commit thresholds, updated after each commit in adaptive mode
+            long groupWaitNanos = maxGroupWaitInNanos;
+            long groupEntriesThreshold = bufferedEntriesThreshold;
+            boolean groupFlushWhenQueueEmpty = flushWhenQueueEmpty;
+            if (groupCommitController != null) {
+                groupCommitController.update();
+                groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                groupEntriesThreshold = groupCommitController.getGroupEntries();
+                groupFlushWhenQueueEmpty = groupWaitNanos <= 0;
+            }
+
             final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
             QueueEntry[] localQueueEntries = new QueueEntry[conf.getJournalQueueSize()];
             int localQueueEntriesIdx = 0;
@@ -1022,9 +1189,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     } else {
                         // There are already some entries pending. We must adjust
                         // the waiting time to the remaining groupWait time
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (groupFlushWhenQueueEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
 
@@ -1033,6 +1200,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     }
 
                     dequeueStartTime = MathUtils.nowInNano();
+                    if (groupCommitController != null && localQueueEntriesLen > 0) {
+                        groupCommitController.recordArrivals(localQueueEntriesLen, dequeueStartTime);
+                    }
 
                     if (localQueueEntriesLen > 0) {
                         qe = localQueueEntries[localQueueEntriesIdx];
@@ -1050,12 +1220,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     boolean shouldFlush = false;
                     // We should issue a forceWrite if any of the three conditions below holds good
                     // 1. If the oldest pending entry has been pending for longer than the max wait time
-                    if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                            .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                    if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                            .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                         groupWhenTimeout = true;
-                    } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                    } else if (groupWaitNanos > 0 && groupWhenTimeout
                         && (qe == null // no entry to group
-                            || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                            || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                         // when group timeout, it would be better to look forward, as there might be lots of
                         // entries already timeout
                         // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1066,13 +1236,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         shouldFlush = true;
                         journalStats.getFlushMaxWaitCounter().inc();
                     } else if (qe != null
-                            && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                            || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                            && ((groupEntriesThreshold > 0 && toFlush.size() > groupEntriesThreshold)
+                            || (bc.position() + (groupRecords != null ? groupRecords.readableBytes() : 0)
+                                > lastFlushPosition + bufferedWritesThreshold))) {
                         // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                         groupWhenTimeout = false;
                         shouldFlush = true;
                         journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                    } else if (qe == null && flushWhenQueueEmpty) {
+                    } else if (qe == null && groupFlushWhenQueueEmpty) {
                         // We should get here only if we flushWhenQueueEmpty is true else we would wait
                         // for timeout that would put is past the maxWait threshold
                         // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1084,6 +1255,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                     // toFlush is non null and not empty so should be safe to access getFirst
                     if (shouldFlush) {
+                        if (groupRecords != null && groupRecords.isReadable()) {
+                            writeGroupRecords(logFile, groupRecords, blockCompressor);
+                        }
                         if (journalFormatVersionToWrite >= JournalChannel.V5) {
                             writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                         }
@@ -1108,8 +1282,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         writeHandlers.clear();
 
                         lastFlushPosition = bc.position();
-                        journalStats.getJournalFlushStats().registerSuccessfulEvent(
-                                journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                        long flushNanos = journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS);
+                        journalStats.getJournalFlushStats().registerSuccessfulEvent(flushNanos, TimeUnit.NANOSECONDS);
 
                         // Trace the lifetime of entries through persistence
                         if (LOG.isDebugEnabled()) {
@@ -1147,6 +1321,22 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         numEntriesToFlush = 0;
 
                         batchSize = 0L;
+
+                        if (groupCommitController != null) {
+                            if (!syncData) {
+                                // Entries are acknowledged once flushed, the flush is the commit
+                                groupCommitController.recordCommitLatency(flushNanos);
+                            }
+                            groupCommitController.update();
+                            groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                            groupEntriesThreshold = groupCommitController.getGroupEntries();
+                            groupFlushWhenQueueEmpty = groupWaitNanos <= 0;
+                            journalStats.getGroupCommitWaitStats()
+                                    .registerSuccessfulEvent(groupWaitNanos, TimeUnit.NANOSECONDS);
+                            journalStats.getGroupCommitEntriesStats()
+                                    .registerSuccessfulValue(groupEntriesThreshold);
+                        }
+
                         // check whether journal file is over file limit
                         if (shouldRolloverJournal) {
                             // if the journal file is rolled over, the journal file will be closed after last
@@ -1182,14 +1372,20 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                     batchSize += (4 + entrySize);
 
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
+                    if (groupRecords != null) {
+                        groupRecords.writeInt(entrySize);
+                        groupRecords.writeBytes(qe.entry, qe.entry.readerIndex(), entrySize);
+                    } else {
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
 
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
 
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
+                        bc.write(lenBuff);
+                        bc.write(qe.entry);
+                        journalStats.getJournalFileWriteBytes().addCount(4 + entrySize);
+                    }
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     ReferenceCountUtil.release(qe.entry);
                 }
@@ -1216,6 +1412,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             // close will flush the file system cache making any previous
             // cached writes durable so this is fine as well.
             IOUtils.close(LOG, bc);
+            ReferenceCountUtil.release(groupRecords);
             if (journalAliveListener != null) {
                 journalAliveListener.onJournalExit();
             }
@@ -1223,6 +1420,21 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         LOG.info("Journal exited loop!");
     }
 
+    private void writeGroupRecords(JournalChannel jc, ByteBuf records, JournalBlockCompressor compressor)
+            throws IOException {
+        ByteBuf block = compressor.compress(records);
+        // Small groups usually don't compress, they're written as they are
+        ByteBuf toWrite = block != null ? block : records;
+        try {
+            jc.preAllocIfNeeded(toWrite.readableBytes());
+            jc.bc.write(toWrite);
+            journalStats.getJournalFileWriteBytes().addCount(toWrite.readableBytes());
+        } finally {
+            ReferenceCountUtil.release(block);
+            records.clear();
+        }
+    }
+
     public BufferedChannelBuilder getBufferedChannelBuilder() {
         return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
     }
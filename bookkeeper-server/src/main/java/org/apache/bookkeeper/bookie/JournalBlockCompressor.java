@@ -0,0 +1,141 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Compresses the records of a journal group commit into a single LZ4 block record.
+ *
+ * <p>A block record, introduced with journal format version {@link JournalChannel#V7}, is laid out as:
+ * <pre>
+ * COMPRESSED_BLOCK_MASK (int) | uncompressed length (int) | compressed length (int) | CRC32C (int)
+ *     | compressed records
+ * </pre>
+ * where the CRC32C covers the compressed records, and the uncompressed records are the usual sequence of length
+ * prefixed entries. The journal only writes a block when it is smaller than the records, so blocks and plain
+ * records can be mixed in a journal file.
+ */
+class JournalBlockCompressor {
+
+    static final int COMPRESSED_BLOCK_MASK = -0x200;
+    // mask, uncompressed length, compressed length and checksum
+    static final int BLOCK_HEADER_SIZE = 16;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    // Larger groups are written as they are, so that reading a block never needs more memory than this
+    static final int MAX_UNCOMPRESSED_LENGTH = 64 * 1024 * 1024;
+    static final int MAX_COMPRESSED_LENGTH = LZ4.fastCompressor().maxCompressedLength(MAX_UNCOMPRESSED_LENGTH);
+
+    private final LZ4Compressor compressor = LZ4.fastCompressor();
+    private final ByteBufAllocator allocator;
+
+    JournalBlockCompressor(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * Compress the readable bytes of the records into a block record.
+     *
+     * @return the block record, or null if it wouldn't be smaller than the records
+     */
+    ByteBuf compress(ByteBuf records) {
+        int length = records.readableBytes();
+        if (length > MAX_UNCOMPRESSED_LENGTH) {
+            return null;
+        }
+        int maxBlockSize = BLOCK_HEADER_SIZE + compressor.maxCompressedLength(length);
+        ByteBuf block = allocator.directBuffer(maxBlockSize, maxBlockSize);
+        try {
+            ByteBuffer src = records.nioBuffer(records.readerIndex(), length);
+            ByteBuffer dest = block.nioBuffer(BLOCK_HEADER_SIZE, maxBlockSize - BLOCK_HEADER_SIZE);
+            int compressedLength = compressor.compress(src, src.position(), length,
+                    dest, dest.position(), dest.remaining());
+            if (BLOCK_HEADER_SIZE + compressedLength >= length) {
+                block.release();
+                return null;
+            }
+            block.writeInt(COMPRESSED_BLOCK_MASK);
+            block.writeInt(length);
+            block.writeInt(compressedLength);
+            block.writeInt(Crc32cIntChecksum.computeChecksum(block, BLOCK_HEADER_SIZE, compressedLength));
+            block.writerIndex(BLOCK_HEADER_SIZE + compressedLength);
+            return block;
+        } catch (LZ4Exception e) {
+            block.release();
+            return null;
+        }
+    }
+
+    /**
+     * Check the lengths read from the header of a block record, before reading the block.
+     */
+    static boolean isValidHeader(int uncompressedLength, int compressedLength) {
+        return uncompressedLength > 0 && uncompressedLength <= MAX_UNCOMPRESSED_LENGTH
+                && compressedLength > 0 && compressedLength <= MAX_COMPRESSED_LENGTH;
+    }
+
+    /**
+     * Decompress the records of a block record, and check that they are a sequence of length prefixed records.
+     *
+     * @param compressed the compressed records, after the header of the block
+     * @param uncompressedLength the uncompressed length from the header of the block
+     * @param checksum the checksum from the header of the block
+     * @throws IOException if the block is corrupted
+     */
+    static ByteBuffer decompress(ByteBuffer compressed, int uncompressedLength, int checksum) throws IOException {
+        if (Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(compressed.duplicate())) != checksum) {
+            throw new IOException("Corrupted compressed journal block: checksum mismatch");
+        }
+        ByteBuffer records = ByteBuffer.allocate(uncompressedLength);
+        try {
+            int read = LZ4.fastDecompressor().decompress(compressed, compressed.position(),
+                    records, 0, uncompressedLength);
+            if (read != compressed.remaining()) {
+                throw new IOException("Corrupted compressed journal block: read " + read + " bytes out of "
+                        + compressed.remaining());
+            }
+        } catch (LZ4Exception e) {
+            throw new IOException("Corrupted compressed journal block", e);
+        }
+
+        int position = 0;
+        while (position < uncompressedLength) {
+            int len = uncompressedLength - position >= Integer.BYTES ? records.getInt(position) : -1;
+            if (len <= 0 || len > uncompressedLength - position - Integer.BYTES) {
+                throw new IOException("Corrupted compressed journal block: invalid record length " + len
+                        + " at position " + position);
+            }
+            position += Integer.BYTES + len;
+        }
+        return records;
+    }
+}
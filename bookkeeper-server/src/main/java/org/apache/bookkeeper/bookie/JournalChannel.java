@@ -23,12 +23,15 @@ package org.apache.bookkeeper.bookie;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import io.netty.buffer.Unpooled;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.util.PageCacheUtil;
 import org.apache.bookkeeper.util.ZeroBuffer;
@@ -48,6 +51,8 @@ class JournalChannel implements Closeable {
     final FileChannel fc;
     final int formatVersion;
     BufferedChannel bc;
+    // Set when the journal is written with direct I/O
+    DirectBufferedChannel directChannel;
     long nextPrealloc = 0;
 
     final byte[] magicWord = "BKLG".getBytes(UTF_8);
@@ -55,6 +60,7 @@ class JournalChannel implements Closeable {
     static final int SECTOR_SIZE = 512;
     private static final int START_OF_FILE = -12345;
     private static final long cacheDropLagBytes = 8 * MB;
+    private static final NativeIO NATIVE_IO = new NativeIOImpl();
 
     // No header
     static final int V1 = 1;
@@ -69,11 +75,13 @@ class JournalChannel implements Closeable {
     static final int V5 = 5;
     // Adding explicit lac entry
     public static final int V6 = 6;
+    // Adding compressed blocks of records
+    public static final int V7 = 7;
 
     static final int HEADER_SIZE = SECTOR_SIZE; // align header to sector size
     static final int VERSION_HEADER_SIZE = 8; // 4byte magic word, 4 byte version
     static final int MIN_COMPAT_JOURNAL_FORMAT_VERSION = V1;
-    static final int CURRENT_JOURNAL_FORMAT_VERSION = V6;
+    static final int CURRENT_JOURNAL_FORMAT_VERSION = V7;
 
     private final long preAllocSize;
     private final int journalAlignSize;
@@ -185,11 +193,11 @@ class JournalChannel implements Closeable {
             }
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(fn, bcBuilder, writeBufferSize);
         } else if (reuseFile) { // Open an existing journal to write, it needs fileChannelProvider support reuse file.
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(fn, bcBuilder, writeBufferSize);
         } else {  // open an existing file to read.
             fc = channel.getFileChannel();
             bc = null; // readonly
@@ -247,7 +255,7 @@ class JournalChannel implements Closeable {
         }
     }
 
-    private void writeHeader(Journal.BufferedChannelBuilder bcBuilder,
+    private void writeHeader(File fn, Journal.BufferedChannelBuilder bcBuilder,
                              int writeBufferSize) throws IOException {
         int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
         ByteBuffer bb = ByteBuffer.allocate(headerSize);
@@ -256,12 +264,49 @@ class JournalChannel implements Closeable {
         bb.put(magicWord);
         bb.putInt(formatVersion);
         bb.clear();
-        fc.write(bb);
 
-        bc = bcBuilder.create(fc, writeBufferSize);
+        if (configuration.getJournalDirectIO()) {
+            directChannel = openDirectChannel(fn, writeBufferSize);
+        }
+        if (directChannel != null) {
+            // The file is only written with direct I/O, starting with the header
+            directChannel.write(Unpooled.wrappedBuffer(bb));
+            directChannel.flush();
+            bc = directChannel;
+        } else {
+            fc.write(bb);
+            bc = bcBuilder.create(fc, writeBufferSize);
+        }
         forceWrite(true);
         nextPrealloc = this.preAllocSize;
-        fc.write(zeros, nextPrealloc - journalAlignSize);
+        preAllocate(0, nextPrealloc);
+    }
+
+    private DirectBufferedChannel openDirectChannel(File fn, int writeBufferSize) {
+        // The journal pads its flushes to the alignment size only from V5
+        if (formatVersion < V5 || journalAlignSize % SECTOR_SIZE != 0
+                || DirectBufferedChannel.MEMORY_ALIGNMENT % journalAlignSize != 0) {
+            LOG.warn("Journal {} can't be written with direct I/O with format version {} and alignment size {},"
+                    + " falling back to buffered writes", fn, formatVersion, journalAlignSize);
+            return null;
+        }
+        try {
+            return DirectBufferedChannel.open(NATIVE_IO, fn, fc, writeBufferSize, journalAlignSize);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            LOG.warn("Unable to open journal {} with direct I/O, falling back to buffered writes: {}",
+                    fn, e.getMessage());
+            return null;
+        }
+    }
+
+    private void preAllocate(long start, long end) throws IOException {
+        // With direct I/O the blocks are allocated upfront, so that syncing the data doesn't update the metadata
+        if (directChannel != null) {
+            directChannel.preallocate(start, end - start);
+            return;
+        }
+        zeros.clear();
+        fc.write(zeros, end - journalAlignSize);
     }
 
     public static void renameJournalFile(File source, File target) throws IOException {
@@ -284,9 +329,8 @@ class JournalChannel implements Closeable {
 
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
+            preAllocate(nextPrealloc, nextPrealloc + preAllocSize);
             nextPrealloc += preAllocSize;
-            zeros.clear();
-            fc.write(zeros, nextPrealloc - journalAlignSize);
         }
     }
 
@@ -0,0 +1,116 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the group commits of the journal from the recent commit latency and arrival rate of the entries.
+ *
+ * <p>An entry added to the journal waits for its group to be committed, and for the commit itself, which is an
+ * fsync when the data is synced. The entries that arrive while a commit is in progress can be grouped in the
+ * next one at no cost, while waiting any longer only adds latency. So the journal waits for the entries which
+ * are expected to arrive during one commit, up to {@code journalMaxGroupWaitMSec}, and doesn't wait at all when
+ * less than one entry is expected in that time: at low load, or with devices that have fast fsyncs.
+ *
+ * <p>The arrival rate is recorded and the group commit is sized by the journal thread, while the commit latency
+ * can be recorded by the force write thread.
+ */
+class JournalGroupCommitController {
+
+    // Weight of the last sample in the moving averages
+    private static final double EWMA_ALPHA = 0.2;
+    // Min duration of the windows over which the arrival rate is sampled
+    private static final long MIN_RATE_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long maxGroupWaitNanos;
+    private final long maxGroupEntries;
+
+    private volatile double commitLatencyNanos = -1;
+
+    private double arrivalsPerNano = 0;
+    private long rateWindowStartNanos;
+    private long rateWindowArrivals = 0;
+
+    private long groupWaitNanos = 0;
+    private long groupEntries = 0;
+
+    /**
+     * @param maxGroupWaitNanos max time an entry waits for its group to be committed
+     * @param maxGroupEntries max number of entries in a group, or 0 for no limit
+     */
+    JournalGroupCommitController(long maxGroupWaitNanos, long maxGroupEntries, long nowNanos) {
+        this.maxGroupWaitNanos = Math.max(0, maxGroupWaitNanos);
+        this.maxGroupEntries = maxGroupEntries > 0 ? maxGroupEntries : Long.MAX_VALUE;
+        this.rateWindowStartNanos = nowNanos;
+    }
+
+    void recordCommitLatency(long latencyNanos) {
+        double current = commitLatencyNanos;
+        commitLatencyNanos = current < 0 ? latencyNanos : ewma(current, latencyNanos);
+    }
+
+    void recordArrivals(int count, long nowNanos) {
+        rateWindowArrivals += count;
+        long elapsedNanos = nowNanos - rateWindowStartNanos;
+        if (elapsedNanos >= MIN_RATE_WINDOW_NANOS) {
+            arrivalsPerNano = ewma(arrivalsPerNano, (double) rateWindowArrivals / elapsedNanos);
+            rateWindowStartNanos = nowNanos;
+            rateWindowArrivals = 0;
+        }
+    }
+
+    /**
+     * Size the next group commit from the current estimates.
+     */
+    void update() {
+        double latencyNanos = commitLatencyNanos;
+        double expectedEntries = latencyNanos > 0 ? arrivalsPerNano * latencyNanos : 0;
+        if (expectedEntries < 1) {
+            // Nothing to group with: commit as soon as the queue is empty
+            groupWaitNanos = 0;
+            groupEntries = 1;
+        } else {
+            groupWaitNanos = Math.min(maxGroupWaitNanos, (long) latencyNanos);
+            groupEntries = Math.min(maxGroupEntries, (long) Math.ceil(expectedEntries));
+        }
+    }
+
+    /**
+     * @return the max time the entries wait for their group to be committed, 0 to commit as soon as the journal
+     *         queue is empty
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    /**
+     * @return the number of entries after which a group is committed without waiting any longer
+     */
+    long getGroupEntries() {
+        return groupEntries;
+    }
+
+    private static double ewma(double average, double sample) {
+        return EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * average;
+    }
+}
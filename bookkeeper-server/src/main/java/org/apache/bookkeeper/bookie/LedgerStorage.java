@@ -24,6 +24,8 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCounted;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -144,6 +146,39 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Read an entry from storage. Entries bigger than the given size can be returned as a {@link FileRegion},
+     * to be transferred to the network without copying them in user space.
+     *
+     * @return either a {@link ByteBuf} or a {@link FileRegion} with the entry
+     */
+    default ReferenceCounted getEntryOrRegion(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
+        return getEntry(ledgerId, entryId);
+    }
+
+    /**
+     * Read several entries of a ledger from storage. Implementations can read the entries that are not cached
+     * with a few coalesced reads.
+     *
+     * @return the entries, in the same order as the entry ids. The list stops before the first entry that
+     *         cannot be read, which is only reported by an exception if it's the first one.
+     */
+    default List<ByteBuf> getEntries(long ledgerId, long[] entryIds) throws IOException, BookieException {
+        List<ByteBuf> entries = new ArrayList<>(entryIds.length);
+        for (long entryId : entryIds) {
+            try {
+                entries.add(getEntry(ledgerId, entryId));
+            } catch (IOException | BookieException e) {
+                if (entries.isEmpty()) {
+                    throw e;
+                }
+                break;
+            }
+        }
+        return entries;
+    }
+
     /**
      * Get last add confirmed.
      *
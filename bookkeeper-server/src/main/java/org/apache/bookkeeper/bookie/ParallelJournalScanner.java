@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+
+/**
+ * A {@link JournalScanner} that processes the journal entries on an {@link OrderedExecutor}, keyed by ledger.
+ *
+ * <p>The journal is read by a single thread, while the entries of different ledgers are applied to the ledger
+ * storage in parallel. The entries of a ledger, including its master key and fencing entries, are all processed
+ * by the same thread, in the order of the journal. The entries read and not processed yet are bounded in memory.
+ *
+ * <p>{@link #flush()} must be called before moving the last log mark past the scanned entries.
+ */
+class ParallelJournalScanner implements JournalScanner, Closeable {
+
+    private final JournalScanner scanner;
+    private final OrderedExecutor executor;
+    private final MemoryLimitController memoryLimitController;
+
+    private final Object pendingLock = new Object();
+    private long pendingEntries = 0;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    ParallelJournalScanner(JournalScanner scanner, int numThreads, long maxPendingBytes) {
+        this.scanner = scanner;
+        this.executor = OrderedExecutor.newBuilder()
+                .name("BookieJournalReplay")
+                .numThreads(numThreads)
+                .build();
+        this.memoryLimitController = new MemoryLimitController(maxPendingBytes);
+    }
+
+    @Override
+    public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+        checkFailure();
+
+        // The journal reuses the buffer for the next entry
+        int size = entry.remaining();
+        ByteBuffer copy = ByteBuffer.allocate(size);
+        copy.put(entry.duplicate());
+        copy.flip();
+        long ledgerId = copy.getLong(0);
+
+        try {
+            memoryLimitController.reserveMemory(size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the journal", e);
+        }
+        synchronized (pendingLock) {
+            pendingEntries++;
+        }
+
+        executor.executeOrdered(ledgerId, () -> {
+            try {
+                if (failure.get() == null) {
+                    scanner.process(journalVersion, offset, copy);
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, new IOException(e));
+            } finally {
+                memoryLimitController.releaseMemory(size);
+                synchronized (pendingLock) {
+                    if (--pendingEntries == 0) {
+                        pendingLock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for all the entries scanned so far to be processed.
+     *
+     * @throws IOException if any entry failed to be processed
+     */
+    void flush() throws IOException {
+        synchronized (pendingLock) {
+            while (pendingEntries > 0) {
+                try {
+                    pendingLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while replaying the journal", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw new IOException("Failed to replay an entry of the journal", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -81,7 +81,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
     private final long gcOverReplicatedLedgerIntervalMillis;
     private long lastOverReplicatedLedgerGcTimeMillis;
     private final boolean verifyMetadataOnGc;
-    private int activeLedgerCounter;
+    int activeLedgerCounter;
     private StatsLogger statsLogger;
     private final int maxConcurrentRequests;
 
@@ -45,6 +45,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
 
     final EntryLogger entryLogger;
     final CompactableLedgerStorage ledgerStorage;
+    final CompactionIndexUpdater indexUpdater;
     final List<EntryLocation> offsets = new ArrayList<>();
 
     // compaction log file suffix
@@ -57,9 +58,19 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
+        this(conf, entryLogger, ledgerStorage, logRemover, new CompactionIndexUpdater(entryLogger, ledgerStorage));
+    }
+
+    TransactionalEntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            CompactionIndexUpdater indexUpdater) {
         super(conf, logRemover);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
+        this.indexUpdater = indexUpdater;
     }
 
     /**
@@ -283,9 +294,8 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
                 recoverEntryLocations(compactionLog);
             }
             if (!offsets.isEmpty()) {
-                // update entry locations and flush index
-                ledgerStorage.updateEntriesLocations(offsets);
-                ledgerStorage.flushEntriesLocationsIndex();
+                // update entry locations and flush index, the compaction log is already flushed
+                indexUpdater.update(offsets, false);
             }
         }
 
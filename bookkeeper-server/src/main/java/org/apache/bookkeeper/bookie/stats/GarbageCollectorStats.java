@@ -24,11 +24,15 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ACTIVE_ENTRY_LO
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ACTIVE_LEDGER_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COMPACTION_ENTRY_LOG_RUNTIME;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COMPACTION_INDEX_UPDATE_BATCH_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COMPACTION_INDEX_UPDATE_RUNTIME;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DELETED_LEDGER_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.MAJOR_COMPACTION_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.MINOR_COMPACTION_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RECLAIMED_COMPACTION_SPACE_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RECLAIMED_DELETION_SPACE_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REWRITTEN_COMPACTION_SPACE_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.THREAD_RUNTIME;
 
 import java.util.function.Supplier;
@@ -71,6 +75,26 @@ public class GarbageCollectorStats {
         help = "Number of disk space bytes reclaimed via compacting entry log files"
     )
     private final Counter reclaimedSpaceViaCompaction;
+    @StatsDoc(
+        name = REWRITTEN_COMPACTION_SPACE_BYTES,
+        help = "Number of bytes rewritten by compacting entry log files"
+    )
+    private final Counter rewrittenSpaceViaCompaction;
+    @StatsDoc(
+        name = COMPACTION_ENTRY_LOG_RUNTIME,
+        help = "Operation stats of compacting an entry log"
+    )
+    private final OpStatsLogger compactEntryLogRuntime;
+    @StatsDoc(
+        name = COMPACTION_INDEX_UPDATE_RUNTIME,
+        help = "Operation stats of updating and flushing the index with the locations of compacted entries"
+    )
+    private final OpStatsLogger compactionIndexUpdateRuntime;
+    @StatsDoc(
+        name = COMPACTION_INDEX_UPDATE_BATCH_SIZE,
+        help = "The distribution of number of entry locations updated by an index update of compaction"
+    )
+    private final OpStatsLogger compactionIndexUpdateBatchSize;
     @StatsDoc(
         name = DELETED_LEDGER_COUNT,
         help = "Number of ledgers deleted by garbage collection"
@@ -106,6 +130,10 @@ public class GarbageCollectorStats {
         this.minorCompactionCounter = statsLogger.getCounter(MINOR_COMPACTION_COUNT);
         this.majorCompactionCounter = statsLogger.getCounter(MAJOR_COMPACTION_COUNT);
         this.reclaimedSpaceViaCompaction = statsLogger.getCounter(RECLAIMED_COMPACTION_SPACE_BYTES);
+        this.rewrittenSpaceViaCompaction = statsLogger.getCounter(REWRITTEN_COMPACTION_SPACE_BYTES);
+        this.compactEntryLogRuntime = statsLogger.getOpStatsLogger(COMPACTION_ENTRY_LOG_RUNTIME);
+        this.compactionIndexUpdateRuntime = statsLogger.getOpStatsLogger(COMPACTION_INDEX_UPDATE_RUNTIME);
+        this.compactionIndexUpdateBatchSize = statsLogger.getOpStatsLogger(COMPACTION_INDEX_UPDATE_BATCH_SIZE);
         this.reclaimedSpaceViaDeletes = statsLogger.getCounter(RECLAIMED_DELETION_SPACE_BYTES);
         this.gcThreadRuntime = statsLogger.getOpStatsLogger(THREAD_RUNTIME);
         this.deletedLedgerCounter = statsLogger.getCounter(DELETED_LEDGER_COUNT);
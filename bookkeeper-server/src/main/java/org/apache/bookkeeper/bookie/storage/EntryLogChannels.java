@@ -0,0 +1,164 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only file channels of the entry logs, opened once per entry log and shared by all the readers.
+ *
+ * <p>The channels are reference counted: a channel is referenced by this cache until its entry log is removed,
+ * and by each file region transferring an entry from it, so that the regions being sent are not affected when
+ * the entry log is removed in the meantime.
+ */
+public class EntryLogChannels {
+
+    /**
+     * Locates the file of an entry log.
+     */
+    public interface LogFileLocator {
+        File find(long logId) throws IOException;
+    }
+
+    private final LogFileLocator locator;
+    private final ConcurrentMap<Long, SharedChannel> channels = new ConcurrentHashMap<>();
+
+    public EntryLogChannels(LogFileLocator locator) {
+        this.locator = locator;
+    }
+
+    /**
+     * Get the channel of an entry log, opening it if needed. The channel is closed once the entry log is
+     * removed, and must not be used after that.
+     */
+    public FileChannel get(long logId) throws IOException {
+        return getShared(logId).channel;
+    }
+
+    private SharedChannel getShared(long logId) throws IOException {
+        SharedChannel shared = channels.get(logId);
+        if (shared != null) {
+            return shared;
+        }
+
+        SharedChannel newShared = new SharedChannel(
+                FileChannel.open(locator.find(logId).toPath(), StandardOpenOption.READ));
+        shared = channels.putIfAbsent(logId, newShared);
+        if (shared != null) {
+            newShared.release();
+            return shared;
+        }
+        return newShared;
+    }
+
+    /**
+     * Create a file region over a range of an entry log, which keeps the channel open until the region is
+     * released.
+     *
+     * @return the region, or null if the range is beyond the end of the file, eg: when it's still in the write
+     *         buffer of the entry log
+     */
+    public FileRegion newRegion(long logId, long position, long count) throws IOException {
+        while (true) {
+            SharedChannel shared = getShared(logId);
+            try {
+                shared.retain();
+            } catch (IllegalReferenceCountException e) {
+                // The entry log was removed in the meantime
+                channels.remove(logId, shared);
+                continue;
+            }
+
+            if (shared.channel.size() < position + count) {
+                shared.release();
+                return null;
+            }
+            return new SharedFileRegion(shared, position, count);
+        }
+    }
+
+    /**
+     * Release the channel of a removed entry log. It gets closed once the regions using it are released.
+     */
+    public void remove(long logId) {
+        SharedChannel shared = channels.remove(logId);
+        if (shared != null) {
+            shared.release();
+        }
+    }
+
+    public void removeAll() {
+        for (Long logId : channels.keySet()) {
+            remove(logId);
+        }
+    }
+
+    private static final class SharedChannel extends AbstractReferenceCounted {
+        private final FileChannel channel;
+
+        SharedChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close entry log channel", e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    private static final class SharedFileRegion extends DefaultFileRegion {
+        private final SharedChannel shared;
+
+        SharedFileRegion(SharedChannel shared, long position, long count) {
+            super(shared.channel, position, count);
+            this.shared = shared;
+        }
+
+        @Override
+        protected void deallocate() {
+            // The channel is shared, only release the reference of the region
+            shared.release();
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryLogChannels.class);
+}
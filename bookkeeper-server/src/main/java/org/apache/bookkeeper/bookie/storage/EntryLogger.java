@@ -21,6 +21,8 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCounted;
 import java.io.IOException;
 import java.util.Collection;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
@@ -67,6 +69,48 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read an entry from an entrylog location, and verify that is matches the
+     * expected ledger and entry ID. Entries bigger than the given size can be
+     * returned as a {@link FileRegion} of the entrylog, that can be transferred
+     * to the network without being copied in user space.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location from which to read the entry
+     * @param minRegionSize the min size of the entries to return as a region
+     * @return either a {@link ByteBuf} or a {@link FileRegion} with the entry
+     */
+    default ReferenceCounted readEntryOrRegion(long ledgerId, long entryId, long entryLocation, int minRegionSize)
+            throws IOException, NoEntryException {
+        return readEntry(ledgerId, entryId, entryLocation);
+    }
+
+    /**
+     * Read several entries of a ledger, and verify that they match the expected
+     * ledger and entry IDs. Implementations can sort the locations and coalesce
+     * the reads of the entries that are close to each other in the same entrylog,
+     * see {@link EntryReadPlanner}.
+     * @param ledgerId the ledgerID to match
+     * @param entryIds the entryIDs to match
+     * @param entryLocations the locations from which to read the entries
+     * @return the entries, in the same order as the entryIDs
+     * @throws IOException if any of the entries cannot be read, in which case
+     *                     none of them is returned
+     */
+    default ByteBuf[] readEntries(long ledgerId, long[] entryIds, long[] entryLocations)
+            throws IOException, NoEntryException {
+        ByteBuf[] entries = new ByteBuf[entryIds.length];
+        try {
+            for (int i = 0; i < entryIds.length; i++) {
+                entries[i] = readEntry(ledgerId, entryIds[i], entryLocations[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            EntryReadPlanner.releaseAll(entries);
+            throw e;
+        }
+        return entries;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -0,0 +1,276 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans the reads of several entries from the entry logs.
+ *
+ * <p>The locations of the entries are sorted by entry log and offset, and the entries that are close to each
+ * other in the same entry log are grouped in runs. Each run is read with a single large read, from the size
+ * header of its first entry up to the size header of its last entry, and the entries are sliced out of it.
+ * The last entry of a run, whose size is only known after the read, is read with a regular entry read which is
+ * mostly served by the read buffer of the entry logger. The ranges of the runs of the same entry log are read
+ * together, with a single syscall when the entry logger supports it.
+ *
+ * <p>This turns the reads of the entries of a ledger, which are usually interleaved with the entries of other
+ * ledgers in the entry logs, into a few sequential reads.
+ */
+public class EntryReadPlanner {
+
+    /**
+     * Default max number of bytes read with a single read.
+     */
+    public static final int DEFAULT_MAX_READ_SIZE = 1024 * 1024;
+
+    /**
+     * Default max distance between the locations of two entries read with a single read. This bounds the
+     * amount of data of other ledgers which is read and discarded.
+     */
+    public static final int DEFAULT_MAX_GAP = 64 * 1024;
+
+    // ledgerId (8) + entryId (8)
+    private static final int MIN_ENTRY_SIZE = 16;
+
+    /**
+     * Reads a range of bytes of an entry log.
+     */
+    @FunctionalInterface
+    public interface LogRangeReader {
+        /**
+         * @return a buffer with exactly {@code size} readable bytes, owned by the caller
+         */
+        ByteBuf readRange(long logId, long offset, int size) throws IOException;
+
+        /**
+         * Read several ranges of the same entry log. Entry loggers that can submit several reads at once
+         * override this to read all the ranges with a single syscall.
+         *
+         * @return buffers with exactly {@code sizes[i]} readable bytes, owned by the caller
+         */
+        default ByteBuf[] readRanges(long logId, long[] offsets, int[] sizes) throws IOException {
+            ByteBuf[] ranges = new ByteBuf[offsets.length];
+            try {
+                for (int i = 0; i < offsets.length; i++) {
+                    ranges[i] = readRange(logId, offsets[i], sizes[i]);
+                }
+            } catch (IOException | RuntimeException e) {
+                releaseAll(ranges);
+                throw e;
+            }
+            return ranges;
+        }
+    }
+
+    /**
+     * A group of entries of the same entry log, read with a single read.
+     */
+    static class Run {
+        final long logId;
+        // Indexes of the entries in the request, sorted by location
+        final int[] indexes;
+
+        Run(long logId, int[] indexes) {
+            this.logId = logId;
+            this.indexes = indexes;
+        }
+    }
+
+    private final int maxReadSize;
+    private final int maxGap;
+
+    public EntryReadPlanner() {
+        this(DEFAULT_MAX_READ_SIZE, DEFAULT_MAX_GAP);
+    }
+
+    public EntryReadPlanner(int maxReadSize, int maxGap) {
+        this.maxReadSize = maxReadSize;
+        this.maxGap = maxGap;
+    }
+
+    List<Run> plan(long[] locations) {
+        Integer[] sorted = new Integer[locations.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparingLong(i -> locations[i]));
+
+        List<Run> runs = new ArrayList<>();
+        int[] current = new int[locations.length];
+        int currentSize = 0;
+        for (int index : sorted) {
+            if (currentSize > 0) {
+                long first = locations[current[0]];
+                long previous = locations[current[currentSize - 1]];
+                long location = locations[index];
+                if (logId(location) != logId(first)
+                        || location - previous > maxGap
+                        || location - first > maxReadSize) {
+                    runs.add(new Run(logId(first), Arrays.copyOf(current, currentSize)));
+                    currentSize = 0;
+                }
+            }
+            current[currentSize++] = index;
+        }
+        if (currentSize > 0) {
+            runs.add(new Run(logId(locations[current[0]]), Arrays.copyOf(current, currentSize)));
+        }
+        return runs;
+    }
+
+    /**
+     * Read several entries of a ledger, verifying that they match the expected ledger and entry IDs.
+     *
+     * <p>The entries can share the memory of the buffer of the read they were sliced from, so they should not
+     * be retained for long.
+     *
+     * @return the entries, in the same order as the entry IDs
+     * @throws IOException if any of the entries cannot be read, in which case none of them is returned
+     */
+    public ByteBuf[] readEntries(EntryLogger entryLogger, LogRangeReader rangeReader,
+                                 long ledgerId, long[] entryIds, long[] entryLocations) throws IOException {
+        ByteBuf[] entries = new ByteBuf[entryIds.length];
+        List<Run> runs = plan(entryLocations);
+        ByteBuf[] ranges = new ByteBuf[runs.size()];
+        try {
+            readRanges(rangeReader, runs, entryLocations, ranges);
+            for (int i = 0; i < runs.size(); i++) {
+                readRun(entryLogger, runs.get(i), ranges[i], ledgerId, entryIds, entryLocations, entries);
+            }
+        } catch (IOException | RuntimeException e) {
+            releaseAll(entries);
+            throw e;
+        } finally {
+            releaseAll(ranges);
+        }
+        return entries;
+    }
+
+    /**
+     * Read the ranges of the runs of several entries, from the size header of the first entry up to the size
+     * header of the last one. The ranges of each entry log are read together.
+     */
+    private static void readRanges(LogRangeReader rangeReader, List<Run> runs, long[] entryLocations,
+                                   ByteBuf[] ranges) throws IOException {
+        Map<Long, List<Integer>> runsByLog = new LinkedHashMap<>();
+        for (int i = 0; i < runs.size(); i++) {
+            int[] indexes = runs.get(i).indexes;
+            if (pos(entryLocations[indexes[0]]) != pos(entryLocations[indexes[indexes.length - 1]])) {
+                runsByLog.computeIfAbsent(runs.get(i).logId, logId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (Map.Entry<Long, List<Integer>> logRuns : runsByLog.entrySet()) {
+            List<Integer> runIndexes = logRuns.getValue();
+            long[] offsets = new long[runIndexes.size()];
+            int[] sizes = new int[runIndexes.size()];
+            for (int i = 0; i < runIndexes.size(); i++) {
+                int[] indexes = runs.get(runIndexes.get(i)).indexes;
+                long firstPos = pos(entryLocations[indexes[0]]);
+                offsets[i] = firstPos - Integer.BYTES;
+                sizes[i] = (int) (pos(entryLocations[indexes[indexes.length - 1]]) - firstPos);
+            }
+
+            ByteBuf[] logRanges = rangeReader.readRanges(logRuns.getKey(), offsets, sizes);
+            for (int i = 0; i < runIndexes.size(); i++) {
+                ranges[runIndexes.get(i)] = logRanges[i];
+            }
+        }
+    }
+
+    private static void readRun(EntryLogger entryLogger, Run run, ByteBuf range,
+                                long ledgerId, long[] entryIds, long[] entryLocations, ByteBuf[] entries)
+            throws IOException {
+        int[] indexes = run.indexes;
+        int lastIndex = indexes[indexes.length - 1];
+        long firstPos = pos(entryLocations[indexes[0]]);
+        long lastPos = pos(entryLocations[lastIndex]);
+
+        ByteBuf lastEntry = entryLogger.readEntry(ledgerId, entryIds[lastIndex], entryLocations[lastIndex]);
+        entries[lastIndex] = lastEntry;
+        if (firstPos == lastPos) {
+            // Single entry, possibly requested several times
+            for (int i = 0; i < indexes.length - 1; i++) {
+                entries[indexes[i]] = lastEntry.retainedSlice();
+            }
+            return;
+        }
+
+        // The range goes from the size header of the first entry up to the size header of the last one
+        long rangeStart = firstPos - Integer.BYTES;
+        int rangeSize = (int) (lastPos - firstPos);
+        for (int i = 0; i < indexes.length - 1; i++) {
+            int index = indexes[i];
+            long pos = pos(entryLocations[index]);
+            if (pos == lastPos) {
+                entries[index] = lastEntry.retainedSlice();
+                continue;
+            }
+
+            int offsetInRange = (int) (pos - rangeStart);
+            int entrySize = range.getInt(offsetInRange - Integer.BYTES);
+            if (entrySize < MIN_ENTRY_SIZE || offsetInRange + entrySize > rangeSize) {
+                throw new IOException("Invalid entry size " + entrySize + " for " + ledgerId + "@"
+                        + entryIds[index] + " at location " + pos + " in entry log " + run.logId);
+            }
+
+            ByteBuf entry = range.retainedSlice(range.readerIndex() + offsetInRange, entrySize);
+            long thisLedgerId = entry.getLong(0);
+            long thisEntryId = entry.getLong(8);
+            if (thisLedgerId != ledgerId || thisEntryId != entryIds[index]) {
+                ReferenceCountUtil.release(entry);
+                throw new IOException("Bad entry read from entry log " + run.logId + " at location " + pos
+                        + ": expected " + ledgerId + "@" + entryIds[index]
+                        + ", found " + thisLedgerId + "@" + thisEntryId);
+            }
+            entries[index] = entry;
+        }
+    }
+
+    /**
+     * Release all the non-null buffers of the array.
+     */
+    public static void releaseAll(ByteBuf[] entries) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] != null) {
+                ReferenceCountUtil.release(entries[i]);
+                entries[i] = null;
+            }
+        }
+    }
+
+    private static long logId(long location) {
+        return location >> 32;
+    }
+
+    private static long pos(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+}
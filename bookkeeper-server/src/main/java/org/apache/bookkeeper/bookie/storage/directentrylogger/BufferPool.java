@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.bookie.storage.directentrylogger;
 
+import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
@@ -53,6 +54,11 @@ public class BufferPool implements AutoCloseable {
         }
     }
 
+    @VisibleForTesting
+    int available() {
+        return pool.size();
+    }
+
     @Override
     public void close() {
         while (true) {
@@ -30,7 +30,9 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
@@ -52,10 +54,12 @@ import org.apache.bookkeeper.bookie.AbstractLogCompactor;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
 import org.apache.bookkeeper.bookie.EntryLogMetadata;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogChannels;
 import org.apache.bookkeeper.bookie.storage.EntryLogIds;
 import org.apache.bookkeeper.bookie.storage.EntryLogIdsImpl;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.EntryReadPlanner;
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
 import org.apache.bookkeeper.slogger.Slogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -81,6 +85,11 @@ public class DirectEntryLogger implements EntryLogger {
 
     private List<Future<?>> pendingFlushes;
     private final NativeIO nativeIO;
+    private final boolean useIoUring;
+    // Shared by all the writers, null when the buffers are written with pwrite
+    private final IoUringRings rings;
+    private final EntryReadPlanner readPlanner = new EntryReadPlanner();
+    private final EntryLogChannels regionChannels;
     private final List<Cache<?, ?>> allCaches = new CopyOnWriteArrayList<>();
     private final ThreadLocal<Cache<Integer, LogReader>> caches;
 
@@ -101,11 +110,34 @@ public class DirectEntryLogger implements EntryLogger {
                              int maxFdCacheTimeSeconds,
                              Slogger slogParent,
                              StatsLogger stats) throws IOException {
+        this(ledgerDir, ids, nativeIO, allocator, writeExecutor, flushExecutor, maxFileSize, maxSaneEntrySize,
+             totalWriteBufferSize, totalReadBufferSize, readBufferSize, numReadThreads, maxFdCacheTimeSeconds,
+             false, slogParent, stats);
+    }
+
+    public DirectEntryLogger(File ledgerDir,
+                             EntryLogIds ids,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             ExecutorService writeExecutor,
+                             ExecutorService flushExecutor,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             int numReadThreads,
+                             int maxFdCacheTimeSeconds,
+                             boolean useIoUring,
+                             Slogger slogParent,
+                             StatsLogger stats) throws IOException {
         this.ledgerDir = ledgerDir;
+        this.regionChannels = new EntryLogChannels(logId -> logFile(ledgerDir, (int) logId));
         this.flushExecutor = flushExecutor;
         this.writeExecutor = writeExecutor;
         this.pendingFlushes = new ArrayList<>();
         this.nativeIO = nativeIO;
+        this.useIoUring = useIoUring;
         this.unflushedLogs = ConcurrentHashMap.newKeySet();
 
         this.maxFileSize = maxFileSize;
@@ -120,6 +152,7 @@ public class DirectEntryLogger implements EntryLogger {
 
         int singleWriteBufferSize = Buffer.nextAlignment((int) (totalWriteBufferSize / NUMBER_OF_WRITE_BUFFERS));
         this.writeBuffers = new BufferPool(nativeIO, singleWriteBufferSize, NUMBER_OF_WRITE_BUFFERS);
+        this.rings = useIoUring ? IoUringRings.create(nativeIO, slog) : null;
 
         // The total read buffer memory needs to get split across all the read threads, since the caches
         // are thread-specific and we want to ensure we don't pass the total memory limit.
@@ -150,6 +183,7 @@ public class DirectEntryLogger implements EntryLogger {
             .kv("perThreadBufferSize", perThreadBufferSize)
             .kv("maxCachedReadersPerThread", maxCachedReadersPerThread)
             .kv("maxCachedReaders", maxCachedReaders)
+            .kv("useIoUring", useIoUring)
             .info(Events.ENTRYLOGGER_CREATED);
 
         this.caches = ThreadLocal.withInitial(() -> {
@@ -211,6 +245,62 @@ public class DirectEntryLogger implements EntryLogger {
         return internalReadEntry(ledgerId, entryId, entryLocation, true);
     }
 
+    @Override
+    public ReferenceCounted readEntryOrRegion(long ledgerId, long entryId, long entryLocation, int minRegionSize)
+            throws IOException, NoEntryException {
+        int logId = (int) (entryLocation >> 32);
+        int pos = (int) (entryLocation & 0xFFFFFFFF);
+
+        long start = System.nanoTime();
+        LogReader reader = getReader(logId);
+        try {
+            int entrySize = reader.readIntAt(pos - Integer.BYTES);
+            if (entrySize < minRegionSize || entrySize > maxSaneEntrySize) {
+                // Small entry, or an invalid size which is going to be reported by the regular read
+                return internalReadEntry(ledgerId, entryId, entryLocation, true);
+            }
+
+            long thisLedgerId = reader.readLongAt(pos);
+            long thisEntryId = reader.readLongAt(pos + Long.BYTES);
+            if (thisLedgerId != ledgerId || thisEntryId != entryId) {
+                throw new IOException(
+                        exMsg("Bad location").kv("location", entryLocation)
+                        .kv("expectedLedger", ledgerId).kv("expectedEntry", entryId)
+                        .kv("foundLedger", thisLedgerId).kv("foundEntry", thisEntryId)
+                        .toString());
+            }
+
+            // The file is read through the page cache, which is kept coherent with the direct I/O writes
+            FileRegion region = regionChannels.newRegion(logId, pos, entrySize);
+            if (region == null) {
+                return internalReadEntry(ledgerId, entryId, entryLocation, true);
+            }
+            stats.getReadEntryStats().registerSuccessfulEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return region;
+        } catch (EOFException eof) {
+            stats.getReadEntryStats().registerFailedEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw new NoEntryException(
+                    exMsg("Entry location doesn't exist").kv("location", entryLocation).toString(),
+                    ledgerId, entryId);
+        }
+    }
+
+    @Override
+    public ByteBuf[] readEntries(long ledgerId, long[] entryIds, long[] entryLocations)
+            throws IOException, NoEntryException {
+        return readPlanner.readEntries(this, new EntryReadPlanner.LogRangeReader() {
+            @Override
+            public ByteBuf readRange(long logId, long offset, int size) throws IOException {
+                return getReader((int) logId).readBufferAt(offset, size);
+            }
+
+            @Override
+            public ByteBuf[] readRanges(long logId, long[] offsets, int[] sizes) throws IOException {
+                return getReader((int) logId).readBuffersAt(offsets, sizes);
+            }
+        }, ledgerId, entryIds, entryLocations);
+    }
+
     private LogReader getReader(int logId) throws IOException {
         Cache<Integer, LogReader> cache = caches.get();
         try {
@@ -360,7 +450,11 @@ public class DirectEntryLogger implements EntryLogger {
         for (Cache<?, ?> c : allCaches) {
             c.invalidateAll();
         }
+        regionChannels.removeAll();
 
+        if (rings != null) {
+            rings.close();
+        }
         writeBuffers.close();
     }
 
@@ -376,6 +470,7 @@ public class DirectEntryLogger implements EntryLogger {
     public boolean removeEntryLog(long entryLogId) {
         checkArgument(entryLogId < Integer.MAX_VALUE, "Entry log id must be an int [%d]", entryLogId);
         File file = logFile(ledgerDir, (int) entryLogId);
+        regionChannels.remove(entryLogId);
         boolean result = file.delete();
         slog.kv("file", file).kv("logId", entryLogId).kv("result", result).info(Events.LOG_DELETED);
         return result;
@@ -442,14 +537,14 @@ public class DirectEntryLogger implements EntryLogger {
     @VisibleForTesting
     LogReader newDirectReader(int logId) throws IOException {
         return new DirectReader(logId, logFilename(ledgerDir, logId),
-                                allocator, nativeIO, readBufferSize,
+                                allocator, nativeIO, rings, readBufferSize,
                                 maxSaneEntrySize, stats.getReadBlockStats());
     }
 
     private LogWriter newDirectWriter(int newId) throws IOException {
         unflushedLogs.add(newId);
         LogWriter writer = new DirectWriter(newId, logFilename(ledgerDir, newId), maxFileSize,
-                                            writeExecutor, writeBuffers, nativeIO, slog);
+                                            writeExecutor, writeBuffers, nativeIO, rings, slog);
         ByteBuf buf = allocator.buffer(Buffer.ALIGNMENT);
         try {
             Header.writeEmptyHeader(buf);
@@ -34,8 +34,13 @@ import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 
 class DirectReader implements LogReader {
+    // Max number of bytes read with a single io_uring submission, larger batches are read range by range
+    private static final int MAX_BATCH_READ_SIZE = 16 * 1024 * 1024;
+
     private final ByteBufAllocator allocator;
     private final NativeIO nativeIO;
+    // io_uring instances used to read several ranges in one batch, null if they are read one by one
+    private final IoUringRings rings;
     private final Buffer nativeBuffer;
     private final String filename;
     private final int logId;
@@ -50,7 +55,14 @@ class DirectReader implements LogReader {
     DirectReader(int logId, String filename, ByteBufAllocator allocator,
                  NativeIO nativeIO, int bufferSize,
                  int maxSaneEntrySize, OpStatsLogger readBlockStats) throws IOException {
+        this(logId, filename, allocator, nativeIO, null, bufferSize, maxSaneEntrySize, readBlockStats);
+    }
+
+    DirectReader(int logId, String filename, ByteBufAllocator allocator,
+                 NativeIO nativeIO, IoUringRings rings, int bufferSize,
+                 int maxSaneEntrySize, OpStatsLogger readBlockStats) throws IOException {
         this.nativeIO = nativeIO;
+        this.rings = rings;
         this.allocator = allocator;
         this.logId = logId;
         this.filename = filename;
@@ -110,6 +122,96 @@ class DirectReader implements LogReader {
         }
     }
 
+    @Override
+    public ByteBuf[] readBuffersAt(long[] offsets, int[] sizes) throws IOException, EOFException {
+        if (rings == null || offsets.length < 2) {
+            return LogReader.super.readBuffersAt(offsets, sizes);
+        }
+
+        ByteBuf[] buffers = new ByteBuf[offsets.length];
+        try {
+            readBatch(offsets, sizes, buffers);
+            // The ranges the batch could not read completely, after a short read or a failure, are read again
+            // through the block buffer, which reports the errors
+            for (int i = 0; i < offsets.length; i++) {
+                if (buffers[i] == null) {
+                    buffers[i] = readBufferAt(offsets[i], sizes[i]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ByteBuf buffer : buffers) {
+                ReferenceCountUtil.release(buffer);
+            }
+            throw e;
+        }
+        return buffers;
+    }
+
+    /**
+     * Read the ranges with a single io_uring submission. The file is opened with O_DIRECT, so each range is
+     * extended to the alignment and read in an aligned buffer, then copied out. The ranges that could not be
+     * read completely are left null.
+     */
+    private void readBatch(long[] offsets, int[] sizes, ByteBuf[] buffers) throws IOException {
+        int count = offsets.length;
+        long[] readOffsets = new long[count];
+        int[] readSizes = new int[count];
+        long totalSize = 0;
+        for (int i = 0; i < count; i++) {
+            assertValidOffset(offsets[i]);
+            long readStart = offsets[i] & ~(Buffer.ALIGNMENT - 1);
+            long readEnd = (offsets[i] + sizes[i] + Buffer.ALIGNMENT - 1) & ~(Buffer.ALIGNMENT - 1);
+            readOffsets[i] = readStart;
+            readSizes[i] = (int) (readEnd - readStart);
+            totalSize += readEnd - readStart;
+        }
+        if (totalSize > MAX_BATCH_READ_SIZE) {
+            return;
+        }
+
+        long ring;
+        try {
+            ring = rings.ring();
+        } catch (NativeIOException ne) {
+            // No ring available for this thread, eg: too many rings for the memlock limit
+            return;
+        }
+
+        Buffer batchBuffer = new Buffer(nativeIO, (int) totalSize);
+        try {
+            long[] pointers = new long[count];
+            long[] results = new long[count];
+            long bufferOffset = 0;
+            for (int i = 0; i < count; i++) {
+                pointers[i] = batchBuffer.pointer(bufferOffset, readSizes[i]);
+                bufferOffset += readSizes[i];
+            }
+
+            final long startNs = System.nanoTime();
+            try {
+                nativeIO.io_uring_pread(ring, fd, pointers, readSizes, readOffsets, results, count);
+            } catch (NativeIOException ne) {
+                // The ring is broken, all the submitted reads have completed though
+                rings.discard(ring);
+                readBlockStats.registerFailedEvent(System.nanoTime() - startNs, TimeUnit.NANOSECONDS);
+                return;
+            }
+            readBlockStats.registerSuccessfulEvent(System.nanoTime() - startNs, TimeUnit.NANOSECONDS);
+
+            bufferOffset = 0;
+            for (int i = 0; i < count; i++) {
+                int offsetInRead = (int) (offsets[i] - readOffsets[i]);
+                if (results[i] >= offsetInRead + sizes[i]) {
+                    buffers[i] = allocator.buffer(sizes[i]);
+                    batchBuffer.readByteBuf(buffers[i], (int) bufferOffset + offsetInRead, sizes[i]);
+                }
+                bufferOffset += readSizes[i];
+            }
+        } finally {
+            batchBuffer.free();
+        }
+    }
+
     @Override
     public int readIntAt(long offset) throws IOException, EOFException {
         assertValidOffset(offset);
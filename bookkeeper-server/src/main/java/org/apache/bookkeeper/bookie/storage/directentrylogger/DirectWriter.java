@@ -26,6 +26,7 @@ import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
 
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -49,12 +50,31 @@ class DirectWriter implements LogWriter {
     long offset;
     private static volatile boolean useFallocate = true;
 
+    // io_uring instances used to write the flushed buffers in batches, null if buffers are written one by one
+    private final IoUringRings writeRings;
+    // Flushed buffers waiting to be written with io_uring, guarded by itself
+    private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private boolean drainScheduled = false;
+    // Once a batch failed, the log is failed and the following buffers are not written. Guarded by pendingWrites
+    private IOException batchWriteError = null;
+
     DirectWriter(int id,
                  String filename,
                  long maxFileSize,
                  ExecutorService writeExecutor,
                  BufferPool bufferPool,
                  NativeIO nativeIO, Slogger slog) throws IOException {
+        this(id, filename, maxFileSize, writeExecutor, bufferPool, nativeIO, null, slog);
+    }
+
+    DirectWriter(int id,
+                 String filename,
+                 long maxFileSize,
+                 ExecutorService writeExecutor,
+                 BufferPool bufferPool,
+                 NativeIO nativeIO,
+                 IoUringRings writeRings,
+                 Slogger slog) throws IOException {
         checkArgument(maxFileSize > 0, "Max file size (%d) must be positive");
         this.id = id;
         this.filename = filename;
@@ -93,6 +113,8 @@ class DirectWriter implements LogWriter {
             }
         }
 
+        this.writeRings = writeRings;
+
         this.bufferPool = bufferPool;
         this.nativeBuffer = bufferPool.acquire();
     }
@@ -130,6 +152,14 @@ class DirectWriter implements LogWriter {
     }
 
     private void writeByteBuf(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException{
+        try {
+            pwrite(buffer, bytesToWrite, offsetToWrite);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void pwrite(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException {
         try {
             if (bytesToWrite <= 0) {
                 return;
@@ -152,8 +182,6 @@ class DirectWriter implements LogWriter {
                 .kv("pointer", buffer.pointer())
                 .kv("errno", ne.getErrno())
                 .toString());
-        } finally {
-            bufferPool.release(buffer);
         }
     }
 
@@ -220,23 +248,42 @@ class DirectWriter implements LogWriter {
 
     @Override
     public void close() throws IOException {
-        synchronized (bufferLock) {
-            if (nativeBuffer != null && nativeBuffer.position() > 0) {
-                flush();
+        try {
+            synchronized (bufferLock) {
+                if (nativeBuffer != null && nativeBuffer.position() > 0) {
+                    flush();
+                }
+            }
+        } finally {
+            if (writeRings != null) {
+                // Even if the log failed, the buffers must not be released while a batch is writing them
+                synchronized (outstandingWrites) {
+                    for (Future<?> f : outstandingWrites) {
+                        try {
+                            waitForFuture(f);
+                        } catch (IOException e) {
+                            // Already reported by the flush
+                        }
+                    }
+                }
+                releasePendingWrites();
+            }
+            synchronized (bufferLock) {
+                // Null if the last flush failed
+                if (nativeBuffer != null) {
+                    bufferPool.release(nativeBuffer);
+                    nativeBuffer = null;
+                }
             }
-        }
 
-        try {
-            int ret = nativeIO.close(fd);
-            checkState(ret == 0, "Close should throw exception on non-zero return (%d)", ret);
-        } catch (NativeIOException ne) {
-            throw new IOException(exMsg(ne.getMessage())
-                                  .kv("file", filename)
-                                  .kv("errno", ne.getErrno()).toString());
-        }
-        synchronized (bufferLock) {
-            bufferPool.release(nativeBuffer);
-            nativeBuffer = null;
+            try {
+                int ret = nativeIO.close(fd);
+                checkState(ret == 0, "Close should throw exception on non-zero return (%d)", ret);
+            } catch (NativeIOException ne) {
+                throw new IOException(exMsg(ne.getMessage())
+                                      .kv("file", filename)
+                                      .kv("errno", ne.getErrno()).toString());
+            }
         }
     }
 
@@ -297,16 +344,150 @@ class DirectWriter implements LogWriter {
                 long offsetToWrite = offset;
                 offset += bytesToWrite;
 
-                Future<?> f = writeExecutor.submit(() -> {
-                    writeByteBuf(bufferToFlush, bytesToWrite, offsetToWrite);
-                    return null;
-                });
-                addOutstandingWrite(f);
+                try {
+                    if (writeRings != null) {
+                        queueWrite(bufferToFlush, bytesToWrite, offsetToWrite);
+                    } else {
+                        Future<?> f = writeExecutor.submit(() -> {
+                            writeByteBuf(bufferToFlush, bytesToWrite, offsetToWrite);
+                            return null;
+                        });
+                        addOutstandingWrite(f);
+                    }
+                } finally {
+                    // must acquire after triggering the write
+                    // otherwise it could try to acquire a buffer without kicking off
+                    // a subroutine that will free another
+                    this.nativeBuffer = bufferPool.acquire();
+                }
+            }
+        }
+    }
 
-                // must acquire after triggering the write
-                // otherwise it could try to acquire a buffer without kicking off
-                // a subroutine that will free another
-                this.nativeBuffer = bufferPool.acquire();
+    /**
+     * Queue a flushed buffer to be written with io_uring. All the buffers queued while the write thread is
+     * busy are submitted together with a single syscall, instead of one pwrite each.
+     */
+    private void queueWrite(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException {
+        synchronized (pendingWrites) {
+            if (batchWriteError != null) {
+                bufferPool.release(buffer);
+                throw new IOException(exMsg("Log failed by a previous write error")
+                                      .kv("filename", filename).toString(), batchWriteError);
+            }
+            pendingWrites.add(new PendingWrite(buffer, bytesToWrite, offsetToWrite));
+            if (drainScheduled) {
+                // The write task already scheduled will pick it up, and its future is already outstanding
+                return;
+            }
+            drainScheduled = true;
+        }
+
+        Future<?> f = writeExecutor.submit(() -> {
+            writePendingBuffers();
+            return null;
+        });
+        addOutstandingWrite(f);
+    }
+
+    private void writePendingBuffers() throws IOException {
+        while (true) {
+            PendingWrite[] batch;
+            synchronized (pendingWrites) {
+                if (pendingWrites.isEmpty()) {
+                    drainScheduled = false;
+                    return;
+                }
+                batch = pendingWrites.toArray(new PendingWrite[0]);
+                pendingWrites.clear();
+            }
+
+            try {
+                writeBatch(batch);
+            } catch (IOException e) {
+                synchronized (pendingWrites) {
+                    batchWriteError = e;
+                    drainScheduled = false;
+                }
+                // Nobody is going to write the buffers queued in the meantime
+                releasePendingWrites();
+                throw e;
+            }
+        }
+    }
+
+    private void releasePendingWrites() {
+        synchronized (pendingWrites) {
+            for (PendingWrite write : pendingWrites) {
+                bufferPool.release(write.buffer);
+            }
+            pendingWrites.clear();
+        }
+    }
+
+    private void writeBatch(PendingWrite[] batch) throws IOException {
+        int count = batch.length;
+        long[] pointers = new long[count];
+        int[] sizes = new int[count];
+        long[] offsets = new long[count];
+        long[] results = new long[count];
+        for (int i = 0; i < count; i++) {
+            pointers[i] = batch[i].buffer.pointer();
+            sizes[i] = batch[i].bytesToWrite;
+            offsets[i] = batch[i].offset;
+        }
+
+        long ring;
+        try {
+            ring = writeRings.ring();
+        } catch (NativeIOException ne) {
+            // No ring available for this thread, eg: too many rings for the memlock limit
+            try {
+                for (PendingWrite write : batch) {
+                    pwrite(write.buffer, write.bytesToWrite, write.offset);
+                }
+            } finally {
+                for (PendingWrite write : batch) {
+                    bufferPool.release(write.buffer);
+                }
+            }
+            return;
+        }
+
+        try {
+            nativeIO.io_uring_pwrite(ring, fd, pointers, sizes, offsets, results, count);
+            for (int i = 0; i < count; i++) {
+                if (results[i] < 0) {
+                    throw new IOException(exMsg("Write error")
+                        .kv("filename", filename)
+                        .kv("offset", offsets[i])
+                        .kv("writeSize", sizes[i])
+                        .kv("pointer", pointers[i])
+                        .kv("errno", -results[i])
+                        .toString());
+                } else if (results[i] != sizes[i]) {
+                    throw new IOException(exMsg("Incomplete write")
+                        .kv("filename", filename)
+                        .kv("pointer", pointers[i])
+                        .kv("offset", offsets[i])
+                        .kv("writeSize", sizes[i])
+                        .kv("bytesWritten", results[i])
+                        .toString());
+                }
+            }
+        } catch (NativeIOException ne) {
+            // The ring is broken, all the submitted writes have completed though
+            writeRings.discard(ring);
+            throw new IOException(exMsg("Write error")
+                .kv("filename", filename)
+                .kv("offset", offsets[0])
+                .kv("writeSize", sizes[0])
+                .kv("batchSize", count)
+                .kv("errno", ne.getErrno())
+                .toString());
+        } finally {
+            for (PendingWrite write : batch) {
+                bufferPool.release(write.buffer);
             }
         }
     }
@@ -315,4 +496,16 @@ class DirectWriter implements LogWriter {
     public int serializedSize(ByteBuf buf) {
         return buf.readableBytes() + Integer.BYTES;
     }
+
+    private static class PendingWrite {
+        final Buffer buffer;
+        final int bytesToWrite;
+        final long offset;
+
+        PendingWrite(Buffer buffer, int bytesToWrite, long offset) {
+            this.buffer = buffer;
+            this.bytesToWrite = bytesToWrite;
+            this.offset = offset;
+        }
+    }
 }
@@ -31,6 +31,14 @@ public enum Events {
      */
     FALLOCATE_NOT_AVAILABLE,
 
+    /**
+     * io_uring is not available on this host, either because the process is running on a non-Linux
+     * operating system or an old kernel, or because it is disabled (e.g. by seccomp in a container).
+     * Buffers will be written with one pwrite syscall each, and multi-entry reads will read each range with
+     * pread.
+     */
+    IO_URING_NOT_AVAILABLE,
+
     /**
      * EntryLog ID candidates selected. These are the set entry log ID that subsequent entry log files
      * will use. To find the candidates, the bookie lists all the log ids which have already been used,
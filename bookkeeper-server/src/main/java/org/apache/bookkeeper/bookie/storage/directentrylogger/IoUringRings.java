@@ -0,0 +1,121 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.slogger.Slogger;
+
+/**
+ * io_uring instances used by the direct entry logger to write the flushed buffers, and to read the ranges of a
+ * multi-entry read, in batches.
+ *
+ * <p>A ring can only be used by one thread at a time, so each write or read thread lazily creates its own ring
+ * and uses it for all the log files it accesses.
+ */
+class IoUringRings implements AutoCloseable {
+
+    // Enough entries to submit all the write buffers of the pool at once. Larger read batches are submitted
+    // in rounds of this size
+    static final int ENTRIES = 8;
+
+    private final NativeIO nativeIO;
+    private final ThreadLocal<Long> threadRing = new ThreadLocal<>();
+    private final Set<Long> rings = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    private IoUringRings(NativeIO nativeIO) {
+        this.nativeIO = nativeIO;
+    }
+
+    /**
+     * @return the rings, or null if io_uring is not available on this host
+     */
+    static IoUringRings create(NativeIO nativeIO, Slogger slog) {
+        try {
+            // Like fallocate, io_uring is an optimization, the writers fall back to pwrite without it
+            nativeIO.io_uring_close(nativeIO.io_uring_setup(ENTRIES));
+            return new IoUringRings(nativeIO);
+        } catch (NativeIOException ex) {
+            slog.kv("message", ex.getMessage())
+                .kv("errno", ex.getErrno())
+                .warn(Events.IO_URING_NOT_AVAILABLE);
+            return null;
+        }
+    }
+
+    /**
+     * Get the ring of the calling thread, creating it if needed.
+     */
+    long ring() throws NativeIOException {
+        if (closed) {
+            throw new NativeIOException("io_uring instances are already closed");
+        }
+
+        Long ring = threadRing.get();
+        if (ring == null) {
+            ring = nativeIO.io_uring_setup(ENTRIES);
+            threadRing.set(ring);
+            rings.add(ring);
+        }
+        return ring;
+    }
+
+    /**
+     * Close the ring of the calling thread after it failed, the next call to {@link #ring()} creates a new one.
+     */
+    void discard(long ring) {
+        threadRing.remove();
+        if (rings.remove(ring)) {
+            try {
+                nativeIO.io_uring_close(ring);
+            } catch (NativeIOException ex) {
+                // The ring is already unusable
+            }
+        }
+    }
+
+    /**
+     * Close all the rings. Must be called once no more writes or reads are in progress.
+     */
+    @Override
+    public void close() throws NativeIOException {
+        closed = true;
+        NativeIOException error = null;
+        for (long ring : rings) {
+            rings.remove(ring);
+            try {
+                nativeIO.io_uring_close(ring);
+            } catch (NativeIOException ex) {
+                error = ex;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    int size() {
+        return rings.size();
+    }
+}
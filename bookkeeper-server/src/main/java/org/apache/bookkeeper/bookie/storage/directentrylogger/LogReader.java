@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.bookie.storage.directentrylogger;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
 import java.io.EOFException;
 import java.io.IOException;
 
@@ -49,6 +50,28 @@ public interface LogReader extends AutoCloseable {
 
     void readIntoBufferAt(ByteBuf buffer, long offset, int size) throws IOException, EOFException;
 
+    /**
+     * Read several buffers from the file. It is the responsibility of the caller to release
+     * the returned buffers.
+     * @param offsets the offsets to read at
+     * @param sizes the number of bytes to read at each offset
+     * @return the bytebufs, in the same order as the offsets. The caller must release.
+     */
+    default ByteBuf[] readBuffersAt(long[] offsets, int[] sizes) throws IOException, EOFException {
+        ByteBuf[] buffers = new ByteBuf[offsets.length];
+        try {
+            for (int i = 0; i < offsets.length; i++) {
+                buffers[i] = readBufferAt(offsets[i], sizes[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ByteBuf buffer : buffers) {
+                ReferenceCountUtil.release(buffer);
+            }
+            throw e;
+        }
+        return buffers;
+    }
+
     /**
      * Read an integer at a given offset.
      * @param offset the offset to read from.
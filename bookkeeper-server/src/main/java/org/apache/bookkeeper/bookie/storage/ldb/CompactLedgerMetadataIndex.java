@@ -0,0 +1,631 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link LedgerMetadataIndex} for bookies that store millions of ledgers.
+ *
+ * <p>Ledgers are loaded lazily from the db when they are first accessed, instead of all at startup. The state of
+ * each ledger is kept in a fixed-width record packed in a long, with the flags of the ledger and the id of its
+ * master key, which is interned since most of the ledgers share the same few master keys. There are no objects
+ * per ledger, apart for the few ledgers that have an explicit LAC or a master key which could not be interned,
+ * whose {@link LedgerData} is kept as is.
+ *
+ * <p>Ledgers that are modified are tracked in a set of ids, and their records are serialized on flush. The
+ * record of a deleted ledger is dropped right away, and its id is kept until the deletion is persisted in the db,
+ * so that it cannot be loaded again. The ids of the ledgers which are not stored in the bookie are cached too,
+ * up to a limit, so that the lookups of unknown ledgers don't all go to the db.
+ *
+ * <p>The records loaded are kept up to {@link #MAX_CACHED_LEDGERS}. Beyond that, the records which are persisted
+ * in the db and not modified since are evicted on flush, and loaded again on their next access.
+ *
+ * <p>The number of ledgers stored in the db is persisted along with the ledgers, so that it doesn't need to be
+ * counted at startup. It is only counted when the index is first used on a db, or after the db was used by the
+ * {@link LedgerMetadataIndex}, which doesn't maintain it.
+ */
+class CompactLedgerMetadataIndex extends LedgerMetadataIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactLedgerMetadataIndex.class);
+
+    // Record layout: flags in the lower bits, master key id in the upper 31 bits (records must be positive)
+    private static final long EXISTS = 1L;
+    private static final long FENCED = 1L << 1;
+    private static final long LIMBO = 1L << 2;
+    // The ledger is stored in the db, though the record might have been modified since
+    private static final long PERSISTED = 1L << 3;
+    // The ledger data is kept as is in the overflow map
+    private static final long OVERFLOW = 1L << 4;
+    private static final int MASTER_KEY_SHIFT = 32;
+
+    private static final long NOT_FOUND = -1L;
+
+    // Max number of distinct master keys interned. Ledgers with other master keys are kept in the overflow map
+    static final int MAX_INTERNED_MASTER_KEYS = 64 * 1024;
+
+    // Max number of ids of unknown ledgers cached. The cache is cleared when it is full
+    static final int MAX_ABSENT_LEDGERS = 64 * 1024;
+
+    // Max number of records kept in memory, before the unmodified ones are evicted on flush
+    static final int MAX_CACHED_LEDGERS = 1024 * 1024;
+
+    private final ConcurrentLongLongHashMap records;
+    private final ConcurrentLongHashMap<LedgerData> overflow;
+    private final ConcurrentLongHashSet dirtyLedgers;
+    // Deleted ledgers, until the deletion is persisted in the db
+    private final ConcurrentLongHashSet deletedLedgers;
+    // Ledgers which are not stored in the bookie
+    private final ConcurrentLongHashSet absentLedgers;
+
+    private final int maxCachedLedgers;
+    // Number of ledgers stored in the db
+    private final AtomicLong persistedLedgersCount = new AtomicLong();
+
+    private final Map<ByteString, Integer> masterKeyIds = new HashMap<>();
+    private volatile ByteString[] masterKeys = new ByteString[16];
+
+    CompactLedgerMetadataIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, MAX_CACHED_LEDGERS);
+    }
+
+    @VisibleForTesting
+    CompactLedgerMetadataIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, int maxCachedLedgers) throws IOException {
+        super(conf, storageFactory, basePath, stats, false /* loadLedgers */);
+        this.maxCachedLedgers = maxCachedLedgers;
+
+        records = ConcurrentLongLongHashMap.newBuilder().build();
+        overflow = ConcurrentLongHashMap.<LedgerData>newBuilder().build();
+        dirtyLedgers = ConcurrentLongHashSet.newBuilder().build();
+        deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+        absentLedgers = ConcurrentLongHashSet.newBuilder().build();
+
+        // The ledgers are not loaded, and their count is read from the db, since its estimate can be far off
+        LongWrapper key = LongWrapper.get(LEDGERS_COUNT);
+        LongWrapper value = LongWrapper.get();
+        try {
+            if (ledgersDb.get(key.array, value.array) >= 0) {
+                persistedLedgersCount.set(value.getValue());
+            } else {
+                log.info("Counting the ledgers stored in {}", ledgersDb.getDBPath());
+                persistedLedgersCount.set(countLedgers());
+                persistLedgersCount();
+                ledgersDb.sync();
+            }
+        } finally {
+            key.recycle();
+            value.recycle();
+        }
+        ledgersCount.set((int) persistedLedgersCount.get());
+    }
+
+    private int countLedgers() throws IOException {
+        int count = 0;
+        CloseableIterator<byte[]> iterator = ledgersDb.keys();
+        try {
+            while (iterator.hasNext()) {
+                // Skip the negative keys, eg: the storage flags
+                if (ArrayUtil.getLong(iterator.next(), 0) >= 0) {
+                    count++;
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+
+    @Override
+    public LedgerData get(long ledgerId) throws IOException {
+        while (true) {
+            long record = getRecord(ledgerId);
+            if (record == NOT_FOUND) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Ledger not found {}", ledgerId);
+                }
+                throw new Bookie.NoLedgerException(ledgerId);
+            }
+
+            LedgerData ledgerData = toLedgerData(ledgerId, record);
+            if (ledgerData != null) {
+                return ledgerData;
+            }
+            // The ledger was concurrently moved out of the overflow map, read the new record
+        }
+    }
+
+    @Override
+    public void set(long ledgerId, LedgerData ledgerData) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            if (update(ledgerId, LedgerData.newBuilder(ledgerData).setExists(true).build())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Added new ledger {}", ledgerId);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(long ledgerId) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            long record = getRecord(ledgerId);
+            records.remove(ledgerId);
+            overflow.remove(ledgerId);
+            if (record != NOT_FOUND) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removed ledger {}", ledgerId);
+                }
+                ledgersCount.decrementAndGet();
+            }
+
+            deletedLedgers.add(ledgerId);
+            addAbsentLedger(ledgerId);
+            dirtyLedgers.remove(ledgerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Long> getActiveLedgersInRange(long firstLedgerId, long lastLedgerId) throws IOException {
+        ConcurrentLongHashSet activeLedgers = ConcurrentLongHashSet.newBuilder().concurrencyLevel(1).build();
+
+        byte[] firstKey = new byte[Long.BYTES];
+        byte[] lastKey = new byte[Long.BYTES];
+        ArrayUtil.setLong(firstKey, 0, Math.max(0, firstLedgerId));
+        ArrayUtil.setLong(lastKey, 0, lastLedgerId);
+        CloseableIterator<byte[]> iterator = ledgersDb.keys(firstKey, lastKey);
+        try {
+            while (iterator.hasNext()) {
+                long ledgerId = ArrayUtil.getLong(iterator.next(), 0);
+                if (!deletedLedgers.contains(ledgerId)) {
+                    activeLedgers.add(ledgerId);
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        // Add the ledgers which are not yet persisted in the db
+        dirtyLedgers.forEach(ledgerId -> {
+            if (ledgerId >= firstLedgerId && ledgerId < lastLedgerId && records.get(ledgerId) != NOT_FOUND) {
+                activeLedgers.add(ledgerId);
+            }
+        });
+        return activeLedgers.items();
+    }
+
+    @Override
+    public boolean setFenced(long ledgerId) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            LedgerData ledgerData = get(ledgerId);
+            if (ledgerData.getFenced()) {
+                return false;
+            }
+
+            update(ledgerId, LedgerData.newBuilder(ledgerData).setFenced(true).build());
+            if (log.isDebugEnabled()) {
+                log.debug("Set fenced ledger {}", ledgerId);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean setLimbo(long ledgerId) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            LedgerData ledgerData = get(ledgerId);
+            if (ledgerData.getLimbo()) {
+                return false;
+            }
+
+            update(ledgerId, LedgerData.newBuilder(ledgerData).setLimbo(true).build());
+            if (log.isDebugEnabled()) {
+                log.debug("Set limbo ledger {}", ledgerId);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean clearLimbo(long ledgerId) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            LedgerData ledgerData = get(ledgerId);
+            final boolean oldValue = ledgerData.getLimbo();
+            update(ledgerId, LedgerData.newBuilder(ledgerData).setLimbo(false).build());
+            if (log.isDebugEnabled()) {
+                log.debug("Clear limbo ledger {}", ledgerId);
+            }
+            return oldValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMasterKey(long ledgerId, byte[] masterKey) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            LedgerData ledgerData;
+            long record = getRecord(ledgerId);
+            if (record == NOT_FOUND) {
+                // New ledger inserted
+                ledgerData = LedgerData.newBuilder().setExists(true).setFenced(false)
+                    .setMasterKey(ByteString.copyFrom(masterKey)).build();
+                if (log.isDebugEnabled()) {
+                    log.debug("Inserting new ledger {}", ledgerId);
+                }
+            } else {
+                ledgerData = get(ledgerId);
+                byte[] storedMasterKey = ledgerData.getMasterKey().toByteArray();
+                if (ArrayUtil.isArrayAllZeros(storedMasterKey)) {
+                    // update master key of the ledger
+                    ledgerData = LedgerData.newBuilder(ledgerData).setMasterKey(ByteString.copyFrom(masterKey)).build();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Replace old master key {} with new master key {}", storedMasterKey, masterKey);
+                    }
+                } else if (!Arrays.equals(storedMasterKey, masterKey) && !ArrayUtil.isArrayAllZeros(masterKey)) {
+                    log.warn("Ledger {} masterKey in db can only be set once.", ledgerId);
+                    throw new IOException(BookieException.create(BookieException.Code.IllegalOpException));
+                }
+            }
+
+            update(ledgerId, ledgerData);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void setExplicitLac(long ledgerId, ByteBuf lac) throws IOException {
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            long record = getRecord(ledgerId);
+            if (record == NOT_FOUND) {
+                // unknown ledger here
+                return;
+            }
+
+            update(ledgerId, LedgerData.newBuilder(get(ledgerId))
+                    .setExplicitLac(ByteString.copyFrom(lac.nioBuffer())).build());
+            if (log.isDebugEnabled()) {
+                log.debug("Set explicitLac on ledger {}", ledgerId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Synchronized, since the records which are not dirty are only known to be persisted once no flush is running
+    @Override
+    public synchronized void flush() throws IOException {
+        LongWrapper key = LongWrapper.get();
+
+        int updatedLedgers = 0;
+        for (long ledgerId : dirtyLedgers.items()) {
+            // Remove the ledger before reading its state, so that a concurrent update marks it dirty again
+            dirtyLedgers.remove(ledgerId);
+
+            ReentrantLock lock = lockForLedger(ledgerId);
+            lock.lock();
+            try {
+                long record = records.get(ledgerId);
+                if (record == NOT_FOUND) {
+                    // Deleted in the meantime
+                    continue;
+                }
+                key.set(ledgerId);
+                ledgersDb.put(key.array, get(ledgerId).toByteArray());
+                ++updatedLedgers;
+                if ((record & PERSISTED) == 0) {
+                    records.put(ledgerId, records.get(ledgerId) | PERSISTED);
+                    persistedLedgersCount.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persisting updates to {} ledgers", updatedLedgers);
+        }
+
+        persistLedgersCount();
+        ledgersDb.sync();
+        key.recycle();
+
+        if (records.size() > maxCachedLedgers) {
+            evictPersistedRecords();
+        }
+    }
+
+    private void persistLedgersCount() throws IOException {
+        LongWrapper key = LongWrapper.get(LEDGERS_COUNT);
+        LongWrapper value = LongWrapper.get();
+        try {
+            // The flush and the removal of the deleted ledgers can run concurrently, the last one writes the count
+            synchronized (persistedLedgersCount) {
+                value.set(persistedLedgersCount.get());
+                ledgersDb.put(key.array, value.array);
+            }
+        } finally {
+            key.recycle();
+            value.recycle();
+        }
+    }
+
+    private void evictPersistedRecords() {
+        int evictedLedgers = 0;
+        for (long ledgerId : records.keys()) {
+            ReentrantLock lock = lockForLedger(ledgerId);
+            lock.lock();
+            try {
+                long record = records.get(ledgerId);
+                if (record != NOT_FOUND && (record & PERSISTED) != 0 && !dirtyLedgers.contains(ledgerId)) {
+                    records.remove(ledgerId);
+                    overflow.remove(ledgerId);
+                    ++evictedLedgers;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Evicted {} persisted ledgers, {} left in memory", evictedLedgers, records.size());
+        }
+    }
+
+    @Override
+    public void removeDeletedLedgers() throws IOException {
+        LongWrapper key = LongWrapper.get();
+
+        int deletedCount = 0;
+        for (long ledgerId : deletedLedgers.items()) {
+            ReentrantLock lock = lockForLedger(ledgerId);
+            lock.lock();
+            try {
+                if (!deletedLedgers.contains(ledgerId)) {
+                    // Re-created in the meantime
+                    continue;
+                }
+
+                key.set(ledgerId);
+                if (ledgersDb.get(key.array) != null) {
+                    ledgersDb.delete(key.array);
+                    persistedLedgersCount.decrementAndGet();
+                }
+                ++deletedCount;
+
+                // Forget the deletion only once the db is updated, or the ledger could be loaded again from the db
+                deletedLedgers.remove(ledgerId);
+                addAbsentLedger(ledgerId);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persisting deletes of {} ledgers", deletedCount);
+        }
+
+        persistLedgersCount();
+        ledgersDb.sync();
+        key.recycle();
+    }
+
+    /**
+     * Get the record of a ledger, loading it from the db if needed.
+     *
+     * @return the record, or {@link #NOT_FOUND} if the ledger is not stored in the bookie
+     */
+    private long getRecord(long ledgerId) throws IOException {
+        long record = records.get(ledgerId);
+        if (record != NOT_FOUND || absentLedgers.contains(ledgerId)) {
+            return record;
+        }
+
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        try {
+            record = records.get(ledgerId);
+            if (record != NOT_FOUND || absentLedgers.contains(ledgerId) || deletedLedgers.contains(ledgerId)) {
+                return record;
+            }
+
+            LongWrapper key = LongWrapper.get(ledgerId);
+            byte[] value;
+            try {
+                value = ledgersDb.get(key.array);
+            } finally {
+                key.recycle();
+            }
+            if (value == null) {
+                addAbsentLedger(ledgerId);
+                return NOT_FOUND;
+            }
+
+            record = toRecord(ledgerId, LedgerData.parseFrom(value)) | PERSISTED;
+            records.put(ledgerId, record);
+            return record;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remember that a ledger is not stored in the bookie. Must be called with the ledger lock held.
+     */
+    private void addAbsentLedger(long ledgerId) {
+        if (absentLedgers.size() >= MAX_ABSENT_LEDGERS) {
+            absentLedgers.clear();
+        }
+        absentLedgers.add(ledgerId);
+    }
+
+    /**
+     * Update the state of a ledger. Must be called with the ledger lock held.
+     *
+     * @return whether the ledger was added
+     */
+    private boolean update(long ledgerId, LedgerData ledgerData) throws IOException {
+        long previous = getRecord(ledgerId);
+        long record = toRecord(ledgerId, ledgerData);
+        if (previous != NOT_FOUND) {
+            record |= previous & PERSISTED;
+        } else if (deletedLedgers.contains(ledgerId) && isStored(ledgerId)) {
+            // Re-created before the deletion was persisted
+            record |= PERSISTED;
+        }
+        records.put(ledgerId, record);
+        if ((record & OVERFLOW) == 0) {
+            overflow.remove(ledgerId);
+        }
+
+        absentLedgers.remove(ledgerId);
+        deletedLedgers.remove(ledgerId);
+        dirtyLedgers.add(ledgerId);
+
+        if (previous == NOT_FOUND) {
+            ledgersCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isStored(long ledgerId) throws IOException {
+        LongWrapper key = LongWrapper.get(ledgerId);
+        try {
+            return ledgersDb.get(key.array) != null;
+        } finally {
+            key.recycle();
+        }
+    }
+
+    @VisibleForTesting
+    long cachedLedgersCount() {
+        return records.size();
+    }
+
+    @VisibleForTesting
+    long absentLedgersCount() {
+        return absentLedgers.size();
+    }
+
+    private long toRecord(long ledgerId, LedgerData ledgerData) {
+        long record = EXISTS;
+        if (ledgerData.getFenced()) {
+            record |= FENCED;
+        }
+        if (ledgerData.getLimbo()) {
+            record |= LIMBO;
+        }
+
+        int masterKeyId = ledgerData.hasExplicitLac() ? -1 : internMasterKey(ledgerData.getMasterKey());
+        if (masterKeyId < 0) {
+            // The overflow map is updated before the record, so that readers always find the data
+            overflow.put(ledgerId, ledgerData);
+            return record | OVERFLOW;
+        }
+        return record | ((long) masterKeyId << MASTER_KEY_SHIFT);
+    }
+
+    /**
+     * @return the data of the ledger, or null if the ledger was concurrently moved out of the overflow map
+     */
+    private LedgerData toLedgerData(long ledgerId, long record) {
+        if ((record & OVERFLOW) != 0) {
+            return overflow.get(ledgerId);
+        }
+
+        LedgerData.Builder builder = LedgerData.newBuilder()
+                .setExists(true)
+                .setFenced((record & FENCED) != 0)
+                .setMasterKey(masterKeys[(int) (record >>> MASTER_KEY_SHIFT)]);
+        if ((record & LIMBO) != 0) {
+            builder.setLimbo(true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the id of the master key, or -1 if too many master keys are already interned
+     */
+    private synchronized int internMasterKey(ByteString masterKey) {
+        Integer id = masterKeyIds.get(masterKey);
+        if (id != null) {
+            return id;
+        }
+        if (masterKeyIds.size() >= MAX_INTERNED_MASTER_KEYS) {
+            return -1;
+        }
+
+        int newId = masterKeyIds.size();
+        ByteString[] keys = masterKeys;
+        if (newId == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[newId] = masterKey;
+        // Publish the array before the id can be stored in a record
+        masterKeys = keys;
+        masterKeyIds.put(masterKey, newId);
+        return newId;
+    }
+}
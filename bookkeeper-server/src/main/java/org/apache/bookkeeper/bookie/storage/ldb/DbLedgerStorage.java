@@ -29,6 +29,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import java.io.File;
@@ -39,8 +40,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.BookieException;
@@ -91,6 +95,8 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerReadBufferSizeMB";
     public static final String DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS =
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+    public static final String DIRECT_IO_ENTRYLOGGER_IO_URING_ENABLED =
+        "dbStorage_directIOEntryLoggerIoUringEnabled";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
@@ -104,6 +110,24 @@ public class DbLedgerStorage implements LedgerStorage {
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    static final String READ_AHEAD_CACHE_ADAPTIVE = "dbStorage_readAheadCacheAdaptive";
+    static final String READ_AHEAD_ASYNC_THREADS = "dbStorage_readAheadAsyncThreads";
+    static final String READ_AHEAD_JOIN_TIMEOUT_MS = "dbStorage_readAheadJoinTimeoutMs";
+    static final long DEFAULT_READ_AHEAD_JOIN_TIMEOUT_MS = 10;
+
+    static final String READ_CACHE_ADMISSION_POLICY = "dbStorage_readCacheAdmissionPolicy";
+    static final String DEFAULT_READ_CACHE_ADMISSION_POLICY = ReadCacheAdmissionPolicy.FIFO;
+
+    static final String ENTRY_LOCATION_STORAGE = "dbStorage_entryLocationStorage";
+    static final String ENTRY_LOCATION_STORAGE_ROCKSDB = "rocksdb";
+    static final String ENTRY_LOCATION_STORAGE_SORTED_RUNS = "sortedruns";
+
+    static final String COMPACT_LEDGER_METADATA_INDEX = "dbStorage_compactLedgerMetadataIndex";
+    static final String LEDGER_METADATA_INDEX_BACKGROUND_LOADING = "dbStorage_ledgerMetadataIndexBackgroundLoading";
+
+    // Number of directories initialized in parallel at startup, defaults to the number of directories
+    static final String INITIALIZATION_THREADS = "dbStorage_initializationThreads";
+
     private static final long DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB =
         (long) (0.125 * PlatformDependent.estimateMaxDirectMemory())
             / MB;
@@ -172,7 +196,10 @@ public class DbLedgerStorage implements LedgerStorage {
         long perDirectoryReadCacheSize = readCacheMaxSize / numberOfDirs;
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
-        ledgerStorageList = Lists.newArrayList();
+        long initializationStartTime = MathUtils.nowInNano();
+        List<LedgerDirsManager> ldms = new ArrayList<>();
+        List<LedgerDirsManager> idms = new ArrayList<>();
+        List<Callable<SingleDirectoryDbLedgerStorage>> newLedgerStorages = new ArrayList<>();
         for (int i = 0; i < ledgerDirsManager.getAllLedgerDirs().size(); i++) {
             File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(i);
             File indexDir = indexDirsManager.getAllLedgerDirs().get(i);
@@ -208,6 +235,10 @@ public class DbLedgerStorage implements LedgerStorage {
                     conf,
                     DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS,
                     DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS);
+                boolean ioUringEnabled = getBooleanVariableOrDefault(
+                    conf,
+                    DIRECT_IO_ENTRYLOGGER_IO_URING_ENABLED,
+                    false);
                 Slf4jSlogger slog = new Slf4jSlogger(DbLedgerStorage.class);
                 entryLoggerWriteExecutor = Executors.newSingleThreadExecutor(
                     new DefaultThreadFactory("EntryLoggerWrite"));
@@ -229,20 +260,33 @@ public class DbLedgerStorage implements LedgerStorage {
                     readBufferSize,
                     numReadThreads,
                     maxFdCacheTimeSeconds,
+                    ioUringEnabled,
                     slog, statsLogger);
             } else {
                 entrylogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
             }
-            ledgerStorageList.add(newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm,
+            ldms.add(ldm);
+            idms.add(idm);
+            newLedgerStorages.add(() -> newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm,
                 idm, entrylogger,
                 statsLogger, perDirectoryWriteCacheSize,
                 perDirectoryReadCacheSize,
                 readAheadCacheBatchSize));
+        }
+
+        // Opening the indexes of a directory is mostly bound by the disk, so directories are initialized in parallel
+        int initializationThreads = Math.min(numberOfDirs, conf.getInt(INITIALIZATION_THREADS, numberOfDirs));
+        ledgerStorageList = initializeLedgerStorages(newLedgerStorages, initializationThreads);
+        for (int i = 0; i < numberOfDirs; i++) {
+            LedgerDirsManager ldm = ldms.get(i);
+            LedgerDirsManager idm = idms.get(i);
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
-            if (!lDirs[0].getPath().equals(iDirs[0].getPath())) {
+            if (!ldm.getAllLedgerDirs().get(0).getPath().equals(idm.getAllLedgerDirs().get(0).getPath())) {
                 idm.getListeners().forEach(indexDirsManager::addLedgerDirsListener);
             }
         }
+        log.info("Initialized {} directories with {} threads in {} ms", numberOfDirs, initializationThreads,
+                MathUtils.elapsedMSec(initializationStartTime));
 
         // parent DbLedgerStorage stats (not per directory)
         readaheadBatchSizeGauge = new Gauge<Integer>() {
@@ -272,6 +316,73 @@ public class DbLedgerStorage implements LedgerStorage {
         statsLogger.registerGauge(MAX_WRITE_CACHE_SIZE, writeCacheSizeGauge);
     }
 
+    @VisibleForTesting
+    static List<SingleDirectoryDbLedgerStorage> initializeLedgerStorages(
+            List<Callable<SingleDirectoryDbLedgerStorage>> newLedgerStorages, int numThreads) throws IOException {
+        List<SingleDirectoryDbLedgerStorage> ledgerStorages = Lists.newArrayList();
+        try {
+            if (numThreads <= 1) {
+                for (Callable<SingleDirectoryDbLedgerStorage> newLedgerStorage : newLedgerStorages) {
+                    ledgerStorages.add(newLedgerStorage.call());
+                }
+                return ledgerStorages;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+                    new DefaultThreadFactory("db-storage-initialization"));
+            try {
+                // Collect every directory that was initialized, even after a failure, so that all of them are closed
+                ExecutionException failure = null;
+                for (Future<SingleDirectoryDbLedgerStorage> future : executor.invokeAll(newLedgerStorages)) {
+                    try {
+                        ledgerStorages.add(future.get());
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                executor.shutdown();
+            }
+            return ledgerStorages;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            IOException ioe = new IOException("Interrupted while initializing the ledger storage directories", e);
+            shutdownLedgerStorages(ledgerStorages, ioe);
+            throw ioe;
+        } catch (ExecutionException e) {
+            IOException ioe = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("Failed to initialize a ledger storage directory", e.getCause());
+            shutdownLedgerStorages(ledgerStorages, ioe);
+            throw ioe;
+        } catch (IOException e) {
+            shutdownLedgerStorages(ledgerStorages, e);
+            throw e;
+        } catch (Exception e) {
+            IOException ioe = new IOException("Failed to initialize a ledger storage directory", e);
+            shutdownLedgerStorages(ledgerStorages, ioe);
+            throw ioe;
+        }
+    }
+
+    private static void shutdownLedgerStorages(List<SingleDirectoryDbLedgerStorage> ledgerStorages,
+                                               IOException failure) {
+        for (SingleDirectoryDbLedgerStorage ledgerStorage : ledgerStorages) {
+            try {
+                ledgerStorage.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.addSuppressed(e);
+            } catch (Exception e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
     @VisibleForTesting
     protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
             LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
@@ -356,6 +467,17 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public ReferenceCounted getEntryOrRegion(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryOrRegion(ledgerId, entryId, minRegionSize);
+    }
+
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long[] entryIds) throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntries(ledgerId, entryIds);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -605,6 +727,21 @@ public class DbLedgerStorage implements LedgerStorage {
         }
     }
 
+    /**
+     * Get the factory of the key-value storage to use for the entry location index.
+     */
+    static KeyValueStorageFactory getEntryLocationStorageFactory(ServerConfiguration conf) {
+        String storage = conf.getString(ENTRY_LOCATION_STORAGE, ENTRY_LOCATION_STORAGE_ROCKSDB);
+        switch (storage) {
+        case ENTRY_LOCATION_STORAGE_ROCKSDB:
+            return KeyValueStorageRocksDB.factory;
+        case ENTRY_LOCATION_STORAGE_SORTED_RUNS:
+            return KeyValueStorageSortedRuns.factory;
+        default:
+            throw new IllegalArgumentException("Unknown entry location storage: " + storage);
+        }
+    }
+
     static boolean getBooleanVariableOrDefault(ServerConfiguration conf, String keyName, boolean defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Boolean) {
@@ -52,14 +52,22 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READ_ENTRY_ZERO_COPY = "read-entry-zero-copy";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_WASTED = "readahead-wasted";
+    private static final String READAHEAD_INFLIGHT_HITS = "readahead-inflight-hits";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
     private static final String FLUSH_SIZE = "flush-size";
+    private static final String STARTUP_LEDGER_INDEX_OPEN = "startup-ledger-index-open";
+    private static final String STARTUP_LOCATIONS_INDEX_OPEN = "startup-locations-index-open";
+    private static final String STARTUP_GC_INIT = "startup-gc-init";
+    private static final String STARTUP_TOTAL = "startup-total";
 
     @Deprecated
     private static final String THROTTLED_WRITE_REQUESTS = "throttled-write-requests";
@@ -70,6 +78,9 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String READ_CACHE_HIT_RATIO = "read-cache-hit-ratio";
+    private static final String READ_CACHE_REJECTED = "read-cache-admission-rejected";
+    private static final String READ_CACHE_PROMOTED = "read-cache-promoted";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -119,6 +130,12 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = READ_ENTRY_ZERO_COPY,
+        help = "number of entries read from the entry log as a file region, to be sent without copies",
+        parent = READ_ENTRY
+    )
+    private final Counter readEntryZeroCopyCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -134,6 +151,23 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+            name = READAHEAD_HITS,
+            help = "number of read cache hits on entries loaded by the last readahead batch of a ledger",
+            parent = READ_ENTRY
+    )
+    private final Counter readAheadHitCounter;
+    @StatsDoc(
+            name = READAHEAD_WASTED,
+            help = "number of entries loaded by readahead that were never read"
+    )
+    private final Counter readAheadWastedCounter;
+    @StatsDoc(
+            name = READAHEAD_INFLIGHT_HITS,
+            help = "number of read cache misses served by joining an in-flight background readahead",
+            parent = READ_ENTRY
+    )
+    private final Counter readAheadInflightHitCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -159,6 +193,27 @@ class DbLedgerStorageStats {
         help = "the distribution of number of bytes flushed from write cache to entry log files"
     )
     private final OpStatsLogger flushSizeStats;
+    @StatsDoc(
+        name = STARTUP_LEDGER_INDEX_OPEN,
+        help = "time spent opening the ledger index at startup, including loading the ledgers unless they are"
+            + " loaded in background"
+    )
+    private final OpStatsLogger startupLedgerIndexOpenStats;
+    @StatsDoc(
+        name = STARTUP_LOCATIONS_INDEX_OPEN,
+        help = "time spent opening the locations index at startup"
+    )
+    private final OpStatsLogger startupLocationsIndexOpenStats;
+    @StatsDoc(
+        name = STARTUP_GC_INIT,
+        help = "time spent initializing the garbage collector at startup"
+    )
+    private final OpStatsLogger startupGcInitStats;
+    @StatsDoc(
+        name = STARTUP_TOTAL,
+        help = "time spent initializing the db ledger storage of the directory at startup"
+    )
+    private final OpStatsLogger startupTotalStats;
     @StatsDoc(
         name = THROTTLED_WRITE_REQUESTS,
         help = "The number of requests throttled due to write cache is full"
@@ -195,28 +250,55 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = READ_CACHE_HIT_RATIO,
+        help = "Ratio of read cache lookups that were hits, labeled by read cache admission policy"
+    )
+    private final Gauge<Double> readCacheHitRatioGauge;
+    @StatsDoc(
+        name = READ_CACHE_REJECTED,
+        help = "Number of read-ahead entries rejected by the read cache admission policy"
+    )
+    private final Gauge<Long> readCacheRejectedGauge;
+    @StatsDoc(
+        name = READ_CACHE_PROMOTED,
+        help = "Number of entries promoted by the read cache admission policy to survive segment eviction"
+    )
+    private final Gauge<Long> readCachePromotedGauge;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         String readCachePolicyName,
+                         Supplier<Double> readCacheHitRatioSupplier,
+                         Supplier<Long> readCacheRejectedSupplier,
+                         Supplier<Long> readCachePromotedSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        readEntryZeroCopyCounter = stats.getCounter(READ_ENTRY_ZERO_COPY);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadHitCounter = stats.getCounter(READAHEAD_HITS);
+        readAheadWastedCounter = stats.getCounter(READAHEAD_WASTED);
+        readAheadInflightHitCounter = stats.getCounter(READAHEAD_INFLIGHT_HITS);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
+        startupLedgerIndexOpenStats = stats.getOpStatsLogger(STARTUP_LEDGER_INDEX_OPEN);
+        startupLocationsIndexOpenStats = stats.getOpStatsLogger(STARTUP_LOCATIONS_INDEX_OPEN);
+        startupGcInitStats = stats.getOpStatsLogger(STARTUP_GC_INIT);
+        startupTotalStats = stats.getOpStatsLogger(STARTUP_TOTAL);
 
         throttledWriteRequests = stats.getThreadScopedCounter(THROTTLED_WRITE_REQUESTS);
         throttledWriteStats = stats.getOpStatsLogger(THROTTLED_WRITE);
@@ -271,6 +353,44 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+
+        StatsLogger policyStats = stats.scopeLabel("policy", readCachePolicyName);
+        readCacheHitRatioGauge = new Gauge<Double>() {
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public Double getSample() {
+                return readCacheHitRatioSupplier.get();
+            }
+        };
+        policyStats.registerGauge(READ_CACHE_HIT_RATIO, readCacheHitRatioGauge);
+        readCacheRejectedGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCacheRejectedSupplier.get();
+            }
+        };
+        policyStats.registerGauge(READ_CACHE_REJECTED, readCacheRejectedGauge);
+        readCachePromotedGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCachePromotedSupplier.get();
+            }
+        };
+        policyStats.registerGauge(READ_CACHE_PROMOTED, readCachePromotedGauge);
     }
 
 }
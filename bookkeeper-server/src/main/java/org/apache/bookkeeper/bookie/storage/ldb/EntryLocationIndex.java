@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import java.io.Closeable;
 import java.io.IOException;
@@ -33,7 +34,9 @@ import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigT
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,16 +45,47 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>For each ledger, the highest entry id that might be stored in the index is tracked in memory, so that
+ * lookups for entries past the end of a ledger (eg: speculative reads, long-poll reads beyond the LAC or
+ * existence checks during recovery) are answered without touching the key-value storage.
+ *
+ * <p>The ledgers written since the bookie started are tracked until they are deleted. The other ledgers looked up,
+ * including the unknown ones, are cached with the last entry found in the storage, which only changes when an
+ * entry is added. That cache is bounded, and is cleared once full.
  */
 public class EntryLocationIndex implements Closeable {
 
+    // Max number of ledgers not written since the bookie started whose last stored entry is cached
+    static final int DEFAULT_MAX_STORED_LEDGER_RANGES = 64 * 1024;
+
     private final KeyValueStorage locationsDb;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
     private final EntryLocationIndexStats stats;
+    // The ledgers written since the bookie started
+    private final ConcurrentLongHashMap<LedgerEntryRange> ledgerEntryRanges =
+            ConcurrentLongHashMap.<LedgerEntryRange>newBuilder()
+                    .expectedItems(16 * 1024)
+                    .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                    .build();
+    // The other ledgers looked up, mapped to their last entry in the storage + 1, 0 if they have no entries
+    private final ConcurrentLongLongHashMap storedLedgerRanges;
+    private final int maxStoredLedgerRanges;
     private boolean isCompacting;
 
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, DEFAULT_MAX_STORED_LEDGER_RANGES);
+    }
+
+    @VisibleForTesting
+    EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, int maxStoredLedgerRanges) throws IOException {
+        this.maxStoredLedgerRanges = maxStoredLedgerRanges;
+        this.storedLedgerRanges = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(16 * 1024)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
 
         this.stats = new EntryLocationIndexStats(
@@ -71,6 +105,14 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (!mightContain(ledgerId, entryId)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Entry {}@{} is past the last entry in db index", ledgerId, entryId);
+            }
+            stats.getLookupEntryLocationFilteredCounter().inc();
+            return 0;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -157,6 +199,19 @@ public class EntryLocationIndex implements Closeable {
             log.debug("Add location - ledger: {} -- entry: {} -- location: {}", ledgerId, entryId, location);
         }
 
+        // Must be recorded before the batch is flushed, so that a concurrent lookup can never miss the entry.
+        // The indexes of deleted ledgers are going away, lookups for them go straight to the storage.
+        if (!deletedLedgers.contains(ledgerId)) {
+            LedgerEntryRange range = ledgerEntryRanges.computeIfAbsent(ledgerId, l -> new LedgerEntryRange());
+            range.entryAdded(entryId);
+            if (deletedLedgers.contains(ledgerId)) {
+                // Deleted in the meantime
+                ledgerEntryRanges.remove(ledgerId, range);
+            }
+        }
+        // The last stored entry cached by the lookups is outdated, and the range above takes over
+        storedLedgerRanges.remove(ledgerId);
+
         try {
             batch.put(key.array, value.array);
         } finally {
@@ -188,6 +243,15 @@ public class EntryLocationIndex implements Closeable {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
+        ledgerEntryRanges.remove(ledgerId);
+        storedLedgerRanges.remove(ledgerId);
+    }
+
+    /**
+     * @return whether the ledger was deleted and its indexes are pending removal
+     */
+    public boolean isDeleted(long ledgerId) {
+        return deletedLedgers.contains(ledgerId);
     }
 
     public String getEntryLocationDBPath() {
@@ -235,6 +299,8 @@ public class EntryLocationIndex implements Closeable {
             batch.flush();
             for (long ledgerId : ledgersToDelete) {
                 deletedLedgers.remove(ledgerId);
+                ledgerEntryRanges.remove(ledgerId);
+                storedLedgerRanges.remove(ledgerId);
             }
         } finally {
             firstKeyWrapper.recycle();
@@ -245,5 +311,107 @@ public class EntryLocationIndex implements Closeable {
                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
     }
 
+    /**
+     * @return false if the entry is definitely not stored in the index
+     */
+    private boolean mightContain(long ledgerId, long entryId) throws IOException {
+        if (deletedLedgers.contains(ledgerId)) {
+            return true;
+        }
+
+        LedgerEntryRange range = ledgerEntryRanges.get(ledgerId);
+        if (range != null && range.isLoaded()) {
+            return entryId <= range.getMaxEntryId();
+        }
+        if (range == null) {
+            long storedEntries = storedLedgerRanges.get(ledgerId);
+            if (storedEntries >= 0) {
+                return entryId < storedEntries;
+            }
+        }
+
+        long lastEntryInDb;
+        try {
+            lastEntryInDb = getLastEntryInLedgerInternal(ledgerId);
+        } catch (Bookie.NoEntryException e) {
+            lastEntryInDb = -1;
+        }
+
+        if (range == null) {
+            return cacheStoredRange(ledgerId, entryId, lastEntryInDb);
+        }
+        range.loaded(lastEntryInDb);
+
+        if (deletedLedgers.contains(ledgerId)) {
+            // Deleted in the meantime
+            ledgerEntryRanges.remove(ledgerId, range);
+            return true;
+        }
+        return entryId <= range.getMaxEntryId();
+    }
+
+    private boolean cacheStoredRange(long ledgerId, long entryId, long lastEntryInDb) {
+        if (storedLedgerRanges.size() >= maxStoredLedgerRanges) {
+            storedLedgerRanges.clear();
+        }
+        storedLedgerRanges.put(ledgerId, lastEntryInDb + 1);
+
+        // An entry added meanwhile either finds the cached range and drops it, or is seen here
+        LedgerEntryRange range = ledgerEntryRanges.get(ledgerId);
+        if (range != null || deletedLedgers.contains(ledgerId)) {
+            storedLedgerRanges.remove(ledgerId);
+            return true;
+        }
+        return entryId <= lastEntryInDb;
+    }
+
+    /**
+     * @return the number of ledgers written since the bookie started whose entry range is tracked in memory
+     */
+    @VisibleForTesting
+    long trackedLedgersCount() {
+        return ledgerEntryRanges.size();
+    }
+
+    /**
+     * @return the number of other ledgers whose last stored entry is cached
+     */
+    @VisibleForTesting
+    long storedLedgersCount() {
+        return storedLedgerRanges.size();
+    }
+
+    /**
+     * Highest entry id of a ledger that might be stored in the index.
+     *
+     * <p>The range is lazily loaded from the storage on the first lookup. Entries added in the meantime are
+     * merged, since they might not be flushed yet when the storage is read.
+     */
+    private static class LedgerEntryRange {
+        private volatile long maxEntryId = -1;
+        private volatile boolean loaded = false;
+
+        boolean isLoaded() {
+            return loaded;
+        }
+
+        long getMaxEntryId() {
+            return maxEntryId;
+        }
+
+        synchronized void entryAdded(long entryId) {
+            if (entryId > maxEntryId) {
+                maxEntryId = entryId;
+            }
+        }
+
+        synchronized void loaded(long lastEntryInDb) {
+            if (lastEntryInDb > maxEntryId) {
+                maxEntryId = lastEntryInDb;
+            }
+            loaded = true;
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
@@ -0,0 +1,1180 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pure Java key-value storage specialized for the entry location index, where both keys (ledgerId, entryId)
+ * and values (location) have a fixed size and are written in large batches.
+ *
+ * <p>The storage is a simple log-structured merge tree:
+ * <ul>
+ * <li>Writes are appended to a write-ahead log and applied to an in-memory sorted memtable.</li>
+ * <li>When the memtable is full, it is written into a new immutable {@link SortedRun} and the write-ahead log
+ * is discarded.</li>
+ * <li>When there are too many runs, the most recent runs are merged together, picking runs of similar size so
+ * that each entry is only rewritten a logarithmic number of times.</li>
+ * </ul>
+ *
+ * <p>Compared to RocksDB, there is no block cache, compression or JNI transition: runs are memory mapped and
+ * point lookups are binary searches in the page cache, going from the newest to the oldest run. Deletions are
+ * recorded as range tombstones, which only hide the entries of the older runs.
+ *
+ * <p>Readers never take locks: they work on an immutable snapshot of the list of runs, which is replaced
+ * atomically by the writers. Writers are serialized. Snapshots are reference counted, so that the runs merged
+ * away are unmapped as soon as the last reader using them is done.
+ *
+ * <p>Like with the RocksDB storage, single puts and deletes are only durable after {@link #sync()}, while
+ * batches are synced when flushed.
+ */
+public class KeyValueStorageSortedRuns implements KeyValueStorage {
+
+    static KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) ->
+            new KeyValueStorageSortedRuns(defaultBasePath, subPath, dbConfigType, conf);
+
+    private static final String MAX_MEMTABLE_ENTRIES = "dbStorage_sortedRuns_maxMemtableEntries";
+    private static final String MAX_RUNS = "dbStorage_sortedRuns_maxRuns";
+
+    private static final int DEFAULT_MAX_MEMTABLE_ENTRIES = 512 * 1024;
+    private static final int DEFAULT_MAX_RUNS = 8;
+
+    static final int KEY_SIZE = 16;
+    static final int VALUE_SIZE = 8;
+
+    private static final String WAL_PREFIX = "wal-";
+    private static final String WAL_SUFFIX = ".log";
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE_RANGE = 2;
+    private static final int PUT_SIZE = 1 + KEY_SIZE + VALUE_SIZE;
+    private static final int DELETE_RANGE_SIZE = 1 + 2 * KEY_SIZE;
+
+    private final File dbDir;
+    private final String dbPath;
+    private final int maxMemtableEntries;
+    private final int maxRuns;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+    private volatile long memtableEntries = 0;
+
+    // Guarded by writeLock
+    private long nextRunSeq = 0;
+    private long nextWalSeq = 0;
+    private WriteAheadLog wal;
+    private final List<File> replayedWals = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    public KeyValueStorageSortedRuns(String basePath, String subPath, DbConfigType dbConfigType,
+                                     ServerConfiguration conf) throws IOException {
+        this.dbDir = FileSystems.getDefault().getPath(basePath, subPath).toFile();
+        this.dbPath = dbDir.toString();
+        this.maxMemtableEntries = Math.max(1, conf.getInt(MAX_MEMTABLE_ENTRIES, DEFAULT_MAX_MEMTABLE_ENTRIES));
+        this.maxRuns = Math.max(1, conf.getInt(MAX_RUNS, DEFAULT_MAX_RUNS));
+
+        Files.createDirectories(dbDir.toPath());
+        if (new File(dbDir, "CURRENT").exists()) {
+            throw new IOException("Directory " + dbPath + " contains a RocksDB database. The index needs to be"
+                    + " rebuilt before switching to a different storage");
+        }
+
+        writeLock.lock();
+        try {
+            recover();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<SortedRun> runs = new ArrayList<>();
+        List<File> walFiles = new ArrayList<>();
+
+        File[] files = dbDir.listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list directory " + dbPath);
+        }
+
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(SortedRun.TMP_SUFFIX)) {
+                // Leftover of a run that was not completed
+                if (!f.delete()) {
+                    log.warn("Failed to delete temporary file {}", f);
+                }
+            } else if (name.startsWith(SortedRun.FILE_PREFIX) && name.endsWith(SortedRun.FILE_SUFFIX)) {
+                runs.add(SortedRun.open(f));
+            } else if (name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX)) {
+                walFiles.add(f);
+            }
+        }
+
+        // Discard the runs that were merged into a newer run, in case we crashed before deleting them
+        List<SortedRun> liveRuns = new ArrayList<>();
+        for (SortedRun run : runs) {
+            boolean replaced = false;
+            for (SortedRun other : runs) {
+                if (other.seq() > run.seq() && other.replacedMinSeq() <= run.seq()) {
+                    replaced = true;
+                    break;
+                }
+            }
+
+            if (replaced) {
+                log.info("Deleting sorted run {} which was already merged", run);
+                run.close();
+                run.delete();
+            } else {
+                liveRuns.add(run);
+            }
+            nextRunSeq = Math.max(nextRunSeq, run.seq() + 1);
+        }
+
+        // Newest run first
+        liveRuns.sort(Comparator.comparingLong(SortedRun::seq).reversed());
+        snapshot = new Snapshot(liveRuns);
+
+        walFiles.sort(Comparator.comparingLong(KeyValueStorageSortedRuns::walSeq));
+        for (File walFile : walFiles) {
+            WriteAheadLog.replay(walFile, this::apply);
+            nextWalSeq = Math.max(nextWalSeq, walSeq(walFile) + 1);
+        }
+        replayedWals.addAll(walFiles);
+
+        wal = new WriteAheadLog(new File(dbDir, walFileName(nextWalSeq++)));
+
+        if (!snapshot.memtable.isEmpty()) {
+            flushMemtable();
+        } else {
+            deleteReplayedWals();
+        }
+
+        log.info("Opened sorted runs storage at {} with runs: {}", dbPath, snapshot.runs);
+    }
+
+    private static String walFileName(long seq) {
+        return String.format("%s%016x%s", WAL_PREFIX, seq, WAL_SUFFIX);
+    }
+
+    private static long walSeq(File walFile) {
+        String name = walFile.getName();
+        return Long.parseUnsignedLong(name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length()),
+                16);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        ByteBuffer op = ByteBuffer.allocate(PUT_SIZE);
+        writePut(op, key, value);
+        op.flip();
+        write(op, false);
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        byte[] value = new byte[VALUE_SIZE];
+        return get(key, value) < 0 ? null : value;
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        if (value.length < VALUE_SIZE) {
+            throw new IOException("Value array is too small to fit the result");
+        }
+
+        long k1 = ArrayUtil.getLong(key, 0);
+        long k2 = ArrayUtil.getLong(key, 8);
+        Snapshot s = acquireSnapshot();
+        try {
+            Long memtableValue = s.memtable.get(new Key(k1, k2));
+            if (memtableValue != null) {
+                ArrayUtil.setLong(value, 0, memtableValue);
+                return VALUE_SIZE;
+            }
+            if (s.memtableTombstoneCovering(k1, k2) != null) {
+                return -1;
+            }
+
+            for (SortedRun run : s.runs) {
+                long idx = run.find(k1, k2);
+                if (idx >= 0) {
+                    ArrayUtil.setLong(value, 0, run.value(idx));
+                    return VALUE_SIZE;
+                }
+                if (run.coveringTombstone(k1, k2) >= 0) {
+                    return -1;
+                }
+            }
+            return -1;
+        } finally {
+            s.release();
+        }
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        return seek(key, true);
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        return seek(key, false);
+    }
+
+    private Entry<byte[], byte[]> seek(byte[] key, boolean floor) throws IOException {
+        checkKey(key);
+        Snapshot s = acquireSnapshot();
+        try {
+            return seek(s, new Key(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8)), floor);
+        } finally {
+            s.release();
+        }
+    }
+
+    /**
+     * Find the newest visible entry whose key is either the biggest lesser than the given key (floor), or the
+     * smallest greater or equal (ceil).
+     *
+     * <p>The memtable is source 0 and runs follow from the newest to the oldest. Each source has its own bound:
+     * when the best candidate is hidden by a tombstone of a newer source, the bounds of all the sources older
+     * than the tombstone skip the whole deleted range at once.
+     */
+    private static Entry<byte[], byte[]> seek(Snapshot s, Key key, boolean floor) {
+        int sourcesCount = s.runs.size() + 1;
+        Key[] bounds = new Key[sourcesCount];
+        for (int i = 0; i < sourcesCount; i++) {
+            bounds[i] = key;
+        }
+
+        while (true) {
+            int winner = -1;
+            long w1 = 0;
+            long w2 = 0;
+            long wValue = 0;
+
+            Entry<Key, Long> memtableCandidate = floor ? s.memtable.lowerEntry(bounds[0])
+                    : s.memtable.ceilingEntry(bounds[0]);
+            if (memtableCandidate != null) {
+                winner = 0;
+                w1 = memtableCandidate.getKey().first;
+                w2 = memtableCandidate.getKey().second;
+                wValue = memtableCandidate.getValue();
+            }
+
+            for (int i = 1; i < sourcesCount; i++) {
+                SortedRun run = s.runs.get(i - 1);
+                long idx = run.ceilIndex(bounds[i].first, bounds[i].second);
+                if (floor) {
+                    idx--;
+                    if (idx < 0) {
+                        continue;
+                    }
+                } else if (idx >= run.entriesCount()) {
+                    continue;
+                }
+
+                long c1 = run.key1(idx);
+                long c2 = run.key2(idx);
+                int cmp = winner < 0 ? 0 : SortedRun.compare(c1, c2, w1, w2);
+                // On ties, the newest source wins
+                if (winner < 0 || (floor ? cmp > 0 : cmp < 0)) {
+                    winner = i;
+                    w1 = c1;
+                    w2 = c2;
+                    wValue = run.value(idx);
+                }
+            }
+
+            if (winner < 0) {
+                return null;
+            }
+
+            // Check whether the candidate was deleted in a newer source
+            int coveringSource = -1;
+            Key tombstoneBegin = null;
+            Key tombstoneEnd = null;
+            for (int i = 0; i < winner && coveringSource < 0; i++) {
+                if (i == 0) {
+                    Entry<Key, Key> tombstone = s.memtableTombstoneCovering(w1, w2);
+                    if (tombstone != null) {
+                        coveringSource = 0;
+                        tombstoneBegin = tombstone.getKey();
+                        tombstoneEnd = tombstone.getValue();
+                    }
+                } else {
+                    SortedRun run = s.runs.get(i - 1);
+                    int idx = run.coveringTombstone(w1, w2);
+                    if (idx >= 0) {
+                        coveringSource = i;
+                        tombstoneBegin = new Key(run.tombstoneBegin1(idx), run.tombstoneBegin2(idx));
+                        tombstoneEnd = new Key(run.tombstoneEnd1(idx), run.tombstoneEnd2(idx));
+                    }
+                }
+            }
+
+            if (coveringSource < 0) {
+                byte[] resKey = new byte[KEY_SIZE];
+                ArrayUtil.setLong(resKey, 0, w1);
+                ArrayUtil.setLong(resKey, 8, w2);
+                byte[] resValue = new byte[VALUE_SIZE];
+                ArrayUtil.setLong(resValue, 0, wValue);
+                return new SimpleImmutableEntry<>(resKey, resValue);
+            }
+
+            for (int i = coveringSource + 1; i < sourcesCount; i++) {
+                if (floor && tombstoneBegin.compareTo(bounds[i]) < 0) {
+                    bounds[i] = tombstoneBegin;
+                } else if (!floor && tombstoneEnd.compareTo(bounds[i]) > 0) {
+                    bounds[i] = tombstoneEnd;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        ByteBuffer op = ByteBuffer.allocate(DELETE_RANGE_SIZE);
+        writeDelete(op, key);
+        op.flip();
+        write(op, false);
+    }
+
+    @Override
+    public String getDBPath() {
+        return dbPath;
+    }
+
+    /**
+     * Runs are not partitioned by key range, so the runs can only be merged as a whole: the memtable is flushed
+     * if it has keys or tombstones in the range, then the runs are merged from the newest one down to the oldest
+     * one having keys or tombstones in the range. The older runs are left untouched.
+     */
+    @Override
+    public void compact(byte[] firstKey, byte[] lastKey) throws IOException {
+        checkKey(firstKey);
+        checkKey(lastKey);
+        Key first = new Key(ArrayUtil.getLong(firstKey, 0), ArrayUtil.getLong(firstKey, 8));
+        Key last = new Key(ArrayUtil.getLong(lastKey, 0), ArrayUtil.getLong(lastKey, 8));
+        if (first.compareTo(last) >= 0) {
+            return;
+        }
+
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (snapshot.memtableOverlaps(first, last)) {
+                flushMemtable();
+            }
+
+            List<SortedRun> runs = snapshot.runs;
+            int count = runs.size();
+            while (count > 0 && !runs.get(count - 1).overlaps(first.first, first.second, last.first, last.second)) {
+                count--;
+            }
+
+            // Merging the newest run alone only rewrites it, unless it's the oldest one and holds tombstones
+            if (count > 1 || (count == 1 && runs.size() == 1 && runs.get(0).tombstonesCount() > 0)) {
+                mergeRuns(count);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void compact() throws IOException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (!snapshot.memtable.isEmpty() || !snapshot.memtableTombstones.isEmpty()) {
+                flushMemtable();
+            }
+
+            List<SortedRun> runs = snapshot.runs;
+            if (runs.size() > 1 || (runs.size() == 1 && runs.get(0).tombstonesCount() > 0)) {
+                mergeRuns(runs.size());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(null, null);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        final SortedRunsIterator iterator = newIterator(firstKey, lastKey);
+        return new CloseableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                return iterator.next().getKey();
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        final SortedRunsIterator iterator = newIterator(null, null);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    private SortedRunsIterator newIterator(byte[] firstKey, byte[] lastKey) {
+        try {
+            return new SortedRunsIterator(acquireSnapshot(), firstKey, lastKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            wal.sync();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long count() throws IOException {
+        long count = memtableEntries;
+        for (SortedRun run : snapshot.runs) {
+            count += run.entriesCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new SortedRunsBatch();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            wal.sync();
+            wal.close();
+            // The runs are unmapped once the readers still using them are done
+            snapshot.release();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Storage " + dbPath + " is already closed");
+        }
+    }
+
+    /**
+     * Get a reference to the current snapshot, which must be released after use.
+     */
+    private Snapshot acquireSnapshot() throws IOException {
+        while (true) {
+            Snapshot s = snapshot;
+            if (s.tryRetain()) {
+                return s;
+            }
+            // The snapshot was replaced by a writer in the meantime, unless the storage was closed
+            checkOpen();
+        }
+    }
+
+    private void replaceSnapshot(Snapshot newSnapshot) {
+        Snapshot previous = snapshot;
+        snapshot = newSnapshot;
+        previous.release();
+    }
+
+    /**
+     * Log and apply a sequence of serialized operations.
+     */
+    private void write(ByteBuffer ops, boolean sync) throws IOException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            wal.append(ops.duplicate(), sync);
+            apply(ops.duplicate());
+
+            if (memtableEntries >= maxMemtableEntries) {
+                flushMemtable();
+                while (snapshot.runs.size() > maxRuns) {
+                    mergeRuns(pickRunsToMerge(snapshot.runs));
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void apply(ByteBuffer ops) throws IOException {
+        Snapshot s = snapshot;
+        while (ops.hasRemaining()) {
+            byte type = ops.get();
+            if (type == OP_PUT) {
+                Key key = new Key(ops.getLong(), ops.getLong());
+                if (s.memtable.put(key, ops.getLong()) == null) {
+                    memtableEntries++;
+                }
+            } else if (type == OP_DELETE_RANGE) {
+                Key begin = new Key(ops.getLong(), ops.getLong());
+                Key end = new Key(ops.getLong(), ops.getLong());
+                if (begin.compareTo(end) >= 0) {
+                    continue;
+                }
+
+                // Add the tombstone before removing the entries, so that readers never see older values
+                s.addMemtableTombstone(begin, end);
+                NavigableMap<Key, Long> deleted = s.memtable.subMap(begin, true, end, false);
+                memtableEntries -= deleted.size();
+                deleted.clear();
+            } else {
+                throw new IOException("Invalid operation type " + type + " in storage " + dbPath);
+            }
+        }
+    }
+
+    /**
+     * Write the memtable into a new sorted run and start a new write-ahead log.
+     */
+    private void flushMemtable() throws IOException {
+        Snapshot s = snapshot;
+
+        WriteAheadLog previousWal = wal;
+        wal = new WriteAheadLog(new File(dbDir, walFileName(nextWalSeq++)));
+
+        SortedRun run;
+        long seq = nextRunSeq++;
+        try (SortedRun.Writer writer = new SortedRun.Writer(dbDir, seq, seq)) {
+            for (Entry<Key, Long> e : s.memtable.entrySet()) {
+                writer.append(e.getKey().first, e.getKey().second, e.getValue());
+            }
+            if (!s.runs.isEmpty()) {
+                // Tombstones are only useful to hide entries of older runs
+                for (Entry<Key, Key> t : s.memtableTombstones.entrySet()) {
+                    writer.addTombstone(t.getKey().first, t.getKey().second, t.getValue().first,
+                            t.getValue().second);
+                }
+            }
+            run = writer.finish();
+        }
+
+        List<SortedRun> runs = new ArrayList<>(s.runs.size() + 1);
+        runs.add(run);
+        runs.addAll(s.runs);
+        replaceSnapshot(new Snapshot(runs));
+        memtableEntries = 0;
+
+        previousWal.close();
+        previousWal.delete();
+        deleteReplayedWals();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Flushed memtable of {} into {}", dbPath, run);
+        }
+    }
+
+    private void deleteReplayedWals() {
+        for (File walFile : replayedWals) {
+            if (!walFile.delete()) {
+                log.warn("Failed to delete write-ahead log {}", walFile);
+            }
+        }
+        replayedWals.clear();
+    }
+
+    /**
+     * Size-tiered selection: always merge the 2 newest runs, and include the next older run as long as it's not
+     * much bigger than the runs selected so far.
+     */
+    private static int pickRunsToMerge(List<SortedRun> runs) {
+        int count = 2;
+        long entries = runs.get(0).entriesCount() + runs.get(1).entriesCount();
+        while (count < runs.size() && runs.get(count).entriesCount() <= 2 * entries) {
+            entries += runs.get(count).entriesCount();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Merge the given number of newest runs into a single run.
+     */
+    private void mergeRuns(int count) throws IOException {
+        Snapshot s = snapshot;
+        List<SortedRun> toMerge = s.runs.subList(0, count);
+        // If the oldest run is included, there is nothing left for the tombstones to hide
+        boolean keepTombstones = count < s.runs.size();
+
+        long startTime = System.nanoTime();
+        long seq = nextRunSeq++;
+        long replacedMinSeq = toMerge.get(count - 1).seq();
+
+        SortedRun merged;
+        try (SortedRun.Writer writer = new SortedRun.Writer(dbDir, seq, replacedMinSeq)) {
+            mergeEntries(toMerge, writer);
+            if (keepTombstones) {
+                mergeTombstones(toMerge, writer);
+            }
+            merged = writer.finish();
+        }
+
+        List<SortedRun> runs = new ArrayList<>(s.runs.size() - count + 1);
+        runs.add(merged);
+        runs.addAll(s.runs.subList(count, s.runs.size()));
+        replaceSnapshot(new Snapshot(s.memtable, s.memtableTombstones, runs));
+
+        // The merged runs stay mapped until the readers of the previous snapshots are done
+        for (SortedRun run : toMerge) {
+            run.delete();
+        }
+
+        log.info("Merged {} runs of {} into {} in {} ms", count, dbPath, merged,
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private static void mergeEntries(List<SortedRun> runs, SortedRun.Writer writer) throws IOException {
+        // Cursors ordered by key, then from the newest to the oldest run
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>();
+        for (int i = 0; i < runs.size(); i++) {
+            if (runs.get(i).entriesCount() > 0) {
+                queue.add(new RunCursor(runs.get(i), i));
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            RunCursor newest = queue.poll();
+            long k1 = newest.key1;
+            long k2 = newest.key2;
+            long value = newest.run.value(newest.idx);
+            int runIdx = newest.runIdx;
+            advance(queue, newest);
+
+            // Skip the older versions of the same key
+            while (!queue.isEmpty() && queue.peek().key1 == k1 && queue.peek().key2 == k2) {
+                advance(queue, queue.poll());
+            }
+
+            boolean deleted = false;
+            for (int i = 0; i < runIdx && !deleted; i++) {
+                deleted = runs.get(i).coveringTombstone(k1, k2) >= 0;
+            }
+
+            if (!deleted) {
+                writer.append(k1, k2, value);
+            }
+        }
+    }
+
+    private static void advance(PriorityQueue<RunCursor> queue, RunCursor cursor) {
+        if (cursor.next()) {
+            queue.add(cursor);
+        }
+    }
+
+    private static void mergeTombstones(List<SortedRun> runs, SortedRun.Writer writer) {
+        List<Key[]> tombstones = new ArrayList<>();
+        for (SortedRun run : runs) {
+            for (int i = 0; i < run.tombstonesCount(); i++) {
+                tombstones.add(new Key[] {
+                        new Key(run.tombstoneBegin1(i), run.tombstoneBegin2(i)),
+                        new Key(run.tombstoneEnd1(i), run.tombstoneEnd2(i)) });
+            }
+        }
+        tombstones.sort((a, b) -> a[0].compareTo(b[0]));
+
+        Key begin = null;
+        Key end = null;
+        for (Key[] t : tombstones) {
+            if (begin != null && t[0].compareTo(end) <= 0) {
+                if (t[1].compareTo(end) > 0) {
+                    end = t[1];
+                }
+                continue;
+            }
+
+            if (begin != null) {
+                writer.addTombstone(begin.first, begin.second, end.first, end.second);
+            }
+            begin = t[0];
+            end = t[1];
+        }
+
+        if (begin != null) {
+            writer.addTombstone(begin.first, begin.second, end.first, end.second);
+        }
+    }
+
+    private static void checkKey(byte[] key) throws IOException {
+        if (key.length != KEY_SIZE) {
+            throw new IOException("Invalid key size " + key.length + ", only " + KEY_SIZE + " bytes keys are"
+                    + " supported");
+        }
+    }
+
+    private static void writePut(ByteBuffer op, byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        if (value.length != VALUE_SIZE) {
+            throw new IOException("Invalid value size " + value.length + ", only " + VALUE_SIZE + " bytes values"
+                    + " are supported");
+        }
+        op.put(OP_PUT).put(key).put(value);
+    }
+
+    private static void writeDeleteRange(ByteBuffer op, byte[] beginKey, byte[] endKey) throws IOException {
+        checkKey(beginKey);
+        checkKey(endKey);
+        op.put(OP_DELETE_RANGE).put(beginKey).put(endKey);
+    }
+
+    /**
+     * A single key is deleted as the range [key, key + 1).
+     */
+    private static void writeDelete(ByteBuffer op, byte[] key) throws IOException {
+        checkKey(key);
+        long k1 = ArrayUtil.getLong(key, 0);
+        long k2 = ArrayUtil.getLong(key, 8) + 1;
+        if (k2 == 0) {
+            k1++;
+            if (k1 == 0) {
+                throw new IOException("Cannot delete the biggest possible key");
+            }
+        }
+        op.put(OP_DELETE_RANGE).put(key).putLong(k1).putLong(k2);
+    }
+
+    /**
+     * Memtable and list of runs, from the newest to the oldest.
+     *
+     * <p>The storage holds a reference to its current snapshot, and each reader holds one while using it. The
+     * snapshot holds a reference to each of its runs until it's released by all of them.
+     */
+    private static final class Snapshot {
+        final ConcurrentSkipListMap<Key, Long> memtable;
+        // Range tombstones, as begin (included) -> end (excluded), not overlapping
+        final ConcurrentSkipListMap<Key, Key> memtableTombstones;
+        final List<SortedRun> runs;
+        private final AtomicInteger refCnt = new AtomicInteger(1);
+
+        Snapshot(List<SortedRun> runs) {
+            this(new ConcurrentSkipListMap<>(), new ConcurrentSkipListMap<>(), runs);
+        }
+
+        Snapshot(ConcurrentSkipListMap<Key, Long> memtable, ConcurrentSkipListMap<Key, Key> memtableTombstones,
+                 List<SortedRun> runs) {
+            this.memtable = memtable;
+            this.memtableTombstones = memtableTombstones;
+            this.runs = Collections.unmodifiableList(runs);
+            runs.forEach(SortedRun::retain);
+        }
+
+        /**
+         * @return false if the snapshot was already released by everyone, and must not be used anymore
+         */
+        boolean tryRetain() {
+            while (true) {
+                int cnt = refCnt.get();
+                if (cnt == 0) {
+                    return false;
+                }
+                if (refCnt.compareAndSet(cnt, cnt + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refCnt.decrementAndGet() == 0) {
+                runs.forEach(SortedRun::release);
+            }
+        }
+
+        boolean memtableOverlaps(Key begin, Key end) {
+            if (!memtable.subMap(begin, true, end, false).isEmpty()) {
+                return true;
+            }
+            Entry<Key, Key> tombstone = memtableTombstones.lowerEntry(end);
+            return tombstone != null && tombstone.getValue().compareTo(begin) > 0;
+        }
+
+        Entry<Key, Key> memtableTombstoneCovering(long k1, long k2) {
+            Key key = new Key(k1, k2);
+            Entry<Key, Key> tombstone = memtableTombstones.floorEntry(key);
+            if (tombstone != null && key.compareTo(tombstone.getValue()) < 0) {
+                return tombstone;
+            }
+            return null;
+        }
+
+        void addMemtableTombstone(Key begin, Key end) {
+            Entry<Key, Key> previous = memtableTombstones.floorEntry(begin);
+            if (previous != null && previous.getValue().compareTo(begin) >= 0) {
+                begin = previous.getKey();
+                if (previous.getValue().compareTo(end) > 0) {
+                    end = previous.getValue();
+                }
+            }
+
+            // Extend the range to include all the following overlapping tombstones
+            NavigableMap<Key, Key> overlapping = memtableTombstones.subMap(begin, false, end, true);
+            for (Key e : overlapping.values()) {
+                if (e.compareTo(end) > 0) {
+                    end = e;
+                }
+            }
+
+            memtableTombstones.put(begin, end);
+            memtableTombstones.subMap(begin, false, end, true).clear();
+        }
+    }
+
+    /**
+     * Iterates over a snapshot of the storage, by repeatedly looking up the next visible key.
+     */
+    private static class SortedRunsIterator implements Iterator<Entry<byte[], byte[]>> {
+        private final Snapshot s;
+        private final Key lastKey;
+        private Entry<byte[], byte[]> next;
+        private boolean released = false;
+
+        SortedRunsIterator(Snapshot s, byte[] firstKey, byte[] lastKey) {
+            this.s = s;
+            this.lastKey = lastKey != null ? new Key(ArrayUtil.getLong(lastKey, 0), ArrayUtil.getLong(lastKey, 8))
+                    : null;
+            Key first = firstKey != null ? new Key(ArrayUtil.getLong(firstKey, 0), ArrayUtil.getLong(firstKey, 8))
+                    : new Key(0, 0);
+            this.next = filter(seek(s, first, false));
+        }
+
+        private Entry<byte[], byte[]> filter(Entry<byte[], byte[]> entry) {
+            if (entry != null && lastKey != null && keyOf(entry).compareTo(lastKey) >= 0) {
+                entry = null;
+            }
+            if (entry == null) {
+                // Don't keep the runs mapped until the iterator is closed
+                close();
+            }
+            return entry;
+        }
+
+        void close() {
+            if (!released) {
+                released = true;
+                s.release();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<byte[], byte[]> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<byte[], byte[]> res = next;
+            Key key = keyOf(res);
+            long k2 = key.second + 1;
+            long k1 = k2 == 0 ? key.first + 1 : key.first;
+            if (k1 == 0 && k2 == 0) {
+                next = filter(null);
+            } else {
+                next = filter(seek(s, new Key(k1, k2), false));
+            }
+            return res;
+        }
+
+        private Key keyOf(Entry<byte[], byte[]> entry) {
+            return new Key(ArrayUtil.getLong(entry.getKey(), 0), ArrayUtil.getLong(entry.getKey(), 8));
+        }
+    }
+
+    private class SortedRunsBatch implements Batch {
+        private ByteBuffer ops = ByteBuffer.allocate(64 * 1024);
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            ensureCapacity(PUT_SIZE);
+            writePut(ops, key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            ensureCapacity(DELETE_RANGE_SIZE);
+            writeDelete(ops, key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            ensureCapacity(DELETE_RANGE_SIZE);
+            writeDeleteRange(ops, beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            ops.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ByteBuffer pending = ops.duplicate();
+            pending.flip();
+            if (pending.hasRemaining()) {
+                write(pending, true);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void ensureCapacity(int size) {
+            if (ops.remaining() < size) {
+                ByteBuffer newOps = ByteBuffer.allocate(Math.max(ops.capacity() * 2, ops.position() + size));
+                ops.flip();
+                newOps.put(ops);
+                ops = newOps;
+            }
+        }
+    }
+
+    private static final class RunCursor implements Comparable<RunCursor> {
+        final SortedRun run;
+        final int runIdx;
+        long idx = 0;
+        long key1;
+        long key2;
+
+        RunCursor(SortedRun run, int runIdx) {
+            this.run = run;
+            this.runIdx = runIdx;
+            this.key1 = run.key1(0);
+            this.key2 = run.key2(0);
+        }
+
+        boolean next() {
+            if (++idx >= run.entriesCount()) {
+                return false;
+            }
+            key1 = run.key1(idx);
+            key2 = run.key2(idx);
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunCursor o) {
+            int res = SortedRun.compare(key1, key2, o.key1, o.key2);
+            return res != 0 ? res : Integer.compare(runIdx, o.runIdx);
+        }
+    }
+
+    /**
+     * Two longs key, compared as unsigned to match the byte order of the serialized keys.
+     */
+    private static final class Key implements Comparable<Key> {
+        final long first;
+        final long second;
+
+        Key(long first, long second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            return SortedRun.compare(first, second, o.first, o.second);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return first == other.first && second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(first * 31 + second);
+        }
+    }
+
+    /**
+     * Write-ahead log of the operations applied to the memtable.
+     *
+     * <p>Each record is: [length][crc32][operations].
+     */
+    private static final class WriteAheadLog {
+        private static final int RECORD_HEADER_SIZE = 8;
+
+        private final File file;
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        WriteAheadLog(File file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            SortedRun.syncDirectory(file.getParentFile());
+        }
+
+        void append(ByteBuffer ops, boolean sync) throws IOException {
+            crc.reset();
+            crc.update(ops.array(), ops.arrayOffset() + ops.position(), ops.remaining());
+
+            header.clear();
+            header.putInt(ops.remaining());
+            header.putInt((int) crc.getValue());
+            header.flip();
+
+            ByteBuffer[] buffers = { header, ops };
+            while (header.hasRemaining() || ops.hasRemaining()) {
+                channel.write(buffers);
+            }
+
+            if (sync) {
+                channel.force(false);
+            }
+        }
+
+        void sync() throws IOException {
+            channel.force(false);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        void delete() {
+            if (!file.delete()) {
+                log.warn("Failed to delete write-ahead log {}", file);
+            }
+        }
+
+        interface OpsConsumer {
+            void accept(ByteBuffer ops) throws IOException;
+        }
+
+        /**
+         * Replay all the complete records of a log. A truncated or corrupted record, left by a crash while
+         * writing, ends the replay.
+         */
+        static void replay(File file, OpsConsumer consumer) throws IOException {
+            byte[] data = Files.readAllBytes(file.toPath());
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            CRC32 crc = new CRC32();
+            int records = 0;
+
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+
+                ByteBuffer ops = ByteBuffer.wrap(data, buffer.position(), length).slice();
+                crc.reset();
+                crc.update(data, buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Found corrupted record in write-ahead log {}, skipping the rest of the log", file);
+                    break;
+                }
+
+                consumer.accept(ops);
+                buffer.position(buffer.position() + length);
+                records++;
+            }
+
+            log.info("Replayed {} records from write-ahead log {}", records, file);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageSortedRuns.class);
+}
@@ -24,12 +24,18 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Arrays;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.bookkeeper.bookie.Bookie;
@@ -37,9 +43,11 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,16 +55,22 @@ import org.slf4j.LoggerFactory;
  * Maintains an index for the ledgers metadata.
  *
  * <p>The key is the ledgerId and the value is the {@link LedgerData} content.
+ *
+ * <p>All the ledgers are loaded in memory when the index is opened. If background loading is enabled, the index
+ * is usable right away and the ledgers are loaded by a background thread: until the load is complete, the ledgers
+ * which are not in memory yet are looked up in the db.
  */
 public class LedgerMetadataIndex implements Closeable {
     // Non-ledger data should have negative ID
     private static final long STORAGE_FLAGS = -0xeefd;
+    // Number of ledgers stored, only maintained by the CompactLedgerMetadataIndex
+    static final long LEDGERS_COUNT = -0xeefe;
 
     // Contains all ledgers stored in the bookie
     private final ConcurrentLongHashMap<LedgerData> ledgers;
-    private final AtomicInteger ledgersCount;
+    final AtomicInteger ledgersCount;
 
-    private final KeyValueStorage ledgersDb;
+    final KeyValueStorage ledgersDb;
     private final LedgerMetadataIndexStats stats;
 
     // Holds ledger modifications applied in memory map, and pending to be flushed on db
@@ -66,48 +80,212 @@ public class LedgerMetadataIndex implements Closeable {
     private final ConcurrentLinkedQueue<Long> pendingDeletedLedgers;
     private final ReentrantLock[] locks = new ReentrantLock[16];
 
+    // Completed when all the ledgers stored in the db have been loaded in memory
+    private final CompletableFuture<Void> ledgersLoadFuture = new CompletableFuture<>();
+    private volatile boolean ledgersLoaded;
+    // Ledgers deleted while loading the ledgers in background, that must not be loaded from the db anymore
+    private final ConcurrentLongHashSet deletedWhileLoading;
+    private volatile boolean closed = false;
+
     public LedgerMetadataIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, true);
+    }
+
+    LedgerMetadataIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, boolean loadLedgers) throws IOException {
         ledgersDb = storageFactory.newKeyValueStorage(basePath, "ledgers", DbConfigType.LedgerMetadata, conf);
 
         ledgers = ConcurrentLongHashMap.<LedgerData>newBuilder().build();
         ledgersCount = new AtomicInteger();
+        deletedWhileLoading = ConcurrentLongHashSet.newBuilder().build();
+
+        this.pendingLedgersUpdates = new ConcurrentLinkedQueue<Entry<Long, LedgerData>>();
+        this.pendingDeletedLedgers = new ConcurrentLinkedQueue<Long>();
+
+        this.stats = new LedgerMetadataIndexStats(
+            stats,
+            () -> (long) ledgersCount.get());
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+
+        if (loadLedgers) {
+            dropLedgersCount();
+        }
 
         // Read all ledgers from db
+        if (!loadLedgers) {
+            ledgersLoaded = true;
+            ledgersLoadFuture.complete(null);
+        } else if (DbLedgerStorage.getBooleanVariableOrDefault(conf,
+                DbLedgerStorage.LEDGER_METADATA_INDEX_BACKGROUND_LOADING, false)) {
+            ExecutorService loader = Executors.newSingleThreadExecutor(
+                    new DefaultThreadFactory("db-storage-ledgers-loader"));
+            loader.execute(this::loadLedgersInBackground);
+            loader.shutdown();
+        } else {
+            long startTime = MathUtils.nowInNano();
+            loadLedgers();
+            ledgersLoaded = true;
+            ledgersLoadFuture.complete(null);
+            this.stats.getLedgersLoadStats().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Drop the number of ledgers stored, which this index doesn't maintain, so that the
+     * {@link CompactLedgerMetadataIndex} counts the ledgers again if it is used later on the same db.
+     */
+    private void dropLedgersCount() throws IOException {
+        LongWrapper key = LongWrapper.get(LEDGERS_COUNT);
+        try {
+            if (ledgersDb.get(key.array) != null) {
+                ledgersDb.delete(key.array);
+                ledgersDb.sync();
+            }
+        } finally {
+            key.recycle();
+        }
+    }
+
+    private void loadLedgersInBackground() {
+        long startTime = MathUtils.nowInNano();
+        try {
+            loadLedgers();
+            if (closed) {
+                throw new IOException("Ledger metadata index closed while loading the ledgers");
+            }
+
+            ledgersLoaded = true;
+            // Wait for the lookups that started before the ledgers were loaded, so that none of them can see
+            // the set of deleted ledgers being cleared
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+                lock.unlock();
+            }
+            deletedWhileLoading.clear();
+
+            stats.getLedgersLoadStats().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            log.info("Loaded {} ledgers in background in {} ms", ledgersCount.get(),
+                    MathUtils.elapsedMSec(startTime));
+            ledgersLoadFuture.complete(null);
+        } catch (Throwable t) {
+            stats.getLedgersLoadStats().registerFailedEvent(
+                    MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            if (!closed) {
+                log.error("Failed to load the ledgers in background", t);
+            }
+            ledgersLoadFuture.completeExceptionally(t);
+        }
+    }
+
+    private void loadLedgers() throws IOException {
         CloseableIterator<Entry<byte[], byte[]>> iterator = ledgersDb.iterator();
         try {
-            while (iterator.hasNext()) {
+            while (iterator.hasNext() && !closed) {
                 Entry<byte[], byte[]> entry = iterator.next();
                 long ledgerId = ArrayUtil.getLong(entry.getKey(), 0);
                 if (ledgerId >= 0) {
                     LedgerData ledgerData = LedgerData.parseFrom(entry.getValue());
-                    ledgers.put(ledgerId, ledgerData);
-                    ledgersCount.incrementAndGet();
+                    ReentrantLock lock = lockForLedger(ledgerId);
+                    lock.lock();
+                    try {
+                        if (!deletedWhileLoading.contains(ledgerId)) {
+                            putLoadedLedger(ledgerId, ledgerData);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
                 }
             }
         } finally {
             iterator.close();
         }
+    }
+
+    /**
+     * Insert a ledger read from the db, unless it has been modified in memory in the meantime.
+     *
+     * @return the ledger data in memory
+     */
+    private LedgerData putLoadedLedger(long ledgerId, LedgerData ledgerData) {
+        LedgerData existing = ledgers.putIfAbsent(ledgerId, ledgerData);
+        if (existing != null) {
+            return existing;
+        }
+        ledgersCount.incrementAndGet();
+        return ledgerData;
+    }
 
-        this.pendingLedgersUpdates = new ConcurrentLinkedQueue<Entry<Long, LedgerData>>();
-        this.pendingDeletedLedgers = new ConcurrentLinkedQueue<Long>();
+    /**
+     * Get the ledger data from memory or, if the ledgers are still being loaded, from the db.
+     *
+     * @return the ledger data or null if the ledger doesn't exist
+     */
+    private LedgerData getIfExists(long ledgerId) throws IOException {
+        LedgerData ledgerData = ledgers.get(ledgerId);
+        if (ledgerData != null || ledgersLoaded) {
+            return ledgerData;
+        }
 
-        this.stats = new LedgerMetadataIndexStats(
-            stats,
-            () -> (long) ledgersCount.get());
+        ReentrantLock lock = lockForLedger(ledgerId);
+        lock.lock();
+        LongWrapper key = LongWrapper.get();
+        try {
+            ledgerData = ledgers.get(ledgerId);
+            if (ledgerData != null || ledgersLoaded || deletedWhileLoading.contains(ledgerId)) {
+                return ledgerData;
+            }
 
-        for (int i = 0; i < locks.length; i++) {
-            locks[i] = new ReentrantLock();
+            key.set(ledgerId);
+            byte[] value = ledgersDb.get(key.array);
+            if (value == null) {
+                return null;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded ledger {} from db", ledgerId);
+            }
+            return putLoadedLedger(ledgerId, LedgerData.parseFrom(value));
+        } finally {
+            key.recycle();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until all the ledgers have been loaded in memory.
+     */
+    void waitForLedgersLoaded() throws IOException {
+        try {
+            ledgersLoadFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the ledgers", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to load the ledgers", e.getCause());
         }
     }
 
     @Override
     public void close() throws IOException {
+        closed = true;
+        try {
+            // The ledgers db cannot be closed while it is being scanned
+            ledgersLoadFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already logged
+        }
         ledgersDb.close();
     }
 
     public LedgerData get(long ledgerId) throws IOException {
-        LedgerData ledgerData = ledgers.get(ledgerId);
+        LedgerData ledgerData = getIfExists(ledgerId);
         if (ledgerData == null) {
             if (log.isDebugEnabled()) {
                 log.debug("Ledger not found {}", ledgerId);
@@ -148,6 +326,9 @@ public class LedgerMetadataIndex implements Closeable {
                 }
                 ledgersCount.decrementAndGet();
             }
+            if (!ledgersLoaded) {
+                deletedWhileLoading.add(ledgerId);
+            }
 
             pendingDeletedLedgers.add(ledgerId);
             pendingLedgersUpdates.removeIf(e -> e.getKey() == ledgerId);
@@ -158,6 +339,7 @@ public class LedgerMetadataIndex implements Closeable {
 
     public Iterable<Long> getActiveLedgersInRange(final long firstLedgerId, final long lastLedgerId)
             throws IOException {
+        waitForLedgersLoaded();
         return Iterables.filter(ledgers.keys(), new Predicate<Long>() {
             @Override
             public boolean apply(Long ledgerId) {
@@ -258,7 +440,7 @@ public class LedgerMetadataIndex implements Closeable {
         ReentrantLock lock = lockForLedger(ledgerId);
         lock.lock();
         try {
-            LedgerData ledgerData = ledgers.get(ledgerId);
+            LedgerData ledgerData = getIfExists(ledgerId);
             if (ledgerData == null) {
                 // New ledger inserted
                 ledgerData = LedgerData.newBuilder().setExists(true).setFenced(false)
@@ -332,7 +514,7 @@ public class LedgerMetadataIndex implements Closeable {
         key.recycle();
     }
 
-    private ReentrantLock lockForLedger(long ledgerId) {
+    ReentrantLock lockForLedger(long ledgerId) {
         return locks[Math.abs((int) ledgerId) % locks.length];
     }
 
@@ -385,7 +567,7 @@ public class LedgerMetadataIndex implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(LedgerMetadataIndex.class);
 
     void setExplicitLac(long ledgerId, ByteBuf lac) throws IOException {
-        LedgerData ledgerData = ledgers.get(ledgerId);
+        LedgerData ledgerData = getIfExists(ledgerId);
         if (ledgerData != null) {
             LedgerData newLedgerData = LedgerData.newBuilder(ledgerData)
                     .setExplicitLac(ByteString.copyFrom(lac.nioBuffer())).build();
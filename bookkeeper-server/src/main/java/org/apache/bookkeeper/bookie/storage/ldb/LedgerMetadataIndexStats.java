@@ -25,6 +25,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import java.util.function.Supplier;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
 
@@ -40,12 +41,18 @@ import org.apache.bookkeeper.stats.annotations.StatsDoc;
 class LedgerMetadataIndexStats {
 
     private static final String LEDGERS_COUNT = "ledgers-count";
+    private static final String STARTUP_LEDGERS_LOAD = "startup-ledgers-load";
 
     @StatsDoc(
         name = LEDGERS_COUNT,
         help = "Current number of ledgers"
     )
     private final Gauge<Long> ledgersCountGauge;
+    @StatsDoc(
+        name = STARTUP_LEDGERS_LOAD,
+        help = "time spent loading all the ledgers of the ledger metadata index in memory at startup"
+    )
+    private final OpStatsLogger ledgersLoadStats;
 
     LedgerMetadataIndexStats(StatsLogger statsLogger,
                              Supplier<Long> ledgersCountSupplier) {
@@ -61,6 +68,7 @@ class LedgerMetadataIndexStats {
             }
         };
         statsLogger.registerGauge(LEDGERS_COUNT, ledgersCountGauge);
+        ledgersLoadStats = statsLogger.getOpStatsLogger(STARTUP_LEDGERS_LOAD);
     }
 
 }
@@ -35,7 +35,9 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.Journal;
@@ -199,10 +201,25 @@ public class LedgersIndexRebuildOp {
     }
 
     private List<Journal> getJournals(ServerConfiguration conf) throws IOException {
-        List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-        int idx = 0;
+        List<File> journalDirs = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
         for (File journalDir : conf.getJournalDirs()) {
-            journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
+            journalDirs.add(new File(journalDir, BookKeeperConstants.CURRENT_DIR));
+        }
+        List<File> journalStreamDirs = Journal.getJournalStreamDirectories(journalDirs,
+                conf.getJournalStreamsPerDirectory());
+        SortedMap<Integer, File> staleJournalStreamDirs = Journal.getStaleJournalStreamDirectories(journalDirs,
+                conf.getJournalStreamsPerDirectory());
+        List<Journal> journals = Lists.newArrayListWithCapacity(journalStreamDirs.size()
+                + staleJournalStreamDirs.size());
+        int idx = 0;
+        for (File journalStreamDir : journalStreamDirs) {
+            journals.add(new Journal(idx++, journalStreamDir, conf,
+                    new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                            new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+        }
+        // The ledgers of the streams removed from the configuration are still replayed by the bookie
+        for (Map.Entry<Integer, File> staleStream : staleJournalStreamDirs.entrySet()) {
+            journals.add(new Journal(staleStream.getKey(), staleStream.getValue(), conf,
                     new LedgerDirsManager(conf, conf.getLedgerDirs(),
                             new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
         }
@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A read-ahead batch that is being loaded in background into the read cache.
+ *
+ * <p>Each entry of the batch has its own completion future, completed once the entry was inserted in the read
+ * cache, or once the read-ahead stopped before reaching it. A reader missing an entry of the batch can join the
+ * load of that entry, instead of reading it a second time from the entry log.
+ */
+class PendingReadAhead {
+
+    private final long firstEntryId;
+    private final List<CompletableFuture<Boolean>> loadedEntries;
+
+    PendingReadAhead(long firstEntryId, int batchSize) {
+        this.firstEntryId = firstEntryId;
+        this.loadedEntries = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            loadedEntries.add(new CompletableFuture<>());
+        }
+    }
+
+    boolean contains(long entryId) {
+        return entryId >= firstEntryId && entryId < firstEntryId + loadedEntries.size();
+    }
+
+    /**
+     * Mark an entry of the batch as loaded.
+     *
+     * @param cached whether the entry was admitted in the read cache
+     */
+    void entryLoaded(long entryId, boolean cached) {
+        loadedEntries.get((int) (entryId - firstEntryId)).complete(cached);
+    }
+
+    /**
+     * Release the readers waiting for the entries that are not going to be loaded.
+     */
+    void complete() {
+        for (CompletableFuture<Boolean> loadedEntry : loadedEntries) {
+            loadedEntry.complete(false);
+        }
+    }
+
+    /**
+     * Wait until the given entry of the batch was loaded.
+     *
+     * @return true if the entry was inserted in the read cache, false if it was not, or if the timeout expired
+     *         before it was loaded
+     */
+    boolean waitForEntry(long entryId, long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            return loadedEntries.get((int) (entryId - firstEntryId)).get(timeout, unit);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Keeps track of the read access pattern of each ledger to size the read-ahead batches.
+ *
+ * <p>Similarly to the Linux page cache, each ledger has a read-ahead window:
+ * <ul>
+ * <li>The first miss on a ledger reads ahead a small initial window.</li>
+ * <li>A miss right after the previous window (the reader consumed all of it) is a sequential access and
+ * doubles the window, up to the configured max batch size.</li>
+ * <li>A miss anywhere else is a random access and disables read-ahead for the ledger, until a sequential
+ * access is detected again.</li>
+ * </ul>
+ *
+ * <p>When adaptive read-ahead is disabled, the max batch size is always used, though the hits and the
+ * waste of the read-ahead are still tracked.
+ *
+ * <p>The cache hits are recorded without locking, and only the hits inside the current read-ahead window are
+ * tracked. A hit only marks the ledger as accessed, the time of the last access is updated when the stale
+ * states are cleaned up.
+ */
+class ReadAheadManager {
+
+    private static final long STATE_CACHING_TIME_MILLIS =
+            TimeUnit.MINUTES.toMillis(TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES);
+
+    private final boolean adaptive;
+    private final int maxBatchSize;
+    private final int initialBatchSize;
+
+    private final Counter readAheadHits;
+    private final Counter readAheadWasted;
+
+    private final ConcurrentLongHashMap<LedgerReadAheadState> states;
+
+    ReadAheadManager(boolean adaptive, int maxBatchSize, Counter readAheadHits, Counter readAheadWasted) {
+        this.adaptive = adaptive;
+        this.maxBatchSize = maxBatchSize;
+        this.initialBatchSize = Math.max(1, maxBatchSize / 8);
+        this.readAheadHits = readAheadHits;
+        this.readAheadWasted = readAheadWasted;
+        this.states = ConcurrentLongHashMap.<LedgerReadAheadState>newBuilder()
+                .expectedItems(16 * 1024)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
+    }
+
+    /**
+     * Record a read cache miss and get the number of entries to read ahead after the missing entry.
+     */
+    int onCacheMiss(long ledgerId, long entryId) {
+        LedgerReadAheadState state = states.computeIfAbsent(ledgerId, l -> new LedgerReadAheadState());
+        synchronized (state) {
+            state.lastAccessed = System.currentTimeMillis();
+
+            // The reader has consumed the previous window
+            ReadAheadWindow window = state.window;
+            state.sequential = state.windowSize >= 0
+                    && (entryId == state.lastEntryId + 1 || (window != null && entryId == window.end));
+
+            int batchSize;
+            if (!adaptive) {
+                batchSize = maxBatchSize;
+            } else if (state.windowSize < 0) {
+                // First access to this ledger
+                batchSize = initialBatchSize;
+            } else if (state.sequential) {
+                batchSize = Math.min(maxBatchSize, Math.max(initialBatchSize, state.windowSize * 2));
+            } else {
+                // Random access, do not waste disk bandwidth for entries that won't be read
+                batchSize = 0;
+            }
+
+            state.windowSize = batchSize;
+            state.lastEntryId = entryId;
+            return batchSize;
+        }
+    }
+
+    /**
+     * Whether the last miss on the ledger was a sequential access, right after the entries previously read or
+     * read ahead.
+     */
+    boolean isSequential(long ledgerId) {
+        LedgerReadAheadState state = states.get(ledgerId);
+        if (state == null) {
+            return false;
+        }
+
+        synchronized (state) {
+            return state.sequential;
+        }
+    }
+
+    /**
+     * Record the entries that were actually read ahead after a miss.
+     */
+    void onReadAhead(long ledgerId, long firstEntryId, int count) {
+        LedgerReadAheadState state = states.get(ledgerId);
+        if (state == null) {
+            return;
+        }
+
+        synchronized (state) {
+            recordWaste(state);
+            state.window = new ReadAheadWindow(firstEntryId, firstEntryId + count);
+        }
+    }
+
+    /**
+     * Record the number of entries actually loaded by a read-ahead batch that was started in background,
+     * which can be less than the batch size.
+     */
+    void onReadAheadCompleted(long ledgerId, long firstEntryId, int count) {
+        LedgerReadAheadState state = states.get(ledgerId);
+        if (state == null) {
+            return;
+        }
+
+        synchronized (state) {
+            ReadAheadWindow window = state.window;
+            if (window != null && window.start == firstEntryId) {
+                window.end = Math.min(window.end, firstEntryId + count);
+            }
+        }
+    }
+
+    /**
+     * Record a read cache hit.
+     */
+    void onCacheHit(long ledgerId, long entryId) {
+        LedgerReadAheadState state = states.get(ledgerId);
+        if (state == null) {
+            return;
+        }
+
+        ReadAheadWindow window = state.window;
+        if (window == null || entryId < window.start || entryId >= window.end) {
+            return;
+        }
+
+        window.hit();
+        readAheadHits.inc();
+        state.lastEntryId = entryId;
+        if (!state.accessed) {
+            state.accessed = true;
+        }
+    }
+
+    void remove(long ledgerId) {
+        LedgerReadAheadState state = states.remove(ledgerId);
+        if (state != null) {
+            synchronized (state) {
+                recordWaste(state);
+            }
+        }
+    }
+
+    /**
+     * Evict the state of the ledgers that were not read recently.
+     */
+    void cleanupStaleStates() {
+        long now = System.currentTimeMillis();
+        states.removeIf((ledgerId, state) -> {
+            synchronized (state) {
+                if (state.accessed) {
+                    state.accessed = false;
+                    state.lastAccessed = now;
+                }
+                boolean isStale = state.lastAccessed + STATE_CACHING_TIME_MILLIS < now;
+                if (isStale) {
+                    recordWaste(state);
+                }
+                return isStale;
+            }
+        });
+    }
+
+    private void recordWaste(LedgerReadAheadState state) {
+        ReadAheadWindow window = state.window;
+        if (window == null) {
+            return;
+        }
+
+        long wasted = (window.end - window.start) - window.hits;
+        if (wasted > 0) {
+            readAheadWasted.addCount(wasted);
+        }
+        state.window = null;
+    }
+
+    private static class LedgerReadAheadState {
+        // Updated without locking by the cache hits
+        volatile long lastEntryId = -1;
+        volatile boolean accessed;
+        // Entries read ahead in the last batch, null if there are none
+        volatile ReadAheadWindow window;
+
+        // Number of entries read ahead on the last miss, -1 if the ledger was never accessed
+        int windowSize = -1;
+        // Whether the last miss followed the previous entries read
+        boolean sequential;
+        long lastAccessed;
+    }
+
+    /**
+     * Entries read ahead in a batch, as [start, end), and the number of them that were read.
+     */
+    private static class ReadAheadWindow {
+        private static final AtomicIntegerFieldUpdater<ReadAheadWindow> HITS_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(ReadAheadWindow.class, "hits");
+
+        final long start;
+        volatile long end;
+        volatile int hits;
+
+        ReadAheadWindow(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void hit() {
+            HITS_UPDATER.incrementAndGet(this);
+        }
+    }
+}
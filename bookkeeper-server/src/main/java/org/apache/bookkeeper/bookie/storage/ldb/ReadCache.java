@@ -30,7 +30,10 @@ import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -45,6 +48,13 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>Lookups do not acquire any shared lock: each segment is protected by a {@link StampedLock} that is only
+ * write-locked while the segment is recycled. Readers copy the entry under an optimistic read stamp and
+ * validate it afterwards, retrying with a read lock only if the segment was recycled meanwhile.
+ *
+ * <p>A {@link ReadCacheAdmissionPolicy} decides which read-ahead entries are admitted and which entries,
+ * hit in the older half of the ring, are promoted to the current segment to survive its recycling.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
@@ -54,28 +64,54 @@ public class ReadCache implements Closeable {
     private final List<ByteBuf> cacheSegments;
     private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
 
-    private int currentSegmentIdx;
+    // Locks protecting each segment from being recycled while readers copy entries out of it
+    private final List<StampedLock> segmentLocks;
+
+    private volatile int currentSegmentIdx;
     private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
 
     private final int segmentSize;
 
     private ByteBufAllocator allocator;
+    // Lock used by the writers to coordinate the roll-over of the current segment
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    private final ReadCacheAdmissionPolicy admissionPolicy;
+    // Number of hits served by each segment since it was last recycled
+    private final AtomicLongArray segmentHits;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder promotedCount = new LongAdder();
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, FifoAdmissionPolicy.INSTANCE);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, ReadCacheAdmissionPolicy admissionPolicy) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, admissionPolicy);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     ReadCacheAdmissionPolicy admissionPolicy) {
         this.allocator = allocator;
+        this.admissionPolicy = admissionPolicy;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
+        segmentHits = new AtomicLongArray(segmentsCount);
 
         cacheSegments = new ArrayList<>();
         cacheIndexes = new ArrayList<>();
+        segmentLocks = new ArrayList<>();
 
         for (int i = 0; i < segmentsCount; i++) {
             cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
+            segmentLocks.add(new StampedLock());
             ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
                     .expectedItems(4096)
                     .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
@@ -90,6 +126,16 @@ public class ReadCache implements Closeable {
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
+        put(ledgerId, entryId, entry, false);
+    }
+
+    /**
+     * Insert an entry in the cache, subject to the admission policy.
+     *
+     * @param readAhead whether the entry is inserted by read-ahead rather than on behalf of a read request
+     * @return whether the entry was admitted in the cache
+     */
+    public boolean put(long ledgerId, long entryId, ByteBuf entry, boolean readAhead) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
@@ -98,8 +144,14 @@ public class ReadCache implements Closeable {
         try {
             if (entrySize > segmentSize) {
                 log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
+                return false;
+            }
+
+            if (!admissionPolicy.admit(ledgerId, entryId, readAhead, victimFrequency())) {
+                rejectedCount.increment();
+                return false;
             }
+
             int offset = currentSegmentOffset.getAndAdd(alignedSize);
             if (offset + entrySize > segmentSize) {
                 // Roll-over the segment (outside the read-lock)
@@ -108,7 +160,7 @@ public class ReadCache implements Closeable {
                 cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
                         entry.readableBytes());
                 cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+                return true;
             }
         } finally {
             lock.readLock().unlock();
@@ -122,70 +174,179 @@ public class ReadCache implements Closeable {
             int offset = currentSegmentOffset.getAndAdd(entrySize);
             if (offset + entrySize > segmentSize) {
                 // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                int nextSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                StampedLock segmentLock = segmentLocks.get(nextSegmentIdx);
+                long stamp = segmentLock.writeLock();
+                try {
+                    // Invalidates the optimistic reads in progress on the recycled segment
+                    cacheIndexes.get(nextSegmentIdx).clear();
+                    segmentHits.set(nextSegmentIdx, 0);
+                } finally {
+                    segmentLock.unlockWrite(stamp);
+                }
+
+                currentSegmentIdx = nextSegmentIdx;
                 currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
                 offset = 0;
             }
 
             // Copy entry into read cache segment
             cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
             cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+            return true;
         } finally {
             lock.writeLock().unlock();
         }
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
+        return get(ledgerId, entryId, true);
+    }
 
-        try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
-
-                    ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
-                    return entry;
-                }
+    /**
+     * Get an entry from the cache.
+     *
+     * @param recordAccess whether to count the lookup in the hit ratio and in the admission policy, false when
+     *                     looking up again an entry whose access was already recorded
+     */
+    public ByteBuf get(long ledgerId, long entryId, boolean recordAccess) {
+        if (recordAccess) {
+            admissionPolicy.recordAccess(ledgerId, entryId);
+        }
+
+        ByteBuf entry = null;
+        boolean promote = false;
+
+        // We need to check all the segments, starting from the current one and looking
+        // backward to minimize the
+        // checks for recently inserted entries
+        int size = cacheSegments.size();
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < size; i++) {
+            int segmentIdx = (currentIdx + (size - i)) % size;
+
+            entry = getFromSegment(segmentIdx, ledgerId, entryId);
+            if (entry != null) {
+                segmentHits.incrementAndGet(segmentIdx);
+
+                // Entries in the older half of the ring are the next ones to be evicted
+                promote = i >= (size + 1) / 2 && admissionPolicy.promote(ledgerId, entryId);
+                break;
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
-        // Entry not found in any segment
-        return null;
+        if (entry == null) {
+            // Entry not found in any segment
+            if (recordAccess) {
+                missCount.increment();
+            }
+            return null;
+        }
+
+        if (recordAccess) {
+            hitCount.increment();
+        }
+        if (promote && put(ledgerId, entryId, entry, false)) {
+            // The entry is copied in the current segment, the stale copy goes away with its segment
+            promotedCount.increment();
+        }
+        return entry;
     }
 
-    public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
+    /**
+     * Copy an entry out of a segment, making sure the segment was not recycled while copying.
+     */
+    private ByteBuf getFromSegment(int segmentIdx, long ledgerId, long entryId) {
+        StampedLock segmentLock = segmentLocks.get(segmentIdx);
+        long stamp = segmentLock.tryOptimisticRead();
+        if (stamp != 0) {
+            ByteBuf entry = copyEntry(segmentIdx, ledgerId, entryId);
+            if (segmentLock.validate(stamp)) {
+                return entry;
+            }
+
+            // The segment was recycled while we were copying the entry
+            ReferenceCountUtil.safeRelease(entry);
+        }
 
+        // Fallback to regular read lock approach
+        stamp = segmentLock.readLock();
         try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+            return copyEntry(segmentIdx, ledgerId, entryId);
+        } finally {
+            segmentLock.unlockRead(stamp);
+        }
+    }
 
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
-                }
+    private ByteBuf copyEntry(int segmentIdx, long ledgerId, long entryId) {
+        LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
+        if (res == null) {
+            return null;
+        }
+
+        int entryOffset = (int) res.first;
+        int entryLen = (int) res.second;
+
+        ByteBuf entry = allocator.buffer(entryLen, entryLen);
+        entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
+        return entry;
+    }
+
+    public boolean hasEntry(long ledgerId, long entryId) {
+        int size = cacheSegments.size();
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < size; i++) {
+            int segmentIdx = (currentIdx + (size - i)) % size;
+
+            if (cacheIndexes.get(segmentIdx).containsKey(ledgerId, entryId)) {
+                return true;
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
         // Entry not found in any segment
         return false;
     }
 
+    /**
+     * Average number of hits per entry in the segment that will be recycled next. Must be called while
+     * holding the lock.
+     */
+    private long victimFrequency() {
+        int victimIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+        long entries = cacheIndexes.get(victimIdx).size();
+        if (entries == 0) {
+            return 0;
+        }
+        return segmentHits.get(victimIdx) / entries;
+    }
+
+    public String getAdmissionPolicyName() {
+        return admissionPolicy.getName();
+    }
+
+    /**
+     * @return the ratio of lookups served by the cache since it was created
+     */
+    public double hitRatio() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of entries rejected by the admission policy
+     */
+    public long rejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return the number of entries promoted to the current segment
+     */
+    public long promotedCount() {
+        return promotedCount.sum();
+    }
+
     /**
      * @return the total size of cached entries
      */
@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Admission and eviction policy plugged into the {@link ReadCache}.
+ *
+ * <p>The read cache evicts whole segments in FIFO order. A policy can influence this in two ways:
+ * <ul>
+ * <li>By rejecting entries that are being inserted by read-ahead, so that one-shot scans do not push
+ * frequently read entries out of the cache.</li>
+ * <li>By asking the cache to promote an entry that was hit in one of the oldest segments into the current
+ * segment, giving it a second chance before its segment gets recycled.</li>
+ * </ul>
+ */
+public interface ReadCacheAdmissionPolicy {
+
+    String FIFO = "fifo";
+    String TINY_LFU = "tinylfu";
+
+    /**
+     * @return the name of the policy, used to label the policy stats
+     */
+    String getName();
+
+    /**
+     * Record an access (hit or miss) to the given entry.
+     */
+    void recordAccess(long ledgerId, long entryId);
+
+    /**
+     * Decide whether an entry should be inserted in the cache.
+     *
+     * @param readAhead whether the entry is being speculatively inserted by read-ahead, rather than on
+     *                  behalf of a read request
+     * @param victimFrequency average number of hits per entry of the segment that will be recycled next
+     */
+    boolean admit(long ledgerId, long entryId, boolean readAhead, long victimFrequency);
+
+    /**
+     * Decide whether an entry, hit in a segment close to be recycled, should be copied into the current
+     * segment.
+     */
+    boolean promote(long ledgerId, long entryId);
+
+    /**
+     * Create the policy with the given name.
+     *
+     * @param name the policy name, either {@link #FIFO} or {@link #TINY_LFU}
+     * @param maxCacheSize the read cache size, used to size the policy internal structures
+     */
+    static ReadCacheAdmissionPolicy newPolicy(String name, long maxCacheSize) {
+        switch (name.trim().toLowerCase()) {
+        case FIFO:
+            return FifoAdmissionPolicy.INSTANCE;
+        case TINY_LFU:
+            return new TinyLfuAdmissionPolicy(maxCacheSize);
+        default:
+            throw new IllegalArgumentException("Unknown read cache admission policy: " + name);
+        }
+    }
+}
@@ -31,10 +31,14 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
@@ -43,6 +47,7 @@ import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -66,8 +71,10 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerEntryPage;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.EntryReadPlanner;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -139,8 +146,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    // Number of entries of the first coalesced read of a read-ahead, the next ones are sized on the entries read
+    private static final int READ_AHEAD_INITIAL_CHUNK_SIZE = 16;
+
     private final long maxReadAheadBytesSize;
 
+    private final ReadAheadManager readAheadManager;
+
+    // Executor used to load read-ahead batches in background, null when the read-ahead is synchronous
+    private final OrderedExecutor readAheadExecutor;
+    // Read-ahead batch being loaded in background for each ledger
+    private final ConcurrentLongHashMap<PendingReadAhead> pendingReadAheads;
+    // Max time a read waits for an entry of an in-flight read-ahead batch, before reading it from the entry log
+    private final long readAheadJoinTimeoutMillis;
+
     private final Counter flushExecutorTime;
 
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
@@ -150,6 +169,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
+        long startupStartTime = MathUtils.nowInNano();
 
         String ledgerBaseDir = ledgerDirsManager.getAllLedgerDirs().get(0).getPath();
         // indexBaseDir default use ledgerBaseDir
@@ -181,12 +201,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        String readCacheAdmissionPolicy = conf.getString(DbLedgerStorage.READ_CACHE_ADMISSION_POLICY,
+                DbLedgerStorage.DEFAULT_READ_CACHE_ADMISSION_POLICY);
+        readCache = new ReadCache(allocator, readCacheMaxSize,
+                ReadCacheAdmissionPolicy.newPolicy(readCacheAdmissionPolicy, readCacheMaxSize));
+        log.info("Read cache admission policy: {}", readCacheAdmissionPolicy);
+
+        long ledgerIndexStartTime = MathUtils.nowInNano();
+        if (DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.COMPACT_LEDGER_METADATA_INDEX, false)) {
+            ledgerIndex = new CompactLedgerMetadataIndex(conf,
+                    KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        } else {
+            ledgerIndex = new LedgerMetadataIndex(conf,
+                    KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        }
+        long ledgerIndexOpenTime = MathUtils.elapsedNanos(ledgerIndexStartTime);
 
-        ledgerIndex = new LedgerMetadataIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        long locationsIndexStartTime = MathUtils.nowInNano();
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                DbLedgerStorage.getEntryLocationStorageFactory(conf), indexBaseDir, ledgerIndexDirStatsLogger);
+        long locationsIndexOpenTime = MathUtils.elapsedNanos(locationsIndexStartTime);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -197,17 +231,46 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
         this.entryLogger = entryLogger;
+        long gcInitStartTime = MathUtils.nowInNano();
         gcThread = new GarbageCollectorThread(conf,
                 ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger);
+        long gcInitTime = MathUtils.elapsedNanos(gcInitStartTime);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
             ledgerIndexDirStatsLogger,
             () -> writeCache.size() + writeCacheBeingFlushed.size(),
             () -> writeCache.count() + writeCacheBeingFlushed.count(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            readCache.getAdmissionPolicyName(),
+            () -> readCache.hitRatio(),
+            () -> readCache.rejectedCount(),
+            () -> readCache.promotedCount()
         );
 
+        boolean adaptiveReadAhead = DbLedgerStorage.getBooleanVariableOrDefault(conf,
+                DbLedgerStorage.READ_AHEAD_CACHE_ADAPTIVE, false);
+        readAheadManager = new ReadAheadManager(adaptiveReadAhead, readAheadCacheBatchSize,
+                dbLedgerStorageStats.getReadAheadHitCounter(), dbLedgerStorageStats.getReadAheadWastedCounter());
+        cleanupExecutor.scheduleAtFixedRate(readAheadManager::cleanupStaleStates,
+                TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
+                TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
+
+        int readAheadThreads = conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS, 0);
+        if (readAheadThreads > 0) {
+            readAheadExecutor = OrderedExecutor.newBuilder()
+                    .name("db-storage-readahead")
+                    .numThreads(readAheadThreads)
+                    .build();
+        } else {
+            readAheadExecutor = null;
+        }
+        pendingReadAheads = ConcurrentLongHashMap.<PendingReadAhead>newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
+        readAheadJoinTimeoutMillis = conf.getLong(DbLedgerStorage.READ_AHEAD_JOIN_TIMEOUT_MS,
+                DbLedgerStorage.DEFAULT_READ_AHEAD_JOIN_TIMEOUT_MS);
+
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
         executor.submit(() -> {
@@ -221,6 +284,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (!ledgerBaseDir.equals(indexBaseDir)) {
             indexDirsManager.addLedgerDirsListener(getLedgerDirsListener());
         }
+
+        dbLedgerStorageStats.getStartupLedgerIndexOpenStats()
+                .registerSuccessfulEvent(ledgerIndexOpenTime, TimeUnit.NANOSECONDS);
+        dbLedgerStorageStats.getStartupLocationsIndexOpenStats()
+                .registerSuccessfulEvent(locationsIndexOpenTime, TimeUnit.NANOSECONDS);
+        dbLedgerStorageStats.getStartupGcInitStats()
+                .registerSuccessfulEvent(gcInitTime, TimeUnit.NANOSECONDS);
+        long startupTime = MathUtils.elapsedNanos(startupStartTime);
+        dbLedgerStorageStats.getStartupTotalStats()
+                .registerSuccessfulEvent(startupTime, TimeUnit.NANOSECONDS);
+        log.info("Initialized db ledger storage on {} in {} ms (ledger index: {} ms, locations index: {} ms,"
+                + " gc: {} ms)", ledgerBaseDir, TimeUnit.NANOSECONDS.toMillis(startupTime),
+                TimeUnit.NANOSECONDS.toMillis(ledgerIndexOpenTime),
+                TimeUnit.NANOSECONDS.toMillis(locationsIndexOpenTime), TimeUnit.NANOSECONDS.toMillis(gcInitTime));
     }
 
     @Override
@@ -331,6 +408,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         try {
             flush();
 
+            if (readAheadExecutor != null) {
+                // The read-ahead batches in progress must complete before the entry logger is closed
+                readAheadExecutor.shutdown();
+                while (!readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    log.info("Waiting for the read-ahead batches in progress to complete");
+                }
+            }
+
             gcThread.shutdown();
             entryLogger.close();
 
@@ -552,7 +637,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         long startTime = MathUtils.nowInNano();
         try {
-            ByteBuf entry = doGetEntry(ledgerId, entryId);
+            ByteBuf entry = (ByteBuf) doGetEntry(ledgerId, entryId, Integer.MAX_VALUE);
             recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
             return entry;
         } catch (IOException e) {
@@ -561,7 +646,108 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
-    private ByteBuf doGetEntry(long ledgerId, long entryId) throws IOException, BookieException {
+    @Override
+    public ReferenceCounted getEntryOrRegion(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            ReferenceCounted entry = doGetEntry(ledgerId, entryId, minRegionSize);
+            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            return entry;
+        } catch (IOException e) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long[] entryIds) throws IOException, BookieException {
+        if (log.isDebugEnabled()) {
+            log.debug("Get Entries: {}@{}", ledgerId, Arrays.toString(entryIds));
+        }
+
+        // Find the cached entries and the locations of the others, up to the first entry that is not
+        // available in storage
+        ByteBuf[] entries = new ByteBuf[entryIds.length];
+        int[] missedIndexes = new int[entryIds.length];
+        long[] missedEntryIds = new long[entryIds.length];
+        long[] missedEntryLocations = new long[entryIds.length];
+        int misses = 0;
+        int resolved = 0;
+        try {
+            for (; resolved < entryIds.length; resolved++) {
+                long entryId = entryIds[resolved];
+                if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+                    break;
+                }
+                ByteBuf entry = getEntryFromCaches(ledgerId, entryId);
+                if (entry != null) {
+                    entries[resolved] = entry;
+                    continue;
+                }
+                long entryLocation = getEntryLocation(ledgerId, entryId);
+                if (entryLocation == 0) {
+                    break;
+                }
+                missedIndexes[misses] = resolved;
+                missedEntryIds[misses] = entryId;
+                missedEntryLocations[misses] = entryLocation;
+                misses++;
+            }
+
+            if (misses > 0) {
+                long readEntryStartNano = MathUtils.nowInNano();
+                try {
+                    ByteBuf[] missedEntries = entryLogger.readEntries(ledgerId,
+                            Arrays.copyOf(missedEntryIds, misses), Arrays.copyOf(missedEntryLocations, misses));
+                    for (int i = 0; i < misses; i++) {
+                        entries[missedIndexes[i]] = missedEntries[i];
+                        readCache.put(ledgerId, missedEntryIds[i], missedEntries[i]);
+                    }
+                } catch (IOException e) {
+                    // Read the remaining entries one by one, so that the failure is reported for the right entry
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to read entries of ledger {} with coalesced reads", ledgerId, e);
+                    }
+                    resolved = missedIndexes[0];
+                } finally {
+                    dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                            MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            EntryReadPlanner.releaseAll(entries);
+            throw e;
+        }
+
+        List<ByteBuf> result = new ArrayList<>(entryIds.length);
+        for (int i = 0; i < resolved; i++) {
+            result.add(entries[i]);
+        }
+        for (int i = resolved; i < entryIds.length; i++) {
+            if (entries[i] != null) {
+                ReferenceCountUtil.release(entries[i]);
+            }
+        }
+        for (int i = resolved; i < entryIds.length; i++) {
+            try {
+                result.add(getEntry(ledgerId, entryIds[i]));
+            } catch (IOException | BookieException e) {
+                if (result.isEmpty()) {
+                    throw e;
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get an entry from the caches or from the entry log. Entries read from the entry log that are at least
+     * {@code minRegionSize} bytes are returned as a {@link FileRegion} and bypass the read cache.
+     */
+    private ReferenceCounted doGetEntry(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
         if (log.isDebugEnabled()) {
             log.debug("Get Entry: {}@{}", ledgerId, entryId);
         }
@@ -570,6 +756,70 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
+        ByteBuf entry = getEntryFromCaches(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        entry = joinPendingReadAhead(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        // Read from main storage
+        long entryLocation = getEntryLocation(ledgerId, entryId);
+        if (entryLocation == 0) {
+            // Only a negative result while in limbo equates to unknown
+            throwIfLimbo(ledgerId);
+
+            throw new NoEntryException(ledgerId, entryId);
+        }
+
+        ReferenceCounted entryOrRegion;
+        long readEntryStartNano = MathUtils.nowInNano();
+        try {
+            if (minRegionSize < Integer.MAX_VALUE) {
+                entryOrRegion = entryLogger.readEntryOrRegion(ledgerId, entryId, entryLocation, minRegionSize);
+            } else {
+                entryOrRegion = entryLogger.readEntry(ledgerId, entryId, entryLocation);
+            }
+        } finally {
+            dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                    MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+        }
+
+        if (entryOrRegion instanceof FileRegion) {
+            // Large entries are sent straight from the page cache, copying them in the read cache would only
+            // evict smaller entries that benefit more from it
+            dbLedgerStorageStats.getReadEntryZeroCopyCounter().inc();
+            return entryOrRegion;
+        }
+
+        entry = (ByteBuf) entryOrRegion;
+        readCache.put(ledgerId, entryId, entry);
+
+        // Try to read more entries, unless the ledger is being deleted or is accessed randomly
+        int readAheadBatchSize = readAheadManager.onCacheMiss(ledgerId, entryId);
+        if (readAheadBatchSize > 0 && !entryLocationIndex.isDeleted(ledgerId)) {
+            // The entries read ahead for a sequential reader are going to be read, they bypass the admission
+            boolean sequential = readAheadManager.isSequential(ledgerId);
+            if (readAheadExecutor != null) {
+                scheduleReadAhead(ledgerId, entryId + 1, readAheadBatchSize, sequential);
+            } else {
+                int count = fillReadAheadCache(ledgerId, entryId + 1, readAheadBatchSize, sequential, null);
+                readAheadManager.onReadAhead(ledgerId, entryId + 1, count);
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Get an entry from the write caches or the read cache.
+     *
+     * @return the entry, or null if it's not cached
+     */
+    private ByteBuf getEntryFromCaches(long ledgerId, long entryId) throws IOException {
         // We need to try to read from both write caches, since recent entries could be found in either of the two. The
         // write caches are already thread safe on their own, here we just need to make sure we get references to both
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
@@ -607,85 +857,159 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            readAheadManager.onCacheHit(ledgerId, entryId);
             return entry;
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        return null;
+    }
 
-        // Read from main storage
-        long entryLocation;
+    private long getEntryLocation(long ledgerId, long entryId) throws IOException {
         long locationIndexStartNano = MathUtils.nowInNano();
         try {
-            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
-            if (entryLocation == 0) {
-                // Only a negative result while in limbo equates to unknown
-                throwIfLimbo(ledgerId);
-
-                throw new NoEntryException(ledgerId, entryId);
-            }
+            return entryLocationIndex.getLocation(ledgerId, entryId);
         } finally {
             dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
                     MathUtils.elapsedNanos(locationIndexStartNano), TimeUnit.NANOSECONDS);
         }
+    }
+
+    /**
+     * If the entry is part of a read-ahead batch being loaded in background, wait a bounded time for it to be
+     * inserted in the read cache rather than reading it a second time from the entry log.
+     *
+     * @return the entry, or null if it has to be read from the entry log
+     */
+    private ByteBuf joinPendingReadAhead(long ledgerId, long entryId) throws IOException {
+        PendingReadAhead pendingReadAhead = pendingReadAheads.get(ledgerId);
+        if (pendingReadAhead == null || !pendingReadAhead.contains(entryId)) {
+            return null;
+        }
 
-        long readEntryStartNano = MathUtils.nowInNano();
         try {
-            entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
-        } finally {
-            dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
-                    MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+            if (!pendingReadAhead.waitForEntry(entryId, readAheadJoinTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for read-ahead of " + ledgerId + "@" + entryId);
         }
 
-        readCache.put(ledgerId, entryId, entry);
+        // The access was already recorded by the lookup that missed the entry
+        ByteBuf entry = readCache.get(ledgerId, entryId, false);
+        if (entry != null) {
+            dbLedgerStorageStats.getReadAheadInflightHitCounter().inc();
+            readAheadManager.onCacheHit(ledgerId, entryId);
+        }
+        return entry;
+    }
 
-        // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+    /**
+     * Load a read-ahead batch in background, unless one is already in progress for the same ledger.
+     */
+    private void scheduleReadAhead(long ledgerId, long firstEntryId, int batchSize, boolean sequential) {
+        PendingReadAhead pendingReadAhead = new PendingReadAhead(firstEntryId, batchSize);
+        if (pendingReadAheads.putIfAbsent(ledgerId, pendingReadAhead) != null) {
+            return;
+        }
 
-        return entry;
+        readAheadManager.onReadAhead(ledgerId, firstEntryId, batchSize);
+        try {
+            readAheadExecutor.executeOrdered(ledgerId, () -> {
+                try {
+                    int count = fillReadAheadCache(ledgerId, firstEntryId, batchSize, sequential, pendingReadAhead);
+                    readAheadManager.onReadAheadCompleted(ledgerId, firstEntryId, count);
+                } finally {
+                    pendingReadAheads.remove(ledgerId, pendingReadAhead);
+                    pendingReadAhead.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The storage is shutting down
+            readAheadManager.onReadAheadCompleted(ledgerId, firstEntryId, 0);
+            pendingReadAheads.remove(ledgerId, pendingReadAhead);
+            pendingReadAhead.complete();
+        }
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    /**
+     * Load the entries following a cache miss in the read cache. The entries are read in chunks: the locations
+     * of the entries of a chunk are resolved together, so that they can be read with a few coalesced reads, even
+     * if they are interleaved with the entries of other ledgers in the entry logs.
+     *
+     * <p>Each chunk is sized on the average size of the entries read so far, and the read-ahead stops once
+     * maxReadAheadBytesSize bytes were read. The locations of the entries past the budget are never looked up.
+     *
+     * <p>The entries read ahead for a sequential reader bypass the admission policy of the read cache, since
+     * they are about to be read.
+     *
+     * <p>When loading the batch in background, each entry is marked as loaded in {@code pendingReadAhead} as soon
+     * as it was inserted, to release the readers waiting for it.
+     */
+    private int fillReadAheadCache(long ledgerId, long firstEntryId, int readAheadBatchSize, boolean sequential,
+                                   PendingReadAhead pendingReadAhead) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
 
         try {
-            long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
-            long currentEntryLocation = firstEntryLocation;
-
-            while (count < readAheadCacheBatchSize
-                    && size < maxReadAheadBytesSize
-                    && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
-                        firstEntryId, currentEntryLocation);
-
-                try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
-
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
+            int chunkSize = Math.min(readAheadBatchSize, READ_AHEAD_INITIAL_CHUNK_SIZE);
+            boolean lastChunk = false;
+            while (!lastChunk && count < readAheadBatchSize && size < maxReadAheadBytesSize) {
+                long[] entryIds = new long[chunkSize];
+                long[] entryLocations = new long[chunkSize];
+                int chunkEntries = 0;
+                while (chunkEntries < chunkSize) {
+                    long entryId = firstEntryId + count + chunkEntries;
+                    long entryLocation = getEntryLocation(ledgerId, entryId);
+                    if (entryLocation == 0) {
+                        // Reached the end of the ledger, or entries that are still in the write cache
+                        lastChunk = true;
                         break;
                     }
+                    entryIds[chunkEntries] = entryId;
+                    entryLocations[chunkEntries] = entryLocation;
+                    chunkEntries++;
+                }
+                if (chunkEntries == 0) {
+                    break;
+                }
 
-                    // Insert entry in read cache
-                    readCache.put(orginalLedgerId, currentEntryId, entry);
+                long readEntryStartNano = MathUtils.nowInNano();
+                ByteBuf[] entries;
+                try {
+                    entries = entryLogger.readEntries(ledgerId, Arrays.copyOf(entryIds, chunkEntries),
+                            Arrays.copyOf(entryLocations, chunkEntries));
+                } finally {
+                    dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                            MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+                }
 
-                    count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
+                try {
+                    for (int i = 0; i < entries.length && size < maxReadAheadBytesSize; i++) {
+                        // Insert entry in read cache. The admission policy can reject a speculative read-ahead
+                        // entry that is less popular than the cached entries, the next entries can still be admitted
+                        boolean cached = readCache.put(ledgerId, entryIds[i], entries[i], !sequential);
+                        if (pendingReadAhead != null) {
+                            pendingReadAhead.entryLoaded(entryIds[i], cached);
+                        }
 
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
+                        count++;
+                        size += entries[i].readableBytes();
+                    }
                 } finally {
-                    ReferenceCountUtil.release(entry);
+                    EntryReadPlanner.releaseAll(entries);
                 }
+
+                // Only read the entries that are expected to fit in what's left of the budget
+                long averageSize = Math.max(1, size / count);
+                long entriesLeft = (maxReadAheadBytesSize - size + averageSize - 1) / averageSize;
+                chunkSize = (int) Math.max(1, Math.min(readAheadBatchSize - count, entriesLeft));
             }
         } catch (Exception e) {
             if (log.isDebugEnabled()) {
-                log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
+                log.debug("Exception during read ahead for ledger: {}: e", ledgerId, e);
             }
         } finally {
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
@@ -693,6 +1017,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             dbLedgerStorageStats.getReadAheadTime().addLatency(
                     MathUtils.elapsedNanos(readAheadStartNano), TimeUnit.NANOSECONDS);
         }
+        return count;
     }
 
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
@@ -912,6 +1237,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         entryLocationIndex.delete(ledgerId);
         ledgerIndex.delete(ledgerId);
+        readAheadManager.remove(ledgerId);
 
         for (int i = 0, size = ledgerDeletionListeners.size(); i < size; i++) {
             LedgerDeletionListener listener = ledgerDeletionListeners.get(i);
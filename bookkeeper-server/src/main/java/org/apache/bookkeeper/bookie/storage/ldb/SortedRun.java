@@ -0,0 +1,455 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable file holding a sorted sequence of (16 bytes key, 8 bytes value) records, used by
+ * {@link KeyValueStorageSortedRuns}.
+ *
+ * <p>File layout:
+ * <pre>
+ * [header: magic, version, seq, replacedMinSeq, entriesCount, tombstonesCount]
+ * [entries: (key1, key2, value) * entriesCount, sorted by unsigned key]
+ * [range tombstones: (begin1, begin2, end1, end2) * tombstonesCount, sorted and not overlapping]
+ * </pre>
+ *
+ * <p>The range tombstones only hide the entries of older runs. A run created by merging other runs records
+ * the sequence numbers of the runs it replaced, so that they can be discarded if the process crashes before
+ * they were deleted.
+ *
+ * <p>Entries are memory mapped and all the reads are done through absolute positions, so a run can be
+ * accessed concurrently by any number of threads. The run is referenced by each snapshot of the storage that
+ * includes it, and it gets unmapped when the last of them is released.
+ */
+class SortedRun implements Closeable {
+
+    static final String FILE_PREFIX = "run-";
+    static final String FILE_SUFFIX = ".sr";
+    static final String TMP_SUFFIX = ".tmp";
+
+    private static final long MAGIC = 0x424b534f52544544L; // "BKSORTED"
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int ENTRY_SIZE = 24;
+    private static final int TOMBSTONE_SIZE = 32;
+
+    // Entries are mapped in chunks, since a single mapping can't be larger than 2GB
+    private static final int ENTRIES_PER_CHUNK = (1 << 30) / ENTRY_SIZE;
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final File file;
+    private final long seq;
+    private final long replacedMinSeq;
+    private final long entriesCount;
+    private final MappedByteBuffer[] chunks;
+
+    // (begin1, begin2, end1, end2) for each tombstone
+    private final long[] tombstones;
+    private final int tombstonesCount;
+
+    private final AtomicInteger refCnt = new AtomicInteger();
+    private boolean closed = false;
+
+    private SortedRun(File file, long seq, long replacedMinSeq, long entriesCount, MappedByteBuffer[] chunks,
+                      long[] tombstones, int tombstonesCount) {
+        this.file = file;
+        this.seq = seq;
+        this.replacedMinSeq = replacedMinSeq;
+        this.entriesCount = entriesCount;
+        this.chunks = chunks;
+        this.tombstones = tombstones;
+        this.tombstonesCount = tombstonesCount;
+    }
+
+    static String fileName(long seq) {
+        return String.format("%s%016x%s", FILE_PREFIX, seq, FILE_SUFFIX);
+    }
+
+    static SortedRun open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Invalid sorted run file " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of sorted run file " + file);
+            }
+            header.getInt(); // Padding
+            long seq = header.getLong();
+            long replacedMinSeq = header.getLong();
+            long entriesCount = header.getLong();
+            int tombstonesCount = (int) header.getLong();
+
+            long tombstonesOffset = HEADER_SIZE + entriesCount * ENTRY_SIZE;
+            if (channel.size() != tombstonesOffset + (long) tombstonesCount * TOMBSTONE_SIZE) {
+                throw new IOException("Truncated sorted run file " + file);
+            }
+
+            int chunksCount = (int) ((entriesCount + ENTRIES_PER_CHUNK - 1) / ENTRIES_PER_CHUNK);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[chunksCount];
+            for (int i = 0; i < chunksCount; i++) {
+                long firstEntry = (long) i * ENTRIES_PER_CHUNK;
+                long chunkEntries = Math.min(ENTRIES_PER_CHUNK, entriesCount - firstEntry);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstEntry * ENTRY_SIZE,
+                        chunkEntries * ENTRY_SIZE);
+            }
+
+            ByteBuffer tombstonesBuffer = ByteBuffer.allocate(tombstonesCount * TOMBSTONE_SIZE);
+            readFully(channel, tombstonesBuffer, tombstonesOffset);
+            tombstonesBuffer.flip();
+            long[] tombstones = new long[tombstonesCount * 4];
+            tombstonesBuffer.asLongBuffer().get(tombstones);
+
+            return new SortedRun(file, seq, replacedMinSeq, entriesCount, chunks, tombstones, tombstonesCount);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file while reading sorted run");
+            }
+            position += read;
+        }
+    }
+
+    File file() {
+        return file;
+    }
+
+    long seq() {
+        return seq;
+    }
+
+    long replacedMinSeq() {
+        return replacedMinSeq;
+    }
+
+    long entriesCount() {
+        return entriesCount;
+    }
+
+    int tombstonesCount() {
+        return tombstonesCount;
+    }
+
+    long key1(long idx) {
+        return chunks[(int) (idx / ENTRIES_PER_CHUNK)].getLong((int) (idx % ENTRIES_PER_CHUNK) * ENTRY_SIZE);
+    }
+
+    long key2(long idx) {
+        return chunks[(int) (idx / ENTRIES_PER_CHUNK)].getLong((int) (idx % ENTRIES_PER_CHUNK) * ENTRY_SIZE + 8);
+    }
+
+    long value(long idx) {
+        return chunks[(int) (idx / ENTRIES_PER_CHUNK)].getLong((int) (idx % ENTRIES_PER_CHUNK) * ENTRY_SIZE + 16);
+    }
+
+    /**
+     * @return the index of the first entry whose key is greater or equal than the given key, or
+     *         {@link #entriesCount()} if there is none
+     */
+    long ceilIndex(long k1, long k2) {
+        long low = 0;
+        long high = entriesCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (compare(key1(mid), key2(mid), k1, k2) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the entry with the given key, or -1 if not present
+     */
+    long find(long k1, long k2) {
+        long idx = ceilIndex(k1, k2);
+        if (idx < entriesCount && key1(idx) == k1 && key2(idx) == k2) {
+            return idx;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the range tombstone covering the given key, or -1 if there is none
+     */
+    int coveringTombstone(long k1, long k2) {
+        // Find the last tombstone starting before or at the key
+        int low = 0;
+        int high = tombstonesCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(tombstones[mid * 4], tombstones[mid * 4 + 1], k1, k2) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int idx = low - 1;
+        if (idx >= 0 && compare(k1, k2, tombstones[idx * 4 + 2], tombstones[idx * 4 + 3]) < 0) {
+            return idx;
+        }
+        return -1;
+    }
+
+    long tombstoneBegin1(int idx) {
+        return tombstones[idx * 4];
+    }
+
+    long tombstoneBegin2(int idx) {
+        return tombstones[idx * 4 + 1];
+    }
+
+    long tombstoneEnd1(int idx) {
+        return tombstones[idx * 4 + 2];
+    }
+
+    long tombstoneEnd2(int idx) {
+        return tombstones[idx * 4 + 3];
+    }
+
+    /**
+     * @return whether the run has entries or tombstones in the range [begin, end)
+     */
+    boolean overlaps(long begin1, long begin2, long end1, long end2) {
+        long idx = ceilIndex(begin1, begin2);
+        if (idx < entriesCount && compare(key1(idx), key2(idx), end1, end2) < 0) {
+            return true;
+        }
+
+        // Find the last tombstone starting before the end of the range
+        int low = 0;
+        int high = tombstonesCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(tombstones[mid * 4], tombstones[mid * 4 + 1], end1, end2) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int tombstoneIdx = low - 1;
+        return tombstoneIdx >= 0
+                && compare(tombstones[tombstoneIdx * 4 + 2], tombstones[tombstoneIdx * 4 + 3], begin1, begin2) > 0;
+    }
+
+    void retain() {
+        refCnt.incrementAndGet();
+    }
+
+    /**
+     * Release a reference, closing the run when it was the last one.
+     */
+    void release() {
+        if (refCnt.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    void delete() {
+        if (!file.delete()) {
+            log.warn("Failed to delete sorted run file {}", file);
+        }
+    }
+
+    /**
+     * Unmap the entries. The run must not be accessed anymore after this.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (MappedByteBuffer chunk : chunks) {
+            io.netty.util.internal.PlatformDependent.freeDirectBuffer(chunk);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + "(entries=" + entriesCount + ", tombstones=" + tombstonesCount + ")";
+    }
+
+    static int compare(long a1, long a2, long b1, long b2) {
+        int res = Long.compareUnsigned(a1, b1);
+        return res != 0 ? res : Long.compareUnsigned(a2, b2);
+    }
+
+    /**
+     * Writes a new sorted run in a temporary file, which is atomically renamed once complete.
+     */
+    static class Writer implements Closeable {
+        private final File dir;
+        private final File tmpFile;
+        private final long seq;
+        private final long replacedMinSeq;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        private long entriesCount = 0;
+        private long last1;
+        private long last2;
+
+        private long[] tombstones = new long[64];
+        private int tombstonesCount = 0;
+
+        private boolean finished = false;
+
+        Writer(File dir, long seq, long replacedMinSeq) throws IOException {
+            this.dir = dir;
+            this.tmpFile = new File(dir, fileName(seq) + TMP_SUFFIX);
+            this.seq = seq;
+            this.replacedMinSeq = replacedMinSeq;
+            this.channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.channel.position(HEADER_SIZE);
+        }
+
+        void append(long k1, long k2, long value) throws IOException {
+            if (entriesCount > 0 && compare(k1, k2, last1, last2) <= 0) {
+                throw new IllegalArgumentException("Entries must be appended in increasing key order");
+            }
+
+            if (buffer.remaining() < ENTRY_SIZE) {
+                flushBuffer();
+            }
+            buffer.putLong(k1).putLong(k2).putLong(value);
+            last1 = k1;
+            last2 = k2;
+            entriesCount++;
+        }
+
+        /**
+         * Add a range tombstone. Tombstones must be added in increasing order and must not overlap.
+         */
+        void addTombstone(long begin1, long begin2, long end1, long end2) {
+            if (tombstonesCount * 4 == tombstones.length) {
+                tombstones = Arrays.copyOf(tombstones, tombstones.length * 2);
+            }
+            int idx = tombstonesCount * 4;
+            tombstones[idx] = begin1;
+            tombstones[idx + 1] = begin2;
+            tombstones[idx + 2] = end1;
+            tombstones[idx + 3] = end2;
+            tombstonesCount++;
+        }
+
+        long entriesCount() {
+            return entriesCount;
+        }
+
+        SortedRun finish() throws IOException {
+            for (int i = 0; i < tombstonesCount * 4; i++) {
+                if (buffer.remaining() < Long.BYTES) {
+                    flushBuffer();
+                }
+                buffer.putLong(tombstones[i]);
+            }
+            flushBuffer();
+
+            buffer.putLong(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(0);
+            buffer.putLong(seq);
+            buffer.putLong(replacedMinSeq);
+            buffer.putLong(entriesCount);
+            buffer.putLong(tombstonesCount);
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            channel.force(true);
+            channel.close();
+
+            File file = new File(dir, fileName(seq));
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            syncDirectory(dir);
+            return open(file);
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                if (!tmpFile.delete()) {
+                    log.warn("Failed to delete temporary sorted run file {}", tmpFile);
+                }
+            }
+            io.netty.util.internal.PlatformDependent.freeDirectBuffer(buffer);
+        }
+    }
+
+    /**
+     * Make the creation and the renaming of files in the directory durable.
+     */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on all the platforms
+            log.debug("Failed to sync directory {}", dir, e);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(SortedRun.class);
+}
@@ -0,0 +1,232 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TinyLFU based read cache policy.
+ *
+ * <p>Access frequencies are tracked in a count-min sketch of 4-bit counters, which is periodically aged by
+ * halving all the counters, so that the sketch reflects the recent popularity of the entries. The first access
+ * to an entry is only recorded in a doorkeeper bloom filter, which is cleared when the sketch is aged, so that
+ * the entries accessed once don't add up in the counters of the sketch.
+ *
+ * <p>Entries inserted by read-ahead are only admitted if they are at least as popular as the entries in the
+ * segment that would be recycled next. Entries that are hit in an old segment and were accessed more than
+ * once are promoted into the current segment.
+ *
+ * <p>The sketch is updated without synchronization: concurrent updates can occasionally be lost, which only
+ * makes the frequency estimation slightly less accurate. The accesses are first counted by each thread, and
+ * added in batches to the shared count that triggers the aging, so that the readers don't all contend on it.
+ */
+class TinyLfuAdmissionPolicy implements ReadCacheAdmissionPolicy {
+
+    private static final int DEPTH = 4;
+    private static final int COUNTERS_PER_LONG = 16;
+    private static final long MAX_COUNTER = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // Assume ~1KB entries when sizing the sketch from the cache size
+    private static final int ESTIMATED_ENTRY_SIZE = 1024;
+    private static final int MIN_WIDTH = 1 << 12;
+    private static final int MAX_WIDTH = 1 << 24;
+
+    private static final int PROMOTION_FREQUENCY = 2;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    // Number of bits of the doorkeeper for each counter of a row of the sketch
+    private static final int DOORKEEPER_BITS_PER_COUNTER = 8;
+
+    // Number of accesses counted by a thread before adding them to the shared count
+    private static final int ADDITIONS_BATCH = 64;
+
+    private final long[] table;
+    private final int widthMask;
+    private final int rowLength;
+    private final long[] doorkeeper;
+    private final int doorkeeperMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+    private final FastThreadLocal<int[]> pendingAdditions = new FastThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    TinyLfuAdmissionPolicy(long maxCacheSize) {
+        long expectedItems = maxCacheSize / ESTIMATED_ENTRY_SIZE;
+        int width = Integer.highestOneBit((int) Math.max(MIN_WIDTH, Math.min(MAX_WIDTH, expectedItems)));
+        this.widthMask = width - 1;
+        this.rowLength = width / COUNTERS_PER_LONG;
+        this.table = new long[DEPTH * rowLength];
+        this.doorkeeper = new long[width * DOORKEEPER_BITS_PER_COUNTER / Long.SIZE];
+        this.doorkeeperMask = width * DOORKEEPER_BITS_PER_COUNTER - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    @Override
+    public String getName() {
+        return TINY_LFU;
+    }
+
+    @Override
+    public void recordAccess(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int[] pending = pendingAdditions.get();
+        if (++pending[0] >= ADDITIONS_BATCH) {
+            addAdditions(pending[0]);
+            pending[0] = 0;
+        }
+
+        if (!doorkeeperContains(hash)) {
+            // First access since the sketch was aged
+            doorkeeperAdd(hash);
+            return;
+        }
+
+        int minFrequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            minFrequency = Math.min(minFrequency, getCounter(i, hash));
+        }
+
+        if (minFrequency >= MAX_COUNTER) {
+            return;
+        }
+
+        // Conservative update: only increment the counters that are holding the minimum value
+        for (int i = 0; i < DEPTH; i++) {
+            if (getCounter(i, hash) == minFrequency) {
+                incrementCounter(i, hash);
+            }
+        }
+    }
+
+    @Override
+    public boolean admit(long ledgerId, long entryId, boolean readAhead, long victimFrequency) {
+        if (!readAhead) {
+            // The entry was explicitly requested
+            return true;
+        }
+
+        return frequency(ledgerId, entryId) >= victimFrequency;
+    }
+
+    @Override
+    public boolean promote(long ledgerId, long entryId) {
+        return frequency(ledgerId, entryId) >= PROMOTION_FREQUENCY;
+    }
+
+    @VisibleForTesting
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, getCounter(i, hash));
+        }
+        return doorkeeperContains(hash) ? frequency + 1 : frequency;
+    }
+
+    @VisibleForTesting
+    int getSampleSize() {
+        return sampleSize;
+    }
+
+    @VisibleForTesting
+    int getAdditions() {
+        return additions.get();
+    }
+
+    private void addAdditions(int count) {
+        int total = additions.addAndGet(count);
+        // Only the thread reaching the sample size ages the sketch. The accesses added by the other threads in the
+        // meantime are kept in the count of the next sample
+        if (total >= sampleSize && total - count < sampleSize) {
+            reset();
+            additions.addAndGet(-sampleSize);
+        }
+    }
+
+    /**
+     * Age the sketch by halving all the counters, and clear the doorkeeper.
+     */
+    @VisibleForTesting
+    void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        Arrays.fill(doorkeeper, 0L);
+    }
+
+    private boolean doorkeeperContains(long hash) {
+        return isDoorkeeperBitSet((int) hash) && isDoorkeeperBitSet((int) (hash >>> 32));
+    }
+
+    private void doorkeeperAdd(long hash) {
+        setDoorkeeperBit((int) hash);
+        setDoorkeeperBit((int) (hash >>> 32));
+    }
+
+    private boolean isDoorkeeperBitSet(int h) {
+        int bit = h & doorkeeperMask;
+        return (doorkeeper[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private void setDoorkeeperBit(int h) {
+        int bit = h & doorkeeperMask;
+        doorkeeper[bit >>> 6] |= 1L << bit;
+    }
+
+    private int getCounter(int row, long hash) {
+        int counterIdx = counterIndex(row, hash);
+        int shift = (counterIdx & (COUNTERS_PER_LONG - 1)) << 2;
+        return (int) ((table[row * rowLength + (counterIdx >>> 4)] >>> shift) & MAX_COUNTER);
+    }
+
+    private void incrementCounter(int row, long hash) {
+        int counterIdx = counterIndex(row, hash);
+        int shift = (counterIdx & (COUNTERS_PER_LONG - 1)) << 2;
+        int tableIdx = row * rowLength + (counterIdx >>> 4);
+        if (((table[tableIdx] >>> shift) & MAX_COUNTER) != MAX_COUNTER) {
+            table[tableIdx] += 1L << shift;
+        }
+    }
+
+    private int counterIndex(int row, long hash) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 32;
+        return (int) h & widthMask;
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
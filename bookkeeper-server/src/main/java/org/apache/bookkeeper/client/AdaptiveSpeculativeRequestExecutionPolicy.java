@@ -0,0 +1,188 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} issuing speculative requests based on the latency of the bookies.
+ *
+ * <p>The policy keeps the recent response latencies of each bookie, and issues a speculative request once the
+ * pending request has been waiting for longer than the configured percentile of the latencies of its bookie.
+ * Until enough latencies of a bookie are known, or when the percentile is over it, the timeout is
+ * {@code firstSpeculativeRequestTimeout}, bounded by {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>The speculative requests are bounded by a budget shared by all requests: each request earns
+ * {@code maxSpeculativeRequestRatio} of a speculative request, so the extra requests stay under that ratio of
+ * the requests, up to a small burst.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    // Number of recent latencies kept for each bookie
+    static final int LATENCY_WINDOW_SIZE = 128;
+    // Number of new latencies after which the percentile of a bookie is computed again
+    static final int PERCENTILE_UPDATE_INTERVAL = 32;
+    // Max number of speculative requests which can be issued in a burst
+    static final double MAX_BUDGET = 100;
+
+    final long firstSpeculativeRequestTimeoutMicros;
+    final long maxSpeculativeRequestTimeoutMicros;
+    final double latencyPercentile;
+    final double maxSpeculativeRequestRatio;
+
+    private final ConcurrentHashMap<BookieId, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private double budget = 0;
+
+    /**
+     * The recent response latencies of a bookie.
+     */
+    private static class LatencyWindow {
+        private final long[] latenciesMicros = new long[LATENCY_WINDOW_SIZE];
+        private long count = 0;
+        // -1 until enough latencies are known
+        private volatile long percentileMicros = -1;
+
+        synchronized void add(long latencyMicros, double percentile) {
+            latenciesMicros[(int) (count % LATENCY_WINDOW_SIZE)] = latencyMicros;
+            count++;
+            if (count % PERCENTILE_UPDATE_INTERVAL == 0) {
+                long[] sorted = Arrays.copyOf(latenciesMicros, (int) Math.min(count, LATENCY_WINDOW_SIZE));
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+                percentileMicros = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+            }
+        }
+
+        long getPercentileMicros() {
+            return percentileMicros;
+        }
+    }
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, double latencyPercentile, double maxSpeculativeRequestRatio) {
+        if (latencyPercentile <= 0 || latencyPercentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for latencyPercentile");
+        }
+        if (maxSpeculativeRequestRatio < 0) {
+            throw new IllegalArgumentException("Invalid value provided for maxSpeculativeRequestRatio");
+        }
+        this.firstSpeculativeRequestTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(firstSpeculativeRequestTimeout);
+        this.maxSpeculativeRequestTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(
+                Math.max(firstSpeculativeRequestTimeout, maxSpeculativeRequestTimeout));
+        this.latencyPercentile = latencyPercentile;
+        this.maxSpeculativeRequestRatio = maxSpeculativeRequestRatio;
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        synchronized (this) {
+            budget = Math.min(MAX_BUDGET, budget + maxSpeculativeRequestRatio);
+        }
+        return scheduleSpeculativeRead(scheduler, requestExecutor);
+    }
+
+    @Override
+    public void recordResponseLatency(BookieId bookie, long latencyNanos) {
+        LatencyWindow window = latencies.get(bookie);
+        if (window == null) {
+            window = latencies.computeIfAbsent(bookie, b -> new LatencyWindow());
+        }
+        window.add(TimeUnit.NANOSECONDS.toMicros(latencyNanos), latencyPercentile);
+    }
+
+    /**
+     * Get the time to wait for the pending request of the bookie before issuing a speculative request.
+     */
+    long getSpeculativeRequestTimeoutMicros(BookieId bookie) {
+        LatencyWindow window = bookie == null ? null : latencies.get(bookie);
+        long percentileMicros = window == null ? -1 : window.getPercentileMicros();
+        if (percentileMicros < 0) {
+            return firstSpeculativeRequestTimeoutMicros;
+        }
+        return Math.min(maxSpeculativeRequestTimeoutMicros, percentileMicros);
+    }
+
+    private synchronized boolean tryAcquireBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                                       final SpeculativeRequestExecutor requestExecutor) {
+        final long speculativeRequestTimeoutMicros =
+                getSpeculativeRequestTimeoutMicros(requestExecutor.getPendingBookie());
+        try {
+            return scheduler.schedule(() -> {
+                if (!tryAcquireBudget()) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Stopped issuing speculative requests for {}, speculative request budget"
+                                + " is exhausted", requestExecutor);
+                    }
+                    return;
+                }
+                ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean issueNextRequest) {
+                        if (issueNextRequest) {
+                            scheduleSpeculativeRead(scheduler, requestExecutor);
+                        } else {
+                            // the budget was not used
+                            synchronized (AdaptiveSpeculativeRequestExecutionPolicy.this) {
+                                budget = Math.min(MAX_BUDGET, budget + 1);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thrown) {
+                        LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeout = {} us : ",
+                                requestExecutor, speculativeRequestTimeoutMicros, thrown);
+                    }
+                }, directExecutor());
+            }, speculativeRequestTimeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeout = {} us : ",
+                        requestExecutor, speculativeRequestTimeoutMicros, re);
+            }
+        }
+        return null;
+    }
+}
@@ -118,6 +118,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     private final StatsLogger statsLogger;
     private final BookKeeperClientStats clientStats;
     private final double bookieQuarantineRatio;
+    // Entry cache shared by the ledger handles, null if disabled
+    private final ClientEntryCache entryCache;
 
     // whether the event loop group is one we created, or is owned by whoever
     // instantiated us
@@ -537,6 +539,12 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         this.ledgerIdGenerator = ledgerManagerFactory.newLedgerIdGenerator();
 
         this.bookieQuarantineRatio = conf.getBookieQuarantineRatio();
+        if (conf.getClientEntryCacheMaxSizeBytes() > 0) {
+            LOG.info("Client entry cache enabled, max size: {} bytes", conf.getClientEntryCacheMaxSizeBytes());
+            this.entryCache = new ClientEntryCache(conf.getClientEntryCacheMaxSizeBytes(), clientStats);
+        } else {
+            this.entryCache = null;
+        }
         scheduleBookieHealthCheckIfEnabled(conf);
     }
 
@@ -565,6 +573,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         bookieClient = null;
         allocator = UnpooledByteBufAllocator.DEFAULT;
         bookieQuarantineRatio = 1.0;
+        entryCache = null;
     }
 
     protected EnsemblePlacementPolicy initializeEnsemblePlacementPolicy(ClientConfiguration conf,
@@ -1478,6 +1487,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         if (ownEventLoopGroup) {
             eventLoopGroup.shutdownGracefully();
         }
+        if (entryCache != null) {
+            entryCache.close();
+        }
         this.metadataDriver.close();
     }
 
@@ -1649,6 +1661,11 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return clientStats;
             }
 
+            @Override
+            public ClientEntryCache getEntryCache() {
+                return entryCache;
+            }
+
             @Override
             public boolean isClientClosed() {
                 return BookKeeper.this.isClosed();
@@ -44,4 +44,14 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the moving average of the read latency of a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return read latency average in nanoseconds, 0 if unknown
+     */
+    default long getBookieReadLatencyEwmaNanos(BookieId bookieSocketAddress) {
+        return 0;
+    }
+
 }
@@ -42,5 +42,6 @@ public interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+    ClientEntryCache getEntryCache(); // null if the entry cache is disabled
     boolean isClientClosed();
 }
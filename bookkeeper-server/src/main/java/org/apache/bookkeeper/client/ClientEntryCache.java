@@ -0,0 +1,503 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.client.ReadLastConfirmedAndEntryOp.LastConfirmedAndEntryCallback;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.stats.Counter;
+
+/**
+ * Cache of the entries read by the ledger handles of a client.
+ *
+ * <p>The entries are copied off-heap, and the least recently used ones are evicted once the cache is full. Only
+ * the entries up to the last add confirmed of their ledger are cached, since they can no longer change, whether
+ * the ledger is closed or not, so they are kept once the handles of the ledger are closed. The entries of a
+ * ledger are dropped when the ledger is deleted.
+ *
+ * <p>A read only reads from the bookies the entries which are neither cached nor being read by another read. It
+ * waits for the reads in progress of its other entries, even if they are part of a different range. Likewise,
+ * identical long poll reads of the entry after the last add confirmed share a single long poll of the bookies.
+ */
+class ClientEntryCache implements Closeable {
+
+    // Entries bigger than this fraction of the cache are not cached
+    private static final int MAX_ENTRY_SIZE_FRACTION = 8;
+
+    /**
+     * Reads a range of entries from the bookies.
+     */
+    interface EntryReader {
+        CompletableFuture<LedgerEntries> read(long firstEntry, long lastEntry);
+    }
+
+    /**
+     * Reads the last add confirmed and the entry after it from the bookies, with a long poll.
+     */
+    interface LongPollReader {
+        void read(LastConfirmedAndEntryCallback cb);
+    }
+
+    private final long maxEntrySize;
+    private final Cache<EntryKey, CachedEntry> cache;
+    // The ids of the cached entries of each ledger, to drop them when the ledger is deleted
+    private final ConcurrentHashMap<Long, Set<Long>> ledgerEntries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<EntryKey, PendingEntry> pendingEntries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<LongPollKey, PendingLongPoll> pendingLongPolls = new ConcurrentHashMap<>();
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    ClientEntryCache(long maxSizeBytes, BookKeeperClientStats clientStats) {
+        this.maxEntrySize = maxSizeBytes / MAX_ENTRY_SIZE_FRACTION;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((EntryKey key, CachedEntry entry) -> entry.size)
+                .removalListener(this::onRemoval)
+                .build();
+        this.hitsCounter = clientStats.getEntryCacheHitsCounter();
+        this.missesCounter = clientStats.getEntryCacheMissesCounter();
+    }
+
+    /**
+     * Read entries from the cache, and the ones which are neither cached nor being read with the given reader.
+     * The entries must be up to the last add confirmed of the ledger.
+     *
+     * @param reader reads a range of entries from the bookies
+     * @return the entries, owned by the caller
+     */
+    CompletableFuture<LedgerEntries> read(long ledgerId, long firstEntry, long lastEntry, EntryReader reader) {
+        ReadRequest request = new ReadRequest(firstEntry, (int) (lastEntry - firstEntry + 1));
+        List<PendingEntry> entriesToRead = new ArrayList<>();
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            LedgerEntry cachedEntry = getCachedEntry(ledgerId, entryId);
+            if (cachedEntry != null) {
+                hitsCounter.inc();
+                request.complete(cachedEntry);
+                continue;
+            }
+
+            EntryKey key = new EntryKey(ledgerId, entryId);
+            while (true) {
+                PendingEntry pendingEntry = pendingEntries.get(key);
+                if (pendingEntry == null) {
+                    PendingEntry newEntry = new PendingEntry(key, request);
+                    if (pendingEntries.putIfAbsent(key, newEntry) == null) {
+                        missesCounter.inc();
+                        entriesToRead.add(newEntry);
+                        break;
+                    }
+                } else if (pendingEntry.addWaiter(request)) {
+                    // served by the read in progress
+                    hitsCounter.inc();
+                    break;
+                } else {
+                    // the read just completed
+                    pendingEntries.remove(key, pendingEntry);
+                }
+            }
+        }
+
+        // Read the missing entries by contiguous ranges
+        int start = 0;
+        for (int i = 1; i <= entriesToRead.size(); i++) {
+            if (i == entriesToRead.size()
+                    || entriesToRead.get(i).key.entryId != entriesToRead.get(i - 1).key.entryId + 1) {
+                readRange(entriesToRead.subList(start, i), reader);
+                start = i;
+            }
+        }
+        return request.future;
+    }
+
+    /**
+     * Read an entry past the last add confirmed known by a ledger handle, along with the last add confirmed. The
+     * entry is served by the cache if it was already read, otherwise the read joins an identical long poll in
+     * progress, or long polls the bookies with the given reader.
+     *
+     * @param cb callback owning the entry it is completed with
+     * @param reader long polls the bookies
+     */
+    void readLastConfirmedAndEntry(long ledgerId, long entryId, long timeOutInMillis, boolean parallel,
+                                   LastConfirmedAndEntryCallback cb, LongPollReader reader) {
+        LedgerEntryImpl cachedEntry = getCachedEntry(ledgerId, entryId);
+        if (cachedEntry != null) {
+            hitsCounter.inc();
+            // A cached entry is up to the last add confirmed of its ledger
+            org.apache.bookkeeper.client.LedgerEntry entry = new org.apache.bookkeeper.client.LedgerEntry(cachedEntry);
+            cachedEntry.close();
+            cb.readLastConfirmedAndEntryComplete(BKException.Code.OK, entryId, entry);
+            return;
+        }
+
+        LongPollKey key = new LongPollKey(ledgerId, entryId, timeOutInMillis, parallel);
+        while (true) {
+            PendingLongPoll pendingLongPoll = pendingLongPolls.get(key);
+            if (pendingLongPoll == null) {
+                PendingLongPoll newLongPoll = new PendingLongPoll(key, cb);
+                if (pendingLongPolls.putIfAbsent(key, newLongPoll) == null) {
+                    missesCounter.inc();
+                    try {
+                        reader.read(newLongPoll);
+                    } catch (Throwable t) {
+                        newLongPoll.readLastConfirmedAndEntryComplete(BKException.Code.UnexpectedConditionException,
+                                LedgerHandle.INVALID_ENTRY_ID, null);
+                    }
+                    return;
+                }
+            } else if (pendingLongPoll.addWaiter(cb)) {
+                // served by the long poll in progress
+                hitsCounter.inc();
+                return;
+            } else {
+                // the long poll just completed
+                pendingLongPolls.remove(key, pendingLongPoll);
+            }
+        }
+    }
+
+    private void readRange(List<PendingEntry> range, EntryReader reader) {
+        long firstEntry = range.get(0).key.entryId;
+        long lastEntry = range.get(range.size() - 1).key.entryId;
+        CompletableFuture<LedgerEntries> readFuture;
+        try {
+            readFuture = reader.read(firstEntry, lastEntry);
+        } catch (Throwable t) {
+            range.forEach(pendingEntry -> pendingEntry.fail(t));
+            return;
+        }
+        readFuture.whenComplete((entries, cause) -> {
+            if (cause != null) {
+                range.forEach(pendingEntry -> pendingEntry.fail(cause));
+                return;
+            }
+            boolean[] completed = new boolean[range.size()];
+            try {
+                for (LedgerEntry entry : entries) {
+                    int index = (int) (entry.getEntryId() - firstEntry);
+                    if (index < 0 || index >= range.size() || completed[index]) {
+                        continue;
+                    }
+                    put(entry.getLedgerId(), entry.getEntryId(), entry.getLength(), entry.getEntryBuffer());
+                    range.get(index).complete(entry);
+                    completed[index] = true;
+                }
+            } finally {
+                entries.close();
+            }
+            for (int i = 0; i < range.size(); i++) {
+                if (!completed[i]) {
+                    range.get(i).fail(new BKException.BKUnexpectedConditionException());
+                }
+            }
+        });
+    }
+
+    /**
+     * Add an entry read from the bookies to the cache. The entry must be up to the last add confirmed of the
+     * ledger.
+     */
+    void put(long ledgerId, long entryId, long length, ByteBuf data) {
+        int size = data.readableBytes();
+        if (size > maxEntrySize) {
+            return;
+        }
+        // A copy owned by the cache, which is not recycled once released, see getCachedEntry
+        ByteBuf copy = Unpooled.directBuffer(size, size).writeBytes(data, data.readerIndex(), size);
+        ledgerEntries.compute(ledgerId, (id, entryIds) -> {
+            if (entryIds == null) {
+                entryIds = ConcurrentHashMap.newKeySet();
+            }
+            entryIds.add(entryId);
+            return entryIds;
+        });
+        cache.put(new EntryKey(ledgerId, entryId), new CachedEntry(length, copy));
+    }
+
+    private LedgerEntryImpl getCachedEntry(long ledgerId, long entryId) {
+        CachedEntry cachedEntry = cache.getIfPresent(new EntryKey(ledgerId, entryId));
+        if (cachedEntry == null) {
+            return null;
+        }
+        try {
+            return LedgerEntryImpl.create(ledgerId, entryId, cachedEntry.length, cachedEntry.data.retainedDuplicate());
+        } catch (IllegalReferenceCountException e) {
+            // evicted meanwhile
+            return null;
+        }
+    }
+
+    /**
+     * Drop the cached entries of a ledger.
+     */
+    void invalidateLedger(long ledgerId) {
+        Set<Long> entryIds = ledgerEntries.remove(ledgerId);
+        if (entryIds != null) {
+            for (long entryId : entryIds) {
+                cache.invalidate(new EntryKey(ledgerId, entryId));
+            }
+        }
+    }
+
+    private void onRemoval(RemovalNotification<EntryKey, CachedEntry> notification) {
+        notification.getValue().data.release();
+        if (notification.getCause() != RemovalCause.REPLACED) {
+            EntryKey key = notification.getKey();
+            ledgerEntries.computeIfPresent(key.ledgerId, (id, entryIds) -> {
+                entryIds.remove(key.entryId);
+                return entryIds.isEmpty() ? null : entryIds;
+            });
+        }
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    private static final class EntryKey {
+        final long ledgerId;
+        final long entryId;
+
+        EntryKey(long ledgerId, long entryId) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey other = (EntryKey) o;
+            return ledgerId == other.ledgerId && entryId == other.entryId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
+        }
+    }
+
+    private static final class CachedEntry {
+        final long length;
+        final ByteBuf data;
+        final int size;
+
+        CachedEntry(long length, ByteBuf data) {
+            this.length = length;
+            this.data = data;
+            this.size = data.readableBytes();
+        }
+    }
+
+    private static final class LongPollKey {
+        final long ledgerId;
+        final long entryId;
+        final long timeOutInMillis;
+        final boolean parallel;
+
+        LongPollKey(long ledgerId, long entryId, long timeOutInMillis, boolean parallel) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.timeOutInMillis = timeOutInMillis;
+            this.parallel = parallel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LongPollKey)) {
+                return false;
+            }
+            LongPollKey other = (LongPollKey) o;
+            return ledgerId == other.ledgerId && entryId == other.entryId
+                    && timeOutInMillis == other.timeOutInMillis && parallel == other.parallel;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId)) * 31 + Long.hashCode(timeOutInMillis);
+        }
+    }
+
+    /**
+     * A read of the cache, completed once all its entries are read.
+     */
+    private static final class ReadRequest {
+        final long firstEntry;
+        final LedgerEntry[] entries;
+        final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+        int remaining;
+        boolean failed = false;
+
+        ReadRequest(long firstEntry, int numEntries) {
+            this.firstEntry = firstEntry;
+            this.entries = new LedgerEntry[numEntries];
+            this.remaining = numEntries;
+        }
+
+        /**
+         * Complete an entry of the read, taking ownership of the entry.
+         */
+        void complete(LedgerEntry entry) {
+            synchronized (this) {
+                if (failed) {
+                    entry.close();
+                    return;
+                }
+                entries[(int) (entry.getEntryId() - firstEntry)] = entry;
+                if (--remaining > 0) {
+                    return;
+                }
+            }
+            future.complete(LedgerEntriesImpl.create(new ArrayList<>(Arrays.asList(entries))));
+        }
+
+        void fail(Throwable cause) {
+            synchronized (this) {
+                if (failed || remaining == 0) {
+                    return;
+                }
+                failed = true;
+                for (int i = 0; i < entries.length; i++) {
+                    if (entries[i] != null) {
+                        entries[i].close();
+                        entries[i] = null;
+                    }
+                }
+            }
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * An entry being read, and the reads waiting for it.
+     */
+    private final class PendingEntry {
+        final EntryKey key;
+        final List<ReadRequest> waiters = new ArrayList<>(1);
+        boolean done = false;
+
+        PendingEntry(EntryKey key, ReadRequest request) {
+            this.key = key;
+            this.waiters.add(request);
+        }
+
+        synchronized boolean addWaiter(ReadRequest request) {
+            if (done) {
+                return false;
+            }
+            waiters.add(request);
+            return true;
+        }
+
+        private void markDone() {
+            synchronized (this) {
+                done = true;
+            }
+            pendingEntries.remove(key, this);
+        }
+
+        // The waiters can no longer change once done
+        void complete(LedgerEntry entry) {
+            markDone();
+            for (ReadRequest waiter : waiters) {
+                waiter.complete(LedgerEntryImpl.duplicate(entry));
+            }
+        }
+
+        void fail(Throwable cause) {
+            markDone();
+            for (ReadRequest waiter : waiters) {
+                waiter.fail(cause);
+            }
+        }
+    }
+
+    /**
+     * A long poll in progress, and the reads waiting for it.
+     */
+    private final class PendingLongPoll implements LastConfirmedAndEntryCallback {
+        final LongPollKey key;
+        final List<LastConfirmedAndEntryCallback> waiters = new ArrayList<>(1);
+        boolean done = false;
+
+        PendingLongPoll(LongPollKey key, LastConfirmedAndEntryCallback cb) {
+            this.key = key;
+            this.waiters.add(cb);
+        }
+
+        synchronized boolean addWaiter(LastConfirmedAndEntryCallback cb) {
+            if (done) {
+                return false;
+            }
+            waiters.add(cb);
+            return true;
+        }
+
+        @Override
+        public void readLastConfirmedAndEntryComplete(int rc, long lastAddConfirmed,
+                                                      org.apache.bookkeeper.client.LedgerEntry entry) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            pendingLongPolls.remove(key, this);
+            if (rc == BKException.Code.OK && entry != null && entry.getEntryId() <= lastAddConfirmed) {
+                put(entry.getLedgerId(), entry.getEntryId(), entry.getLength(), entry.getEntryBuffer());
+            }
+            // The waiters can no longer change once done, each of them owns its entry
+            for (int i = 1; i < waiters.size(); i++) {
+                org.apache.bookkeeper.client.LedgerEntry waiterEntry = null;
+                if (entry != null) {
+                    LedgerEntryImpl duplicate = LedgerEntryImpl.create(entry.getLedgerId(), entry.getEntryId(),
+                            entry.getLength(), entry.getEntryBuffer().retainedDuplicate());
+                    waiterEntry = new org.apache.bookkeeper.client.LedgerEntry(duplicate);
+                    duplicate.close();
+                }
+                waiters.get(i).readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, waiterEntry);
+            }
+            waiters.get(0).readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, entry);
+        }
+    }
+}
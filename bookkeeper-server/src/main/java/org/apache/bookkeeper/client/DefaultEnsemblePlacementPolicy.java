@@ -176,6 +176,15 @@ public class DefaultEnsemblePlacementPolicy implements EnsemblePlacementPolicy {
         return writeSet;
     }
 
+    @Override
+    public int getPreferredReadReplicas(
+            List<BookieId> ensemble,
+            BookiesHealthInfo bookiesHealthInfo,
+            DistributionSchedule.WriteSet readSequence) {
+        // The read sequence is not reordered
+        return readSequence.size();
+    }
+
     @Override
     public DistributionSchedule.WriteSet reorderReadLACSequence(
             List<BookieId> ensemble,
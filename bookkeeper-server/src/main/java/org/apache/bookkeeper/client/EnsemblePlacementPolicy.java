@@ -334,6 +334,29 @@ public interface EnsemblePlacementPolicy {
             DistributionSchedule.WriteSet writeSet);
 
 
+    /**
+     * Get the number of replicas at the start of a read sequence, as returned by
+     * {@link #reorderReadSequence(List, BookiesHealthInfo, WriteSet)}, that the policy prefers equally. The client
+     * can send the first read to any of them, e.g. to the least loaded one.
+     *
+     * <p>The default implementation returns 1, which keeps the order of the read sequence.
+     *
+     * @param ensemble
+     *          Ensemble to read entries.
+     * @param bookiesHealthInfo
+     *          Health info for bookies
+     * @param readSequence
+     *          Read sequence returned by {@link #reorderReadSequence(List, BookiesHealthInfo, WriteSet)}.
+     * @return the number of replicas the first read can be sent to, at least 1.
+     * @since 4.16
+     */
+    default int getPreferredReadReplicas(
+            List<BookieId> ensemble,
+            BookiesHealthInfo bookiesHealthInfo,
+            DistributionSchedule.WriteSet readSequence) {
+        return 1;
+    }
+
     /**
      * Reorder the read last add confirmed sequence of a given write quorum <i>writeSet</i>.
      *
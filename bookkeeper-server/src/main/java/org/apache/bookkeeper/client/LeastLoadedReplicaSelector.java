@@ -0,0 +1,78 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+
+/**
+ * Selects the replica to read an entry from, with the power of two choices.
+ *
+ * <p>Two random replicas among the first ones of the read sequence, which the placement policy prefers equally, are
+ * compared, and the least loaded one is moved to the front of the read sequence, the other replicas keeping their
+ * order for the following reads. The load of a bookie is its
+ * outstanding requests times its average read latency, so a bookie which slows down, e.g. in a GC pause, is
+ * avoided as soon as its requests pile up. A bookie with a recent failure, or whose channel is not writable, is
+ * only chosen if both replicas are in that state.
+ *
+ * <p>Comparing two random replicas, instead of picking the least loaded one, avoids all the clients sending
+ * their reads to the same bookie based on stale load information.
+ */
+final class LeastLoadedReplicaSelector {
+
+    private LeastLoadedReplicaSelector() {
+    }
+
+    /**
+     * Move the least loaded of two random replicas to the front of the read sequence.
+     *
+     * @param candidates number of replicas at the start of the read sequence to choose from
+     */
+    static void selectFirstReplica(List<BookieId> ensemble, BookiesHealthInfo bookiesHealthInfo,
+                                   DistributionSchedule.WriteSet writeSet, int candidates) {
+        int size = Math.min(candidates, writeSet.size());
+        if (size < 2) {
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        double firstLoad = load(ensemble.get(writeSet.get(first)), bookiesHealthInfo);
+        double secondLoad = load(ensemble.get(writeSet.get(second)), bookiesHealthInfo);
+        writeSet.moveAndShift(secondLoad < firstLoad ? second : first, 0);
+    }
+
+    private static double load(BookieId bookie, BookiesHealthInfo bookiesHealthInfo) {
+        long pendingRequests = bookiesHealthInfo.getBookiePendingRequests(bookie);
+        if (bookiesHealthInfo.getBookieFailureHistory(bookie) >= 0
+                || (pendingRequests & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) != 0) {
+            return Double.MAX_VALUE;
+        }
+        // an unknown latency counts as the lowest, so that new bookies get reads
+        long latencyNanos = Math.max(1, bookiesHealthInfo.getBookieReadLatencyEwmaNanos(bookie));
+        return (double) (pendingRequests + 1) * latencyNanos;
+    }
+}
@@ -74,6 +74,10 @@ class LedgerDeleteOp {
      * Initiates the operation.
      */
     public void initiate() {
+        ClientEntryCache entryCache = bk.getClientCtx().getEntryCache();
+        if (entryCache != null) {
+            entryCache.invalidateLedger(ledgerId);
+        }
         // Asynchronously delete the ledger from meta manager
         // When this completes, it will invoke the callback method below.
         bk.getLedgerManager().removeLedgerMetadata(ledgerId, Version.ANY)
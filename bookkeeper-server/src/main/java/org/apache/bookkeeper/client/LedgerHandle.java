@@ -237,6 +237,11 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyEwmaNanos(BookieId bookieSocketAddress) {
+                return clientCtx.getBookieClient().getReadLatencyEwmaNanos(bookieSocketAddress);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -861,6 +866,19 @@ public class LedgerHandle implements WriteHandle {
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        ClientEntryCache entryCache = clientCtx.getEntryCache();
+        if (entryCache != null && !isRecoveryRead && lastEntry <= getLastAddConfirmed()
+                && !clientCtx.isClientClosed()) {
+            // The entries up to the LAC can no longer change, they can be shared with the other ledger handles
+            return entryCache.read(ledgerId, firstEntry, lastEntry,
+                    (first, last) -> readEntriesFromBookiesAsync(first, last, false));
+        }
+        return readEntriesFromBookiesAsync(firstEntry, lastEntry, isRecoveryRead);
+    }
+
+    private CompletableFuture<LedgerEntries> readEntriesFromBookiesAsync(long firstEntry,
+                                                                         long lastEntry,
+                                                                         boolean isRecoveryRead) {
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
@@ -1571,6 +1589,10 @@ public class LedgerHandle implements WriteHandle {
             @Override
             public void readLastConfirmedAndEntryComplete(int rc, long lastAddConfirmed, LedgerEntry entry) {
                 if (rc == BKException.Code.OK) {
+                    // The read may be served by the entry cache, or by the long poll of another handle
+                    if (lastAddConfirmed > getLastAddConfirmed()) {
+                        updateLastConfirmed(lastAddConfirmed, 0L);
+                    }
                     if (completed.compareAndSet(false, true)) {
                         cb.readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, entry, ctx);
                     }
@@ -1581,6 +1603,15 @@ public class LedgerHandle implements WriteHandle {
                 }
             }
         };
+        ClientEntryCache entryCache = clientCtx.getEntryCache();
+        if (entryCache != null && !clientCtx.isClientClosed()) {
+            entryCache.readLastConfirmedAndEntry(ledgerId, entryId, timeOutInMillis, parallel, innercb,
+                    pollCb -> new ReadLastConfirmedAndEntryOp(this, clientCtx, getCurrentEnsemble(), pollCb,
+                            entryId - 1, timeOutInMillis)
+                        .parallelRead(parallel)
+                        .initiate());
+            return;
+        }
         new ReadLastConfirmedAndEntryOp(this, clientCtx, getCurrentEnsemble(), innercb, entryId - 1, timeOutInMillis)
             .parallelRead(parallel)
             .initiate();
@@ -2046,6 +2077,13 @@ public class LedgerHandle implements WriteHandle {
         return LedgerMetadataUtils.getCurrentEnsemble(versionedMetadata.getValue());
     }
 
+    /**
+     * Whether the reads of this ledger are all sent to the same bookie.
+     */
+    boolean isStickyReadsActive() {
+        return stickyBookieIndex != STICKY_READ_BOOKIE_INDEX_UNSET;
+    }
+
     /**
      * Return a {@link WriteSet} suitable for reading a particular entry.
      * This will include all bookies that are cotna
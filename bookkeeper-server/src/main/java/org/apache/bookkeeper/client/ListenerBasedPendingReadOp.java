@@ -43,6 +43,12 @@ class ListenerBasedPendingReadOp extends PendingReadOp {
         this.ctx = ctx;
     }
 
+    @Override
+    boolean canVerifyDigestsByBatch() {
+        // the entries are passed to the listener as soon as they are read
+        return false;
+    }
+
     @Override
     protected void submitCallback(int code) {
         LedgerEntryRequest request;
@@ -77,6 +77,8 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
     boolean parallelRead = false;
     final AtomicBoolean complete = new AtomicBoolean(false);
     boolean allowFailFast = false;
+    // Whether the digests of the entries are verified together, once all of them are received
+    boolean batchDigestVerification = false;
 
     abstract class LedgerEntryRequest implements SpeculativeRequestExecutor, AutoCloseable {
 
@@ -90,6 +92,8 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         final DistributionSchedule.WriteSet writeSet;
         final LedgerEntryImpl entryImpl;
         final long eId;
+        // The response completing the request, while its digest is not verified yet
+        ReadContext unverifiedResponse = null;
 
         LedgerEntryRequest(List<BookieId> ensemble, long lId, long eId) {
             this.entryImpl = LedgerEntryImpl.create(lId, eId);
@@ -105,6 +109,15 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             } else {
                 writeSet = lh.getWriteSetForReadOperation(eId);
             }
+            // Sticky reads send all the reads of the ledger to the same bookie, to take advantage of its read-ahead
+            if (clientCtx.getConf().enableLeastLoadedReads && !lh.isStickyReadsActive()) {
+                int candidates = clientCtx.getConf().enableReorderReadSequence
+                        ? clientCtx.getPlacementPolicy().getPreferredReadReplicas(
+                                ensemble, lh.getBookiesHealthInfo(), writeSet)
+                        : writeSet.size();
+                LeastLoadedReplicaSelector.selectFirstReplica(ensemble, lh.getBookiesHealthInfo(), writeSet,
+                        candidates);
+            }
         }
 
         @Override
@@ -113,6 +126,9 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             if (complete.compareAndSet(false, true)) {
                 rc = BKException.Code.UnexpectedConditionException;
                 writeSet.recycle();
+            } else if (unverifiedResponse != null) {
+                unverifiedResponse = null;
+                writeSet.recycle();
             }
             entryImpl.close();
         }
@@ -162,6 +178,48 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             }
         }
 
+        /**
+         * Complete the read request with the response <i>rctx</i>, without verifying its digest. The digest is
+         * verified with the other entries of the read, by {@link #digestVerified()} or {@link #digestMismatch()}.
+         *
+         * @return true if we managed to complete the entry; otherwise false if it is already completed
+         */
+        boolean completeUnverified(ReadContext rctx, final ByteBuf buffer) {
+            if (!complete.compareAndSet(false, true)) {
+                return false;
+            }
+            rc = BKException.Code.OK;
+            unverifiedResponse = rctx;
+            entryImpl.setEntryBuf(buffer);
+            return true;
+        }
+
+        /**
+         * The digest of the unverified response matches, and the reader index of its buffer is at the data.
+         */
+        void digestVerified() {
+            ReadContext rctx = unverifiedResponse;
+            unverifiedResponse = null;
+            entryImpl.setLength(entryImpl.getEntryBuffer().getLong(DigestManager.METADATA_LENGTH - 8));
+            writeSet.recycle();
+            if (!isRecoveryRead) {
+                // do not advance LastAddConfirmed for recovery reads
+                lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+            }
+        }
+
+        /**
+         * The digest of the unverified response doesn't match, read the entry again.
+         */
+        void digestMismatch() {
+            ReadContext rctx = unverifiedResponse;
+            unverifiedResponse = null;
+            entryImpl.setEntryBuf(null);
+            complete.set(false);
+            clientCtx.getClientStats().getReadOpDmCounter().inc();
+            logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Mac mismatch", BKException.Code.DigestMatchException);
+        }
+
         /**
          * Fail the request with given result code <i>rc</i>.
          *
@@ -332,6 +390,7 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
 
         final BitSet sentReplicas;
         final BitSet erroredReplicas;
+        BookieId lastSentTo = null;
 
         SequenceReadRequest(List<BookieId> ensemble, long lId, long eId) {
             super(ensemble, lId, eId);
@@ -408,6 +467,7 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
+                lastSentTo = to;
                 return to;
             } catch (InterruptedException ie) {
                 LOG.error("Interrupted reading entry " + this, ie);
@@ -417,6 +477,11 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             }
         }
 
+        @Override
+        public synchronized BookieId getPendingBookie() {
+            return lastSentTo;
+        }
+
         @Override
         synchronized void logErrorAndReattemptRead(int bookieIndex, BookieId host, String errMsg, int rc) {
             super.logErrorAndReattemptRead(bookieIndex, host, errMsg, rc);
@@ -444,17 +509,28 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         boolean complete(int bookieIndex, BookieId host, ByteBuf buffer) {
             boolean completed = super.complete(bookieIndex, host, buffer);
             if (completed) {
-                int numReplicasTried = getNextReplicaIndexToReadFrom();
-                // Check if any speculative reads were issued and mark any slow bookies before
-                // the first successful speculative read as "slow"
-                for (int i = 0; i < numReplicasTried - 1; i++) {
-                    int slowBookieIndex = writeSet.get(i);
-                    BookieId slowBookieSocketAddress = ensemble.get(slowBookieIndex);
-                    clientCtx.getPlacementPolicy().registerSlowBookie(slowBookieSocketAddress, eId);
-                }
+                registerSlowBookies();
             }
             return completed;
         }
+
+        @Override
+        void digestVerified() {
+            // before the write set is recycled
+            registerSlowBookies();
+            super.digestVerified();
+        }
+
+        private void registerSlowBookies() {
+            int numReplicasTried = getNextReplicaIndexToReadFrom();
+            // Check if any speculative reads were issued and mark any slow bookies before
+            // the first successful speculative read as "slow"
+            for (int i = 0; i < numReplicasTried - 1; i++) {
+                int slowBookieIndex = writeSet.get(i);
+                BookieId slowBookieSocketAddress = ensemble.get(slowBookieIndex);
+                clientCtx.getPlacementPolicy().registerSlowBookie(slowBookieSocketAddress, eId);
+            }
+        }
     }
 
     PendingReadOp(LedgerHandle lh,
@@ -510,9 +586,19 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId, this);
     }
 
+    /**
+     * Whether the entries are only needed once all of them are read, so their digests can be verified together.
+     */
+    boolean canVerifyDigestsByBatch() {
+        return true;
+    }
+
     void initiate() {
         long nextEnsembleChange = startEntryId, i = startEntryId;
         this.requestTimeNanos = MathUtils.nowInNano();
+        // with parallel reads, the other replicas of a mismatched entry have already been discarded
+        this.batchDigestVerification = clientCtx.getConf().enableBatchReadDigestVerification
+                && !parallelRead && endEntryId > startEntryId && canVerifyDigestsByBatch();
         List<BookieId> ensemble = null;
         do {
             if (i == nextEnsembleChange) {
@@ -547,12 +633,14 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         final int bookieIndex;
         final BookieId to;
         final LedgerEntryRequest entry;
+        final long sendTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sendTimeNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -597,10 +685,21 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
 
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
+        if (clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
+            clientCtx.getConf().readSpeculativeRequestPolicy.get()
+                .recordResponseLatency(rctx.to, MathUtils.elapsedNanos(rctx.sendTimeNanos));
+        }
 
         buffer.retain();
-        // if entry has completed don't handle twice
-        if (entry.complete(rctx.bookieIndex, rctx.to, buffer)) {
+        if (batchDigestVerification) {
+            // if entry has completed don't handle twice
+            if (entry.completeUnverified(rctx, buffer)) {
+                submitCallback(BKException.Code.OK);
+            } else {
+                buffer.release();
+            }
+        } else if (entry.complete(rctx.bookieIndex, rctx.to, buffer)) {
+            // if entry has completed don't handle twice
             if (!isRecoveryRead) {
                 // do not advance LastAddConfirmed for recovery reads
                 lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
@@ -617,11 +716,18 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
     }
 
     protected void submitCallback(int code) {
+        LedgerEntriesImpl entries = null;
         if (BKException.Code.OK == code) {
             numPendingEntries--;
             if (numPendingEntries != 0) {
                 return;
             }
+            if (batchDigestVerification && !complete.get()) {
+                entries = LedgerEntriesImpl.create(Lists.transform(seq, input -> input.entryImpl));
+                if (!verifyDigests(entries)) {
+                    return;
+                }
+            }
         }
 
         // ensure callback once
@@ -653,8 +759,41 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
             future.completeExceptionally(BKException.create(code));
         } else {
             clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
-            future.complete(LedgerEntriesImpl.create(Lists.transform(seq, input -> input.entryImpl)));
+            if (entries == null) {
+                entries = LedgerEntriesImpl.create(Lists.transform(seq, input -> input.entryImpl));
+            }
+            future.complete(entries);
+        }
+    }
+
+    /**
+     * Verify the digests of all the entries in a single pass, on the thread of the last response. The entries
+     * whose digest doesn't match are read again from the next replica, and verified one by one.
+     *
+     * @return true if the digests of all the entries match
+     */
+    private boolean verifyDigests(LedgerEntries entries) {
+        batchDigestVerification = false;
+        List<Long> mismatches = lh.macManager.verifyDigestsAndReturnData(entries);
+        for (LedgerEntryRequest req : seq) {
+            if (!mismatches.contains(req.eId)) {
+                req.digestVerified();
+            }
+        }
+        if (mismatches.isEmpty()) {
+            return true;
+        }
+        for (LedgerEntryRequest req : seq) {
+            if (complete.get()) {
+                // the read already failed, as an entry could not be read from any other replica
+                break;
+            }
+            if (mismatches.contains(req.eId)) {
+                numPendingEntries++;
+                req.digestMismatch();
+            }
         }
+        return false;
     }
 
 }
@@ -821,6 +821,27 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             ensemble, writeSet, writeSetWithRegion, bookiesHealthInfo, false, "", writeSet.size());
     }
 
+    @Override
+    public int getPreferredReadReplicas(
+            List<BookieId> ensemble,
+            BookiesHealthInfo bookiesHealthInfo,
+            DistributionSchedule.WriteSet readSequence) {
+        int preferred = 0;
+        while (preferred < readSequence.size()
+                && isPreferredForRead(ensemble.get(readSequence.get(preferred)))) {
+            preferred++;
+        }
+        return Math.max(1, preferred);
+    }
+
+    /**
+     * Whether the bookie is in the first tier of the read sequence, i.e. it is available and not slow. The bookies
+     * with a failure history are also in it: they are ordered within the tier by the time of their last failure.
+     */
+    protected boolean isPreferredForRead(BookieId bookie) {
+        return knownBookies.containsKey(bookie) && slowBookies.getIfPresent(bookie) == null;
+    }
+
     /**
      * This function orders the read sequence with a given region. For region-unaware policies (e.g.
      * RackAware), we pass in false for regionAware and an empty myRegion. When this happens, any
@@ -624,6 +624,13 @@ public class RegionAwareEnsemblePlacementPolicy extends RackawareEnsemblePlaceme
         }
     }
 
+    @Override
+    protected boolean isPreferredForRead(BookieId bookie) {
+        // The local bookies are tried first
+        return super.isPreferredForRead(bookie)
+                && (UNKNOWN_REGION.equals(myRegion) || myRegion.equals(getRegion(bookie)));
+    }
+
     @Override
     public final DistributionSchedule.WriteSet reorderReadLACSequence(
             List<BookieId> ensemble,
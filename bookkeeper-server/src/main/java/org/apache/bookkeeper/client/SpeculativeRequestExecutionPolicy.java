@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define a policy for speculative request execution.
@@ -42,4 +43,14 @@ public interface SpeculativeRequestExecutionPolicy {
      */
     ScheduledFuture<?> initiateSpeculativeRequest(ScheduledExecutorService scheduler,
             SpeculativeRequestExecutor requestExecutor);
+
+    /**
+     * Record the latency of a response from a bookie, for the policies issuing speculative requests based
+     * on the latency of the bookies.
+     *
+     * @param bookie the bookie which responded
+     * @param latencyNanos the latency of the response, in nanoseconds
+     */
+    default void recordResponseLatency(BookieId bookie, long latencyNanos) {
+    }
 }
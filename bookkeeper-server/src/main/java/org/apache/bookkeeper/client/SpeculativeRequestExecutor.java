@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define an executor for issuing speculative requests.
@@ -39,4 +40,14 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Get the bookie of the last request issued, whose response is awaited before issuing a speculative
+     * request.
+     *
+     * @return the bookie of the last request issued, or null if unknown
+     */
+    default BookieId getPendingBookie() {
+        return null;
+    }
 }
@@ -634,6 +634,15 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
         return writeSet;
     }
 
+    @Override
+    public int getPreferredReadReplicas(
+            List<BookieId> ensemble,
+            BookiesHealthInfo bookiesHealthInfo,
+            DistributionSchedule.WriteSet readSequence) {
+        // The read sequence is not reordered
+        return readSequence.size();
+    }
+
     @Override
     public DistributionSchedule.WriteSet reorderReadLACSequence(
             List<BookieId> ensemble,
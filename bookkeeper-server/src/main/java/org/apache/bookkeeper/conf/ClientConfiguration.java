@@ -98,6 +98,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
     protected static final String USE_V2_WIRE_PROTOCOL = "useV2WireProtocol";
+    protected static final String ADD_ENTRY_BATCHING_ENABLED = "addEntryBatchingEnabled";
+    protected static final String ADD_ENTRY_BATCH_MAX_BYTES = "addEntryBatchMaxBytes";
+    protected static final String ADD_ENTRY_BATCH_LINGER_MICROS = "addEntryBatchLingerMicros";
     protected static final String NETTY_USE_POOLED_BUFFERS = "nettyUsePooledBuffers";
 
     // Read Parameters
@@ -111,10 +114,16 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadLACTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_ENABLED = "adaptiveSpeculativeReadEnabled";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String MAX_SPECULATIVE_READ_RATIO = "maxSpeculativeReadRatio";
     protected static final String ENABLE_PARALLEL_RECOVERY_READ = "enableParallelRecoveryRead";
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String LEAST_LOADED_READS_ENABLED = "leastLoadedReadsEnabled";
+    protected static final String CLIENT_ENTRY_CACHE_MAX_SIZE_BYTES = "clientEntryCacheMaxSizeBytes";
+    protected static final String BATCH_READ_DIGEST_VERIFICATION_ENABLED = "batchReadDigestVerificationEnabled";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
@@ -595,6 +604,75 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the consecutive add requests sent to a bookie connection are grouped into batch add requests.
+     *
+     * @return whether add requests batching is enabled
+     */
+    public boolean getAddEntryBatchingEnabled() {
+        return getBoolean(ADD_ENTRY_BATCHING_ENABLED, false);
+    }
+
+    /**
+     * Enable the batching of the add requests sent to a bookie connection. The consecutive add requests are sent
+     * as a single batch add request, once the batch reaches {@link #getAddEntryBatchMaxBytes()}, or
+     * {@link #getAddEntryBatchLingerMicros()} after its first request. Each entry of a batch keeps its own digest
+     * and callback.
+     *
+     * <p>Batching is only supported by the v3 wire protocol, and all the bookies must support batch add requests.
+     * High priority adds, like the ones of ledger recovery, are never batched.
+     *
+     * @param enabled
+     *          whether add requests batching is enabled
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchingEnabled(boolean enabled) {
+        setProperty(ADD_ENTRY_BATCHING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the bytes of add requests batched on a bookie connection before the batch is sent.
+     *
+     * @return the max bytes of a batch of add requests
+     */
+    public int getAddEntryBatchMaxBytes() {
+        return getInt(ADD_ENTRY_BATCH_MAX_BYTES, 64 * 1024);
+    }
+
+    /**
+     * Set the bytes of add requests batched on a bookie connection before the batch is sent.
+     *
+     * @param maxBytes
+     *          the max bytes of a batch of add requests
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxBytes(int maxBytes) {
+        setProperty(ADD_ENTRY_BATCH_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the time in microseconds an add request may wait in a batch for more add requests before it is sent.
+     *
+     * @return the linger time of a batch of add requests, in microseconds
+     */
+    public long getAddEntryBatchLingerMicros() {
+        return getLong(ADD_ENTRY_BATCH_LINGER_MICROS, 100);
+    }
+
+    /**
+     * Set the time in microseconds an add request may wait in a batch for more add requests before it is sent.
+     *
+     * @param lingerMicros
+     *          the linger time of a batch of add requests, in microseconds
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchLingerMicros(long lingerMicros) {
+        setProperty(ADD_ENTRY_BATCH_LINGER_MICROS, lingerMicros);
+        return this;
+    }
+
     /**
      * Get the socket read timeout. This is the number of
      * seconds we wait without hearing a response from a bookie
@@ -1037,6 +1115,75 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the speculative reads are issued based on the latency of the bookies.
+     *
+     * @return whether adaptive speculative reads are enabled.
+     */
+    public boolean isAdaptiveSpeculativeReadEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable issuing the speculative reads based on the latency of the bookies. A speculative read is issued
+     * once a read has been pending for longer than {@link #getSpeculativeReadLatencyPercentile()} of the recent
+     * read latencies of its bookie, and the speculative reads are limited to
+     * {@link #getMaxSpeculativeReadRatio()} of the reads. The first speculative read timeout is used until the
+     * latencies of a bookie are known, and the max speculative read timeout bounds the timeout.
+     *
+     * @param enabled
+     *          whether adaptive speculative reads are enabled.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the percentile of the read latencies of a bookie after which a speculative read is issued, when
+     * adaptive speculative reads are enabled.
+     *
+     * @return the read latency percentile, between 0 and 100.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 95.0);
+    }
+
+    /**
+     * Set the percentile of the read latencies of a bookie after which a speculative read is issued, when
+     * adaptive speculative reads are enabled.
+     *
+     * @param percentile
+     *          the read latency percentile, between 0 and 100.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the max ratio of speculative reads to reads, when adaptive speculative reads are enabled.
+     *
+     * @return the max ratio of speculative reads.
+     */
+    public double getMaxSpeculativeReadRatio() {
+        return getDouble(MAX_SPECULATIVE_READ_RATIO, 0.05);
+    }
+
+    /**
+     * Set the max ratio of speculative reads to reads, when adaptive speculative reads are enabled.
+     *
+     * @param ratio
+     *          the max ratio of speculative reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setMaxSpeculativeReadRatio(double ratio) {
+        setProperty(MAX_SPECULATIVE_READ_RATIO, ratio);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1197,6 +1344,83 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If read operations should be sent to the least loaded replica or not.
+     *
+     * @return true if least loaded reads are enabled, otherwise false.
+     */
+    public boolean isLeastLoadedReadsEnabled() {
+        return getBoolean(LEAST_LOADED_READS_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable sending read operations to the least loaded replica.
+     *
+     * <p>If this flag is enabled, the client compares two random replicas of an entry, by their outstanding
+     * requests and their average read latency, and reads first from the least loaded one. This is applied
+     * after reordering the read sequence, only among the first replicas that the placement policy prefers
+     * equally, and is ignored when sticky reads are enabled.
+     *
+     * @param enabled the flag to enable/disable least loaded reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setLeastLoadedReadsEnabled(boolean enabled) {
+        setProperty(LEAST_LOADED_READS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max size of the entry cache shared by the ledger handles of the client.
+     *
+     * @return the max size of the client entry cache in bytes, 0 if the cache is disabled.
+     */
+    public long getClientEntryCacheMaxSizeBytes() {
+        return getLong(CLIENT_ENTRY_CACHE_MAX_SIZE_BYTES, 0L);
+    }
+
+    /**
+     * Set the max size of the entry cache shared by the ledger handles of the client.
+     *
+     * <p>The cache keeps off-heap the entries read up to the last add confirmed of their ledger, so the ledger
+     * handles reading the same entries, e.g. the tailing readers of a ledger, read them once from the bookies. The
+     * reads of entries which are being read wait for them, even if the ranges read differ, and identical long poll
+     * reads share a single long poll of the bookies. The least recently used entries are evicted once the cache is
+     * full, and the entries of a ledger are dropped when the ledger is deleted. Entries bigger than an eighth of the
+     * cache are not cached.
+     *
+     * @param maxSizeBytes the max size of the client entry cache in bytes, 0 to disable the cache.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setClientEntryCacheMaxSizeBytes(long maxSizeBytes) {
+        setProperty(CLIENT_ENTRY_CACHE_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
+    /**
+     * If the digests of the entries of range reads are verified by batches or not.
+     *
+     * @return true if batch read digest verification is enabled, otherwise false.
+     */
+    public boolean isBatchReadDigestVerificationEnabled() {
+        return getBoolean(BATCH_READ_DIGEST_VERIFICATION_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable verifying the digests of the entries of range reads by batches.
+     *
+     * <p>If this flag is enabled, the digests of the entries of a read of several entries are verified together,
+     * in a single pass once all the entries are received, instead of one by one as they are received. An entry
+     * whose digest doesn't match is read again from another replica, like with per entry verification. Reads
+     * with a listener, and parallel reads, still verify the entries one by one.
+     *
+     * @param enabled the flag to enable/disable batch read digest verification.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setBatchReadDigestVerificationEnabled(boolean enabled) {
+        setProperty(BATCH_READ_DIGEST_VERIFICATION_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -105,6 +105,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_SCHEDULING_POLICY = "compactionSchedulingPolicy";
+    protected static final String COMPACTION_MAX_REWRITE_BYTES_PER_RUN = "compactionMaxRewriteBytesPerRun";
+    protected static final String NUM_COMPACTION_THREADS = "numCompactionThreads";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -114,6 +117,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             "gcOverreplicatedLedgerMaxConcurrentRequests";
     protected static final String USE_TRANSACTIONAL_COMPACTION = "useTransactionalCompaction";
     protected static final String VERIFY_METADATA_ON_GC = "verifyMetadataOnGC";
+    protected static final String GC_INCREMENTAL_ENABLED = "gcIncrementalEnabled";
+    protected static final String GC_FULL_RECONCILIATION_WAIT_TIME = "gcFullReconciliationWaitTime";
+    protected static final String GC_INCREMENTAL_MAX_LEDGERS_PER_RUN = "gcIncrementalMaxLedgersPerRun";
+    protected static final String GC_INCREMENTAL_METADATA_READ_RATE = "gcIncrementalMetadataReadRate";
     protected static final String GC_ENTRYLOGMETADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
     protected static final String GC_ENTRYLOG_METADATA_CACHE_PATH = "gcEntryLogMetadataCachePath";
     protected static final String USE_TARGET_ENTRYLOG_SIZE_FOR_GC = "useTargetEntryLogSizeForGc";
@@ -142,12 +149,17 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT = "journalAdaptiveGroupCommit";
+    protected static final String JOURNAL_STREAMS_PER_DIRECTORY = "journalStreamsPerDirectory";
+    protected static final String NUM_JOURNAL_REPLAY_THREADS = "numJournalReplayThreads";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
+    protected static final String JOURNAL_DIRECT_IO = "journalDirectIO";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
+    protected static final String JOURNAL_COMPRESSION_ENABLED = "journalCompressionEnabled";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
@@ -229,6 +241,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String ZERO_COPY_READ_MIN_ENTRY_SIZE = "zeroCopyReadMinEntrySize";
+    protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -508,6 +522,98 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get whether the bookie checks the metadata of a bounded number of its ledgers on each garbage collection,
+     * instead of comparing all its ledgers with the ledgers of the metadata store on every garbage collection.
+     *
+     * @return whether incremental garbage collection is enabled
+     */
+    public boolean isGcIncrementalEnabled() {
+        return this.getBoolean(GC_INCREMENTAL_ENABLED, false);
+    }
+
+    /**
+     * Set whether the bookie checks the metadata of a bounded number of its ledgers on each garbage collection.
+     *
+     * @param enabled whether incremental garbage collection is enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setGcIncrementalEnabled(boolean enabled) {
+        this.setProperty(GC_INCREMENTAL_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the wait time in millis between two full comparisons of the ledgers of the bookie with the ledgers of
+     * the metadata store, when incremental garbage collection is enabled.
+     *
+     * @return full reconciliation wait time
+     */
+    public long getGcFullReconciliationWaitTimeMillis() {
+        return this.getLong(GC_FULL_RECONCILIATION_WAIT_TIME, TimeUnit.HOURS.toMillis(6));
+    }
+
+    /**
+     * Set the wait time between two full comparisons of the ledgers of the bookie with the ledgers of the
+     * metadata store, when incremental garbage collection is enabled. Default: 6 hours
+     *
+     * <p>The full comparison also garbage collects the over-replicated ledgers, which the incremental garbage
+     * collection doesn't.
+     *
+     * @param waitTime full reconciliation wait time
+     * @return server configuration
+     */
+    public ServerConfiguration setGcFullReconciliationWaitTime(long waitTime, TimeUnit unit) {
+        this.setProperty(GC_FULL_RECONCILIATION_WAIT_TIME, Long.toString(unit.toMillis(waitTime)));
+        return this;
+    }
+
+    /**
+     * Get the max number of ledgers whose metadata is read by an incremental garbage collection.
+     *
+     * @return max number of ledgers checked per garbage collection
+     */
+    public int getGcIncrementalMaxLedgersPerRun() {
+        return this.getInt(GC_INCREMENTAL_MAX_LEDGERS_PER_RUN, 1000);
+    }
+
+    /**
+     * Set the max number of ledgers whose metadata is read by an incremental garbage collection. Default: 1000
+     *
+     * <p>The ledgers of the bookie are checked in turn, so a deleted ledger is garbage collected within the number
+     * of ledgers of the bookie divided by this number of garbage collections. It is capped to the number of metadata
+     * reads the {@link #setGcIncrementalMetadataReadRate(int) read rate} allows within the
+     * {@link #setGcWaitTime(long) garbage collection interval}.
+     *
+     * @param maxLedgers max number of ledgers checked per garbage collection
+     * @return server configuration
+     */
+    public ServerConfiguration setGcIncrementalMaxLedgersPerRun(int maxLedgers) {
+        this.setProperty(GC_INCREMENTAL_MAX_LEDGERS_PER_RUN, Integer.toString(maxLedgers));
+        return this;
+    }
+
+    /**
+     * Get the max rate of the metadata reads of the incremental garbage collection, in reads per second.
+     *
+     * @return metadata read rate
+     */
+    public int getGcIncrementalMetadataReadRate() {
+        return this.getInt(GC_INCREMENTAL_METADATA_READ_RATE, 100);
+    }
+
+    /**
+     * Set the max rate of the metadata reads of the incremental garbage collection, in reads per second.
+     * Default: 100
+     *
+     * @param rate metadata read rate
+     * @return server configuration
+     */
+    public ServerConfiguration setGcIncrementalMetadataReadRate(int rate) {
+        this.setProperty(GC_INCREMENTAL_METADATA_READ_RATE, Integer.toString(rate));
+        return this;
+    }
+
     /**
      * Get whether the bookie is configured to use persistent
      * entrylogMetadataMap.
@@ -564,6 +670,73 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the policy ranking the entry logs to compact, among the entry logs below the compaction threshold.
+     * <ul>
+     * <li>usage: by buckets of usage, from the least used</li>
+     * <li>greedy: by bytes freed per byte rewritten</li>
+     * <li>costBenefit: by bytes freed per byte read and rewritten, weighted by the age of the entry log</li>
+     * </ul>
+     *
+     * @return the compaction scheduling policy
+     */
+    public String getCompactionSchedulingPolicy() {
+        return getString(COMPACTION_SCHEDULING_POLICY, "usage");
+    }
+
+    /**
+     * Set the policy ranking the entry logs to compact.
+     *
+     * @param policy usage, greedy or costBenefit
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionSchedulingPolicy(String policy) {
+        this.setProperty(COMPACTION_SCHEDULING_POLICY, policy);
+        return this;
+    }
+
+    /**
+     * Get the max bytes of remaining data rewritten by a compaction run. The entry logs that don't fit in what is
+     * left of the budget are skipped until the next run.
+     *
+     * @return the max bytes rewritten by a compaction run, 0 for no limit
+     */
+    public long getCompactionMaxRewriteBytesPerRun() {
+        return getLong(COMPACTION_MAX_REWRITE_BYTES_PER_RUN, 0);
+    }
+
+    /**
+     * Set the max bytes of remaining data rewritten by a compaction run.
+     *
+     * @param maxBytes the max bytes rewritten by a compaction run, 0 for no limit
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionMaxRewriteBytesPerRun(long maxBytes) {
+        this.setProperty(COMPACTION_MAX_REWRITE_BYTES_PER_RUN, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the number of threads compacting entry logs in parallel, for each garbage collector. With more than one
+     * thread, the compaction rate applies to each thread.
+     *
+     * @return the number of compaction threads
+     */
+    public int getNumCompactionThreads() {
+        return getInt(NUM_COMPACTION_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads compacting entry logs in parallel, for each garbage collector.
+     *
+     * @param numThreads the number of compaction threads
+     * @return server configuration
+     */
+    public ServerConfiguration setNumCompactionThreads(int numThreads) {
+        this.setProperty(NUM_COMPACTION_THREADS, numThreads);
+        return this;
+    }
+
     /**
      * Get whether local scrub is enabled.
      *
@@ -917,6 +1090,27 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should the records of each journal group commit be compressed together with LZ4. It requires
+     * journal format version 7.
+     *
+     * @return whether journal compression is enabled
+     */
+    public boolean getJournalCompressionEnabled() {
+        return this.getBoolean(JOURNAL_COMPRESSION_ENABLED, false);
+    }
+
+    /**
+     * Set whether the records of each journal group commit should be compressed together with LZ4.
+     *
+     * @param enabled whether journal compression is enabled
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalCompressionEnabled(boolean enabled) {
+        this.setProperty(JOURNAL_COMPRESSION_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Set the size of the journal queue.
      *
@@ -2024,6 +2218,55 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Set the min size of the entries that are sent to the network directly from the entry log file, using
+     * zero-copy transfers (sendfile), instead of being copied into memory first.
+     *
+     * <p>Zero-copy reads are only used for the v2 protocol on plaintext connections, and with ledger storages
+     * that support them.
+     *
+     * @param minEntrySize
+     *          min size of the entries, 0 or negative to disable zero-copy reads
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadMinEntrySize(int minEntrySize) {
+        setProperty(ZERO_COPY_READ_MIN_ENTRY_SIZE, minEntrySize);
+        return this;
+    }
+
+    /**
+     * Get the min size of the entries that are sent to the network using zero-copy transfers.
+     *
+     * @return min size of the entries, 0 or negative if zero-copy reads are disabled. Default is 0 (disabled)
+     */
+    public int getZeroCopyReadMinEntrySize() {
+        return getInt(ZERO_COPY_READ_MIN_ENTRY_SIZE, 0);
+    }
+
+    /**
+     * Enable the v3 batch read requests, which return several entries of a ledger in a single response.
+     *
+     * <p>The BookKeeper client doesn't send batch reads yet, they are only used by clients that build the
+     * requests themselves. When disabled, batch reads are rejected like unknown operations.
+     *
+     * @param enabled
+     *          whether to serve batch read requests
+     * @return server configuration
+     */
+    public ServerConfiguration setBatchReadEnabled(boolean enabled) {
+        setProperty(BATCH_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the v3 batch read requests are served.
+     *
+     * @return true if batch reads are enabled. Default is false
+     */
+    public boolean isBatchReadEnabled() {
+        return getBoolean(BATCH_READ_ENABLED, false);
+    }
+
 
 
     /**
@@ -2416,6 +2659,72 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(JOURNAL_FLUSH_WHEN_QUEUE_EMPTY, false);
     }
 
+    /**
+     * Should the journal size its group commits from the recent commit latency and arrival rate of the entries.
+     * When enabled, {@link #getJournalMaxGroupWaitMSec()} and {@link #getJournalBufferedEntriesThreshold()} are
+     * upper bounds on the wait time and number of entries of a group commit, and
+     * {@link #getJournalFlushWhenQueueEmpty()} is ignored.
+     *
+     * @return true if the group commits are adaptive
+     */
+    public boolean getJournalAdaptiveGroupCommit() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_COMMIT, false);
+    }
+
+    /**
+     * Enable/disable the adaptive sizing of the journal group commits.
+     *
+     * @param enabled flag to enable/disable adaptive group commits
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommit(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT, enabled);
+        return this;
+    }
+
+    /**
+     * Get the number of journal streams written in parallel in each journal directory. Each stream has its own
+     * journal thread, journal files, group commits and fsyncs, and the ledgers are hashed to the streams.
+     *
+     * @return the number of journal streams per journal directory
+     */
+    public int getJournalStreamsPerDirectory() {
+        return Math.max(1, getInt(JOURNAL_STREAMS_PER_DIRECTORY, 1));
+    }
+
+    /**
+     * Set the number of journal streams written in parallel in each journal directory.
+     *
+     * @param streams the number of journal streams per journal directory
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalStreamsPerDirectory(int streams) {
+        setProperty(JOURNAL_STREAMS_PER_DIRECTORY, streams);
+        return this;
+    }
+
+    /**
+     * Get the number of threads that apply the entries replayed from the journal to the ledger storage on
+     * startup. The journal is still read by a single thread, and the entries of a ledger are applied in order
+     * by the same thread. If 1, the entries are applied by the thread reading the journal.
+     *
+     * @return the number of journal replay threads
+     */
+    public int getNumJournalReplayThreads() {
+        return Math.max(1, getInt(NUM_JOURNAL_REPLAY_THREADS, 1));
+    }
+
+    /**
+     * Set the number of threads that apply the entries replayed from the journal to the ledger storage.
+     *
+     * @param numThreads the number of journal replay threads
+     * @return server configuration
+     */
+    public ServerConfiguration setNumJournalReplayThreads(int numThreads) {
+        setProperty(NUM_JOURNAL_REPLAY_THREADS, numThreads);
+        return this;
+    }
+
     /**
      * Set whether the bookie is able to go into read-only mode.
      * If this is set to false, the bookie will shutdown on encountering
@@ -2986,6 +3295,31 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should the journal be written with direct I/O, bypassing the page cache.
+     *
+     * <p>It requires the native-io library and a journal format version of at least 5, with an alignment size
+     * that is a multiple of 512 and a divisor of 4096. The journal falls back to buffered writes otherwise.
+     *
+     * @return whether the journal is written with direct I/O
+     */
+    @Beta
+    public boolean getJournalDirectIO() {
+        return getBoolean(JOURNAL_DIRECT_IO, false);
+    }
+
+    /**
+     * Sets whether the journal should be written with direct I/O, bypassing the page cache.
+     *
+     * @param enabled
+     *            - true to write the journal with direct I/O. otherwise, false
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIO(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO, enabled);
+        return this;
+    }
+
     /*
      * Get the {@link LedgerStorage} implementation class name.
      *
@@ -3176,6 +3510,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             throw new ConfigurationException("For persisiting explicitLac, journalFormatVersionToWrite should be >= 6"
                     + "and FileInfoFormatVersionToWrite should be >= 1");
         }
+        if (getJournalCompressionEnabled() && getJournalFormatVersionToWrite() < 7) {
+            throw new ConfigurationException("For journal compression, journalFormatVersionToWrite should be >= 7");
+        }
         if (getMinorCompactionInterval() > 0 && getMinorCompactionInterval() * SECOND < getGcWaitTime()) {
             throw new ConfigurationException("minorCompactionInterval should be >= gcWaitTime.");
         }
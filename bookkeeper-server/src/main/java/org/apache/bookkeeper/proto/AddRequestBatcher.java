@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Groups the consecutive add requests sent to a bookie connection into batches.
+ *
+ * <p>A batch is sent once it reaches the max bytes, or after the linger time since its first request. Batches are
+ * sent while holding the lock of the batcher, so they are sent in the order the requests were added.
+ *
+ * @param <T> the type of the batched add requests
+ */
+class AddRequestBatcher<T> {
+
+    private final int maxBatchBytes;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<List<T>> sender;
+
+    private List<T> batch = new ArrayList<>();
+    private int batchBytes = 0;
+    // Incremented on every sent batch, so a linger task only sends the batch it was scheduled for
+    private long batchSequence = 0;
+
+    AddRequestBatcher(int maxBatchBytes, long lingerMicros, ScheduledExecutorService scheduler,
+                      Consumer<List<T>> sender) {
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.scheduler = scheduler;
+        this.sender = sender;
+    }
+
+    /**
+     * Add a request to the batch, sending the batch if it is full.
+     *
+     * @param request the add request
+     * @param size the size of the entry in bytes
+     */
+    synchronized void add(T request, int size) {
+        if (!batch.isEmpty() && batchBytes + size > maxBatchBytes) {
+            flush();
+        }
+        batch.add(request);
+        batchBytes += size;
+        if (batchBytes >= maxBatchBytes || lingerNanos <= 0) {
+            flush();
+        } else if (batch.size() == 1) {
+            scheduleLinger();
+        }
+    }
+
+    /**
+     * Send the pending batch, if any.
+     */
+    synchronized void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<T> toSend = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        batchSequence++;
+        sender.accept(toSend);
+    }
+
+    private void scheduleLinger() {
+        final long sequence = batchSequence;
+        try {
+            scheduler.schedule(() -> flushIfPending(sequence), lingerNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ree) {
+            flush();
+        }
+    }
+
+    private synchronized void flushIfPending(long sequence) {
+        if (batchSequence == sequence) {
+            flush();
+        }
+    }
+}
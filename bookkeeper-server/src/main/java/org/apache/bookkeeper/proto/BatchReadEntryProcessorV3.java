@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor class for v3 batch read requests, which return several entries of a ledger in a single
+ * response.
+ */
+class BatchReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchReadEntryProcessorV3.class);
+
+    // Upper bound of the protobuf encoding overhead of each entry in the response
+    private static final int ENTRY_OVERHEAD = 32;
+
+    // Number of entries read from the bookie at once. The entries of a chunk are read with coalesced reads
+    private static final int INITIAL_CHUNK_SIZE = 16;
+    private static final int MAX_CHUNK_SIZE = 256;
+
+    private final BatchReadRequest batchReadRequest;
+    private final long ledgerId;
+    // Entries wrapped without copy by the response, released once the response is written
+    private final List<ByteBuf> responseBodies = new ArrayList<>();
+
+    BatchReadEntryProcessorV3(Request request,
+                              BookieRequestHandler requestHandler,
+                              BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+
+        this.batchReadRequest = request.getBatchReadRequest();
+        this.ledgerId = batchReadRequest.getLedgerId();
+    }
+
+    private int getEntriesCount() {
+        if (batchReadRequest.getEntryIdsCount() > 0) {
+            return batchReadRequest.getEntryIdsCount();
+        } else if (batchReadRequest.hasFirstEntryId() && batchReadRequest.hasLastEntryId()
+                && batchReadRequest.getFirstEntryId() >= 0
+                && batchReadRequest.getLastEntryId() >= batchReadRequest.getFirstEntryId()) {
+            return (int) Math.min(Integer.MAX_VALUE,
+                    batchReadRequest.getLastEntryId() - batchReadRequest.getFirstEntryId() + 1);
+        } else {
+            return 0;
+        }
+    }
+
+    private long getEntryId(int index) {
+        if (batchReadRequest.getEntryIdsCount() > 0) {
+            return batchReadRequest.getEntryIds(index);
+        } else {
+            return batchReadRequest.getFirstEntryId() + index;
+        }
+    }
+
+    private BatchReadResponse getBatchReadResponse() {
+        final long startTimeNanos = MathUtils.nowInNano();
+        BatchReadResponse.Builder batchReadResponse = BatchReadResponse.newBuilder()
+                .setLedgerId(ledgerId);
+
+        if (!isVersionCompatible()) {
+            return buildResponse(batchReadResponse, StatusCode.EBADVERSION, startTimeNanos);
+        }
+
+        int entriesCount = getEntriesCount();
+        if (entriesCount == 0) {
+            LOG.error("Invalid batch read request, no entries to read: {}", batchReadRequest);
+            return buildResponse(batchReadResponse, StatusCode.EBADREQ, startTimeNanos);
+        }
+
+        long maxSize = requestProcessor.getMaxBatchReadSize();
+        if (batchReadRequest.hasMaxSize() && batchReadRequest.getMaxSize() > 0) {
+            maxSize = Math.min(maxSize, batchReadRequest.getMaxSize());
+        }
+
+        long responseSize = 0;
+        StatusCode status = StatusCode.EOK;
+        int nextIndex = 0;
+        int chunkSize = INITIAL_CHUNK_SIZE;
+        boolean done = false;
+        while (!done && nextIndex < entriesCount) {
+            long[] entryIds = new long[Math.min(chunkSize, entriesCount - nextIndex)];
+            for (int i = 0; i < entryIds.length; i++) {
+                entryIds[i] = getEntryId(nextIndex + i);
+            }
+
+            List<ByteBuf> entries;
+            try {
+                entries = requestProcessor.getBookie().readEntries(ledgerId, entryIds);
+            } catch (Bookie.NoLedgerException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("No ledger found while batch reading entry: {} from ledger: {}", entryIds[0], ledgerId);
+                }
+                status = StatusCode.ENOLEDGER;
+                break;
+            } catch (Bookie.NoEntryException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("No entry found while batch reading entry: {} from ledger: {}", entryIds[0], ledgerId);
+                }
+                status = StatusCode.ENOENTRY;
+                break;
+            } catch (IOException e) {
+                LOG.error("IOException while batch reading entry: {} from ledger {} ", entryIds[0], ledgerId, e);
+                status = StatusCode.EIO;
+                break;
+            } catch (BookieException.DataUnknownException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Ledger has unknown state for entry: {} from ledger {}", entryIds[0], ledgerId);
+                }
+                status = StatusCode.EUNKNOWNLEDGERSTATE;
+                break;
+            } catch (BookieException e) {
+                LOG.error("Unauthorized access to ledger:{} while batch reading entry:{} in request from address: {}",
+                        ledgerId, entryIds[0], requestHandler.ctx().channel().remoteAddress());
+                status = StatusCode.EUA;
+                break;
+            }
+
+            int added = 0;
+            try {
+                for (; added < entries.size(); added++) {
+                    ByteBuf entryBody = entries.get(added);
+                    long entrySize = entryBody.readableBytes() + ENTRY_OVERHEAD;
+                    if (batchReadResponse.getEntryIdsCount() > 0 && responseSize + entrySize > maxSize) {
+                        done = true;
+                        break;
+                    }
+                    batchReadResponse.addEntryIds(entryIds[added]);
+                    batchReadResponse.addBodies(UnsafeByteOperations.unsafeWrap(entryBody.nioBuffer()));
+                    responseBodies.add(entryBody);
+                    responseSize += entrySize;
+                }
+            } finally {
+                for (int i = added; i < entries.size(); i++) {
+                    ReferenceCountUtil.release(entries.get(i));
+                }
+            }
+
+            // The bookie stops at the first entry it cannot read
+            done |= entries.size() < entryIds.length;
+            nextIndex += entryIds.length;
+            if (done || batchReadResponse.getEntryIdsCount() == 0) {
+                break;
+            }
+
+            // Size the next chunk on the average size of the entries read so far, to avoid reading entries that
+            // would not fit in the response
+            long averageSize = responseSize / batchReadResponse.getEntryIdsCount();
+            chunkSize = (int) Math.max(1, Math.min(MAX_CHUNK_SIZE, (maxSize - responseSize) / averageSize));
+        }
+
+        int readCount = batchReadResponse.getEntryIdsCount();
+        if (readCount == 0) {
+            // The bookie reports the error of the first entry, never an empty result
+            return buildResponse(batchReadResponse, status == StatusCode.EOK ? StatusCode.ENOENTRY : status,
+                    startTimeNanos);
+        }
+
+        try {
+            batchReadResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+        } catch (IOException | BookieException e) {
+            // The entries were read, the client can still use them without the piggybacked LAC
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to read the last add confirmed of ledger {}", ledgerId, e);
+            }
+        }
+        requestProcessor.getRequestStats().getBatchReadEntryCountStats()
+                .registerSuccessfulValue(readCount);
+        return buildResponse(batchReadResponse, StatusCode.EOK, startTimeNanos);
+    }
+
+    private BatchReadResponse buildResponse(BatchReadResponse.Builder batchReadResponse,
+                                            StatusCode status,
+                                            long startTimeNanos) {
+        if (status == StatusCode.EOK) {
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        batchReadResponse.setStatus(status);
+        return batchReadResponse.build();
+    }
+
+    @Override
+    public void run() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+            MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        if (!requestHandler.ctx().channel().isOpen()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropping batch read request for closed channel: {}", requestHandler.ctx().channel());
+            }
+            requestProcessor.onReadRequestFinish();
+            return;
+        }
+
+        BatchReadResponse batchReadResponse = getBatchReadResponse();
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(batchReadResponse.getStatus())
+                .setBatchReadResponse(batchReadResponse);
+        sendResponse(response.getStatus(), response.build(),
+                requestProcessor.getRequestStats().getBatchReadRequestStats(), this::releaseResponseBodies);
+        requestProcessor.onReadRequestFinish();
+    }
+
+    private void releaseResponseBodies() {
+        responseBodies.forEach(ReferenceCountUtil::release);
+        responseBodies.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchReadEntry(%d, %d entries)", ledgerId, getEntriesCount());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor class for v3 batch add requests, which add several entries with a single request.
+ *
+ * <p>The entries are added like single add requests, the entries of each ledger in order on the write thread of
+ * the ledger. A single response, with the status of each entry, is sent once all the entries are added or failed.
+ */
+class BatchWriteEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchWriteEntryProcessorV3.class);
+
+    private final List<AddRequest> addRequests;
+    private final AtomicReferenceArray<AddResponse> addResponses;
+    private final AtomicInteger remaining;
+
+    BatchWriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
+                               BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+
+        this.addRequests = request.getBatchAddRequest().getAddRequestsList();
+        this.addResponses = new AtomicReferenceArray<>(addRequests.size());
+        this.remaining = new AtomicInteger(addRequests.size());
+    }
+
+    /**
+     * Get the indexes of the entries of each ledger, in the order of the request.
+     */
+    Map<Long, List<Integer>> getEntriesByLedger() {
+        Map<Long, List<Integer>> entriesByLedger = new LinkedHashMap<>();
+        for (int i = 0; i < addRequests.size(); i++) {
+            entriesByLedger.computeIfAbsent(addRequests.get(i).getLedgerId(), ledgerId -> new ArrayList<>()).add(i);
+        }
+        return entriesByLedger;
+    }
+
+    /**
+     * Check that the request can be processed.
+     *
+     * @return true if the entries can be added, otherwise the failure is already sent back
+     */
+    boolean validate() {
+        if (!isVersionCompatible()) {
+            sendBatchResponse(StatusCode.EBADVERSION);
+            return false;
+        }
+        if (addRequests.isEmpty()) {
+            LOG.error("Invalid batch add request, no entries to add: {}", this);
+            sendBatchResponse(StatusCode.EBADREQ);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add the given entries of the batch, in order.
+     */
+    void addEntries(List<Integer> indexes) {
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        for (int index : indexes) {
+            addEntry(index);
+        }
+    }
+
+    /**
+     * Fail the given entries of the batch without adding them.
+     */
+    void failEntries(List<Integer> indexes, StatusCode status) {
+        for (int index : indexes) {
+            completeEntry(index, status);
+        }
+    }
+
+    private void addEntry(int index) {
+        final long startTimeNanos = MathUtils.nowInNano();
+        AddRequest addRequest = addRequests.get(index);
+        if (requestProcessor.getBookie().isReadOnly()) {
+            LOG.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            completeEntry(index, StatusCode.EREADONLY);
+            return;
+        }
+
+        StatusCode status = WriteEntryProcessorV3.addEntry(requestProcessor, requestHandler.ctx().channel(),
+                addRequest, (rc, ledgerId, entryId, addr, ctx) -> {
+                    OpStatsLogger addEntryStats = requestProcessor.getRequestStats().getAddEntryStats();
+                    if (BookieProtocol.EOK == rc) {
+                        addEntryStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                                TimeUnit.NANOSECONDS);
+                    } else {
+                        addEntryStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos),
+                                TimeUnit.NANOSECONDS);
+                    }
+                    completeEntry(index, WriteEntryProcessorV3.toStatusCode(rc));
+                });
+        if (status != StatusCode.EOK) {
+            completeEntry(index, status);
+        }
+    }
+
+    private void completeEntry(int index, StatusCode status) {
+        AddRequest addRequest = addRequests.get(index);
+        addResponses.set(index, AddResponse.newBuilder()
+                .setLedgerId(addRequest.getLedgerId())
+                .setEntryId(addRequest.getEntryId())
+                .setStatus(status)
+                .build());
+        if (remaining.decrementAndGet() == 0) {
+            sendBatchResponse(StatusCode.EOK);
+        }
+    }
+
+    private void sendBatchResponse(StatusCode status) {
+        BatchAddResponse.Builder batchAddResponse = BatchAddResponse.newBuilder();
+        if (status == StatusCode.EOK) {
+            for (int i = 0; i < addResponses.length(); i++) {
+                batchAddResponse.addAddResponses(addResponses.get(i));
+            }
+            requestProcessor.getRequestStats().getBatchAddEntryCountStats()
+                    .registerSuccessfulValue(addResponses.length());
+        }
+        Response response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setBatchAddResponse(batchAddResponse)
+                .build();
+        sendResponse(status, response, requestProcessor.getRequestStats().getBatchAddRequestStats());
+    }
+
+    @Override
+    public void run() {
+        if (validate()) {
+            for (List<Integer> indexes : getEntriesByLedger().values()) {
+                addEntries(indexes);
+            }
+        }
+    }
+
+    @Override
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        super.sendResponse(code, response, statsLogger);
+        requestProcessor.onAddRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -84,6 +84,16 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the moving average of the latency of the successful reads from the bookie at {@code address}.
+     *
+     * @param address the address of the bookie
+     * @return the read latency average in nanoseconds, or 0 if unknown
+     */
+    default long getReadLatencyEwmaNanos(BookieId address) {
+        return 0;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
@@ -479,6 +480,62 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A successful read response whose data is a region of an entry log file, written to the channel with
+     * {@code sendfile} rather than being copied in memory.
+     */
+    class ReadRegionResponse extends Response implements ReferenceCounted {
+        final FileRegion region;
+
+        ReadRegionResponse(byte protocolVersion, long ledgerId, long entryId, FileRegion region) {
+            init(protocolVersion, READENTRY, EOK, ledgerId, entryId);
+            this.region = region;
+        }
+
+        FileRegion getRegion() {
+            return region;
+        }
+
+        @Override
+        public int refCnt() {
+            return region.refCnt();
+        }
+
+        @Override
+        public ReferenceCounted retain() {
+            region.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted retain(int increment) {
+            region.retain(increment);
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch() {
+            region.touch();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            region.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return region.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return region.release(decrement);
+        }
+    }
+
     /**
      * A response that adds data.
      */
@@ -35,6 +35,8 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
@@ -66,12 +68,18 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieRequestProcessor.class);
 
+    // Room left in a frame for the protobuf headers of a batch read response
+    private static final int BATCH_READ_RESPONSE_OVERHEAD = 1024;
+
     /**
      * The server configuration. We use this for getting the number of add and read
      * worker threads.
      */
     private final ServerConfiguration serverCfg;
     private final long waitTimeoutOnBackpressureMillis;
+    private final int zeroCopyReadMinEntrySize;
+    private final boolean batchReadEnabled;
+    private final long maxBatchReadSize;
     private final boolean preserveMdcForTaskExecution;
 
     /**
@@ -136,6 +144,9 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.allocator = allocator;
         this.allChannels = allChannels;
         this.waitTimeoutOnBackpressureMillis = serverCfg.getWaitTimeoutOnResponseBackpressureMillis();
+        this.zeroCopyReadMinEntrySize = serverCfg.getZeroCopyReadMinEntrySize();
+        this.batchReadEnabled = serverCfg.isBatchReadEnabled();
+        this.maxBatchReadSize = serverCfg.getNettyMaxFrameSizeBytes() - BATCH_READ_RESPONSE_OVERHEAD;
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
@@ -351,16 +362,19 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, requestHandler);
                         break;
-                    default:
-                        LOG.info("Unknown operation type {}", header.getOperation());
-                        BookkeeperProtocol.Response.Builder response =
-                                BookkeeperProtocol.Response.newBuilder().setHeader(r.getHeader())
-                                        .setStatus(BookkeeperProtocol.StatusCode.EBADREQ);
-                        channel.writeAndFlush(response.build());
-                        if (statsEnabled) {
-                            bkStats.getOpStats(BKStats.STATS_UNKNOWN).incrementFailedOps();
+                    case BATCH_ADD_ENTRY:
+                        processBatchAddRequestV3(r, requestHandler);
+                        break;
+                    case BATCH_READ_ENTRY:
+                        if (batchReadEnabled) {
+                            processBatchReadRequestV3(r, requestHandler);
+                        } else {
+                            processUnknownRequestV3(r, channel);
                         }
                         break;
+                    default:
+                        processUnknownRequestV3(r, channel);
+                        break;
                 }
             } finally {
                 MDC.clear();
@@ -464,6 +478,30 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processBatchAddRequestV3(final BookkeeperProtocol.Request r,
+                                          final BookieRequestHandler requestHandler) {
+        BatchWriteEntryProcessorV3 write = new BatchWriteEntryProcessorV3(r, requestHandler, this);
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : writeThreadPool;
+
+        if (null == threadPool) {
+            write.run();
+        } else if (write.validate()) {
+            // The entries of each ledger are added on the write thread of the ledger, like single adds
+            for (Map.Entry<Long, List<Integer>> ledgerEntries : write.getEntriesByLedger().entrySet()) {
+                try {
+                    threadPool.executeOrdered(ledgerEntries.getKey(), () -> write.addEntries(ledgerEntries.getValue()));
+                } catch (RejectedExecutionException e) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Failed to process request to add {} entries of ledger {}. Too many pending requests",
+                                  ledgerEntries.getValue().size(), ledgerEntries.getKey());
+                    }
+                    getRequestStats().getAddEntryRejectedCounter().inc();
+                    write.failEntries(ledgerEntries.getValue(), BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                }
+            }
+        }
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r,
                                              final BookieRequestHandler requestHandler) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, requestHandler, this);
@@ -555,6 +593,48 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processUnknownRequestV3(final BookkeeperProtocol.Request r, final Channel channel) {
+        LOG.info("Unknown operation type {}", r.getHeader().getOperation());
+        BookkeeperProtocol.Response.Builder response =
+                BookkeeperProtocol.Response.newBuilder().setHeader(r.getHeader())
+                        .setStatus(BookkeeperProtocol.StatusCode.EBADREQ);
+        channel.writeAndFlush(response.build());
+        if (statsEnabled) {
+            bkStats.getOpStats(BKStats.STATS_UNKNOWN).incrementFailedOps();
+        }
+    }
+
+    private void processBatchReadRequestV3(final BookkeeperProtocol.Request r,
+                                           final BookieRequestHandler requestHandler) {
+        final BatchReadEntryProcessorV3 read = new BatchReadEntryProcessorV3(r, requestHandler, this);
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : readThreadPool;
+
+        if (null == threadPool) {
+            read.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getBatchReadRequest().getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to batch read entries of ledger {}. "
+                              + "Too many pending requests", r.getBatchReadRequest().getLedgerId());
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                BookkeeperProtocol.BatchReadResponse.Builder batchReadResponse =
+                    BookkeeperProtocol.BatchReadResponse.newBuilder()
+                        .setLedgerId(r.getBatchReadRequest().getLedgerId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(read.getHeader())
+                    .setStatus(batchReadResponse.getStatus())
+                    .setBatchReadResponse(batchReadResponse);
+                read.sendResponse(batchReadResponse.getStatus(), response.build(),
+                                  requestStats.getBatchReadRequestStats());
+                onReadRequestFinish();
+            }
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r,
                                           final BookieRequestHandler requestHandler) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
@@ -703,6 +783,14 @@ public class BookieRequestProcessor implements RequestProcessor {
         return waitTimeoutOnBackpressureMillis;
     }
 
+    public int getZeroCopyReadMinEntrySize() {
+        return zeroCopyReadMinEntrySize;
+    }
+
+    public long getMaxBatchReadSize() {
+        return maxBatchReadSize;
+    }
+
     public void blacklistChannel(Channel channel) {
         blacklistedChannels
                 .ifPresent(x -> x.put(channel, true));
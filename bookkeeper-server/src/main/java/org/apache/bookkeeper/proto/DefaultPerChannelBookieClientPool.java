@@ -173,4 +173,27 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         }
         return numPending;
     }
+
+    @Override
+    public long getReadLatencyEwmaNanos() {
+        long sum = 0;
+        int count = 0;
+        for (PerChannelBookieClient pcbc : clients) {
+            long latency = pcbc.getReadLatencyEwmaNanos();
+            if (latency > 0) {
+                sum += latency;
+                count++;
+            }
+        }
+        if (clients != clientsV3Enforced) {
+            for (PerChannelBookieClient pcbc : clientsV3Enforced) {
+                long latency = pcbc.getReadLatencyEwmaNanos();
+                if (latency > 0) {
+                    sum += latency;
+                    count++;
+                }
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
 }
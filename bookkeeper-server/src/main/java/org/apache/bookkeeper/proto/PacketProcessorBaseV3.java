@@ -53,6 +53,15 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
     }
 
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        sendResponse(code, response, statsLogger, null);
+    }
+
+    /**
+     * Send a response, and run the given callback once the response is written or dropped, eg: to release the
+     * buffers wrapped by the response.
+     */
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger,
+                                Runnable onResponseSent) {
         final long writeNanos = MathUtils.nowInNano();
 
         Channel channel = requestHandler.ctx().channel();
@@ -83,6 +92,9 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                if (onResponseSent != null) {
+                    onResponseSent.run();
+                }
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
@@ -105,11 +117,17 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                     } else {
                         statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
                     }
+                    if (onResponseSent != null) {
+                        onResponseSent.run();
+                    }
                 }
             });
         } else {
             log.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
+            if (onResponseSent != null) {
+                onResponseSent.run();
+            }
         }
     }
 
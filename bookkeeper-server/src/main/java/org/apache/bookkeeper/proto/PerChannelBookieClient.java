@@ -115,6 +115,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
@@ -210,6 +211,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "channel stats of add entries requests"
     )
     private final OpStatsLogger addEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_ADD_BATCH_ENTRIES,
+        help = "the number of entries of the batch add requests"
+    )
+    private final OpStatsLogger addBatchEntriesLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_WRITE_LAC_OP,
         help = "channel stats of write_lac requests"
@@ -348,7 +354,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final ExtensionRegistry extRegistry;
     private final SecurityHandlerFactory shFactory;
     private volatile boolean isWritable = true;
+    // Exponentially weighted moving average of the read latency, 0 until the first read response
+    private final AtomicLong readLatencyEwmaNanos = new AtomicLong(0);
+    private static final double READ_LATENCY_EWMA_WEIGHT = 0.1;
     private long lastBookieUnavailableLogTimestamp = 0;
+    // Batches the consecutive adds into batch add requests, null if add batching is disabled
+    private final AddRequestBatcher<BatchedAdd> addRequestBatcher;
 
     public PerChannelBookieClient(OrderedExecutor executor, EventLoopGroup eventLoopGroup,
                                   BookieId addr, BookieAddressResolver bookieAddressResolver) throws SecurityException {
@@ -416,6 +427,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         readEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_READ_OP);
         addEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_ADD_OP);
+        addBatchEntriesLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_ADD_BATCH_ENTRIES);
         writeLacOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_WRITE_LAC_OP);
         forceLedgerOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_FORCE_OP);
         readLacOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_READ_LAC_OP);
@@ -442,6 +454,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         failedConnectionCounter = statsLogger.getCounter(BookKeeperClientStats.FAILED_CONNECTION_COUNTER);
         failedTlsHandshakeCounter = statsLogger.getCounter(BookKeeperClientStats.FAILED_TLS_HANDSHAKE_COUNTER);
 
+        if (conf.getAddEntryBatchingEnabled() && !useV2WireProtocol) {
+            this.addRequestBatcher = new AddRequestBatcher<>(conf.getAddEntryBatchMaxBytes(),
+                    conf.getAddEntryBatchLingerMicros(), this.eventLoopGroup, this::sendBatchAdd);
+        } else {
+            this.addRequestBatcher = null;
+        }
+
         this.pcbcPool = pcbcPool;
 
         this.connectionPeer = new ClientConnectionPeer() {
@@ -529,6 +548,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return completionObjects.size();
     }
 
+    /**
+     * Get the moving average of the latency of the successful reads on this channel.
+     *
+     * @return the read latency average in nanoseconds, or 0 if no read completed yet
+     */
+    protected long getReadLatencyEwmaNanos() {
+        return readLatencyEwmaNanos.get();
+    }
+
+    // visible for testing
+    void updateReadLatencyEwma(long latencyNanos) {
+        // The read callbacks of a channel run on the threads of their ledgers, so concurrent updates are retried
+        readLatencyEwmaNanos.updateAndGet(ewma -> ewma == 0
+                ? Math.max(1, latencyNanos)
+                : Math.max(1, ewma + Math.round((latencyNanos - ewma) * READ_LATENCY_EWMA_WEIGHT)));
+    }
+
     protected ChannelFuture connect() {
         final long startTime = MathUtils.nowInNano();
         if (LOG.isDebugEnabled()) {
@@ -798,7 +834,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .setVersion(ProtocolVersion.VERSION_THREE)
                     .setOperation(OperationType.ADD_ENTRY)
                     .setTxnId(txnId);
-            if (((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            final boolean highPriority =
+                    ((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY;
+            if (highPriority) {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
@@ -830,6 +868,19 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
             }
 
+            if (addRequestBatcher != null) {
+                if (!highPriority) {
+                    // The batch holds the entry until it is written, the caller might release it once added
+                    toSend.retain();
+                    addRequestBatcher.add(new BatchedAdd(completionKey, addBuilder.build(),
+                            acquireAddCompletion(completionKey, cb, ctx, ledgerId, entryId), toSend, allowFastFail),
+                            bufToSend.readableBytes());
+                    return;
+                }
+                // Send the batched adds first, to keep the order of the adds
+                addRequestBatcher.flush();
+            }
+
             request = withRequestContext(Request.newBuilder())
                     .setHeader(headerBuilder)
                     .setAddRequest(addBuilder)
@@ -1073,6 +1124,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return;
             }
             state = ConnectionState.CLOSED;
+            if (addRequestBatcher != null) {
+                addRequestBatcher.flush();
+            }
             errorOutOutstandingEntries(BKException.Code.ClientClosedException);
         } finally {
             closeLock.writeLock().unlock();
@@ -1133,9 +1187,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                            final CompletionKey key,
                            final Object request,
                            final boolean allowFastFail) {
+        writeAndFlush(channel, key, request, allowFastFail, null);
+    }
+
+    /**
+     * Write and flush a request, running the given callback, if any, once the request is written or failed.
+     */
+    private void writeAndFlush(final Channel channel,
+                           final CompletionKey key,
+                           final Object request,
+                           final boolean allowFastFail,
+                           final Runnable writeDone) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
             errorOut(key);
+            runWriteDone(writeDone);
             return;
         }
 
@@ -1150,6 +1216,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     StringUtils.requestToString(request));
 
             errorOut(key, BKException.Code.TooManyRequestsException);
+            runWriteDone(writeDone);
             return;
         }
 
@@ -1157,6 +1224,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             final long startTime = MathUtils.nowInNano();
 
             ChannelPromise promise = channel.newPromise().addListener(future -> {
+                runWriteDone(writeDone);
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
                     CompletionValue completion = completionObjects.get(key);
@@ -1174,6 +1242,58 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private static void runWriteDone(Runnable writeDone) {
+        if (writeDone != null) {
+            writeDone.run();
+        }
+    }
+
+    /**
+     * Send a batch of adds, as a single add request if the batch has only one entry.
+     */
+    private void sendBatchAdd(List<BatchedAdd> batch) {
+        addBatchEntriesLogger.registerSuccessfulValue(batch.size());
+        boolean allowFastFail = true;
+        for (BatchedAdd add : batch) {
+            allowFastFail &= add.allowFastFail;
+        }
+        Runnable releaseEntries = () -> {
+            for (BatchedAdd add : batch) {
+                ReferenceCountUtil.release(add.toSend);
+            }
+        };
+
+        final CompletionKey completionKey;
+        final Request.Builder requestBuilder = withRequestContext(Request.newBuilder());
+        if (batch.size() == 1) {
+            BatchedAdd add = batch.get(0);
+            completionKey = add.key;
+            requestBuilder.setHeader(BKPacketHeader.newBuilder()
+                            .setVersion(ProtocolVersion.VERSION_THREE)
+                            .setOperation(OperationType.ADD_ENTRY)
+                            .setTxnId(completionKey.txnId))
+                    .setAddRequest(add.request);
+            putCompletionKeyValue(completionKey, add.completion);
+        } else {
+            final long txnId = getTxnId();
+            completionKey = new V3CompletionKey(txnId, OperationType.BATCH_ADD_ENTRY);
+            BatchAddRequest.Builder batchAddBuilder = BatchAddRequest.newBuilder();
+            List<AddCompletion> completions = new ArrayList<>(batch.size());
+            for (BatchedAdd add : batch) {
+                batchAddBuilder.addAddRequests(add.request);
+                completions.add(add.completion);
+            }
+            requestBuilder.setHeader(BKPacketHeader.newBuilder()
+                            .setVersion(ProtocolVersion.VERSION_THREE)
+                            .setOperation(OperationType.BATCH_ADD_ENTRY)
+                            .setTxnId(txnId))
+                    .setBatchAddRequest(batchAddBuilder);
+            putCompletionKeyValue(completionKey, new BatchAddCompletion(completions));
+        }
+        // addEntry times out on backpressure
+        writeAndFlush(channel, completionKey, requestBuilder.build(), allowFastFail, releaseEntries);
+    }
+
     void errorOut(final CompletionKey key) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
@@ -1366,6 +1486,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
             response.release();
         } else {
+            completionValue.responseReceived();
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey,
                     ReadV2ResponseCallback.create(completionValue, response.ledgerId, response.entryId,
@@ -1481,6 +1602,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
         } else {
+            completionValue.responseReceived();
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey, new Runnable() {
                 @Override
@@ -1602,6 +1724,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         protected long ledgerId;
         protected long entryId;
         protected long startTime;
+        // Latency until the response was received by the event loop, excluding the wait for the executor
+        protected long responseLatencyNanos = -1;
 
         public CompletionValue(String operationName,
                                Object ctx,
@@ -1622,6 +1746,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             return MathUtils.elapsedNanos(startTime);
         }
 
+        void responseReceived() {
+            responseLatencyNanos = latency();
+        }
+
         void logOpResult(int rc) {
             if (rc != BKException.Code.OK) {
                 opLogger.registerFailedEvent(latency(), TimeUnit.NANOSECONDS);
@@ -1881,6 +2009,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        if (rc == BKException.Code.OK && responseLatencyNanos >= 0) {
+                            updateReadLatencyEwma(responseLatencyNanos);
+                        }
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -2229,6 +2360,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                            status);
         }
 
+        void handleBatchResponse(StatusCode status) {
+            addEntryOutstanding.dec();
+            handleResponse(ledgerId, entryId, status);
+        }
+
         private void handleResponse(long ledgerId, long entryId,
                                     StatusCode status) {
             if (LOG.isDebugEnabled()) {
@@ -2240,6 +2376,99 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * An add request waiting in the batch of the connection.
+     */
+    private static class BatchedAdd {
+        final CompletionKey key;
+        final AddRequest request;
+        final AddCompletion completion;
+        final ReferenceCounted toSend;
+        final boolean allowFastFail;
+
+        BatchedAdd(CompletionKey key, AddRequest request, AddCompletion completion, ReferenceCounted toSend,
+                   boolean allowFastFail) {
+            this.key = key;
+            this.request = request;
+            this.completion = completion;
+            this.toSend = toSend;
+            this.allowFastFail = allowFastFail;
+        }
+    }
+
+    // visible for testing
+    class BatchAddCompletion extends CompletionValue {
+        final List<AddCompletion> completions;
+
+        BatchAddCompletion(List<AddCompletion> completions) {
+            super("BatchAdd", null, completions.get(0).ledgerId, completions.get(0).entryId,
+                  addEntryOpLogger, addTimeoutOpLogger);
+            this.completions = completions;
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        void timeout() {
+            for (AddCompletion completion : completions) {
+                completion.timeout();
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            for (AddCompletion completion : completions) {
+                completion.errorOut(rc);
+            }
+        }
+
+        @Override
+        public void setOutstanding() {
+            for (AddCompletion completion : completions) {
+                completion.setOutstanding();
+            }
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            List<AddResponse> addResponses = response.getBatchAddResponse().getAddResponsesList();
+            if (response.getStatus() == StatusCode.EOK && addResponses.size() != completions.size()) {
+                LOG.error("Got {} add responses for a batch of {} entries from bookie {}",
+                          addResponses.size(), completions.size(), bookieId);
+            }
+            for (int i = 0; i < completions.size(); i++) {
+                final StatusCode status;
+                if (response.getStatus() != StatusCode.EOK) {
+                    status = response.getStatus();
+                } else if (i < addResponses.size()) {
+                    status = addResponses.get(i).getStatus();
+                } else {
+                    status = StatusCode.EIO;
+                }
+                AddCompletion completion = completions.get(i);
+                if (completion.ledgerId == ledgerId) {
+                    // already running on the ordered thread of the ledger
+                    completion.handleBatchResponse(status);
+                } else {
+                    executor.executeOrdered(completion.ledgerId, () -> completion.handleBatchResponse(status));
+                }
+            }
+        }
+    }
+
     // visable for testing
     CompletionKey newCompletionKey(long txnId, OperationType operationType) {
         return new V3CompletionKey(txnId, operationType);
@@ -92,4 +92,13 @@ public interface PerChannelBookieClientPool {
      * Get the number of pending completion requests in the channel.
      */
     long getNumPendingCompletionRequests();
+
+    /**
+     * Get the moving average of the latency of the successful reads on the channels.
+     *
+     * @return the read latency average in nanoseconds, or 0 if unknown
+     */
+    default long getReadLatencyEwmaNanos() {
+        return 0;
+    }
 }
@@ -18,8 +18,13 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -84,7 +89,17 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
                     throw BookieException.create(BookieException.Code.UnauthorizedAccessException);
                 }
             }
-            data = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
+            if (fenceResult == null && canSendRegion()) {
+                ReferenceCounted entry = requestProcessor.getBookie().readEntryOrRegion(request.getLedgerId(),
+                        request.getEntryId(), requestProcessor.getZeroCopyReadMinEntrySize());
+                if (entry instanceof FileRegion) {
+                    sendRegionResponse((FileRegion) entry, startTimeNanos);
+                    return;
+                }
+                data = (ByteBuf) entry;
+            } else {
+                data = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("##### Read entry ##### {} -- ref-count: {}", data.readableBytes(), data.refCnt());
             }
@@ -125,6 +140,27 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         sendResponse(data, errorCode, startTimeNanos);
     }
 
+    /**
+     * Entries can be sent straight from the entry log files only when the bytes are written as they are to a
+     * socket, that is when the connection is neither encrypted nor local.
+     */
+    private boolean canSendRegion() {
+        if (requestProcessor.getZeroCopyReadMinEntrySize() <= 0) {
+            return false;
+        }
+        Channel channel = requestHandler.ctx().channel();
+        return channel instanceof SocketChannel && channel.pipeline().get(SslHandler.class) == null;
+    }
+
+    private void sendRegionResponse(FileRegion region, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        stats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                TimeUnit.NANOSECONDS);
+        sendReadReqResponse(BookieProtocol.EOK, ResponseBuilder.buildReadRegionResponse(region, request),
+                stats.getReadRequestStats(), throttleReadResponses);
+        recycle();
+    }
+
     private void sendResponse(ByteBuf data, int errorCode, long startTimeNanos) {
         final RequestStats stats = requestProcessor.getRequestStats();
         final OpStatsLogger logger = stats.getReadEntryStats();
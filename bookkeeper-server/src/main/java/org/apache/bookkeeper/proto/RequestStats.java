@@ -25,6 +25,11 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCK
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_ADD_ENTRY_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
@@ -246,6 +251,34 @@ public class RequestStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST
     )
     final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+            name = BATCH_READ_ENTRY_REQUEST,
+            help = "request stats of BatchReadEntry on a bookie"
+    )
+    final OpStatsLogger batchReadRequestStats;
+    @StatsDoc(
+            name = BATCH_READ_ENTRY,
+            help = "operation stats of BatchReadEntry on a bookie",
+            parent = BATCH_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger batchReadEntryStats;
+    @StatsDoc(
+            name = BATCH_READ_ENTRY_COUNT,
+            help = "the distribution of the number of entries returned by a BatchReadEntry request",
+            parent = BATCH_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger batchReadEntryCountStats;
+    @StatsDoc(
+            name = BATCH_ADD_ENTRY_REQUEST,
+            help = "request stats of BatchAddEntry on a bookie"
+    )
+    final OpStatsLogger batchAddRequestStats;
+    @StatsDoc(
+            name = BATCH_ADD_ENTRY_COUNT,
+            help = "the distribution of the number of entries added by a BatchAddEntry request",
+            parent = BATCH_ADD_ENTRY_REQUEST
+    )
+    final OpStatsLogger batchAddEntryCountStats;
 
     public RequestStats(StatsLogger statsLogger) {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
@@ -281,6 +314,12 @@ public class RequestStats {
         this.getListOfEntriesOfLedgerRequestStats =
                 statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST);
 
+        this.batchReadRequestStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY_REQUEST);
+        this.batchReadEntryStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY);
+        this.batchReadEntryCountStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY_COUNT);
+        this.batchAddRequestStats = statsLogger.getOpStatsLogger(BATCH_ADD_ENTRY_REQUEST);
+        this.batchAddEntryCountStats = statsLogger.getOpStatsLogger(BATCH_ADD_ENTRY_COUNT);
+
         statsLogger.registerGauge(ADD_ENTRY_IN_PROGRESS, new Gauge<Number>() {
             @Override
             public Number getDefaultValue() {
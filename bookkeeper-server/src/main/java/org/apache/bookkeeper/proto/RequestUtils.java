@@ -68,6 +68,15 @@ class RequestUtils {
                 stringHelper.add("writeFlags", addRequest.getWriteFlags());
             }
             return stringHelper.toString();
+        } else if (request.hasBatchAddRequest()) {
+            BookkeeperProtocol.BatchAddRequest batchAddRequest = request.getBatchAddRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("entries", batchAddRequest.getAddRequestsCount());
+            if (batchAddRequest.getAddRequestsCount() > 0) {
+                stringHelper.add("firstLedgerId", batchAddRequest.getAddRequests(0).getLedgerId());
+                stringHelper.add("firstEntryId", batchAddRequest.getAddRequests(0).getEntryId());
+            }
+            return stringHelper.toString();
         } else if (request.hasReadRequest()) {
             BookkeeperProtocol.ReadRequest readRequest = request.getReadRequest();
             includeHeaderFields(stringHelper, header);
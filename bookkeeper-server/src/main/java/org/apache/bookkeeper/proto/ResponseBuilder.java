@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 
 class ResponseBuilder {
     static BookieProtocol.Response buildErrorResponse(int errorCode, BookieProtocol.Request r) {
@@ -43,4 +44,9 @@ class ResponseBuilder {
         return new BookieProtocol.ReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
                 r.getLedgerId(), r.getEntryId(), data);
     }
+
+    static BookieProtocol.Response buildReadRegionResponse(FileRegion region, BookieProtocol.Request r) {
+        return new BookieProtocol.ReadRegionResponse(r.getProtocolVersion(), r.getLedgerId(), r.getEntryId(),
+                region);
+    }
 }
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.concurrent.TimeUnit;
@@ -84,18 +85,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                         .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
                 }
 
-                StatusCode status;
-                switch (rc) {
-                    case BookieProtocol.EOK:
-                        status = StatusCode.EOK;
-                        break;
-                    case BookieProtocol.EIO:
-                        status = StatusCode.EIO;
-                        break;
-                    default:
-                        status = StatusCode.EUA;
-                        break;
-                }
+                StatusCode status = toStatusCode(rc);
                 addResponse.setStatus(status);
                 Response.Builder response = Response.newBuilder()
                         .setHeader(getHeader())
@@ -105,6 +95,38 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                 sendResponse(status, resp, requestProcessor.getRequestStats().getAddRequestStats());
             }
         };
+        StatusCode status = addEntry(requestProcessor, requestHandler.ctx().channel(), addRequest, wcb);
+
+        // If everything is okay, we return null so that the calling function
+        // doesn't return a response back to the caller.
+        if (!status.equals(StatusCode.EOK)) {
+            addResponse.setStatus(status);
+            return addResponse.build();
+        }
+        return null;
+    }
+
+    static StatusCode toStatusCode(int rc) {
+        switch (rc) {
+            case BookieProtocol.EOK:
+                return StatusCode.EOK;
+            case BookieProtocol.EIO:
+                return StatusCode.EIO;
+            default:
+                return StatusCode.EUA;
+        }
+    }
+
+    /**
+     * Add an entry to the bookie.
+     *
+     * @param wcb called once the entry is written, if it could be added
+     * @return EOK if the entry is being added, otherwise the status of the failure
+     */
+    static StatusCode addEntry(BookieRequestProcessor requestProcessor, Channel channel, AddRequest addRequest,
+                               BookkeeperInternalCallbacks.WriteCallback wcb) {
+        long ledgerId = addRequest.getLedgerId();
+        long entryId = addRequest.getEntryId();
         final EnumSet<WriteFlag> writeFlags;
         if (addRequest.hasWriteFlags()) {
             writeFlags = WriteFlag.getWriteFlags(addRequest.getWriteFlags());
@@ -112,52 +134,41 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
             writeFlags = WriteFlag.NONE;
         }
         final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
-        StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
         ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
-                requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb,
-                        requestHandler.ctx().channel(), masterKey);
+                requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb, channel, masterKey);
             } else {
-                requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, wcb,
-                        requestHandler.ctx().channel(), masterKey);
+                requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, wcb, channel, masterKey);
             }
-            status = StatusCode.EOK;
+            return StatusCode.EOK;
         } catch (OperationRejectedException e) {
             requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
             // Avoid to log each occurence of this exception as this can happen when the ledger storage is
             // unable to keep up with the write rate.
             if (logger.isDebugEnabled()) {
-                logger.debug("Operation rejected while writing {}", request, e);
+                logger.debug("Operation rejected while writing entry:{} to ledger:{}", entryId, ledgerId, e);
             }
-            status = StatusCode.ETOOMANYREQUESTS;
+            return StatusCode.ETOOMANYREQUESTS;
         } catch (IOException e) {
             logger.error("Error writing entry:{} to ledger:{}",
                     entryId, ledgerId, e);
-            status = StatusCode.EIO;
+            return StatusCode.EIO;
         } catch (BookieException.LedgerFencedException e) {
             logger.error("Ledger fenced while writing entry:{} to ledger:{}",
                     entryId, ledgerId, e);
-            status = StatusCode.EFENCED;
+            return StatusCode.EFENCED;
         } catch (BookieException e) {
             logger.error("Unauthorized access to ledger:{} while writing entry:{}",
                     ledgerId, entryId, e);
-            status = StatusCode.EUA;
+            return StatusCode.EUA;
         } catch (Throwable t) {
             logger.error("Unexpected exception while writing {}@{} : ",
                     entryId, ledgerId, t);
             // some bad request which cause unexpected exception
-            status = StatusCode.EBADREQ;
+            return StatusCode.EBADREQ;
         }
-
-        // If everything is okay, we return null so that the calling function
-        // doesn't return a response back to the caller.
-        if (!status.equals(StatusCode.EOK)) {
-            addResponse.setStatus(status);
-            return addResponse.build();
-        }
-        return null;
     }
 
     @Override
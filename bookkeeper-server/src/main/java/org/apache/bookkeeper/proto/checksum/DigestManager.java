@@ -28,8 +28,13 @@ import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.proto.BookieProtoEncoding;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
@@ -242,13 +247,24 @@ public abstract class DigestManager {
 
     private void verifyDigest(long entryId, ByteBuf dataReceived, boolean skipEntryIdCheck)
             throws BKDigestMatchException {
+        if (!isDigestValid(entryId, dataReceived, skipEntryIdCheck, isInt32Digest() ? null : DIGEST_BUFFER.get())) {
+            throw new BKDigestMatchException();
+        }
+    }
 
+    /**
+     * Check the digest of an entry, and read its ledger id and entry id.
+     *
+     * @param digestBuf buffer to compute the digest into, null for int32 digests
+     * @return whether the digest, the ledger id and the entry id match
+     */
+    private boolean isDigestValid(long entryId, ByteBuf dataReceived, boolean skipEntryIdCheck, ByteBuf digestBuf) {
         if ((METADATA_LENGTH + macCodeLength) > dataReceived.readableBytes()) {
             logger.error("Data received is smaller than the minimum for this digest type. "
                     + " Either the packet it corrupt, or the wrong digest is configured. "
                     + " Digest type: {}, Packet Length: {}",
                     this.getClass().getName(), dataReceived.readableBytes());
-            throw new BKDigestMatchException();
+            return false;
         }
         int digest = update(0, dataReceived, 0, METADATA_LENGTH);
 
@@ -259,16 +275,15 @@ public abstract class DigestManager {
             int receivedDigest = dataReceived.getInt(METADATA_LENGTH);
             if (receivedDigest != digest) {
                 logger.error("Digest mismatch for ledger-id: " + ledgerId + ", entry-id: " + entryId);
-                throw new BKDigestMatchException();
+                return false;
             }
         } else {
-            ByteBuf digestBuf = DIGEST_BUFFER.get();
             digestBuf.clear();
             populateValueAndReset(digest, digestBuf);
 
             if (!ByteBufUtil.equals(digestBuf, 0, dataReceived, METADATA_LENGTH, macCodeLength)) {
                 logger.error("Mac mismatch for ledger-id: " + ledgerId + ", entry-id: " + entryId);
-                throw new BKDigestMatchException();
+                return false;
             }
         }
 
@@ -278,15 +293,15 @@ public abstract class DigestManager {
         if (actualLedgerId != ledgerId) {
             logger.error("Ledger-id mismatch in authenticated message, expected: " + ledgerId + " , actual: "
                          + actualLedgerId);
-            throw new BKDigestMatchException();
+            return false;
         }
 
         if (!skipEntryIdCheck && actualEntryId != entryId) {
             logger.error("Entry-id mismatch in authenticated message, expected: " + entryId + " , actual: "
                          + actualEntryId);
-            throw new BKDigestMatchException();
+            return false;
         }
-
+        return true;
     }
 
     public long verifyDigestAndReturnLac(ByteBuf dataReceived) throws BKDigestMatchException{
@@ -342,6 +357,36 @@ public abstract class DigestManager {
         return dataReceived;
     }
 
+    /**
+     * Verify the digests of a batch of entries, and return their data.
+     *
+     * <p>This is equivalent to {@link #verifyDigestAndReturnData(long, ByteBuf)} on each entry, in a single pass
+     * over the batch which doesn't throw on mismatches: the reader index of the buffer of each matching entry is
+     * moved to its data, while the buffers of the entries whose digest doesn't match are left unchanged.
+     *
+     * @param entries the entries, with the buffers received from the bookies
+     * @return the ids of the entries whose digest doesn't match, empty if all of them match
+     */
+    public List<Long> verifyDigestsAndReturnData(LedgerEntries entries) {
+        ByteBuf digestBuf = isInt32Digest() ? null : DIGEST_BUFFER.get();
+        int dataOffset = METADATA_LENGTH + macCodeLength;
+        List<Long> mismatches = null;
+        for (LedgerEntry entry : entries) {
+            ByteBuf data = entry.getEntryBuffer();
+            int readerIndex = data.readerIndex();
+            if (isDigestValid(entry.getEntryId(), data, false, digestBuf)) {
+                data.readerIndex(dataOffset);
+            } else {
+                data.readerIndex(readerIndex);
+                if (mismatches == null) {
+                    mismatches = new ArrayList<>();
+                }
+                mismatches.add(entry.getEntryId());
+            }
+        }
+        return mismatches == null ? Collections.emptyList() : mismatches;
+    }
+
     /**
      * A representation of RecoveryData.
      */
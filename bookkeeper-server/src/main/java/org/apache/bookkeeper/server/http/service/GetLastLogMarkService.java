@@ -23,6 +23,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import org.apache.bookkeeper.bookie.Journal;
@@ -74,9 +75,11 @@ public class GetLastLogMarkService implements HttpEndpointService {
                  */
                 Map<String, String> output = Maps.newHashMap();
 
-                List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
+                List<File> journalDirs = Journal.getJournalStreamDirectories(Arrays.asList(conf.getJournalDirs()),
+                        conf.getJournalStreamsPerDirectory());
+                List<Journal> journals = Lists.newArrayListWithCapacity(journalDirs.size());
                 int idx = 0;
-                for (File journalDir : conf.getJournalDirs()) {
+                for (File journalDir : journalDirs) {
                     journals.add(new Journal(idx++, journalDir, conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
                       new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
                 }
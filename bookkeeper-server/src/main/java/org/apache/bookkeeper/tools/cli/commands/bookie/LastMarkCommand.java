@@ -21,6 +21,8 @@ package org.apache.bookkeeper.tools.cli.commands.bookie;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LogMark;
@@ -55,10 +57,11 @@ public class LastMarkCommand extends BookieCommand<CliFlags> {
             LedgerDirsManager dirsManager = new LedgerDirsManager(
                     conf, conf.getLedgerDirs(),
                     new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
-            File[] journalDirs = conf.getJournalDirs();
+            List<File> journalDirs = Journal.getJournalStreamDirectories(Arrays.asList(conf.getJournalDirs()),
+                    conf.getJournalStreamsPerDirectory());
 
-            for (int idx = 0; idx < journalDirs.length; idx++) {
-                Journal journal = new Journal(idx, journalDirs[idx], conf, dirsManager);
+            for (int idx = 0; idx < journalDirs.size(); idx++) {
+                Journal journal = new Journal(idx, journalDirs.get(idx), conf, dirsManager);
                 LogMark lastLogMark = journal.getLastLogMark().getCurMark();
                 LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
                     lastLogMark.getLogFileId(),
@@ -176,10 +176,16 @@ public class ReadJournalCommand extends BookieCommand<ReadJournalCommand.ReadJou
 
     private synchronized List<Journal> getJournals(ServerConfiguration conf) throws IOException {
         if (null == journals) {
-            journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-            int idx = 0;
+            List<File> journalDirs = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
             for (File journalDir : conf.getJournalDirs()) {
-                journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
+                journalDirs.add(new File(journalDir, BookKeeperConstants.CURRENT_DIR));
+            }
+            List<File> journalStreamDirs = Journal.getJournalStreamDirectories(journalDirs,
+                    conf.getJournalStreamsPerDirectory());
+            journals = Lists.newArrayListWithCapacity(journalStreamDirs.size());
+            int idx = 0;
+            for (File journalStreamDir : journalStreamDirs) {
+                journals.add(new Journal(idx++, journalStreamDir, conf,
                          new LedgerDirsManager(conf, conf.getLedgerDirs(),
                                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
             }
@@ -0,0 +1,212 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/**
+ * Unit test of {@link CompactionIndexUpdater}.
+ */
+public class CompactionIndexUpdaterTest {
+
+    private final List<List<EntryLocation>> updates = Collections.synchronizedList(new ArrayList<>());
+    private EntryLogger entryLogger;
+    private CompactableLedgerStorage ledgerStorage;
+    private CompactionIndexUpdater indexUpdater;
+
+    @Before
+    public void setup() throws Exception {
+        entryLogger = mock(EntryLogger.class);
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        doAnswer(invocation -> {
+            Iterable<EntryLocation> locations = invocation.getArgument(0);
+            updates.add(Lists.newArrayList(locations));
+            return null;
+        }).when(ledgerStorage).updateEntriesLocations(any());
+        indexUpdater = new CompactionIndexUpdater(entryLogger, ledgerStorage);
+    }
+
+    private static List<EntryLocation> locations(long ledgerId, int count) {
+        List<EntryLocation> locations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            locations.add(new EntryLocation(ledgerId, i, ledgerId << 32 | i));
+        }
+        return locations;
+    }
+
+    private Thread update(List<EntryLocation> locations, boolean flushEntryLogger,
+                          AtomicReference<IOException> failure) {
+        Thread thread = new Thread(() -> {
+            try {
+                indexUpdater.update(locations, flushEntryLogger);
+            } catch (IOException e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Thread not waiting for the update in progress", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testUpdateFlushesTheIndex() throws Exception {
+        List<EntryLocation> locations = locations(1, 10);
+        indexUpdater.update(locations, true);
+
+        // The entry logger is flushed before the index points to the compacted entries
+        InOrder inOrder = inOrder(entryLogger, ledgerStorage);
+        inOrder.verify(entryLogger).flush();
+        inOrder.verify(ledgerStorage).updateEntriesLocations(any());
+        inOrder.verify(ledgerStorage).flushEntriesLocationsIndex();
+        assertEquals(Collections.singletonList(locations), updates);
+
+        indexUpdater.update(locations(2, 10), false);
+        verify(entryLogger, times(1)).flush();
+        verify(ledgerStorage, times(2)).flushEntriesLocationsIndex();
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreBatched() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch resumeFlush = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (flushStarted.getCount() > 0) {
+                flushStarted.countDown();
+                resumeFlush.await();
+            }
+            return null;
+        }).when(ledgerStorage).flushEntriesLocationsIndex();
+
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        List<EntryLocation> first = locations(1, 5);
+        Thread firstUpdate = update(first, false, failure);
+        assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+
+        // Submitted while the first update is in progress
+        List<EntryLocation> second = locations(2, 5);
+        List<EntryLocation> third = locations(3, 5);
+        Thread secondUpdate = update(second, false, failure);
+        Thread thirdUpdate = update(third, true, failure);
+        awaitWaiting(secondUpdate);
+        awaitWaiting(thirdUpdate);
+        verify(entryLogger, never()).flush();
+
+        resumeFlush.countDown();
+        firstUpdate.join();
+        secondUpdate.join();
+        thirdUpdate.join();
+        assertNull(failure.get());
+
+        // Applied with a single update and flush, flushing the entry logger if any compaction needs it
+        assertEquals(2, updates.size());
+        assertEquals(first, updates.get(0));
+        List<EntryLocation> expected = new ArrayList<>(second);
+        expected.addAll(third);
+        assertEquals(Sets.newHashSet(expected), Sets.newHashSet(updates.get(1)));
+        assertEquals(expected.size(), updates.get(1).size());
+        verify(ledgerStorage, times(2)).flushEntriesLocationsIndex();
+        verify(entryLogger, times(1)).flush();
+    }
+
+    @Test
+    public void testFailureIsReportedToTheWholeBatch() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch resumeFlush = new CountDownLatch(1);
+        IOException error = new IOException("index failure");
+        doAnswer(invocation -> {
+            if (flushStarted.getCount() > 0) {
+                flushStarted.countDown();
+                resumeFlush.await();
+                return null;
+            }
+            throw error;
+        }).when(ledgerStorage).flushEntriesLocationsIndex();
+
+        AtomicReference<IOException> firstFailure = new AtomicReference<>();
+        Thread firstUpdate = update(locations(1, 5), false, firstFailure);
+        assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+
+        AtomicReference<IOException> secondFailure = new AtomicReference<>();
+        AtomicReference<IOException> thirdFailure = new AtomicReference<>();
+        Thread secondUpdate = update(locations(2, 5), false, secondFailure);
+        Thread thirdUpdate = update(locations(3, 5), false, thirdFailure);
+        awaitWaiting(secondUpdate);
+        awaitWaiting(thirdUpdate);
+
+        resumeFlush.countDown();
+        firstUpdate.join();
+        secondUpdate.join();
+        thirdUpdate.join();
+        assertNull(firstFailure.get());
+        assertSame(error, secondFailure.get().getCause());
+        assertSame(error, thirdFailure.get().getCause());
+
+        // The next batch is applied again
+        doAnswer(invocation -> null).when(ledgerStorage).flushEntriesLocationsIndex();
+        indexUpdater.update(locations(4, 5), false);
+        assertEquals(3, updates.size());
+    }
+
+    @Test
+    public void testRuntimeExceptionFailsTheUpdate() throws Exception {
+        doThrow(new IllegalStateException("closed")).when(ledgerStorage).updateEntriesLocations(any());
+        try {
+            indexUpdater.update(locations(1, 5), false);
+            fail("The update should fail");
+        } catch (IOException e) {
+            assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+        }
+        verify(ledgerStorage, never()).flushEntriesLocationsIndex();
+    }
+}
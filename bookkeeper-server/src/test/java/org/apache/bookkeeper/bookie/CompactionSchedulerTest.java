@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.CompactionScheduler.Candidate;
+import org.apache.bookkeeper.bookie.CompactionScheduler.Policy;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CompactionScheduler}.
+ */
+public class CompactionSchedulerTest {
+
+    private static final long LOG_SIZE = 1024;
+
+    private static Candidate candidate(long entryLogId, double usage) {
+        return new Candidate(entryLogId, usage, (long) (usage * LOG_SIZE), LOG_SIZE);
+    }
+
+    private static List<Long> entryLogIds(List<Candidate> candidates) {
+        List<Long> ids = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            ids.add(candidate.entryLogId);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testParsePolicy() {
+        assertEquals(Policy.USAGE, Policy.parse("usage"));
+        assertEquals(Policy.GREEDY, Policy.parse("Greedy"));
+        assertEquals(Policy.COST_BENEFIT, Policy.parse("cost_benefit"));
+        assertEquals(Policy.COST_BENEFIT, Policy.parse("costBenefit"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseUnknownPolicy() {
+        Policy.parse("lru");
+    }
+
+    @Test
+    public void testUsagePolicyKeepsOrder() {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.USAGE, 0);
+        List<Candidate> candidates = Arrays.asList(candidate(1, 0.5), candidate(2, 0.1), candidate(3, 0.3));
+        assertEquals(Arrays.asList(1L, 2L, 3L), entryLogIds(scheduler.rank(candidates)));
+    }
+
+    @Test
+    public void testGreedyPolicyRanksByFreedBytes() {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.GREEDY, 0);
+        List<Candidate> candidates = Arrays.asList(
+                candidate(1, 0.5), candidate(2, 0.1), candidate(3, 0.0), candidate(4, 0.3));
+        // The empty entry log first, then by increasing usage, whatever the age
+        assertEquals(Arrays.asList(3L, 2L, 4L, 1L), entryLogIds(scheduler.rank(candidates)));
+    }
+
+    @Test
+    public void testCostBenefitPolicyFavorsOldEntryLogs() {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.COST_BENEFIT, 0);
+        // Same usage, the oldest entry log comes first
+        List<Candidate> candidates = Arrays.asList(candidate(10, 0.5), candidate(1, 0.5), candidate(5, 0.5));
+        assertEquals(Arrays.asList(1L, 5L, 10L), entryLogIds(scheduler.rank(candidates)));
+
+        // An old entry log with more live data beats a recent one that is almost empty:
+        // (1 - 0.6) * 100 / 1.6 = 25 > (1 - 0.1) * 1 / 1.1
+        candidates = Arrays.asList(candidate(100, 0.1), candidate(1, 0.6));
+        assertEquals(Arrays.asList(1L, 100L), entryLogIds(scheduler.rank(candidates)));
+
+        // Among recent entry logs, the least used comes first: (1 - 0.1) * 2 / 1.1 > (1 - 0.8) * 3 / 1.8
+        candidates = Arrays.asList(candidate(98, 0.8), candidate(99, 0.1), candidate(100, 0.6));
+        assertEquals(Arrays.asList(99L, 98L, 100L), entryLogIds(scheduler.rank(candidates)));
+    }
+
+    @Test
+    public void testRankDoesNotModifyCandidates() {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.GREEDY, 0);
+        List<Candidate> candidates = Arrays.asList(candidate(1, 0.5), candidate(2, 0.1));
+        scheduler.rank(candidates);
+        assertEquals(Arrays.asList(1L, 2L), entryLogIds(candidates));
+    }
+
+    @Test
+    public void testUnlimitedBudget() {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.GREEDY, 0);
+        scheduler.startRun();
+        assertTrue(scheduler.tryReserve(Long.MAX_VALUE / 2));
+        assertTrue(scheduler.tryReserve(1000));
+        assertEquals(Long.MAX_VALUE / 2 + 1000, scheduler.getRewriteBytes());
+    }
+
+    @Test
+    public void testBudgetIsBoundedPerRun() {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.GREEDY, 1000);
+        scheduler.startRun();
+        assertTrue(scheduler.tryReserve(600));
+        // Doesn't fit, but a smaller entry log can still be compacted
+        assertFalse(scheduler.tryReserve(500));
+        assertTrue(scheduler.tryReserve(400));
+        assertFalse(scheduler.tryReserve(1));
+        assertEquals(1000, scheduler.getRewriteBytes());
+
+        // The next run starts with the full budget
+        scheduler.startRun();
+        assertEquals(0, scheduler.getRewriteBytes());
+        assertTrue(scheduler.tryReserve(1000));
+    }
+
+    @Test
+    public void testConcurrentReservations() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(Policy.GREEDY, 1000);
+        scheduler.startRun();
+
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger reserved = new AtomicInteger();
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 100; j++) {
+                        if (scheduler.tryReserve(3)) {
+                            reserved.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        // Never more than the budget, and nothing lost
+        assertEquals(333, reserved.get());
+        assertEquals(999, scheduler.getRewriteBytes());
+    }
+}
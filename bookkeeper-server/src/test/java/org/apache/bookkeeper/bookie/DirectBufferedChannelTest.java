@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test of {@link DirectBufferedChannel}.
+ */
+public class DirectBufferedChannelTest {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int WRITE_CAPACITY = 4096;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private NativeIO nativeIO;
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setup() throws Exception {
+        nativeIO = spy(new NativeIOImpl());
+        file = tmpDir.newFile();
+        data = new byte[3 * WRITE_CAPACITY];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251 + 1);
+        }
+    }
+
+    private DirectBufferedChannel open(long position) throws Exception {
+        FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fc.position(position);
+        return DirectBufferedChannel.open(nativeIO, file, fc, WRITE_CAPACITY, BLOCK_SIZE);
+    }
+
+    private void write(DirectBufferedChannel channel, int from, int to) throws Exception {
+        channel.write(Unpooled.wrappedBuffer(data, from, to - from));
+    }
+
+    private void assertFileContent(int dataLength, long fileLength) throws Exception {
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertEquals(fileLength, content.length);
+        assertArrayEquals(Arrays.copyOf(data, dataLength), Arrays.copyOf(content, dataLength));
+        for (int i = dataLength; i < content.length; i++) {
+            assertEquals("Byte " + i, 0, content[i]);
+        }
+    }
+
+    private List<Long> verifyAlignedWrites(int numWrites) throws Exception {
+        ArgumentCaptor<Integer> sizes = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Long> offsets = ArgumentCaptor.forClass(Long.class);
+        verify(nativeIO, times(numWrites)).pwrite(anyInt(), anyLong(), sizes.capture(), offsets.capture());
+        for (int size : sizes.getAllValues()) {
+            assertEquals(0, size % BLOCK_SIZE);
+        }
+        for (long offset : offsets.getAllValues()) {
+            assertEquals(0, offset % BLOCK_SIZE);
+        }
+        return offsets.getAllValues();
+    }
+
+    @Test
+    public void testPartialBlockFlush() throws Exception {
+        try (DirectBufferedChannel channel = open(0)) {
+            write(channel, 0, 100);
+            channel.flush();
+            // The partial block is padded with zeros
+            assertFileContent(100, BLOCK_SIZE);
+            assertEquals(100, channel.forceWrite(false));
+
+            // The partial block is written again with the rest of its data
+            write(channel, 100, 600);
+            channel.flush();
+            assertFileContent(600, 2 * BLOCK_SIZE);
+            assertEquals(600, channel.forceWrite(false));
+
+            // More than the write buffer, flushed when full
+            write(channel, 600, 600 + 2 * WRITE_CAPACITY);
+            channel.flush();
+            assertEquals(600 + 2 * WRITE_CAPACITY, channel.forceWrite(false));
+            assertEquals(Arrays.asList(0L, 0L, (long) BLOCK_SIZE, (long) WRITE_CAPACITY + BLOCK_SIZE,
+                    2L * WRITE_CAPACITY + BLOCK_SIZE), verifyAlignedWrites(5));
+        }
+        assertFileContent(600 + 2 * WRITE_CAPACITY, 600 + 2 * WRITE_CAPACITY + BLOCK_SIZE - 600 % BLOCK_SIZE);
+    }
+
+    @Test
+    public void testPreallocate() throws Exception {
+        try (DirectBufferedChannel channel = open(0)) {
+            write(channel, 0, 700);
+            channel.flush();
+            channel.preallocate(0, 8 * BLOCK_SIZE);
+            channel.forceWrite(true);
+        }
+        assertTrue(file.length() >= 8 * BLOCK_SIZE);
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertArrayEquals(Arrays.copyOf(data, 700), Arrays.copyOf(content, 700));
+        // Only the data is written, the blocks are allocated with fallocate
+        verifyAlignedWrites(1);
+    }
+
+    @Test
+    public void testPreallocateWithoutFallocate() throws Exception {
+        doThrow(new NativeIOException("Operation not supported", 95))
+                .when(nativeIO).fallocate(anyInt(), anyInt(), anyLong(), anyLong());
+        try (DirectBufferedChannel channel = open(0)) {
+            write(channel, 0, 700);
+            channel.flush();
+
+            // The last block of the range is written with zeros, with direct I/O
+            channel.preallocate(2 * BLOCK_SIZE, 6 * BLOCK_SIZE);
+            assertFileContent(700, 8 * BLOCK_SIZE);
+            assertEquals(Arrays.asList(0L, 7L * BLOCK_SIZE), verifyAlignedWrites(2));
+
+            // The blocks up to the current one are not overwritten
+            channel.preallocate(0, 2 * BLOCK_SIZE);
+            verifyAlignedWrites(2);
+
+            write(channel, 700, 1200);
+            channel.flush();
+            channel.forceWrite(true);
+            assertFileContent(1200, 8 * BLOCK_SIZE);
+        }
+    }
+
+    @Test
+    public void testReopenAndReadBack() throws Exception {
+        try (DirectBufferedChannel channel = open(0)) {
+            write(channel, 0, 700);
+            channel.flush();
+            channel.forceWrite(false);
+        }
+
+        // Reopened in the middle of a block, the data of the block is kept
+        try (DirectBufferedChannel channel = open(700)) {
+            assertEquals(700, channel.position());
+            write(channel, 700, 1000);
+
+            ByteBuf read = Unpooled.buffer(1000);
+            assertEquals(1000, channel.read(read, 0, 1000));
+            assertArrayEquals(Arrays.copyOf(data, 1000), Arrays.copyOf(read.array(), 1000));
+
+            channel.flush();
+            channel.forceWrite(false);
+            assertEquals(Arrays.asList(0L, (long) BLOCK_SIZE), verifyAlignedWrites(2));
+        }
+        assertFileContent(1000, 2 * BLOCK_SIZE);
+    }
+}
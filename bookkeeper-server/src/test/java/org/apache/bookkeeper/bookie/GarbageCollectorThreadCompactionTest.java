@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the order and the budget of the compactions scheduled by {@link GarbageCollectorThread}.
+ */
+public class GarbageCollectorThreadCompactionTest {
+
+    private static final long LOG_SIZE = 1000;
+    private static final double THRESHOLD = 0.8;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final List<Long> compacted = Collections.synchronizedList(new ArrayList<>());
+    private GarbageCollectorThread gcThread;
+
+    @Before
+    public void setup() {
+        conf.setAllowLoopback(true);
+        conf.setMinorCompactionThreshold(0.2);
+        conf.setMajorCompactionThreshold(THRESHOLD);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (gcThread != null) {
+            gcThread.shutdown();
+        }
+    }
+
+    private GarbageCollectorThread newGcThread() throws Exception {
+        gcThread = new GarbageCollectorThread(conf, mock(LedgerManager.class), mock(LedgerDirsManager.class),
+                mock(CompactableLedgerStorage.class), mock(EntryLogger.class), NullStatsLogger.INSTANCE,
+                mock(ScheduledExecutorService.class)) {
+            @Override
+            protected void compactEntryLog(EntryLogMetadata entryLogMeta) {
+                compacted.add(entryLogMeta.getEntryLogId());
+            }
+        };
+        return gcThread;
+    }
+
+    // An entry log with the given remaining bytes, out of LOG_SIZE
+    private void addEntryLog(long entryLogId, long remainingSize) throws Exception {
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        meta.addLedgerSize(1, remainingSize);
+        meta.addLedgerSize(2, LOG_SIZE - remainingSize);
+        meta.removeLedgerIf(ledgerId -> ledgerId == 2);
+        gcThread.getEntryLogMetaMap().put(entryLogId, meta);
+    }
+
+    private void addEntryLogs() throws Exception {
+        addEntryLog(1, 400);
+        addEntryLog(2, 100);
+        addEntryLog(3, 300);
+        // Above the threshold
+        addEntryLog(4, 900);
+        addEntryLog(5, 200);
+    }
+
+    @Test
+    public void testUsagePolicyCompactsByUsageBuckets() throws Exception {
+        newGcThread();
+        addEntryLogs();
+        gcThread.doCompactEntryLogs(THRESHOLD, 0);
+        assertEquals(Arrays.asList(2L, 5L, 3L, 1L), compacted);
+        assertEquals(1000, gcThread.compactionScheduler.getRewriteBytes());
+    }
+
+    @Test
+    public void testGreedyPolicyCompactsTheMostGarbageFirst() throws Exception {
+        conf.setCompactionSchedulingPolicy("greedy");
+        newGcThread();
+        addEntryLog(1, 100);
+        addEntryLog(2, 700);
+        addEntryLog(3, 0);
+        addEntryLog(4, 900);
+        addEntryLog(5, 300);
+        gcThread.doCompactEntryLogs(THRESHOLD, 0);
+        assertEquals(Arrays.asList(3L, 1L, 5L, 2L), compacted);
+    }
+
+    @Test
+    public void testCostBenefitPolicyFavorsOlderEntryLogs() throws Exception {
+        conf.setCompactionSchedulingPolicy("cost_benefit");
+        newGcThread();
+        addEntryLogs();
+        gcThread.doCompactEntryLogs(THRESHOLD, 0);
+        // The oldest entry log is compacted before younger ones with more garbage
+        assertEquals(Arrays.asList(2L, 1L, 3L, 5L), compacted);
+    }
+
+    @Test
+    public void testRewriteBudgetOfARun() throws Exception {
+        conf.setCompactionSchedulingPolicy("greedy");
+        conf.setCompactionMaxRewriteBytesPerRun(500);
+        newGcThread();
+        addEntryLogs();
+
+        // The entry logs that don't fit in what is left of the budget are skipped
+        gcThread.doCompactEntryLogs(THRESHOLD, 0);
+        assertEquals(Arrays.asList(2L, 5L), compacted);
+        assertEquals(300, gcThread.compactionScheduler.getRewriteBytes());
+
+        // The compacted entry logs are removed by the compactor, each run has the full budget
+        gcThread.getEntryLogMetaMap().remove(2);
+        gcThread.getEntryLogMetaMap().remove(5);
+        compacted.clear();
+        gcThread.doCompactEntryLogs(THRESHOLD, 0);
+        assertEquals(Arrays.asList(3L), compacted);
+        assertEquals(300, gcThread.compactionScheduler.getRewriteBytes());
+    }
+}
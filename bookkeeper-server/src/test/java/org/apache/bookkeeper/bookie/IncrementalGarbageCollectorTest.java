@@ -0,0 +1,214 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link IncrementalGarbageCollector}.
+ */
+public class IncrementalGarbageCollectorTest {
+
+    private static final int NUM_LEDGERS = 25;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final List<Long> localLedgers = new ArrayList<>();
+    private final Set<Long> deletedLedgers = new HashSet<>();
+    private final Set<Long> pendingLedgers = new HashSet<>();
+    private final List<Long> readLedgers = new ArrayList<>();
+    private final List<Long> cleanedLedgers = new ArrayList<>();
+    private LedgerManager ledgerManager;
+    private CompactableLedgerStorage ledgerStorage;
+
+    @Before
+    public void setup() throws Exception {
+        conf.setAllowLoopback(true);
+        conf.setGcIncrementalEnabled(true);
+        // Only the incremental garbage collection runs in the tests
+        conf.setGcFullReconciliationWaitTime(1000 * 365, TimeUnit.DAYS);
+        conf.setGcIncrementalMaxLedgersPerRun(10);
+        conf.setGcIncrementalMetadataReadRate(Integer.MAX_VALUE);
+
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            localLedgers.add(ledgerId);
+        }
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.getActiveLedgersInRange(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long firstLedgerId = invocation.getArgument(0);
+            long lastLedgerId = invocation.getArgument(1);
+            // Not in ledger id order
+            List<Long> ledgers = new ArrayList<>();
+            for (long ledgerId : localLedgers) {
+                if (ledgerId >= firstLedgerId && ledgerId < lastLedgerId) {
+                    ledgers.add(ledgerId);
+                }
+            }
+            ledgers.sort((a, b) -> Long.compare(b, a));
+            return ledgers;
+        });
+
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.readLedgerMetadata(anyLong())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            readLedgers.add(ledgerId);
+            CompletableFuture<Versioned<LedgerMetadata>> future = new CompletableFuture<>();
+            if (deletedLedgers.contains(ledgerId)) {
+                future.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+            } else if (!pendingLedgers.contains(ledgerId)) {
+                future.complete(null);
+            }
+            return future;
+        });
+    }
+
+    private IncrementalGarbageCollector newGarbageCollector() throws Exception {
+        return new IncrementalGarbageCollector(ledgerManager, ledgerStorage, conf, NullStatsLogger.INSTANCE);
+    }
+
+    private List<Long> gc(IncrementalGarbageCollector garbageCollector) {
+        readLedgers.clear();
+        cleanedLedgers.clear();
+        garbageCollector.gc(cleanedLedgers::add);
+        return cleanedLedgers;
+    }
+
+    private static List<Long> range(long first, long last) {
+        List<Long> ledgers = new ArrayList<>();
+        for (long ledgerId = first; ledgerId <= last; ledgerId++) {
+            ledgers.add(ledgerId);
+        }
+        return ledgers;
+    }
+
+    @Test
+    public void testChecksABoundedNumberOfLedgersInTurn() throws Exception {
+        deletedLedgers.addAll(Arrays.asList(3L, 17L, 22L));
+        IncrementalGarbageCollector garbageCollector = newGarbageCollector();
+
+        assertEquals(Arrays.asList(3L), gc(garbageCollector));
+        assertEquals(range(0, 9), readLedgers);
+        assertEquals(NUM_LEDGERS, garbageCollector.getNumActiveLedgers());
+
+        localLedgers.remove(3L);
+        assertEquals(Arrays.asList(17L), gc(garbageCollector));
+        assertEquals(range(10, 19), readLedgers);
+
+        localLedgers.remove(17L);
+        assertEquals(Arrays.asList(22L), gc(garbageCollector));
+        assertEquals(range(20, 24), readLedgers);
+
+        // Wraps around once all the ledgers were checked
+        localLedgers.remove(22L);
+        assertEquals(Arrays.asList(), gc(garbageCollector));
+        assertEquals(Arrays.asList(0L, 1L, 2L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), readLedgers);
+
+        // No watch is kept on the metadata store
+        verify(ledgerManager, never()).registerLedgerMetadataListener(anyLong(), any());
+    }
+
+    @Test
+    public void testTimedOutLedgersAreCheckedAgain() throws Exception {
+        conf.setZkTimeout(50);
+        deletedLedgers.add(2L);
+        pendingLedgers.add(5L);
+        IncrementalGarbageCollector garbageCollector = newGarbageCollector();
+
+        // The ledgers whose metadata was read are garbage collected
+        assertEquals(Arrays.asList(2L), gc(garbageCollector));
+        assertEquals(range(0, 9), readLedgers);
+
+        localLedgers.remove(2L);
+        pendingLedgers.clear();
+        assertEquals(Arrays.asList(), gc(garbageCollector));
+        assertEquals(Arrays.asList(0L, 1L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), readLedgers);
+
+        gc(garbageCollector);
+        assertEquals(range(11, 20), readLedgers);
+    }
+
+    @Test
+    public void testMetadataReadsAreRateLimited() throws Exception {
+        conf.setGcIncrementalMetadataReadRate(100);
+        IncrementalGarbageCollector garbageCollector = newGarbageCollector();
+
+        long start = System.nanoTime();
+        gc(garbageCollector);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(10, readLedgers.size());
+        // The first read is not delayed
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 80);
+    }
+
+    @Test
+    public void testLedgersPerRunFitTheGcInterval() throws Exception {
+        conf.setGcWaitTime(1000);
+        conf.setGcIncrementalMetadataReadRate(100);
+        assertEquals(10, newGarbageCollector().getLedgersPerRun());
+
+        // 50 reads/s only allow 5 metadata reads within the 100ms between two garbage collections
+        conf.setGcWaitTime(100);
+        conf.setGcIncrementalMetadataReadRate(50);
+        IncrementalGarbageCollector garbageCollector = newGarbageCollector();
+        assertEquals(5, garbageCollector.getLedgersPerRun());
+
+        long start = System.nanoTime();
+        gc(garbageCollector);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(range(0, 4), readLedgers);
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < conf.getGcWaitTime());
+
+        // At least one ledger is checked per garbage collection
+        conf.setGcIncrementalMetadataReadRate(1);
+        assertEquals(1, newGarbageCollector().getLedgersPerRun());
+    }
+
+    @Test
+    public void testNoLocalLedgers() throws Exception {
+        localLedgers.clear();
+        IncrementalGarbageCollector garbageCollector = newGarbageCollector();
+        assertEquals(Arrays.asList(), gc(garbageCollector));
+        assertEquals(Arrays.asList(), readLedgers);
+        assertEquals(0, garbageCollector.getNumActiveLedgers());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of scanning the compressed blocks of a journal, see {@link JournalBlockCompressor}.
+ */
+public class JournalCompressedBlockTest {
+
+    private static final long JOURNAL_ID = 1;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final JournalBlockCompressor compressor = new JournalBlockCompressor(UnpooledByteBufAllocator.DEFAULT);
+    private final List<Long> scannedEntries = new ArrayList<>();
+    private Journal journal;
+    private File journalFile;
+
+    @Before
+    public void setup() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        File journalDir = tmpDir.newFolder("journal");
+        File ledgerDir = tmpDir.newFolder("ledgers");
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] {ledgerDir},
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+        journalFile = new File(journalDir, Long.toHexString(JOURNAL_ID) + ".txn");
+    }
+
+    // Entries with the usual ledger id and entry id prefix, compressible
+    private static ByteBuf records(long firstEntryId, int count) {
+        ByteBuf records = Unpooled.buffer();
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            records.writeInt(2 * Long.BYTES + 200);
+            records.writeLong(1);
+            records.writeLong(entryId);
+            records.writeZero(200);
+        }
+        return records;
+    }
+
+    private byte[] block(long firstEntryId, int count) {
+        ByteBuf block = compressor.compress(records(firstEntryId, count));
+        assertNotNull(block);
+        byte[] bytes = new byte[block.readableBytes()];
+        block.readBytes(bytes);
+        block.release();
+        return bytes;
+    }
+
+    private static byte[] plainRecords(long firstEntryId, int count) {
+        ByteBuf records = records(firstEntryId, count);
+        byte[] bytes = new byte[records.readableBytes()];
+        records.readBytes(bytes);
+        return bytes;
+    }
+
+    // Write a V7 journal file, followed by the zeros of the preallocated space
+    private void writeJournal(int preallocatedZeros, byte[]... chunks) throws Exception {
+        ByteBuf file = Unpooled.buffer();
+        file.writeBytes("BKLG".getBytes(UTF_8));
+        file.writeInt(JournalChannel.V7);
+        file.writeZero(JournalChannel.HEADER_SIZE - file.readableBytes());
+        for (byte[] chunk : chunks) {
+            file.writeBytes(chunk);
+        }
+        file.writeZero(preallocatedZeros);
+        Files.write(journalFile.toPath(), Arrays.copyOf(file.array(), file.readableBytes()));
+    }
+
+    private void scan() throws IOException {
+        journal.scanJournal(JOURNAL_ID, 0, (journalVersion, offset, entry) -> {
+            assertEquals(JournalChannel.V7, journalVersion);
+            assertEquals(1, entry.getLong(entry.position()));
+            scannedEntries.add(entry.getLong(entry.position() + Long.BYTES));
+        });
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> entryIds = new ArrayList<>();
+        for (long entryId = from; entryId < to; entryId++) {
+            entryIds.add(entryId);
+        }
+        return entryIds;
+    }
+
+    @Test
+    public void testScanBlocksAndPlainRecords() throws Exception {
+        writeJournal(4096, block(0, 10), plainRecords(10, 1), block(11, 10));
+        scan();
+        assertEquals(range(0, 21), scannedEntries);
+    }
+
+    @Test
+    public void testTornLastBlock() throws Exception {
+        byte[] lastBlock = block(10, 10);
+        lastBlock[lastBlock.length - 1] ^= 0x5a;
+        writeJournal(4096, block(0, 10), lastBlock);
+        scan();
+        assertEquals(range(0, 10), scannedEntries);
+    }
+
+    @Test
+    public void testTruncatedLastBlock() throws Exception {
+        byte[] lastBlock = block(10, 10);
+        writeJournal(0, block(0, 10), Arrays.copyOf(lastBlock, lastBlock.length / 2));
+        scan();
+        assertEquals(range(0, 10), scannedEntries);
+    }
+
+    @Test
+    public void testInvalidBlockHeader() throws Exception {
+        byte[] lastBlock = block(10, 10);
+        // A compressed length beyond the max block size is not allocated
+        Unpooled.wrappedBuffer(lastBlock).setInt(8, Integer.MAX_VALUE);
+        writeJournal(4096, block(0, 10), lastBlock);
+        scan();
+        assertEquals(range(0, 10), scannedEntries);
+
+        Unpooled.wrappedBuffer(lastBlock).setInt(8, -1);
+        writeJournal(4096, block(0, 10), lastBlock);
+        scannedEntries.clear();
+        scan();
+        assertEquals(range(0, 10), scannedEntries);
+    }
+
+    @Test
+    public void testInvalidRecordLengthInLastBlock() throws Exception {
+        ByteBuf records = records(10, 10);
+        // The last record overflows the block
+        records.setInt(9 * (Integer.BYTES + 2 * Long.BYTES + 200), 1000);
+        ByteBuf block = compressor.compress(records);
+        byte[] lastBlock = new byte[block.readableBytes()];
+        block.readBytes(lastBlock);
+        block.release();
+
+        writeJournal(4096, block(0, 10), lastBlock);
+        scan();
+        // None of the records of the invalid block are scanned
+        assertEquals(range(0, 10), scannedEntries);
+    }
+
+    @Test
+    public void testCorruptedBlockInTheMiddle() throws Exception {
+        byte[] corruptedBlock = block(10, 10);
+        corruptedBlock[corruptedBlock.length - 1] ^= 0x5a;
+        writeJournal(4096, block(0, 10), corruptedBlock, block(20, 10));
+        try {
+            scan();
+            fail("The entries after the corrupted block would be lost");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Corrupted compressed block"));
+        }
+    }
+}
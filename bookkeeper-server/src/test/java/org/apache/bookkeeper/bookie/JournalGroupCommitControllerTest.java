@@ -0,0 +1,163 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long now = 0;
+
+    /**
+     * Record the given number of arrivals per millisecond, for the given number of milliseconds.
+     */
+    private void recordArrivals(JournalGroupCommitController controller, int perMilli, int millis) {
+        for (int i = 0; i < millis; i++) {
+            now += MILLIS;
+            controller.recordArrivals(perMilli, now);
+        }
+    }
+
+    @Test
+    public void testNoWaitWithoutEstimates() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 0, now);
+        controller.update();
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(1, controller.getGroupEntries());
+
+        // Arrivals without any commit latency known
+        recordArrivals(controller, 100, 10);
+        controller.update();
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(1, controller.getGroupEntries());
+    }
+
+    @Test
+    public void testNoWaitAtLowLoad() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 0, now);
+        controller.recordCommitLatency(MILLIS);
+
+        // One entry every 10 ms, while a commit takes 1 ms
+        for (int i = 0; i < 50; i++) {
+            now += 10 * MILLIS;
+            controller.recordArrivals(1, now);
+        }
+        controller.update();
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(1, controller.getGroupEntries());
+    }
+
+    @Test
+    public void testGroupSizedFromLatencyAndRate() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 0, now);
+        controller.recordCommitLatency(MILLIS);
+
+        // 100 entries per ms, while a commit takes 1 ms
+        recordArrivals(controller, 100, 100);
+        controller.update();
+        assertEquals(MILLIS, controller.getGroupWaitNanos());
+        assertEquals(100, controller.getGroupEntries());
+    }
+
+    @Test
+    public void testGroupWaitBoundedByMaxGroupWait() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 0, now);
+        controller.recordCommitLatency(10 * MILLIS);
+
+        recordArrivals(controller, 10, 100);
+        controller.update();
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+        assertEquals(100, controller.getGroupEntries());
+    }
+
+    @Test
+    public void testGroupEntriesBoundedByMaxGroupEntries() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 20, now);
+        controller.recordCommitLatency(MILLIS);
+
+        recordArrivals(controller, 100, 100);
+        controller.update();
+        assertEquals(MILLIS, controller.getGroupWaitNanos());
+        assertEquals(20, controller.getGroupEntries());
+    }
+
+    @Test
+    public void testRateSampledOverMinWindow() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 0, now);
+        controller.recordCommitLatency(MILLIS);
+
+        // The arrivals within less than 1 ms are accumulated, and only sampled once the window is over
+        for (int i = 0; i < 9; i++) {
+            now += MILLIS / 10;
+            controller.recordArrivals(100, now);
+        }
+        controller.update();
+        assertEquals(0, controller.getGroupWaitNanos());
+
+        now += MILLIS / 10;
+        controller.recordArrivals(100, now);
+        controller.update();
+        // 1000 entries in 1 ms, the first sample has a weight of 0.2 in the moving average
+        assertEquals(MILLIS, controller.getGroupWaitNanos());
+        assertTrue(controller.getGroupEntries() >= 200 && controller.getGroupEntries() <= 201);
+    }
+
+    @Test
+    public void testCommitLatencyMovingAverage() {
+        JournalGroupCommitController controller =
+                new JournalGroupCommitController(TimeUnit.SECONDS.toNanos(1), 0, now);
+        recordArrivals(controller, 100, 100);
+
+        // The first sample is taken as is
+        controller.recordCommitLatency(MILLIS);
+        controller.update();
+        assertEquals(MILLIS, controller.getGroupWaitNanos());
+
+        // The following ones are averaged
+        controller.recordCommitLatency(11 * MILLIS);
+        controller.update();
+        assertEquals(3 * MILLIS, controller.getGroupWaitNanos(), MILLIS / 1000);
+
+        // Less than one entry arrives during the commits of a faster device, there is nothing to wait for
+        for (int i = 0; i < 100; i++) {
+            controller.recordCommitLatency(MILLIS / 1000);
+        }
+        controller.update();
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(1, controller.getGroupEntries());
+    }
+}
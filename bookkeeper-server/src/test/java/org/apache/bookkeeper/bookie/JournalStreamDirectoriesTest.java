@@ -0,0 +1,91 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.util.List;
+import java.util.SortedMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of the journal stream directories of {@link Journal}.
+ */
+public class JournalStreamDirectoriesTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private static File newJournalFile(File journalDirectory, long journalId) throws Exception {
+        assertTrue(journalDirectory.isDirectory() || journalDirectory.mkdirs());
+        File journalFile = new File(journalDirectory, Long.toHexString(journalId) + ".txn");
+        assertTrue(journalFile.createNewFile());
+        return journalFile;
+    }
+
+    @Test
+    public void testStreamDirectoriesByJournalIndex() throws Exception {
+        File dir0 = tmpDir.newFolder();
+        File dir1 = tmpDir.newFolder();
+        List<File> streamDirectories = Journal.getJournalStreamDirectories(Lists.newArrayList(dir0, dir1), 3);
+        assertEquals(Lists.newArrayList(dir0, dir1,
+                new File(dir0, "stream-1"), new File(dir1, "stream-1"),
+                new File(dir0, "stream-2"), new File(dir1, "stream-2")), streamDirectories);
+    }
+
+    @Test
+    public void testStaleStreamDirectories() throws Exception {
+        File dir0 = tmpDir.newFolder();
+        File dir1 = tmpDir.newFolder();
+        List<File> journalDirectories = Lists.newArrayList(dir0, dir1);
+
+        // Written with 4 streams per directory
+        for (File streamDirectory : Journal.getJournalStreamDirectories(journalDirectories, 4)) {
+            newJournalFile(streamDirectory, 1);
+        }
+        // A stream without journal files has nothing to replay
+        assertTrue(new File(dir0, "stream-5").mkdirs());
+        // Not a stream directory
+        assertTrue(new File(dir1, "stream-x").mkdirs());
+        newJournalFile(new File(dir1, "stream-x"), 1);
+
+        assertTrue(Journal.getStaleJournalStreamDirectories(journalDirectories, 4).isEmpty());
+
+        // Lowered to 2 streams per directory, the journal index of the stale streams is unchanged
+        SortedMap<Integer, File> staleDirectories = Journal.getStaleJournalStreamDirectories(journalDirectories, 2);
+        assertEquals(4, staleDirectories.size());
+        assertEquals(new File(dir0, "stream-2"), staleDirectories.get(4));
+        assertEquals(new File(dir1, "stream-2"), staleDirectories.get(5));
+        assertEquals(new File(dir0, "stream-3"), staleDirectories.get(6));
+        assertEquals(new File(dir1, "stream-3"), staleDirectories.get(7));
+        List<File> streamDirectories = Journal.getJournalStreamDirectories(journalDirectories, 4);
+        for (int journalIndex : staleDirectories.keySet()) {
+            assertEquals(streamDirectories.get(journalIndex), staleDirectories.get(journalIndex));
+        }
+
+        assertEquals(6, Journal.getStaleJournalStreamDirectories(journalDirectories, 1).size());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the compaction of entry logs in parallel by the workers of {@link GarbageCollectorThread}.
+ */
+public class ParallelCompactionTest {
+
+    private static final int NUM_THREADS = 3;
+    private static final int NUM_LOGS = 3;
+    private static final int ENTRIES_PER_LEDGER = 10;
+    private static final int ENTRY_SIZE = 100;
+    private static final long LIVE_LEDGER = 1;
+    private static final long DELETED_LEDGER = 2;
+    private static final long COMPACTED_LOG = 100;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final AtomicLong compactedLogPosition = new AtomicLong();
+    private final AtomicInteger concurrentScans = new AtomicInteger();
+    private final AtomicInteger maxConcurrentScans = new AtomicInteger();
+    private final List<EntryLocation> updatedLocations = new ArrayList<>();
+    private final AtomicInteger indexUpdates = new AtomicInteger();
+    private EntryLogger entryLogger;
+    private CompactableLedgerStorage ledgerStorage;
+    private GarbageCollectorThread gcThread;
+    // Awaited by each scan, so that the compactions only complete if they run in parallel
+    private CyclicBarrier scanBarrier;
+
+    @Before
+    public void setup() throws Exception {
+        conf.setAllowLoopback(true);
+        conf.setNumCompactionThreads(NUM_THREADS);
+        conf.setCompactionRateByEntries(Integer.MAX_VALUE);
+
+        entryLogger = mock(EntryLogger.class);
+        doAnswer(invocation -> {
+            scanEntryLog(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(entryLogger).scanEntryLog(anyLong(), any());
+        when(entryLogger.addEntry(anyLong(), any())).thenAnswer(invocation ->
+                (COMPACTED_LOG << 32) | compactedLogPosition.getAndAdd(ENTRY_SIZE));
+        when(entryLogger.removeEntryLog(anyLong())).thenReturn(true);
+
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        doAnswer(invocation -> {
+            Iterable<EntryLocation> locations = invocation.getArgument(0);
+            synchronized (updatedLocations) {
+                for (EntryLocation location : locations) {
+                    updatedLocations.add(location);
+                }
+            }
+            indexUpdates.incrementAndGet();
+            return null;
+        }).when(ledgerStorage).updateEntriesLocations(any());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (gcThread != null) {
+            gcThread.shutdown();
+        }
+    }
+
+    private void newGcThread() throws Exception {
+        gcThread = new GarbageCollectorThread(conf, mock(LedgerManager.class), mock(LedgerDirsManager.class),
+                ledgerStorage, entryLogger, NullStatsLogger.INSTANCE, mock(ScheduledExecutorService.class));
+    }
+
+    // Each entry log holds the entries of a live ledger and of a deleted ledger
+    private void addEntryLogs() throws Exception {
+        for (long logId = 1; logId <= NUM_LOGS; logId++) {
+            EntryLogMetadata meta = new EntryLogMetadata(logId);
+            meta.addLedgerSize(LIVE_LEDGER, ENTRIES_PER_LEDGER * ENTRY_SIZE);
+            meta.addLedgerSize(DELETED_LEDGER, 3 * ENTRIES_PER_LEDGER * ENTRY_SIZE);
+            meta.removeLedgerIf(ledgerId -> ledgerId == DELETED_LEDGER);
+            gcThread.getEntryLogMetaMap().put(logId, meta);
+        }
+    }
+
+    private void scanEntryLog(long logId, EntryLogScanner scanner) throws IOException {
+        int scans = concurrentScans.incrementAndGet();
+        maxConcurrentScans.accumulateAndGet(scans, Math::max);
+        try {
+            if (scanBarrier != null) {
+                scanBarrier.await(10, TimeUnit.SECONDS);
+            }
+            long offset = 0;
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                for (long ledgerId : new long[] {LIVE_LEDGER, DELETED_LEDGER}) {
+                    if (scanner.accept(ledgerId)) {
+                        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+                        entry.writeLong(ledgerId).writeLong(logId * ENTRIES_PER_LEDGER + entryId);
+                        entry.writeZero(ENTRY_SIZE - entry.writerIndex());
+                        scanner.process(ledgerId, offset, entry);
+                    }
+                    offset += ENTRY_SIZE;
+                }
+            }
+        } catch (Exception e) {
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        } finally {
+            concurrentScans.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testEntryLogsCompactedInParallel() throws Exception {
+        scanBarrier = new CyclicBarrier(NUM_LOGS);
+        newGcThread();
+        addEntryLogs();
+
+        gcThread.doCompactEntryLogs(0.5, 0);
+
+        // The run only returns once all the workers are done
+        assertEquals(NUM_LOGS, maxConcurrentScans.get());
+        assertEquals(0, concurrentScans.get());
+        for (long logId = 1; logId <= NUM_LOGS; logId++) {
+            verify(entryLogger).removeEntryLog(logId);
+            assertFalse(gcThread.getEntryLogMetaMap().containsKey(logId));
+        }
+
+        // Only the entries of the live ledger are rewritten, and all of them are in the index
+        Set<Long> updatedEntries = new HashSet<>();
+        for (EntryLocation location : updatedLocations) {
+            assertEquals(LIVE_LEDGER, location.getLedger());
+            assertEquals(COMPACTED_LOG, location.getLocation() >>> 32);
+            assertTrue(updatedEntries.add(location.getEntry()));
+        }
+        assertEquals(NUM_LOGS * ENTRIES_PER_LEDGER, updatedEntries.size());
+        // Concurrent updates may be applied in a single batch
+        assertTrue(indexUpdates.get() >= 1 && indexUpdates.get() <= NUM_LOGS);
+        assertEquals(NUM_LOGS * ENTRIES_PER_LEDGER * ENTRY_SIZE, compactedLogPosition.get());
+        assertEquals(NUM_LOGS * ENTRIES_PER_LEDGER * ENTRY_SIZE, gcThread.compactionScheduler.getRewriteBytes());
+    }
+
+    @Test
+    public void testRewriteBudgetSharedByTheWorkers() throws Exception {
+        // Room for two of the entry logs
+        conf.setCompactionMaxRewriteBytesPerRun(2 * ENTRIES_PER_LEDGER * ENTRY_SIZE);
+        newGcThread();
+        addEntryLogs();
+
+        gcThread.doCompactEntryLogs(0.5, 0);
+
+        assertEquals(NUM_LOGS - 1, updatedLocations.size() / ENTRIES_PER_LEDGER);
+        assertEquals(1, gcThread.getEntryLogMetaMap().size());
+        assertEquals(2 * ENTRIES_PER_LEDGER * ENTRY_SIZE, gcThread.compactionScheduler.getRewriteBytes());
+    }
+
+    @Test
+    public void testFailedCompactionKeepsTheEntryLog() throws Exception {
+        doAnswer(invocation -> {
+            long logId = invocation.getArgument(0);
+            if (logId == 2) {
+                throw new IOException("Failed to read entry log " + logId);
+            }
+            scanEntryLog(logId, invocation.getArgument(1));
+            return null;
+        }).when(entryLogger).scanEntryLog(anyLong(), any());
+        newGcThread();
+        addEntryLogs();
+
+        gcThread.doCompactEntryLogs(0.5, 0);
+
+        // The other workers are not affected
+        verify(entryLogger).removeEntryLog(1);
+        verify(entryLogger).removeEntryLog(3);
+        verify(entryLogger, never()).removeEntryLog(2);
+        assertTrue(gcThread.getEntryLogMetaMap().containsKey(2));
+        assertEquals(1, gcThread.getEntryLogMetaMap().size());
+        assertEquals(2 * ENTRIES_PER_LEDGER, updatedLocations.size());
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ParallelJournalScanner}.
+ */
+public class ParallelJournalScannerTest {
+
+    private static final int JOURNAL_VERSION = JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION;
+
+    // The journal reuses the same buffer for all the entries it reads
+    private final ByteBuffer journalBuffer = ByteBuffer.allocate(1024);
+
+    private void scan(JournalScanner scanner, long ledgerId, long entryId, int size) throws IOException {
+        journalBuffer.clear();
+        journalBuffer.putLong(ledgerId);
+        journalBuffer.putLong(entryId);
+        while (journalBuffer.position() < size) {
+            journalBuffer.put((byte) entryId);
+        }
+        journalBuffer.flip();
+        scanner.process(JOURNAL_VERSION, entryId, journalBuffer);
+    }
+
+    private static long ledgerId(ByteBuffer entry) {
+        return entry.getLong(0);
+    }
+
+    private static long entryId(ByteBuffer entry) {
+        return entry.getLong(8);
+    }
+
+    @Test
+    public void testEntriesOfALedgerInJournalOrder() throws Exception {
+        Map<Long, List<Long>> processed = new ConcurrentHashMap<>();
+        Map<Long, Thread> threads = new ConcurrentHashMap<>();
+        JournalScanner scanner = (journalVersion, offset, entry) -> {
+            long ledgerId = ledgerId(entry);
+            assertEquals(JOURNAL_VERSION, journalVersion);
+            assertEquals(entryId(entry), offset);
+            // A copy of the entry, which is not overwritten by the next ones
+            assertEquals(64, entry.remaining());
+            assertEquals((byte) entryId(entry), entry.get(63));
+            assertEquals(Thread.currentThread(), threads.computeIfAbsent(ledgerId, id -> Thread.currentThread()));
+            processed.computeIfAbsent(ledgerId, id -> new ArrayList<>()).add(entryId(entry));
+        };
+
+        try (ParallelJournalScanner parallelScanner = new ParallelJournalScanner(scanner, 4, 1024 * 1024)) {
+            // Ledgers interleaved in the journal
+            for (long entryId = 0; entryId < 1000; entryId++) {
+                scan(parallelScanner, entryId % 10, entryId, 64);
+            }
+            parallelScanner.flush();
+
+            assertEquals(10, processed.size());
+            for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+                List<Long> entries = processed.get(ledgerId);
+                assertEquals(100, entries.size());
+                for (int i = 0; i < entries.size(); i++) {
+                    assertEquals(ledgerId + 10 * i, (long) entries.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLedgersProcessedInParallel() throws Exception {
+        CountDownLatch ledger2Processed = new CountDownLatch(1);
+        JournalScanner scanner = (journalVersion, offset, entry) -> {
+            if (ledgerId(entry) == 0) {
+                // Only completes if ledger 2 is processed by another thread meanwhile
+                try {
+                    assertTrue(ledger2Processed.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                ledger2Processed.countDown();
+            }
+        };
+
+        try (ParallelJournalScanner parallelScanner = new ParallelJournalScanner(scanner, 2, 1024 * 1024)) {
+            scan(parallelScanner, 0, 0, 64);
+            scan(parallelScanner, 2, 1, 64);
+            parallelScanner.flush();
+        }
+    }
+
+    @Test
+    public void testPendingEntriesBoundedInMemory() throws Exception {
+        CountDownLatch processStarted = new CountDownLatch(1);
+        CountDownLatch resumeProcessing = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+        JournalScanner scanner = (journalVersion, offset, entry) -> {
+            processStarted.countDown();
+            try {
+                resumeProcessing.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            processed.incrementAndGet();
+        };
+
+        try (ParallelJournalScanner parallelScanner = new ParallelJournalScanner(scanner, 2, 100)) {
+            AtomicInteger scanned = new AtomicInteger();
+            Thread reader = new Thread(() -> {
+                try {
+                    for (long entryId = 0; entryId < 10; entryId++) {
+                        scan(parallelScanner, 0, entryId, 64);
+                        scanned.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // fails the assertions below
+                }
+            });
+            reader.start();
+
+            assertTrue(processStarted.await(10, TimeUnit.SECONDS));
+            // The limit can be exceeded by one entry, the reader then blocks until the entries are processed
+            reader.join(500);
+            assertTrue(reader.isAlive());
+            assertEquals(2, scanned.get());
+
+            resumeProcessing.countDown();
+            reader.join(10000);
+            assertFalse(reader.isAlive());
+            parallelScanner.flush();
+            assertEquals(10, scanned.get());
+            assertEquals(10, processed.get());
+        }
+    }
+
+    @Test
+    public void testFailureStopsTheReplay() throws Exception {
+        CountDownLatch allScanned = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+        JournalScanner scanner = (journalVersion, offset, entry) -> {
+            try {
+                allScanned.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (entryId(entry) == 5) {
+                throw new IOException("ledger storage failure");
+            }
+            processed.incrementAndGet();
+        };
+
+        try (ParallelJournalScanner parallelScanner = new ParallelJournalScanner(scanner, 1, 1024 * 1024)) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                scan(parallelScanner, 0, entryId, 64);
+            }
+            allScanned.countDown();
+            try {
+                parallelScanner.flush();
+                fail("The replay failed");
+            } catch (IOException e) {
+                assertEquals("ledger storage failure", e.getCause().getMessage());
+            }
+            // The entries pending after the failure are dropped
+            assertEquals(5, processed.get());
+
+            try {
+                scan(parallelScanner, 1, 10, 64);
+                fail("The replay failed");
+            } catch (IOException e) {
+                assertEquals("ledger storage failure", e.getCause().getMessage());
+            }
+            assertEquals(5, processed.get());
+        }
+    }
+
+    @Test
+    public void testRuntimeExceptionFailsTheReplay() throws Exception {
+        JournalScanner scanner = (journalVersion, offset, entry) -> {
+            throw new IllegalStateException("unexpected");
+        };
+
+        try (ParallelJournalScanner parallelScanner = new ParallelJournalScanner(scanner, 2, 1024 * 1024)) {
+            scan(parallelScanner, 0, 0, 64);
+            try {
+                parallelScanner.flush();
+                fail("The replay failed");
+            } catch (IOException e) {
+                assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+}
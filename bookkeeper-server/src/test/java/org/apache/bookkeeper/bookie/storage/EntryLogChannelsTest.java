@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.FileRegion;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of {@link EntryLogChannels}.
+ */
+public class EntryLogChannelsTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File logFile;
+    private EntryLogChannels channels;
+
+    @Before
+    public void setup() throws Exception {
+        logFile = tmpDir.newFile("1.log");
+        byte[] data = new byte[1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Files.write(logFile.toPath(), data);
+        channels = new EntryLogChannels(logId -> logFile);
+    }
+
+    private static byte[] transfer(FileRegion region) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testChannelIsShared() throws Exception {
+        FileChannel channel = channels.get(1);
+        assertSame(channel, channels.get(1));
+
+        FileRegion region = channels.newRegion(1, 10, 20);
+        byte[] data = transfer(region);
+        assertEquals(20, data.length);
+        assertEquals(10, data[0]);
+        assertTrue(region.release());
+
+        // Releasing the region doesn't close the shared channel
+        assertTrue(channel.isOpen());
+        assertSame(channel, channels.get(1));
+    }
+
+    @Test
+    public void testRegionOutlivesRemovedLog() throws Exception {
+        FileChannel channel = channels.get(1);
+        FileRegion region = channels.newRegion(1, 0, 100);
+
+        channels.remove(1);
+        assertTrue(channel.isOpen());
+        assertEquals(100, transfer(region).length);
+
+        region.release();
+        assertFalse(channel.isOpen());
+
+        // Opened again on the next read
+        FileChannel reopened = channels.get(1);
+        assertNotSame(channel, reopened);
+        assertTrue(reopened.isOpen());
+        channels.removeAll();
+        assertFalse(reopened.isOpen());
+    }
+
+    @Test
+    public void testRegionBeyondEndOfFile() throws Exception {
+        assertNull(channels.newRegion(1, 1000, 100));
+        FileChannel channel = channels.get(1);
+        channels.remove(1);
+        // The reference taken for the region was released
+        assertFalse(channel.isOpen());
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link EntryReadPlanner}.
+ */
+public class EntryReadPlannerTest {
+
+    private static final long LOG_ID = 3;
+    private static final long LEDGER_ID = 7;
+
+    // In-memory entry log, each entry is preceded by its size
+    private final ByteBuf log = Unpooled.buffer();
+    private final List<ByteBuf> entriesRead = new ArrayList<>();
+    private final List<ByteBuf> rangesRead = new ArrayList<>();
+    private EntryLogger entryLogger;
+    private int rangeReads = 0;
+
+    @Before
+    public void setup() throws Exception {
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.readEntry(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            int pos = (int) pos(invocation.getArgument(2));
+            ByteBuf entry = Unpooled.copiedBuffer(log.slice(pos, log.getInt(pos - Integer.BYTES)));
+            entriesRead.add(entry);
+            return entry;
+        });
+    }
+
+    private ByteBuf readRange(long logId, long offset, int size) {
+        assertEquals(LOG_ID, logId);
+        rangeReads++;
+        ByteBuf range = Unpooled.copiedBuffer(log.slice((int) offset, size));
+        rangesRead.add(range);
+        return range;
+    }
+
+    private static long location(long logId, long pos) {
+        return (logId << 32) | pos;
+    }
+
+    private static long pos(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+
+    // Append an entry to the log, and return its location
+    private long append(long ledgerId, long entryId, int payloadSize) {
+        log.writeInt(2 * Long.BYTES + payloadSize);
+        long location = location(LOG_ID, log.writerIndex());
+        log.writeLong(ledgerId);
+        log.writeLong(entryId);
+        for (int i = 0; i < payloadSize; i++) {
+            log.writeByte((byte) (entryId + i));
+        }
+        return location;
+    }
+
+    private static int[] indexes(List<EntryReadPlanner.Run> runs, int run) {
+        return runs.get(run).indexes;
+    }
+
+    @Test
+    public void testPlanSplitsOnGapSizeAndLog() {
+        EntryReadPlanner planner = new EntryReadPlanner(200, 100);
+        long[] locations = {
+            location(1, 0),
+            location(1, 50),
+            // Beyond the max gap from the previous entry
+            location(1, 200),
+            location(1, 290),
+            location(1, 380),
+            // Close to the previous entry, but beyond the max read size from the first entry of the run
+            location(1, 470),
+            location(1, 560),
+            // Another entry log
+            location(2, 600),
+        };
+
+        List<EntryReadPlanner.Run> runs = planner.plan(locations);
+        assertEquals(4, runs.size());
+        assertArrayEquals(new int[] {0, 1}, indexes(runs, 0));
+        assertArrayEquals(new int[] {2, 3, 4}, indexes(runs, 1));
+        assertArrayEquals(new int[] {5, 6}, indexes(runs, 2));
+        assertEquals(1, runs.get(2).logId);
+        assertArrayEquals(new int[] {7}, indexes(runs, 3));
+        assertEquals(2, runs.get(3).logId);
+    }
+
+    @Test
+    public void testPlanSortsByLocation() {
+        EntryReadPlanner planner = new EntryReadPlanner(200, 100);
+        long[] locations = {location(1, 80), location(1, 0), location(1, 40), location(1, 40)};
+
+        List<EntryReadPlanner.Run> runs = planner.plan(locations);
+        assertEquals(1, runs.size());
+        assertArrayEquals(new int[] {1, 2, 3, 0}, indexes(runs, 0));
+    }
+
+    @Test
+    public void testReadEntriesWithCoalescedReads() throws Exception {
+        long[] entryIds = new long[10];
+        long[] locations = new long[10];
+        for (int i = 0; i < 10; i++) {
+            // Interleaved with the entries of another ledger
+            append(LEDGER_ID + 1, i, 30);
+            entryIds[i] = i;
+            locations[i] = append(LEDGER_ID, i, 10 + i);
+        }
+
+        // Requested out of order
+        long[] requestedIds = {5, 6, 7, 8, 9, 0, 1, 2, 3, 4};
+        long[] requestedLocations = new long[10];
+        for (int i = 0; i < 10; i++) {
+            requestedLocations[i] = locations[(int) requestedIds[i]];
+        }
+
+        ByteBuf[] entries = new EntryReadPlanner().readEntries(entryLogger, this::readRange,
+                LEDGER_ID, requestedIds, requestedLocations);
+        try {
+            assertEquals(1, rangeReads);
+            for (int i = 0; i < 10; i++) {
+                ByteBuf entry = entries[i];
+                assertEquals(2 * Long.BYTES + 10 + requestedIds[i], entry.readableBytes());
+                assertEquals(LEDGER_ID, entry.getLong(0));
+                assertEquals(requestedIds[i], entry.getLong(8));
+                assertEquals((byte) requestedIds[i], entry.getByte(16));
+            }
+        } finally {
+            EntryReadPlanner.releaseAll(entries);
+        }
+        assertAllReleased();
+    }
+
+    @Test
+    public void testRangesOfEachLogReadTogether() throws Exception {
+        long[] entryIds = new long[6];
+        long[] locations = new long[6];
+        for (int i = 0; i < 6; i++) {
+            entryIds[i] = i;
+            locations[i] = append(LEDGER_ID, i, 10);
+            // Every second entry is followed by enough data of another ledger to start a new run
+            if (i % 2 == 1) {
+                append(LEDGER_ID + 1, i, 200);
+            }
+        }
+
+        List<Integer> batchSizes = new ArrayList<>();
+        EntryReadPlanner.LogRangeReader rangeReader = new EntryReadPlanner.LogRangeReader() {
+            @Override
+            public ByteBuf readRange(long logId, long offset, int size) {
+                return EntryReadPlannerTest.this.readRange(logId, offset, size);
+            }
+
+            @Override
+            public ByteBuf[] readRanges(long logId, long[] offsets, int[] sizes) throws IOException {
+                batchSizes.add(offsets.length);
+                return EntryReadPlanner.LogRangeReader.super.readRanges(logId, offsets, sizes);
+            }
+        };
+
+        ByteBuf[] entries = new EntryReadPlanner(1024, 100).readEntries(entryLogger, rangeReader,
+                LEDGER_ID, entryIds, locations);
+        try {
+            // Three runs of two entries, whose ranges are read with a single batch
+            assertEquals(3, rangeReads);
+            assertEquals(Collections.singletonList(3), batchSizes);
+            for (int i = 0; i < 6; i++) {
+                assertEquals(i, entries[i].getLong(8));
+            }
+        } finally {
+            EntryReadPlanner.releaseAll(entries);
+        }
+        assertAllReleased();
+    }
+
+    @Test
+    public void testDuplicateLocations() throws Exception {
+        long location0 = append(LEDGER_ID, 0, 10);
+        long location1 = append(LEDGER_ID, 1, 10);
+
+        long[] entryIds = {1, 0, 1, 0};
+        long[] locations = {location1, location0, location1, location0};
+        ByteBuf[] entries = new EntryReadPlanner().readEntries(entryLogger, this::readRange,
+                LEDGER_ID, entryIds, locations);
+        try {
+            for (int i = 0; i < entries.length; i++) {
+                assertEquals(entryIds[i], entries[i].getLong(8));
+            }
+        } finally {
+            EntryReadPlanner.releaseAll(entries);
+        }
+
+        // A single entry, requested several times
+        entries = new EntryReadPlanner().readEntries(entryLogger, this::readRange,
+                LEDGER_ID, new long[] {0, 0}, new long[] {location0, location0});
+        try {
+            assertEquals(0, entries[0].getLong(8));
+            assertEquals(0, entries[1].getLong(8));
+        } finally {
+            EntryReadPlanner.releaseAll(entries);
+        }
+        assertEquals(1, rangeReads);
+        assertAllReleased();
+    }
+
+    @Test
+    public void testInvalidEntrySize() throws Exception {
+        long location0 = append(LEDGER_ID, 0, 10);
+        long location1 = append(LEDGER_ID, 1, 10);
+        long location2 = append(LEDGER_ID, 2, 10);
+
+        // Entry size overlapping the next entry
+        log.setInt((int) pos(location1) - Integer.BYTES, 100);
+        assertReadFails(new long[] {0, 1, 2}, new long[] {location0, location1, location2});
+
+        // Entry size too small to hold the ledger and entry ids
+        log.setInt((int) pos(location1) - Integer.BYTES, 4);
+        assertReadFails(new long[] {0, 1, 2}, new long[] {location0, location1, location2});
+    }
+
+    @Test
+    public void testEntryOfAnotherLedger() throws Exception {
+        long location0 = append(LEDGER_ID, 0, 10);
+        long location1 = append(LEDGER_ID + 1, 1, 10);
+        long location2 = append(LEDGER_ID, 2, 10);
+
+        assertReadFails(new long[] {0, 1, 2}, new long[] {location0, location1, location2});
+    }
+
+    private void assertReadFails(long[] entryIds, long[] locations) {
+        try {
+            new EntryReadPlanner().readEntries(entryLogger, this::readRange, LEDGER_ID, entryIds, locations);
+            fail("The read should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertAllReleased();
+    }
+
+    private void assertAllReleased() {
+        for (ByteBuf entry : entriesRead) {
+            assertEquals(0, entry.refCnt());
+        }
+        for (ByteBuf range : rangesRead) {
+            assertEquals(0, range.refCnt());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+/**
+ * Unit test of the batched reads of {@link DirectReader}.
+ */
+public class DirectReaderTest {
+
+    private static final int BUFFER_SIZE = Buffer.ALIGNMENT;
+    private static final int FILE_SIZE = 10 * Buffer.ALIGNMENT + 100;
+
+    // Content of the file, the byte at each offset is derived from the offset
+    private final byte[] file = new byte[FILE_SIZE];
+    private final AtomicLong nextRing = new AtomicLong(1);
+    private NativeIO nativeIO;
+    private IoUringRings rings;
+
+    @Before
+    public void setup() throws Exception {
+        for (int i = 0; i < FILE_SIZE; i++) {
+            file[i] = (byte) (i * 7);
+        }
+
+        nativeIO = mock(NativeIO.class);
+        when(nativeIO.open(anyString(), anyInt(), anyInt())).thenReturn(3);
+        when(nativeIO.lseek(anyInt(), anyLong(), eq(NativeIO.SEEK_END))).thenReturn((long) FILE_SIZE);
+        when(nativeIO.pread(anyInt(), anyLong(), anyLong(), anyLong()))
+            .thenAnswer(invocation -> read(invocation.getArgument(1), invocation.getArgument(2),
+                                           invocation.getArgument(3)));
+        when(nativeIO.io_uring_setup(anyInt())).thenAnswer(invocation -> nextRing.getAndIncrement());
+        when(nativeIO.io_uring_pread(anyLong(), anyInt(), any(), any(), any(), any(), anyInt()))
+            .thenAnswer(this::readBatch);
+        rings = IoUringRings.create(nativeIO, Slogger.NULL);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        rings.close();
+    }
+
+    private long read(long pointer, long size, long offset) {
+        long bytesRead = Math.max(0, Math.min(size, FILE_SIZE - offset));
+        Unpooled.wrappedBuffer(pointer, (int) size, false).setBytes(0, file, (int) offset, (int) bytesRead);
+        return bytesRead;
+    }
+
+    private int readBatch(InvocationOnMock invocation) {
+        long[] pointers = invocation.getArgument(2);
+        int[] sizes = invocation.getArgument(3);
+        long[] offsets = invocation.getArgument(4);
+        long[] results = invocation.getArgument(5);
+        int count = invocation.getArgument(6);
+        for (int i = 0; i < count; i++) {
+            results[i] = read(pointers[i], sizes[i], offsets[i]);
+        }
+        return count;
+    }
+
+    private DirectReader newReader(IoUringRings rings) throws Exception {
+        return new DirectReader(1, "log1", ByteBufAllocator.DEFAULT, nativeIO, rings, BUFFER_SIZE,
+                                1024 * 1024, NullStatsLogger.INSTANCE.getOpStatsLogger("read-block"));
+    }
+
+    private void assertContent(ByteBuf[] buffers, long[] offsets, int[] sizes) {
+        assertEquals(offsets.length, buffers.length);
+        for (int i = 0; i < buffers.length; i++) {
+            assertEquals(sizes[i], buffers[i].readableBytes());
+            for (int j = 0; j < sizes[i]; j++) {
+                assertEquals(file[(int) offsets[i] + j], buffers[i].getByte(j));
+            }
+            buffers[i].release();
+        }
+    }
+
+    @Test
+    public void testRangesReadWithOneBatch() throws Exception {
+        // Unaligned ranges, one of them spanning several blocks, one ending at the end of the file
+        long[] offsets = {10, 5000, 3 * Buffer.ALIGNMENT - 4, FILE_SIZE - 50};
+        int[] sizes = {100, 3000, 2 * Buffer.ALIGNMENT + 8, 50};
+        try (DirectReader reader = newReader(rings)) {
+            assertContent(reader.readBuffersAt(offsets, sizes), offsets, sizes);
+        }
+        verify(nativeIO, times(1)).io_uring_pread(eq(2L), anyInt(), any(), any(), any(), any(), eq(4));
+        verify(nativeIO, never()).pread(anyInt(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testShortReadOfBatchReadAgainWithPread() throws Exception {
+        when(nativeIO.io_uring_pread(anyLong(), anyInt(), any(), any(), any(), any(), anyInt()))
+            .thenAnswer(invocation -> {
+                int count = readBatch(invocation);
+                // The second read stops early, e.g. the file was seen before the data was written
+                long[] results = invocation.getArgument(5);
+                results[1] = 10;
+                return count;
+            });
+        long[] offsets = {10, 5000};
+        int[] sizes = {100, 3000};
+        try (DirectReader reader = newReader(rings)) {
+            assertContent(reader.readBuffersAt(offsets, sizes), offsets, sizes);
+        }
+        verify(nativeIO, times(1)).io_uring_pread(anyLong(), anyInt(), any(), any(), any(), any(), eq(2));
+        // Only the second range is read again
+        verify(nativeIO, times(1)).pread(anyInt(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testBrokenRingFallsBackToPread() throws Exception {
+        when(nativeIO.io_uring_pread(anyLong(), anyInt(), any(), any(), any(), any(), anyInt()))
+            .thenThrow(new NativeIOException("io_uring_enter failed", 4));
+        long[] offsets = {10, 5000};
+        int[] sizes = {100, 3000};
+        try (DirectReader reader = newReader(rings)) {
+            assertContent(reader.readBuffersAt(offsets, sizes), offsets, sizes);
+        }
+        // The broken ring is closed, the next batch gets a new one
+        verify(nativeIO, times(1)).io_uring_close(2L);
+        assertEquals(0, rings.size());
+        verify(nativeIO, times(2)).pread(anyInt(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testRangesReadOneByOneWithoutRings() throws Exception {
+        long[] offsets = {10, 5000};
+        int[] sizes = {100, 3000};
+        try (DirectReader reader = newReader(null)) {
+            assertContent(reader.readBuffersAt(offsets, sizes), offsets, sizes);
+        }
+        verify(nativeIO, never()).io_uring_pread(anyLong(), anyInt(), any(), any(), any(), any(), anyInt());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+/**
+ * Unit test of {@link DirectWriter} writing with io_uring.
+ */
+public class DirectWriterTest {
+
+    private static final int BUFFER_SIZE = Buffer.ALIGNMENT;
+    private static final int POOL_SIZE = 8;
+    private static final long MAX_FILE_SIZE = 1 << 20;
+
+    private final AtomicLong nextRing = new AtomicLong(1);
+    private NativeIO nativeIO;
+    private ExecutorService writeExecutor;
+    private BufferPool buffers;
+
+    @Before
+    public void setup() throws Exception {
+        nativeIO = mock(NativeIO.class);
+        when(nativeIO.open(anyString(), anyInt(), anyInt())).thenReturn(3);
+        when(nativeIO.pwrite(anyInt(), anyLong(), anyInt(), anyLong()))
+            .thenAnswer(invocation -> invocation.getArgument(2));
+        when(nativeIO.io_uring_setup(anyInt())).thenAnswer(invocation -> nextRing.getAndIncrement());
+        when(nativeIO.io_uring_pwrite(anyLong(), anyInt(), any(), any(), any(), any(), anyInt()))
+            .thenAnswer(DirectWriterTest::completeBatch);
+
+        writeExecutor = Executors.newSingleThreadExecutor();
+        buffers = new BufferPool(nativeIO, BUFFER_SIZE, POOL_SIZE);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        writeExecutor.shutdownNow();
+        buffers.close();
+    }
+
+    private static int completeBatch(InvocationOnMock invocation) {
+        int[] sizes = invocation.getArgument(3);
+        long[] results = invocation.getArgument(5);
+        int count = invocation.getArgument(6);
+        for (int i = 0; i < count; i++) {
+            results[i] = sizes[i];
+        }
+        return count;
+    }
+
+    private DirectWriter newWriter(int id, IoUringRings rings) throws IOException {
+        return new DirectWriter(id, "log" + id, MAX_FILE_SIZE, writeExecutor, buffers, nativeIO, rings, Slogger.NULL);
+    }
+
+    // Each entry fills most of a buffer, so writing the next one flushes it
+    private static ByteBuf entry() {
+        return Unpooled.wrappedBuffer(new byte[BUFFER_SIZE - 512]);
+    }
+
+    @Test
+    public void testWritersOfAThreadShareOneRing() throws Exception {
+        IoUringRings rings = IoUringRings.create(nativeIO, Slogger.NULL);
+        assertNotNull(rings);
+        // Probed once by the entry logger
+        verify(nativeIO, times(1)).io_uring_setup(anyInt());
+        verify(nativeIO, times(1)).io_uring_close(1L);
+
+        for (int i = 0; i < 3; i++) {
+            try (DirectWriter writer = newWriter(i, rings)) {
+                writer.writeDelimited(entry());
+                writer.writeDelimited(entry());
+                writer.flush();
+            }
+        }
+
+        // A single write thread, so a single ring for all the logs
+        verify(nativeIO, times(2)).io_uring_setup(anyInt());
+        verify(nativeIO, atLeastOnce()).io_uring_pwrite(
+            eq(2L), anyInt(), any(), any(), any(), any(), anyInt());
+        verify(nativeIO, never()).pwrite(anyInt(), anyLong(), anyInt(), anyLong());
+        assertEquals(1, rings.size());
+        assertEquals(POOL_SIZE, buffers.available());
+
+        rings.close();
+        verify(nativeIO, times(1)).io_uring_close(2L);
+        assertEquals(0, rings.size());
+    }
+
+    @Test
+    public void testBatchFailureReleasesPendingBuffers() throws Exception {
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        CountDownLatch failBatch = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        when(nativeIO.io_uring_pwrite(anyLong(), anyInt(), any(), any(), any(), any(), anyInt()))
+            .thenAnswer(invocation -> {
+                if (batches.getAndIncrement() == 0) {
+                    batchStarted.countDown();
+                    failBatch.await();
+                    throw new NativeIOException("io_uring_enter failed", 4);
+                }
+                return completeBatch(invocation);
+            });
+        IoUringRings rings = IoUringRings.create(nativeIO, Slogger.NULL);
+
+        DirectWriter writer = newWriter(1, rings);
+        writer.writeDelimited(entry());
+        writer.writeDelimited(entry());
+        assertTrue(batchStarted.await(10, TimeUnit.SECONDS));
+
+        // Queued while the first batch is in progress
+        writer.writeDelimited(entry());
+        writer.writeDelimited(entry());
+        assertEquals(POOL_SIZE - 4, buffers.available());
+
+        failBatch.countDown();
+        try {
+            writer.flush();
+            fail("The batch failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(POOL_SIZE - 1, buffers.available());
+
+        // The log is failed, the next buffers are not written
+        try {
+            writer.writeDelimited(entry());
+            writer.writeDelimited(entry());
+            writer.flush();
+            fail("The log failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, batches.get());
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // the last buffer cannot be flushed
+        }
+        assertEquals(POOL_SIZE, buffers.available());
+        verify(nativeIO, times(1)).close(3);
+
+        // The broken ring was closed, the next batch of the thread gets a new one
+        verify(nativeIO, times(1)).io_uring_close(2L);
+        assertEquals(0, rings.size());
+        try (DirectWriter other = newWriter(2, rings)) {
+            other.writeDelimited(entry());
+            other.flush();
+        }
+        assertEquals(2, batches.get());
+        assertEquals(1, rings.size());
+        assertEquals(POOL_SIZE, buffers.available());
+        rings.close();
+        verify(nativeIO, times(1)).io_uring_close(3L);
+    }
+
+    @Test
+    public void testFallbackToPwriteWithoutRing() throws Exception {
+        IoUringRings rings = IoUringRings.create(nativeIO, Slogger.NULL);
+        // The probe worked, but the write thread cannot get a ring
+        when(nativeIO.io_uring_setup(anyInt())).thenThrow(new NativeIOException("Cannot allocate memory", 12));
+
+        try (DirectWriter writer = newWriter(1, rings)) {
+            writer.writeDelimited(entry());
+            writer.writeDelimited(entry());
+            writer.flush();
+        }
+
+        verify(nativeIO, times(2)).pwrite(anyInt(), anyLong(), anyInt(), anyLong());
+        verify(nativeIO, never()).io_uring_pwrite(anyLong(), anyInt(), any(), any(), any(), any(), anyInt());
+        assertEquals(0, rings.size());
+        assertEquals(POOL_SIZE, buffers.available());
+    }
+
+    @Test
+    public void testRingsNotCreatedWhenUnavailable() throws Exception {
+        when(nativeIO.io_uring_setup(anyInt())).thenThrow(new NativeIOException("Function not implemented", 38));
+        assertNull(IoUringRings.create(nativeIO, Slogger.NULL));
+    }
+}
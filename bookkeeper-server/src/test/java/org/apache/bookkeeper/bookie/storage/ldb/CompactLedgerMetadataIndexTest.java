@@ -0,0 +1,261 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Sets;
+import java.util.Set;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of {@link CompactLedgerMetadataIndex}.
+ */
+public class CompactLedgerMetadataIndexTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private String basePath;
+    private KeyValueStorage ledgersDb;
+
+    @Before
+    public void setup() throws Exception {
+        basePath = tmpDir.newFolder().getAbsolutePath();
+    }
+
+    private CompactLedgerMetadataIndex newIndex() throws Exception {
+        return newIndex(CompactLedgerMetadataIndex.MAX_CACHED_LEDGERS);
+    }
+
+    private CompactLedgerMetadataIndex newIndex(int maxCachedLedgers) throws Exception {
+        KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) -> {
+            ledgersDb = spy(KeyValueStorageRocksDB.factory.newKeyValueStorage(defaultBasePath, subPath,
+                    dbConfigType, conf));
+            return ledgersDb;
+        };
+        return new CompactLedgerMetadataIndex(conf, factory, basePath, NullStatsLogger.INSTANCE, maxCachedLedgers);
+    }
+
+    private static void assertNotFound(CompactLedgerMetadataIndex index, long ledgerId) throws Exception {
+        try {
+            index.get(ledgerId);
+            fail("Ledger " + ledgerId + " should not be found");
+        } catch (Bookie.NoLedgerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testExactLedgersCount() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+                index.setMasterKey(ledgerId, MASTER_KEY);
+            }
+            // Storage flags are stored with a negative key, they are not a ledger
+            index.setStorageStateFlags(0, 1);
+            index.flush();
+            assertEquals(100, index.ledgersCount.get());
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            // Counted at startup, but not loaded
+            assertEquals(100, index.ledgersCount.get());
+            assertEquals(0, index.cachedLedgersCount());
+
+            index.delete(10);
+            index.delete(10);
+            index.delete(1000);
+            assertEquals(99, index.ledgersCount.get());
+            index.setMasterKey(10, MASTER_KEY);
+            index.setMasterKey(10, MASTER_KEY);
+            assertEquals(100, index.ledgersCount.get());
+            index.delete(10);
+            index.removeDeletedLedgers();
+            index.flush();
+            assertEquals(99, index.ledgersCount.get());
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            assertEquals(99, index.ledgersCount.get());
+            // Read from the db, the ledgers are not counted again
+            verify(ledgersDb, never()).keys();
+        }
+    }
+
+    @Test
+    public void testLedgersCountedAfterFullIndex() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            index.setMasterKey(1, MASTER_KEY);
+            index.flush();
+        }
+
+        // The full index doesn't maintain the count of the ledgers
+        KeyValueStorageFactory factory = KeyValueStorageRocksDB.factory;
+        try (LedgerMetadataIndex index = new LedgerMetadataIndex(conf, factory, basePath,
+                NullStatsLogger.INSTANCE)) {
+            index.setMasterKey(2, MASTER_KEY);
+            index.flush();
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            assertEquals(2, index.ledgersCount.get());
+        }
+    }
+
+    @Test
+    public void testFlushedLedgersAreEvicted() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex(10)) {
+            for (long ledgerId = 0; ledgerId < 20; ledgerId++) {
+                index.setMasterKey(ledgerId, MASTER_KEY);
+            }
+            // Not evicted until flushed
+            assertEquals(20, index.cachedLedgersCount());
+            index.flush();
+            assertEquals(0, index.cachedLedgersCount());
+
+            for (long ledgerId = 0; ledgerId < 20; ledgerId++) {
+                assertArrayEquals(MASTER_KEY, index.get(ledgerId).getMasterKey().toByteArray());
+            }
+            // Modified after the flush, it must be kept until the next one
+            index.setFenced(5);
+            index.flush();
+            assertEquals(0, index.cachedLedgersCount());
+            index.setFenced(6);
+            assertEquals(1, index.cachedLedgersCount());
+            assertTrue(index.get(5).getFenced());
+            assertEquals(20, index.ledgersCount.get());
+            index.flush();
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex(10)) {
+            assertTrue(index.get(5).getFenced());
+            assertTrue(index.get(6).getFenced());
+            assertEquals(20, index.ledgersCount.get());
+        }
+    }
+
+    @Test
+    public void testDeleteEvictsLedger() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            index.setMasterKey(1, MASTER_KEY);
+            index.setMasterKey(2, MASTER_KEY);
+            index.flush();
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            assertArrayEquals(MASTER_KEY, index.get(1).getMasterKey().toByteArray());
+            assertArrayEquals(MASTER_KEY, index.get(2).getMasterKey().toByteArray());
+            assertEquals(2, index.cachedLedgersCount());
+
+            index.delete(1);
+            assertEquals(1, index.cachedLedgersCount());
+
+            // Still in the db until the deletion is persisted, but never loaded again
+            assertNotFound(index, 1);
+            assertEquals(1, index.cachedLedgersCount());
+            assertEquals(Sets.newHashSet(2L), toSet(index.getActiveLedgersInRange(0, Long.MAX_VALUE)));
+
+            index.removeDeletedLedgers();
+            assertNotFound(index, 1);
+            assertEquals(1, index.cachedLedgersCount());
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            assertNotFound(index, 1);
+            assertArrayEquals(MASTER_KEY, index.get(2).getMasterKey().toByteArray());
+            assertEquals(1, index.ledgersCount.get());
+        }
+    }
+
+    @Test
+    public void testRecreatedLedgerIsNotDeleted() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            index.setMasterKey(1, MASTER_KEY);
+            index.flush();
+            index.delete(1);
+            index.setMasterKey(1, MASTER_KEY);
+            index.setFenced(1);
+            index.removeDeletedLedgers();
+            index.flush();
+        }
+
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            assertTrue(index.get(1).getFenced());
+            assertEquals(1, index.ledgersCount.get());
+        }
+    }
+
+    @Test
+    public void testNegativeLookupsAreCached() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            clearInvocations(ledgersDb);
+            for (int i = 0; i < 10; i++) {
+                assertNotFound(index, 5);
+            }
+            verify(ledgersDb, times(1)).get(any());
+            assertEquals(1, index.absentLedgersCount());
+
+            // Creating the ledger invalidates the cached lookup
+            index.setMasterKey(5, MASTER_KEY);
+            assertArrayEquals(MASTER_KEY, index.get(5).getMasterKey().toByteArray());
+            assertEquals(0, index.absentLedgersCount());
+
+            // Deleted ledgers are not looked up either
+            index.delete(5);
+            clearInvocations(ledgersDb);
+            assertNotFound(index, 5);
+            verify(ledgersDb, never()).get(any());
+        }
+    }
+
+    @Test
+    public void testNegativeLookupsAreBounded() throws Exception {
+        try (CompactLedgerMetadataIndex index = newIndex()) {
+            for (long ledgerId = 0; ledgerId < CompactLedgerMetadataIndex.MAX_ABSENT_LEDGERS + 10; ledgerId++) {
+                assertNotFound(index, ledgerId);
+            }
+            assertTrue(index.absentLedgersCount() <= CompactLedgerMetadataIndex.MAX_ABSENT_LEDGERS);
+        }
+    }
+
+    private static Set<Long> toSet(Iterable<Long> ledgers) {
+        return Sets.newHashSet(ledgers);
+    }
+}
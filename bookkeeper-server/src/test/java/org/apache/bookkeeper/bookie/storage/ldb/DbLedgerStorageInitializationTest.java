@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.junit.Test;
+
+/**
+ * Unit test of the initialization of the directories of {@link DbLedgerStorage}.
+ */
+public class DbLedgerStorageInitializationTest {
+
+    private final List<SingleDirectoryDbLedgerStorage> created = new ArrayList<>();
+
+    private List<Callable<SingleDirectoryDbLedgerStorage>> newLedgerStorages(int numDirs, int failingDir,
+                                                                            Exception error) {
+        List<Callable<SingleDirectoryDbLedgerStorage>> newLedgerStorages = new ArrayList<>();
+        for (int i = 0; i < numDirs; i++) {
+            SingleDirectoryDbLedgerStorage ledgerStorage = mock(SingleDirectoryDbLedgerStorage.class);
+            boolean fails = i == failingDir;
+            newLedgerStorages.add(() -> {
+                if (fails) {
+                    throw error;
+                }
+                synchronized (created) {
+                    created.add(ledgerStorage);
+                }
+                return ledgerStorage;
+            });
+        }
+        return newLedgerStorages;
+    }
+
+    @Test
+    public void testInitializedInOrder() throws Exception {
+        List<Callable<SingleDirectoryDbLedgerStorage>> newLedgerStorages = newLedgerStorages(4, -1, null);
+        List<SingleDirectoryDbLedgerStorage> ledgerStorages =
+                DbLedgerStorage.initializeLedgerStorages(newLedgerStorages, 4);
+        assertEquals(4, ledgerStorages.size());
+        for (int i = 0; i < 4; i++) {
+            assertSame(newLedgerStorages.get(i).call(), ledgerStorages.get(i));
+            verify(ledgerStorages.get(i), never()).shutdown();
+        }
+    }
+
+    @Test
+    public void testSerialFailureShutsDownInitializedDirectories() throws Exception {
+        IOException error = new IOException("disk failure");
+        try {
+            DbLedgerStorage.initializeLedgerStorages(newLedgerStorages(4, 2, error), 1);
+            fail("The initialization should fail");
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+        // The directories after the failing one are not initialized
+        assertEquals(2, created.size());
+        for (SingleDirectoryDbLedgerStorage ledgerStorage : created) {
+            verify(ledgerStorage, times(1)).shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelFailureShutsDownInitializedDirectories() throws Exception {
+        try {
+            DbLedgerStorage.initializeLedgerStorages(newLedgerStorages(4, 1, new RuntimeException("bad config")), 4);
+            fail("The initialization should fail");
+        } catch (IOException e) {
+            assertEquals("bad config", e.getCause().getMessage());
+        }
+        // Including the directories initialized after the failing one
+        assertEquals(3, created.size());
+        for (SingleDirectoryDbLedgerStorage ledgerStorage : created) {
+            verify(ledgerStorage, times(1)).shutdown();
+        }
+    }
+}
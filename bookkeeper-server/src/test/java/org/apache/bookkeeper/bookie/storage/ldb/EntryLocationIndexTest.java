@@ -0,0 +1,144 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private String basePath;
+
+    @Before
+    public void setup() throws Exception {
+        basePath = tmpDir.newFolder().getAbsolutePath();
+    }
+
+    private EntryLocationIndex newIndex() throws Exception {
+        return new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, basePath, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testLookupsOfUnknownLedgersAreCached() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+                assertEquals(0, index.getLocation(ledgerId, 0));
+            }
+            assertEquals(0, index.trackedLedgersCount());
+            assertEquals(100, index.storedLedgersCount());
+
+            // Adding an entry drops the cached empty range
+            index.addLocation(1, 0, 100);
+            index.addLocation(1, 1, 101);
+            assertEquals(1, index.trackedLedgersCount());
+            assertEquals(99, index.storedLedgersCount());
+            assertEquals(100, index.getLocation(1, 0));
+            assertEquals(101, index.getLocation(1, 1));
+            // Past the end of the ledger
+            assertEquals(0, index.getLocation(1, 2));
+        }
+    }
+
+    @Test
+    public void testCachedLedgersAreBounded() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            index.addLocation(1, 0, 100);
+            index.addLocation(1, 5, 105);
+        }
+
+        try (EntryLocationIndex index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, basePath,
+                NullStatsLogger.INSTANCE, 10)) {
+            assertEquals(105, index.getLocation(1, 5));
+            assertEquals(0, index.getLocation(1, 6));
+            assertEquals(0, index.trackedLedgersCount());
+            assertEquals(1, index.storedLedgersCount());
+
+            for (long ledgerId = 2; ledgerId < 100; ledgerId++) {
+                assertEquals(0, index.getLocation(ledgerId, 0));
+                assertTrue(index.storedLedgersCount() <= 10);
+            }
+            // Loaded again once evicted
+            assertEquals(105, index.getLocation(1, 5));
+            assertEquals(0, index.getLocation(1, 6));
+            index.addLocation(1, 6, 106);
+            assertEquals(106, index.getLocation(1, 6));
+            assertEquals(1, index.trackedLedgersCount());
+        }
+    }
+
+    @Test
+    public void testDeletedLedgersAreNotTracked() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            index.addLocation(1, 0, 100);
+            index.addLocation(2, 0, 200);
+            assertEquals(2, index.trackedLedgersCount());
+
+            index.delete(1);
+            assertEquals(1, index.trackedLedgersCount());
+
+            // Until the indexes are removed, the deleted ledger is still found in the storage
+            assertEquals(100, index.getLocation(1, 0));
+            index.addLocation(1, 1, 101);
+            assertEquals(101, index.getLocation(1, 1));
+            assertEquals(1, index.trackedLedgersCount());
+
+            index.removeOffsetFromDeletedLedgers();
+            assertEquals(0, index.getLocation(1, 0));
+            assertEquals(0, index.getLocation(1, 1));
+            assertEquals(200, index.getLocation(2, 0));
+            assertEquals(1, index.trackedLedgersCount());
+        }
+    }
+
+    @Test
+    public void testRangeIsLoadedFromStorage() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            index.addLocation(1, 0, 100);
+            index.addLocation(1, 5, 105);
+        }
+
+        try (EntryLocationIndex index = newIndex()) {
+            assertEquals(0, index.storedLedgersCount());
+            assertEquals(105, index.getLocation(1, 5));
+            assertEquals(1, index.storedLedgersCount());
+            assertEquals(0, index.getLocation(1, 6));
+
+            // Entries added after the range was loaded
+            index.addLocation(1, 6, 106);
+            assertEquals(106, index.getLocation(1, 6));
+            assertEquals(1, index.trackedLedgersCount());
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeSet;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of {@link KeyValueStorageSortedRuns}, checked against {@link KeyValueStorageRocksDB}.
+ */
+public class KeyValueStorageSortedRunsTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private ServerConfiguration conf;
+    private String basePath;
+    private final List<KeyValueStorage> toClose = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        conf = new ServerConfiguration();
+        // Small memtable and few runs, to flush and merge all the time
+        conf.setProperty("dbStorage_sortedRuns_maxMemtableEntries", 100);
+        conf.setProperty("dbStorage_sortedRuns_maxRuns", 3);
+        basePath = tmpDir.newFolder().getAbsolutePath();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        for (KeyValueStorage storage : toClose) {
+            storage.close();
+        }
+    }
+
+    private KeyValueStorageSortedRuns openSortedRuns() throws IOException {
+        KeyValueStorageSortedRuns storage = new KeyValueStorageSortedRuns(basePath, "sorted-runs",
+                DbConfigType.EntryLocation, conf);
+        toClose.add(storage);
+        return storage;
+    }
+
+    private KeyValueStorage openRocksDB() throws IOException {
+        KeyValueStorage storage = KeyValueStorageRocksDB.factory.newKeyValueStorage(basePath, "rocksdb",
+                DbConfigType.EntryLocation, conf);
+        toClose.add(storage);
+        return storage;
+    }
+
+    private File dir() {
+        return new File(basePath, "sorted-runs");
+    }
+
+    private static byte[] key(long k1, long k2) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, k1);
+        ArrayUtil.setLong(key, 8, k2);
+        return key;
+    }
+
+    private static byte[] value(long v) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, v);
+        return value;
+    }
+
+    private static byte[] randomKey(Random random) {
+        // Include keys with the most significant bit set, which are sorted after the others
+        long k1 = random.nextInt(8) - 2;
+        return key(k1, random.nextInt(300));
+    }
+
+    private static byte[][] randomRange(Random random) {
+        byte[] begin = randomKey(random);
+        byte[] end = randomKey(random);
+        if (SortedRun.compare(ArrayUtil.getLong(begin, 0), ArrayUtil.getLong(begin, 8), ArrayUtil.getLong(end, 0),
+                ArrayUtil.getLong(end, 8)) > 0) {
+            return new byte[][] { end, begin };
+        }
+        return new byte[][] { begin, end };
+    }
+
+    private static String toString(Entry<byte[], byte[]> entry) {
+        if (entry == null) {
+            return null;
+        }
+        return Arrays.toString(entry.getKey()) + "=" + Arrays.toString(entry.getValue());
+    }
+
+    private static List<String> contents(KeyValueStorage storage) throws IOException {
+        List<String> res = new ArrayList<>();
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = storage.iterator()) {
+            while (iterator.hasNext()) {
+                res.add(toString(iterator.next()));
+            }
+        }
+        return res;
+    }
+
+    private static void assertSameLookups(KeyValueStorage expected, KeyValueStorage actual, Random random)
+            throws IOException {
+        for (int i = 0; i < 50; i++) {
+            byte[] key = randomKey(random);
+            byte[] expectedValue = expected.get(key);
+            byte[] actualValue = actual.get(key);
+            if (expectedValue == null) {
+                assertNull(actualValue);
+            } else {
+                assertArrayEquals(expectedValue, actualValue);
+            }
+            assertEquals(toString(expected.getFloor(key)), toString(actual.getFloor(key)));
+            assertEquals(toString(expected.getCeil(key)), toString(actual.getCeil(key)));
+        }
+    }
+
+    private static List<String> keys(KeyValueStorage storage, byte[] firstKey, byte[] lastKey) throws IOException {
+        List<String> res = new ArrayList<>();
+        try (CloseableIterator<byte[]> iterator = storage.keys(firstKey, lastKey)) {
+            while (iterator.hasNext()) {
+                res.add(Arrays.toString(iterator.next()));
+            }
+        }
+        return res;
+    }
+
+    private static void putBatch(KeyValueStorage storage, long k1, long from, long to, long value)
+            throws IOException {
+        try (Batch batch = storage.newBatch()) {
+            for (long k2 = from; k2 < to; k2++) {
+                batch.put(key(k1, k2), value(value + k2));
+            }
+            batch.flush();
+        }
+    }
+
+    private static TreeSet<String> runFiles(File dir) {
+        TreeSet<String> res = new TreeSet<>();
+        for (String name : dir.list()) {
+            if (name.endsWith(SortedRun.FILE_SUFFIX)) {
+                res.add(name);
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testRandomOperationsMatchRocksDB() throws Exception {
+        KeyValueStorage expected = openRocksDB();
+        KeyValueStorage actual = openSortedRuns();
+        Random random = new Random(1);
+
+        for (int round = 0; round < 2000; round++) {
+            int op = random.nextInt(100);
+            if (op < 40) {
+                byte[] key = randomKey(random);
+                byte[] value = value(random.nextLong());
+                expected.put(key, value);
+                actual.put(key, value);
+            } else if (op < 70) {
+                try (Batch expectedBatch = expected.newBatch(); Batch actualBatch = actual.newBatch()) {
+                    for (int i = random.nextInt(50); i >= 0; i--) {
+                        byte[] key = randomKey(random);
+                        byte[] value = value(random.nextLong());
+                        expectedBatch.put(key, value);
+                        actualBatch.put(key, value);
+                        if (random.nextInt(10) == 0) {
+                            key = randomKey(random);
+                            expectedBatch.remove(key);
+                            actualBatch.remove(key);
+                        }
+                    }
+                    expectedBatch.flush();
+                    actualBatch.flush();
+                }
+            } else if (op < 80) {
+                byte[] key = randomKey(random);
+                expected.delete(key);
+                actual.delete(key);
+            } else if (op < 87) {
+                byte[][] range = randomRange(random);
+                byte[] begin = range[0];
+                byte[] end = range[1];
+                try (Batch expectedBatch = expected.newBatch(); Batch actualBatch = actual.newBatch()) {
+                    expectedBatch.deleteRange(begin, end);
+                    actualBatch.deleteRange(begin, end);
+                    expectedBatch.flush();
+                    actualBatch.flush();
+                }
+            } else if (op < 89) {
+                byte[][] range = randomRange(random);
+                actual.compact(range[0], range[1]);
+            } else if (op < 90) {
+                actual.compact();
+            } else {
+                assertSameLookups(expected, actual, random);
+            }
+        }
+
+        assertEquals(contents(expected), contents(actual));
+        byte[] first = key(1, 50);
+        byte[] last = key(3, 10);
+        assertEquals(keys(expected, first, last), keys(actual, first, last));
+
+        actual.compact();
+        assertEquals(contents(expected), contents(actual));
+        assertEquals(contents(actual).size(), actual.count());
+    }
+
+    @Test
+    public void testRecoveryFromWriteAheadLog() throws Exception {
+        KeyValueStorage storage = openSortedRuns();
+        putBatch(storage, 1, 0, 250, 1000);
+        storage.put(key(2, 0), value(1));
+        storage.put(key(2, 1), value(2));
+        try (Batch batch = storage.newBatch()) {
+            batch.deleteRange(key(1, 10), key(1, 20));
+            batch.flush();
+        }
+        storage.delete(key(2, 0));
+        storage.sync();
+        List<String> contents = contents(storage);
+
+        // Open the same directory as if the process had crashed, without closing the storage
+        KeyValueStorage recovered = openSortedRuns();
+        assertEquals(contents, contents(recovered));
+        assertNull(recovered.get(key(1, 15)));
+        assertNull(recovered.get(key(2, 0)));
+        assertArrayEquals(value(2), recovered.get(key(2, 1)));
+    }
+
+    @Test
+    public void testTruncatedWriteAheadLogTail() throws Exception {
+        KeyValueStorage storage = openSortedRuns();
+        putBatch(storage, 1, 0, 10, 0);
+        putBatch(storage, 1, 10, 20, 0);
+        storage.sync();
+
+        File[] wals = dir().listFiles((d, name) -> name.startsWith("wal-"));
+        assertEquals(1, wals.length);
+        try (RandomAccessFile wal = new RandomAccessFile(wals[0], "rw")) {
+            // Cut the last record in the middle, as if the process crashed while writing it
+            wal.setLength(wal.length() - 10);
+        }
+
+        KeyValueStorage recovered = openSortedRuns();
+        for (long k2 = 0; k2 < 10; k2++) {
+            assertArrayEquals(value(k2), recovered.get(key(1, k2)));
+        }
+        for (long k2 = 10; k2 < 20; k2++) {
+            assertNull(recovered.get(key(1, k2)));
+        }
+    }
+
+    @Test
+    public void testCloseSyncsAndReopen() throws Exception {
+        KeyValueStorage storage = new KeyValueStorageSortedRuns(basePath, "sorted-runs", DbConfigType.EntryLocation,
+                conf);
+        putBatch(storage, 1, 0, 150, 0);
+        storage.put(key(2, 0), value(7));
+        List<String> contents = contents(storage);
+        storage.close();
+
+        try {
+            storage.get(key(2, 0));
+            fail("The storage is closed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        KeyValueStorage reopened = openSortedRuns();
+        assertEquals(contents, contents(reopened));
+    }
+
+    @Test
+    public void testCompactRange() throws Exception {
+        KeyValueStorageSortedRuns storage = openSortedRuns();
+        // Each batch fills the memtable, so each ledger ends up in its own run
+        putBatch(storage, 1, 0, 100, 0);
+        putBatch(storage, 2, 0, 100, 0);
+        putBatch(storage, 3, 0, 100, 0);
+        TreeSet<String> runs = runFiles(dir());
+        assertEquals(3, runs.size());
+
+        // Nothing in the range
+        storage.compact(key(4, 0), key(5, 0));
+        assertEquals(runs, runFiles(dir()));
+
+        // Ledger 3 is in the newest run only, which doesn't need to be merged with anything
+        storage.compact(key(3, 0), key(4, 0));
+        assertEquals(runs, runFiles(dir()));
+
+        // Ledger 2 is in the 2 newest runs, the oldest one is left untouched
+        try (Batch batch = storage.newBatch()) {
+            batch.deleteRange(key(2, 0), key(2, 50));
+            batch.flush();
+        }
+        storage.compact(key(2, 0), key(3, 0));
+        TreeSet<String> compacted = runFiles(dir());
+        assertEquals(2, compacted.size());
+        assertTrue(compacted.contains(runs.first()));
+
+        // The tombstones are only dropped when merging down to the oldest run
+        storage.compact(key(1, 0), key(2, 0));
+        assertEquals(1, runFiles(dir()).size());
+
+        assertEquals(250, contents(storage).size());
+        assertEquals(250, storage.count());
+        assertNull(storage.get(key(2, 49)));
+        assertArrayEquals(value(50), storage.get(key(2, 50)));
+    }
+
+    @Test
+    public void testMergedRunsAreUnmappedWhenReleased() throws Exception {
+        File maps = new File("/proc/self/maps");
+        assumeTrue(maps.exists());
+
+        KeyValueStorageSortedRuns storage = openSortedRuns();
+        putBatch(storage, 1, 0, 100, 0);
+        putBatch(storage, 2, 0, 100, 0);
+        String firstRun = new File(dir(), runFiles(dir()).first()).getAbsolutePath();
+        assertTrue(isMapped(maps, firstRun));
+
+        CloseableIterator<Entry<byte[], byte[]>> iterator = storage.iterator();
+        storage.compact();
+        assertEquals(1, runFiles(dir()).size());
+
+        // The iterator still reads from the merged runs
+        assertTrue(isMapped(maps, firstRun));
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(200, count);
+        iterator.close();
+        assertFalse(isMapped(maps, firstRun));
+
+        String mergedRun = new File(dir(), runFiles(dir()).first()).getAbsolutePath();
+        assertTrue(isMapped(maps, mergedRun));
+        storage.close();
+        assertFalse(isMapped(maps, mergedRun));
+    }
+
+    private static boolean isMapped(File maps, String path) throws IOException {
+        return new String(Files.readAllBytes(maps.toPath()), StandardCharsets.UTF_8).contains(path);
+    }
+}
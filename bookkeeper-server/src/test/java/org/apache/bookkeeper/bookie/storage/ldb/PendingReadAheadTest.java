@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link PendingReadAhead}.
+ */
+public class PendingReadAheadTest {
+
+    @Test
+    public void testContains() {
+        PendingReadAhead pendingReadAhead = new PendingReadAhead(10, 5);
+        assertFalse(pendingReadAhead.contains(9));
+        assertTrue(pendingReadAhead.contains(10));
+        assertTrue(pendingReadAhead.contains(14));
+        assertFalse(pendingReadAhead.contains(15));
+    }
+
+    @Test
+    public void testWaitForLoadedEntry() throws Exception {
+        PendingReadAhead pendingReadAhead = new PendingReadAhead(10, 5);
+        pendingReadAhead.entryLoaded(10, true);
+        pendingReadAhead.entryLoaded(11, false);
+        assertTrue(pendingReadAhead.waitForEntry(10, 0, TimeUnit.MILLISECONDS));
+        // Rejected by the read cache, must be read from the entry log
+        assertFalse(pendingReadAhead.waitForEntry(11, 0, TimeUnit.MILLISECONDS));
+        // Not loaded yet
+        assertFalse(pendingReadAhead.waitForEntry(12, 1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testWaiterReleasedWhenEntryLoaded() throws Exception {
+        PendingReadAhead pendingReadAhead = new PendingReadAhead(0, 5);
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pendingReadAhead.waitForEntry(3, 1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        pendingReadAhead.entryLoaded(0, true);
+        assertFalse(waiter.isDone());
+        pendingReadAhead.entryLoaded(3, true);
+        assertTrue(waiter.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitersReleasedWhenStopped() throws Exception {
+        PendingReadAhead pendingReadAhead = new PendingReadAhead(0, 5);
+        pendingReadAhead.entryLoaded(0, true);
+        // The read-ahead stopped at the end of the ledger
+        pendingReadAhead.complete();
+        assertTrue(pendingReadAhead.waitForEntry(0, 0, TimeUnit.MILLISECONDS));
+        assertFalse(pendingReadAhead.waitForEntry(1, 1, TimeUnit.MINUTES));
+    }
+}
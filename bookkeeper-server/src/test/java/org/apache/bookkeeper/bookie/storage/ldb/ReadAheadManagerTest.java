@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadAheadManager}.
+ */
+public class ReadAheadManagerTest {
+
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private Counter hits;
+    private Counter wasted;
+
+    @Before
+    public void setup() {
+        hits = mock(Counter.class);
+        wasted = mock(Counter.class);
+    }
+
+    @Test
+    public void testWindowGrowsWithSequentialReads() {
+        ReadAheadManager manager = new ReadAheadManager(true, MAX_BATCH_SIZE, hits, wasted);
+
+        // The first miss reads ahead the initial window
+        assertEquals(8, manager.onCacheMiss(1, 0));
+        assertFalse(manager.isSequential(1));
+        manager.onReadAhead(1, 1, 8);
+
+        // Each miss right after the window doubles it, up to the max batch size
+        long entryId = 9;
+        int[] expectedWindows = {16, 32, 64, 64};
+        for (int expectedWindow : expectedWindows) {
+            assertEquals(expectedWindow, manager.onCacheMiss(1, entryId));
+            assertTrue(manager.isSequential(1));
+            manager.onReadAhead(1, entryId + 1, expectedWindow);
+            entryId += expectedWindow + 1;
+        }
+    }
+
+    @Test
+    public void testRandomReadsDisableReadAhead() {
+        ReadAheadManager manager = new ReadAheadManager(true, MAX_BATCH_SIZE, hits, wasted);
+
+        assertEquals(8, manager.onCacheMiss(1, 0));
+        manager.onReadAhead(1, 1, 8);
+
+        assertEquals(0, manager.onCacheMiss(1, 100));
+        assertFalse(manager.isSequential(1));
+
+        // The reader goes on sequentially after the random read
+        assertEquals(8, manager.onCacheMiss(1, 101));
+        assertTrue(manager.isSequential(1));
+    }
+
+    @Test
+    public void testLedgersAreTrackedSeparately() {
+        ReadAheadManager manager = new ReadAheadManager(true, MAX_BATCH_SIZE, hits, wasted);
+
+        assertEquals(8, manager.onCacheMiss(1, 0));
+        manager.onReadAhead(1, 1, 8);
+        assertEquals(8, manager.onCacheMiss(2, 9));
+        assertFalse(manager.isSequential(2));
+        assertEquals(16, manager.onCacheMiss(1, 9));
+    }
+
+    @Test
+    public void testNonAdaptiveAlwaysReadsMaxBatch() {
+        ReadAheadManager manager = new ReadAheadManager(false, MAX_BATCH_SIZE, hits, wasted);
+
+        assertEquals(MAX_BATCH_SIZE, manager.onCacheMiss(1, 0));
+        manager.onReadAhead(1, 1, MAX_BATCH_SIZE);
+        assertEquals(MAX_BATCH_SIZE, manager.onCacheMiss(1, 1000));
+        assertFalse(manager.isSequential(1));
+        assertEquals(MAX_BATCH_SIZE, manager.onCacheMiss(1, 1001));
+        assertTrue(manager.isSequential(1));
+    }
+
+    @Test
+    public void testHitsAndWaste() {
+        ReadAheadManager manager = new ReadAheadManager(true, MAX_BATCH_SIZE, hits, wasted);
+
+        manager.onCacheMiss(1, 0);
+        manager.onReadAhead(1, 1, 8);
+        for (long entryId = 1; entryId <= 5; entryId++) {
+            manager.onCacheHit(1, entryId);
+        }
+        // Not part of the read-ahead window
+        manager.onCacheHit(1, 20);
+        verify(hits, times(5)).inc();
+
+        // 3 entries of the window were never read
+        manager.remove(1);
+        verify(wasted).addCount(3);
+        assertFalse(manager.isSequential(1));
+    }
+
+    @Test
+    public void testConcurrentHits() throws Exception {
+        ReadAheadManager manager = new ReadAheadManager(true, MAX_BATCH_SIZE, hits, wasted);
+
+        manager.onCacheMiss(1, 0);
+        manager.onReadAhead(1, 1, 8);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(() -> {
+                for (long entryId = 1; entryId <= 8; entryId++) {
+                    manager.onCacheHit(1, entryId);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        verify(hits, times(32)).inc();
+
+        // The whole window was read
+        manager.remove(1);
+        verify(wasted, never()).addCount(anyLong());
+    }
+
+    @Test
+    public void testBackgroundReadAheadShorterThanBatch() {
+        ReadAheadManager manager = new ReadAheadManager(true, MAX_BATCH_SIZE, hits, wasted);
+
+        manager.onCacheMiss(1, 0);
+        manager.onReadAhead(1, 1, 8);
+        // Only 4 entries were found in the ledger
+        manager.onReadAheadCompleted(1, 1, 4);
+        for (long entryId = 1; entryId <= 4; entryId++) {
+            manager.onCacheHit(1, entryId);
+        }
+
+        manager.remove(1);
+        verify(wasted, never()).addCount(anyLong());
+
+        // The next miss, right after the loaded entries, is sequential
+        manager.onCacheMiss(2, 0);
+        manager.onReadAhead(2, 1, 8);
+        manager.onReadAheadCompleted(2, 1, 4);
+        assertEquals(16, manager.onCacheMiss(2, 5));
+    }
+}
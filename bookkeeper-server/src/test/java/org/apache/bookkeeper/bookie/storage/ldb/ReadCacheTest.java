@@ -0,0 +1,204 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+
+    /**
+     * An entry filled with its ledger id and entry id, so that a corrupted copy can be detected.
+     */
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        while (entry.isWritable()) {
+            entry.writeLong(ledgerId);
+            entry.writeLong(entryId);
+        }
+        return entry;
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, ByteBuf entry) {
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        while (entry.isReadable()) {
+            assertEquals(ledgerId, entry.readLong());
+            assertEquals(entryId, entry.readLong());
+        }
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 10 * ENTRY_SIZE, 2 * ENTRY_SIZE);
+        try {
+            assertNull(cache.get(1, 0));
+            assertFalse(cache.hasEntry(1, 0));
+
+            ByteBuf entry = entry(1, 0);
+            cache.put(1, 0, entry);
+            entry.release();
+
+            assertTrue(cache.hasEntry(1, 0));
+            assertFalse(cache.hasEntry(1, 1));
+            assertFalse(cache.hasEntry(2, 0));
+            ByteBuf cached = cache.get(1, 0);
+            assertEntry(1, 0, cached);
+            cached.release();
+
+            assertEquals(1, cache.count());
+            assertEquals(ENTRY_SIZE, cache.size());
+            assertEquals(0.5, cache.hitRatio(), 0.0);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testOldestSegmentIsEvicted() {
+        // 5 segments of 2 entries
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 10 * ENTRY_SIZE, 2 * ENTRY_SIZE);
+        try {
+            for (int i = 0; i < 10; i++) {
+                ByteBuf entry = entry(1, i);
+                cache.put(1, i, entry);
+                entry.release();
+            }
+            assertEquals(10, cache.count());
+
+            // Rolls over to the first segment, evicting its 2 entries
+            ByteBuf entry = entry(1, 10);
+            cache.put(1, 10, entry);
+            entry.release();
+
+            assertEquals(9, cache.count());
+            assertFalse(cache.hasEntry(1, 0));
+            assertFalse(cache.hasEntry(1, 1));
+            for (int i = 2; i <= 10; i++) {
+                ByteBuf cached = cache.get(1, i);
+                assertEntry(1, i, cached);
+                cached.release();
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testEntryLargerThanSegmentIsSkipped() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 2 * ENTRY_SIZE, ENTRY_SIZE / 2);
+        try {
+            ByteBuf entry = entry(1, 0);
+            assertFalse(cache.put(1, 0, entry, false));
+            entry.release();
+            assertFalse(cache.hasEntry(1, 0));
+            assertEquals(0, cache.count());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsWhileSegmentsAreRecycled() throws Exception {
+        // Small segments, recycled all the time by the writers
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 16 * ENTRY_SIZE, 4 * ENTRY_SIZE);
+        int numWriters = 2;
+        int numReaders = 4;
+        int entriesPerWriter = 20000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWriters + numReaders);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writersDone = new AtomicBoolean();
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<Long>> readers = new ArrayList<>();
+        try {
+            for (int w = 0; w < numWriters; w++) {
+                final long ledgerId = w;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+                    for (long entryId = 0; entryId < entriesPerWriter; entryId++) {
+                        entry.clear();
+                        while (entry.isWritable()) {
+                            entry.writeLong(ledgerId);
+                            entry.writeLong(entryId);
+                        }
+                        cache.put(ledgerId, entryId, entry);
+                    }
+                    entry.release();
+                    return null;
+                }));
+            }
+            for (int r = 0; r < numReaders; r++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    long hits = 0;
+                    long entryId = 0;
+                    while (!writersDone.get()) {
+                        long ledgerId = entryId % numWriters;
+                        ByteBuf cached = cache.get(ledgerId, entryId);
+                        if (cached != null) {
+                            // A copy made while its segment was recycled must never be returned
+                            assertEntry(ledgerId, entryId, cached);
+                            cached.release();
+                            hits++;
+                        }
+                        entryId = (entryId + 1) % entriesPerWriter;
+                    }
+                    return hits;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            writersDone.set(true);
+            for (Future<Long> reader : readers) {
+                reader.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            writersDone.set(true);
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            cache.close();
+        }
+    }
+}
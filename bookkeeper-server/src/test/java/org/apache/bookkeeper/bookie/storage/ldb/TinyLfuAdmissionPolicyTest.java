@@ -0,0 +1,193 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link TinyLfuAdmissionPolicy}.
+ */
+public class TinyLfuAdmissionPolicyTest {
+
+    private static final long CACHE_SIZE = 4 * 1024 * 1024;
+
+    private TinyLfuAdmissionPolicy policy;
+
+    @Before
+    public void setup() {
+        policy = new TinyLfuAdmissionPolicy(CACHE_SIZE);
+    }
+
+    private void access(long ledgerId, long entryId, int times) {
+        for (int i = 0; i < times; i++) {
+            policy.recordAccess(ledgerId, entryId);
+        }
+    }
+
+    @Test
+    public void testFrequency() {
+        assertEquals(0, policy.frequency(1, 1));
+        access(1, 1, 1);
+        assertEquals(1, policy.frequency(1, 1));
+        access(1, 1, 4);
+        assertEquals(5, policy.frequency(1, 1));
+        assertEquals(0, policy.frequency(1, 2));
+        assertEquals(0, policy.frequency(2, 1));
+    }
+
+    @Test
+    public void testFrequencySaturates() {
+        access(1, 1, 100);
+        // 15 in the sketch, 1 in the doorkeeper
+        assertEquals(16, policy.frequency(1, 1));
+    }
+
+    @Test
+    public void testResetHalvesFrequencies() {
+        access(1, 1, 9);
+        access(1, 2, 1);
+        assertEquals(9, policy.frequency(1, 1));
+        assertEquals(1, policy.frequency(1, 2));
+
+        policy.reset();
+
+        // The doorkeeper is cleared and the 8 accesses recorded in the sketch are halved
+        assertEquals(4, policy.frequency(1, 1));
+        assertEquals(0, policy.frequency(1, 2));
+    }
+
+    @Test
+    public void testSketchIsAgedAfterSampleSize() {
+        access(1, 1, 9);
+        assertEquals(9, policy.frequency(1, 1));
+
+        // Fill the sample with the accesses of another entry
+        access(2, 1, policy.getSampleSize() - 9);
+        assertEquals(4, policy.frequency(1, 1));
+    }
+
+    @Test
+    public void testConcurrentAccessesCounted() throws Exception {
+        int numThreads = 4;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final long ledgerId = i;
+            threads.add(new Thread(() -> {
+                for (int entryId = 0; entryId < policy.getSampleSize() / 2; entryId++) {
+                    policy.recordAccess(ledgerId, entryId);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // No access is lost, and the sketch was aged exactly twice
+        assertEquals(0, policy.getAdditions());
+        access(1, 1, policy.getSampleSize() - 1);
+        assertEquals(policy.getSampleSize() - 64, policy.getAdditions());
+    }
+
+    @Test
+    public void testDoorkeeperFiltersOneHitEntries() {
+        // As many entries accessed once as counters in a row of the sketch, which would set most counters
+        // of the sketch without the doorkeeper
+        int oneHitEntries = policy.getSampleSize() / 10;
+        for (int i = 0; i < oneHitEntries; i++) {
+            policy.recordAccess(1, i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (policy.frequency(2, i) > 0) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 100);
+    }
+
+    @Test
+    public void testAdmit() {
+        // The entries requested by a read are always admitted
+        assertTrue(policy.admit(1, 1, false, 10));
+
+        // Read-ahead entries are admitted when the victim segment is cold
+        assertTrue(policy.admit(1, 1, true, 0));
+
+        // Read-ahead entries are rejected when less popular than the victim segment entries
+        assertFalse(policy.admit(1, 1, true, 2));
+        access(1, 1, 2);
+        assertTrue(policy.admit(1, 1, true, 2));
+        assertFalse(policy.admit(1, 1, true, 3));
+    }
+
+    @Test
+    public void testPromote() {
+        assertFalse(policy.promote(1, 1));
+        access(1, 1, 1);
+        assertFalse(policy.promote(1, 1));
+        access(1, 1, 1);
+        assertTrue(policy.promote(1, 1));
+    }
+
+    @Test
+    public void testReadCacheRejectsColdReadAheadEntries() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 2 * 1024, 1024, policy);
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[256]);
+        try {
+            // Fill the first segment and make its entries popular
+            for (int i = 0; i < 4; i++) {
+                assertTrue(cache.put(1, i, entry, false));
+            }
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < 3; j++) {
+                    cache.get(1, i).release();
+                }
+            }
+            // Fill the second segment, the first one is the next to be recycled
+            for (int i = 0; i < 4; i++) {
+                assertTrue(cache.put(2, i, entry, false));
+            }
+
+            assertFalse(cache.put(3, 0, entry, true));
+            assertEquals(1, cache.rejectedCount());
+            assertFalse(cache.hasEntry(3, 0));
+
+            // Entries requested by a read, or read ahead for a sequential reader, are not subject to admission
+            assertTrue(cache.put(3, 0, entry, false));
+            assertTrue(cache.hasEntry(3, 0));
+        } finally {
+            entry.release();
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link AdaptiveSpeculativeRequestExecutionPolicy}.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+
+    private static final int FIRST_TIMEOUT_MS = 50;
+    private static final int MAX_TIMEOUT_MS = 200;
+    private static final BookieId BOOKIE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId BOOKIE2 = BookieId.parse("bookie2:3181");
+
+    // The speculative requests scheduled and not run yet, with their delay
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> scheduledDelaysMicros = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MICROSECONDS))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            scheduledDelaysMicros.add(invocation.getArgument(1));
+            return null;
+        });
+    }
+
+    private static AdaptiveSpeculativeRequestExecutionPolicy newPolicy(double maxRatio) {
+        return new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, maxRatio);
+    }
+
+    private static void recordLatenciesMillis(AdaptiveSpeculativeRequestExecutionPolicy policy, BookieId bookie,
+                                              int first, int last) {
+        for (int latencyMs = first; latencyMs <= last; latencyMs++) {
+            policy.recordResponseLatency(bookie, TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        }
+    }
+
+    private void runScheduled() {
+        List<Runnable> toRun = new ArrayList<>(scheduled);
+        scheduled.clear();
+        toRun.forEach(Runnable::run);
+    }
+
+    /**
+     * A request executor counting the speculative requests it issues.
+     */
+    private static class TestRequestExecutor implements SpeculativeRequestExecutor {
+        final AtomicInteger issued = new AtomicInteger();
+        final AtomicBoolean issueMore = new AtomicBoolean(true);
+        final BookieId pendingBookie;
+
+        TestRequestExecutor(BookieId pendingBookie) {
+            this.pendingBookie = pendingBookie;
+        }
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            issued.incrementAndGet();
+            return Futures.immediateFuture(issueMore.get());
+        }
+
+        @Override
+        public BookieId getPendingBookie() {
+            return pendingBookie;
+        }
+    }
+
+    @Test
+    public void testTimeoutFollowsTheLatencyPercentileOfTheBookie() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(1);
+        long firstTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS);
+
+        // Not enough latencies yet
+        int interval = AdaptiveSpeculativeRequestExecutionPolicy.PERCENTILE_UPDATE_INTERVAL;
+        int windowSize = AdaptiveSpeculativeRequestExecutionPolicy.LATENCY_WINDOW_SIZE;
+        recordLatenciesMillis(policy, BOOKIE1, 1, interval - 1);
+        assertEquals(firstTimeoutMicros, policy.getSpeculativeRequestTimeoutMicros(BOOKIE1));
+
+        // p95 of 1..32 ms
+        recordLatenciesMillis(policy, BOOKIE1, 32, 32);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(31), policy.getSpeculativeRequestTimeoutMicros(BOOKIE1));
+
+        // Unknown bookies use the first timeout
+        assertEquals(firstTimeoutMicros, policy.getSpeculativeRequestTimeoutMicros(BOOKIE2));
+        assertEquals(firstTimeoutMicros, policy.getSpeculativeRequestTimeoutMicros(null));
+
+        // Bounded by the max timeout
+        recordLatenciesMillis(policy, BOOKIE2, 1000, 1000 + windowSize);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_TIMEOUT_MS),
+                policy.getSpeculativeRequestTimeoutMicros(BOOKIE2));
+
+        // Only the recent latencies are kept, p95 of 5..132 ms
+        recordLatenciesMillis(policy, BOOKIE1, 5, 5 + windowSize - 1);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(126), policy.getSpeculativeRequestTimeoutMicros(BOOKIE1));
+    }
+
+    @Test
+    public void testScheduledWithTheTimeoutOfThePendingBookie() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(1);
+        recordLatenciesMillis(policy, BOOKIE1, 1, AdaptiveSpeculativeRequestExecutionPolicy.PERCENTILE_UPDATE_INTERVAL);
+
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(BOOKIE1));
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(BOOKIE2));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(31), (long) scheduledDelaysMicros.get(0));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), (long) scheduledDelaysMicros.get(1));
+    }
+
+    @Test
+    public void testSpeculativeRequestsBoundedByTheRatio() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0.25);
+        List<TestRequestExecutor> executors = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            TestRequestExecutor executor = new TestRequestExecutor(BOOKIE1);
+            executors.add(executor);
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+
+        // 8 requests earn 2 speculative requests
+        runScheduled();
+        assertEquals(2, executors.stream().mapToInt(executor -> executor.issued.get()).sum());
+        assertEquals(2, scheduled.size());
+        runScheduled();
+        assertEquals(2, executors.stream().mapToInt(executor -> executor.issued.get()).sum());
+        assertEquals(0, scheduled.size());
+    }
+
+    @Test
+    public void testUnusedBudgetIsReturned() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0.5);
+        // The requests completed before a speculative request was needed
+        TestRequestExecutor completed1 = new TestRequestExecutor(BOOKIE1);
+        completed1.issueMore.set(false);
+        TestRequestExecutor completed2 = new TestRequestExecutor(BOOKIE1);
+        completed2.issueMore.set(false);
+        policy.initiateSpeculativeRequest(scheduler, completed1);
+        policy.initiateSpeculativeRequest(scheduler, completed2);
+
+        // The budget of 1 is taken by the first one, then returned
+        runScheduled();
+        assertEquals(1, completed1.issued.get());
+        assertEquals(1, completed2.issued.get());
+    }
+
+    @Test
+    public void testNextSpeculativeRequestScheduledWhileBudgetAllows() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(1);
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(BOOKIE2));
+        policy.initiateSpeculativeRequest(scheduler, new TestRequestExecutor(BOOKIE2));
+        scheduled.clear();
+        scheduledDelaysMicros.clear();
+
+        // A budget of 3, the executor asks for more speculative requests every time
+        TestRequestExecutor executor = new TestRequestExecutor(BOOKIE1);
+        policy.initiateSpeculativeRequest(scheduler, executor);
+        for (int i = 0; i < 5; i++) {
+            runScheduled();
+        }
+        assertEquals(3, executor.issued.get());
+        assertEquals(4, scheduledDelaysMicros.size());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 0, 0.1);
+            fail("The percentile must be in (0, 100]");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, -1);
+            fail("The ratio must not be negative");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
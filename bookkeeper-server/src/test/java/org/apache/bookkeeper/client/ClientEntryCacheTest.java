@@ -0,0 +1,377 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.ReadLastConfirmedAndEntryOp.LastConfirmedAndEntryCallback;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ClientEntryCache}.
+ */
+public class ClientEntryCacheTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 100;
+
+    // The ranges read from the bookies, and the reads in progress
+    private final List<long[]> rangesRead = new ArrayList<>();
+    private final List<CompletableFuture<LedgerEntries>> pendingReads = new ArrayList<>();
+    private final List<ByteBuf> entriesRead = new ArrayList<>();
+    private Counter hitsCounter;
+    private Counter missesCounter;
+    private ClientEntryCache cache;
+
+    @Before
+    public void setup() {
+        hitsCounter = mock(Counter.class);
+        missesCounter = mock(Counter.class);
+        BookKeeperClientStats clientStats = mock(BookKeeperClientStats.class);
+        when(clientStats.getEntryCacheHitsCounter()).thenReturn(hitsCounter);
+        when(clientStats.getEntryCacheMissesCounter()).thenReturn(missesCounter);
+        cache = new ClientEntryCache(100 * ENTRY_SIZE, clientStats);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+    }
+
+    private CompletableFuture<LedgerEntries> readFromBookies(long firstEntry, long lastEntry) {
+        rangesRead.add(new long[] {firstEntry, lastEntry});
+        CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+        pendingReads.add(future);
+        return future;
+    }
+
+    private static LedgerEntries entries(long ledgerId, long firstEntry, long lastEntry, List<ByteBuf> buffers) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            ByteBuf data = Unpooled.directBuffer(ENTRY_SIZE).writeLong(entryId).writeZero(ENTRY_SIZE - Long.BYTES);
+            buffers.add(data);
+            entries.add(LedgerEntryImpl.create(ledgerId, entryId, (entryId + 1) * ENTRY_SIZE, data));
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+
+    // Complete the read in progress of the given index with the entries of its range
+    private void completeRead(int index) {
+        long[] range = rangesRead.get(index);
+        pendingReads.get(index).complete(entries(LEDGER_ID, range[0], range[1], entriesRead));
+    }
+
+    private CompletableFuture<LedgerEntries> read(long firstEntry, long lastEntry) {
+        return cache.read(LEDGER_ID, firstEntry, lastEntry, this::readFromBookies);
+    }
+
+    private static void assertEntries(long firstEntry, long lastEntry, CompletableFuture<LedgerEntries> future)
+            throws Exception {
+        try (LedgerEntries entries = future.get()) {
+            long entryId = firstEntry;
+            for (LedgerEntry entry : entries) {
+                assertEquals(LEDGER_ID, entry.getLedgerId());
+                assertEquals(entryId, entry.getEntryId());
+                assertEquals((entryId + 1) * ENTRY_SIZE, entry.getLength());
+                assertEquals(ENTRY_SIZE, entry.getEntryBuffer().readableBytes());
+                assertEquals(entryId, entry.getEntryBuffer().getLong(0));
+                entryId++;
+            }
+            assertEquals(lastEntry + 1, entryId);
+        }
+    }
+
+    private void assertAllReleased() {
+        for (ByteBuf entry : entriesRead) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testHitAfterRead() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 9);
+        completeRead(0);
+        assertEntries(0, 9, first);
+        verify(missesCounter, times(10)).inc();
+
+        // Served by the cache, the entries read from the bookies are already released
+        assertAllReleased();
+        CompletableFuture<LedgerEntries> second = read(2, 5);
+        assertTrue(second.isDone());
+        assertEntries(2, 5, second);
+        assertEquals(1, rangesRead.size());
+        verify(hitsCounter, times(4)).inc();
+    }
+
+    @Test
+    public void testOverlappingReadsShareEntries() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 9);
+        completeRead(0);
+        assertEntries(0, 9, first);
+
+        CompletableFuture<LedgerEntries> second = read(20, 29);
+        // Cached, in progress and missing entries
+        CompletableFuture<LedgerEntries> third = read(5, 34);
+        assertEquals(4, rangesRead.size());
+        assertEquals(10, rangesRead.get(2)[0]);
+        assertEquals(19, rangesRead.get(2)[1]);
+        assertEquals(30, rangesRead.get(3)[0]);
+        assertEquals(34, rangesRead.get(3)[1]);
+
+        completeRead(2);
+        completeRead(3);
+        assertFalse(third.isDone());
+        completeRead(1);
+        assertEntries(20, 29, second);
+        assertEntries(5, 34, third);
+        assertAllReleased();
+    }
+
+    @Test
+    public void testEvictionReleasesEntries() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 199);
+        completeRead(0);
+        assertEntries(0, 199, first);
+        assertTrue(cache.size() <= 100);
+
+        // The least recently used entries are evicted
+        CompletableFuture<LedgerEntries> evicted = read(0, 0);
+        assertEquals(2, rangesRead.size());
+        completeRead(1);
+        evicted.get().close();
+        read(199, 199).get().close();
+        assertEquals(2, rangesRead.size());
+
+        cache.close();
+        assertEquals(0, cache.size());
+        assertAllReleased();
+    }
+
+    @Test
+    public void testInvalidateLedger() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 9);
+        completeRead(0);
+        first.get().close();
+        cache.put(LEDGER_ID + 1, 0, ENTRY_SIZE, Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]));
+        assertEquals(11, cache.size());
+
+        cache.invalidateLedger(LEDGER_ID);
+        assertEquals(1, cache.size());
+        read(0, 9);
+        assertEquals(2, rangesRead.size());
+        completeRead(1);
+    }
+
+    @Test
+    public void testKeptOnHandleClose() throws Exception {
+        ClientEntryCache entryCache = mock(ClientEntryCache.class);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getEntryCache()).thenReturn(entryCache);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(new ClientConfiguration()));
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        when(clientCtx.getLedgerManager()).thenReturn(mock(LedgerManager.class));
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(1).withWriteQuorumSize(1).withAckQuorumSize(1)
+                .withPassword(new byte[0]).withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0, Collections.singletonList(BookieId.parse("bookie:3181")))
+                .withClosedState().withLastEntryId(9).withLength(1000)
+                .build();
+
+        ReadOnlyLedgerHandle lh = new ReadOnlyLedgerHandle(clientCtx, LEDGER_ID,
+                new Versioned<>(metadata, new LongVersion(0)), BookKeeper.DigestType.CRC32C, new byte[0], false);
+        // The cached entries can no longer change, they are kept for the other handles of the ledger
+        lh.close();
+        lh.asyncClose((rc, handle, ctx) -> {}, null);
+        verify(entryCache, never()).invalidateLedger(anyLong());
+    }
+
+    @Test
+    public void testInvalidateOnDelete() throws Exception {
+        ClientEntryCache entryCache = mock(ClientEntryCache.class);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getEntryCache()).thenReturn(entryCache);
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.removeLedgerMetadata(LEDGER_ID, Version.ANY))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        OrderedExecutor mainWorkerPool = mock(OrderedExecutor.class);
+        when(mainWorkerPool.chooseThread(LEDGER_ID)).thenReturn(MoreExecutors.newDirectExecutorService());
+        BookKeeper bk = mock(BookKeeper.class);
+        when(bk.getClientCtx()).thenReturn(clientCtx);
+        when(bk.getLedgerManager()).thenReturn(ledgerManager);
+        when(bk.getMainWorkerPool()).thenReturn(mainWorkerPool);
+
+        CompletableFuture<Integer> deleted = new CompletableFuture<>();
+        new LedgerDeleteOp(bk, BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE), LEDGER_ID,
+                (rc, ctx) -> deleted.complete(rc), null).initiate();
+        assertEquals(BKException.Code.OK, (int) deleted.get());
+        verify(entryCache, times(1)).invalidateLedger(LEDGER_ID);
+    }
+
+    /**
+     * The results of the long poll reads of the cache.
+     */
+    private static class LongPollResult implements LastConfirmedAndEntryCallback {
+        int rc = Integer.MIN_VALUE;
+        long lastAddConfirmed;
+        org.apache.bookkeeper.client.LedgerEntry entry;
+
+        @Override
+        public void readLastConfirmedAndEntryComplete(int rc, long lastAddConfirmed,
+                                                      org.apache.bookkeeper.client.LedgerEntry entry) {
+            this.rc = rc;
+            this.lastAddConfirmed = lastAddConfirmed;
+            this.entry = entry;
+        }
+    }
+
+    @Test
+    public void testLongPollServedFromCache() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 9);
+        completeRead(0);
+        first.get().close();
+        List<LastConfirmedAndEntryCallback> longPolls = new ArrayList<>();
+        LongPollResult result = new LongPollResult();
+        cache.readLastConfirmedAndEntry(LEDGER_ID, 5, 1000, false, result, longPolls::add);
+
+        assertEquals(0, longPolls.size());
+        assertEquals(BKException.Code.OK, result.rc);
+        assertEquals(5, result.lastAddConfirmed);
+        assertEquals(5, result.entry.getEntryBuffer().getLong(0));
+        result.entry.getEntry();
+    }
+
+    @Test
+    public void testIdenticalLongPollsShared() throws Exception {
+        List<LastConfirmedAndEntryCallback> longPolls = new ArrayList<>();
+        LongPollResult first = new LongPollResult();
+        LongPollResult second = new LongPollResult();
+        LongPollResult otherTimeout = new LongPollResult();
+        cache.readLastConfirmedAndEntry(LEDGER_ID, 10, 1000, false, first, longPolls::add);
+        cache.readLastConfirmedAndEntry(LEDGER_ID, 10, 1000, false, second, longPolls::add);
+        cache.readLastConfirmedAndEntry(LEDGER_ID, 10, 2000, false, otherTimeout, longPolls::add);
+        assertEquals(2, longPolls.size());
+
+        try (LedgerEntries entries = entries(LEDGER_ID, 10, 10, entriesRead)) {
+            longPolls.get(0).readLastConfirmedAndEntryComplete(BKException.Code.OK, 10,
+                    new org.apache.bookkeeper.client.LedgerEntry((LedgerEntryImpl) entries.getEntry(10)));
+        }
+        // Each read owns its entry
+        assertEquals(BKException.Code.OK, first.rc);
+        assertEquals(10, first.lastAddConfirmed);
+        assertEquals(10, first.entry.getEntryBuffer().getLong(0));
+        first.entry.getEntry();
+        assertEquals(BKException.Code.OK, second.rc);
+        assertEquals(10, second.lastAddConfirmed);
+        assertEquals(10, second.entry.getEntryBuffer().getLong(0));
+        second.entry.getEntry();
+        assertAllReleased();
+        assertEquals(Integer.MIN_VALUE, otherTimeout.rc);
+
+        // The entry read by the long poll is cached
+        read(10, 10).get().close();
+        assertEquals(0, rangesRead.size());
+
+        // A completed long poll is not joined
+        LongPollResult timedOut = new LongPollResult();
+        cache.readLastConfirmedAndEntry(LEDGER_ID, 11, 1000, false, timedOut, longPolls::add);
+        longPolls.get(2).readLastConfirmedAndEntryComplete(BKException.Code.OK, 10, null);
+        assertEquals(BKException.Code.OK, timedOut.rc);
+        assertNull(timedOut.entry);
+        cache.readLastConfirmedAndEntry(LEDGER_ID, 11, 1000, false, new LongPollResult(), longPolls::add);
+        assertEquals(4, longPolls.size());
+    }
+
+    @Test
+    public void testFailedReadFailsWaiters() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 9);
+        CompletableFuture<LedgerEntries> second = read(5, 14);
+        assertEquals(2, rangesRead.size());
+
+        completeRead(1);
+        pendingReads.get(0).completeExceptionally(new BKException.BKReadException());
+        assertFailed(first);
+        assertFailed(second);
+        assertAllReleased();
+
+        // The entries read are still cached, the failed ones are read again
+        read(10, 14).get().close();
+        assertEquals(2, rangesRead.size());
+        read(0, 14);
+        assertEquals(3, rangesRead.size());
+        assertEquals(0, rangesRead.get(2)[0]);
+        assertEquals(9, rangesRead.get(2)[1]);
+    }
+
+    @Test
+    public void testMissingEntryFailsRead() throws Exception {
+        CompletableFuture<LedgerEntries> first = read(0, 9);
+        pendingReads.get(0).complete(entries(LEDGER_ID, 0, 4, entriesRead));
+        assertFailed(first);
+        assertAllReleased();
+    }
+
+    private static void assertFailed(CompletableFuture<LedgerEntries> future) throws Exception {
+        try {
+            future.get();
+            fail("The read should fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link LeastLoadedReplicaSelector}.
+ */
+public class LeastLoadedReplicaSelectorTest {
+
+    private static final int RUNS = 1000;
+
+    private final List<BookieId> ensemble = Arrays.asList(BookieId.parse("bookie0:3181"),
+            BookieId.parse("bookie1:3181"), BookieId.parse("bookie2:3181"), BookieId.parse("bookie3:3181"));
+    private final Map<BookieId, Long> pendingRequests = new HashMap<>();
+    private final Map<BookieId, Long> latenciesNanos = new HashMap<>();
+    private final Map<BookieId, Long> failures = new HashMap<>();
+
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookie) {
+            return failures.getOrDefault(bookie, -1L);
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookie) {
+            return pendingRequests.getOrDefault(bookie, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatencyEwmaNanos(BookieId bookie) {
+            return latenciesNanos.getOrDefault(bookie, 0L);
+        }
+    };
+
+    private void setLoad(int bookieIndex, long pending, long latencyNanos) {
+        pendingRequests.put(ensemble.get(bookieIndex), pending);
+        latenciesNanos.put(ensemble.get(bookieIndex), latencyNanos);
+    }
+
+    private DistributionSchedule.WriteSet select(Integer... bookieIndexes) {
+        DistributionSchedule.WriteSet writeSet = RoundRobinDistributionSchedule.writeSetFromValues(bookieIndexes);
+        LeastLoadedReplicaSelector.selectFirstReplica(ensemble, healthInfo, writeSet, writeSet.size());
+        return writeSet;
+    }
+
+    private static List<Integer> toList(DistributionSchedule.WriteSet writeSet) {
+        Integer[] values = new Integer[writeSet.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = writeSet.get(i);
+        }
+        return Arrays.asList(values);
+    }
+
+    @Test
+    public void testLeastLoadedOfTwoReplicas() {
+        // Fewer pending requests, but much slower
+        setLoad(0, 1, 10_000_000);
+        setLoad(1, 5, 1_000_000);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(Arrays.asList(1, 0), toList(select(0, 1)));
+            assertEquals(Arrays.asList(1, 0), toList(select(1, 0)));
+        }
+    }
+
+    @Test
+    public void testUnknownLatencyCountsAsTheLowest() {
+        setLoad(0, 0, 1_000_000);
+        setLoad(1, 0, 0);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(Arrays.asList(1, 0), toList(select(0, 1)));
+        }
+    }
+
+    @Test
+    public void testUnhealthyReplicasAreAvoided() {
+        setLoad(0, 0, 1_000);
+        setLoad(1, 100, 1_000_000);
+        setLoad(2, 0, 1_000);
+        failures.put(ensemble.get(0), 1L);
+        pendingRequests.put(ensemble.get(2), BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(Arrays.asList(1, 0), toList(select(0, 1)));
+            assertEquals(Arrays.asList(1, 2), toList(select(2, 1)));
+        }
+
+        // Both replicas are unhealthy, either one is chosen
+        boolean[] chosen = new boolean[ensemble.size()];
+        for (int i = 0; i < RUNS; i++) {
+            chosen[select(0, 2).get(0)] = true;
+        }
+        assertTrue(chosen[0] && chosen[2]);
+    }
+
+    @Test
+    public void testTwoRandomChoices() {
+        setLoad(0, 0, 1_000);
+        setLoad(1, 1, 1_000);
+        setLoad(2, 2, 1_000);
+        setLoad(3, 3, 1_000);
+
+        int[] chosen = new int[ensemble.size()];
+        for (int i = 0; i < RUNS; i++) {
+            List<Integer> replicas = toList(select(0, 1, 2, 3));
+            chosen[replicas.get(0)]++;
+            // The other replicas keep their order
+            List<Integer> others = replicas.subList(1, replicas.size());
+            for (int j = 1; j < others.size(); j++) {
+                assertTrue(others.get(j - 1) < others.get(j));
+            }
+        }
+
+        // The most loaded replica is never chosen, the least loaded one is chosen whenever it is compared,
+        // half of the time, and the next ones less often
+        assertEquals(0, chosen[3]);
+        assertTrue(chosen[0] > RUNS * 0.4);
+        assertTrue(chosen[0] > chosen[1]);
+        assertTrue(chosen[1] > chosen[2]);
+        assertTrue(chosen[2] > 0);
+    }
+
+    @Test
+    public void testOnlyPreferredReplicasChosen() {
+        setLoad(0, 100, 1_000_000);
+        setLoad(1, 50, 1_000_000);
+        setLoad(2, 0, 1_000);
+        for (int i = 0; i < RUNS; i++) {
+            // The least loaded replica is not among the ones preferred by the placement policy
+            DistributionSchedule.WriteSet writeSet = RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2);
+            LeastLoadedReplicaSelector.selectFirstReplica(ensemble, healthInfo, writeSet, 2);
+            assertEquals(Arrays.asList(1, 0, 2), toList(writeSet));
+
+            writeSet = RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2);
+            LeastLoadedReplicaSelector.selectFirstReplica(ensemble, healthInfo, writeSet, 1);
+            assertEquals(Arrays.asList(0, 1, 2), toList(writeSet));
+        }
+    }
+
+    @Test
+    public void testSingleReplica() {
+        setLoad(2, 100, 1_000_000);
+        assertEquals(Arrays.asList(2), toList(select(2)));
+    }
+}
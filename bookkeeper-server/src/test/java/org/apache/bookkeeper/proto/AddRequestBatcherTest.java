@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link AddRequestBatcher}.
+ */
+public class AddRequestBatcherTest {
+
+    private final List<List<Integer>> sentBatches = new ArrayList<>();
+    private final List<Runnable> lingerTasks = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), eq(TimeUnit.MICROSECONDS.toNanos(100)),
+                eq(TimeUnit.NANOSECONDS))).thenAnswer(invocation -> {
+                    lingerTasks.add(invocation.getArgument(0));
+                    return null;
+                });
+    }
+
+    private AddRequestBatcher<Integer> newBatcher(int maxBatchBytes, long lingerMicros) {
+        return new AddRequestBatcher<>(maxBatchBytes, lingerMicros, scheduler, sentBatches::add);
+    }
+
+    @Test
+    public void testSentAfterLinger() {
+        AddRequestBatcher<Integer> batcher = newBatcher(1000, 100);
+        batcher.add(1, 100);
+        batcher.add(2, 100);
+        batcher.add(3, 100);
+        assertEquals(0, sentBatches.size());
+        // Only the first request of a batch schedules the linger
+        assertEquals(1, lingerTasks.size());
+
+        lingerTasks.get(0).run();
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3)), sentBatches);
+    }
+
+    @Test
+    public void testSentWhenFull() {
+        AddRequestBatcher<Integer> batcher = newBatcher(250, 100);
+        batcher.add(1, 100);
+        batcher.add(2, 100);
+        assertEquals(0, sentBatches.size());
+        // Would exceed the max bytes, so the pending batch is sent first
+        batcher.add(3, 100);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2)), sentBatches);
+        // Reaches the max bytes, so it is sent right away
+        batcher.add(4, 150);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)), sentBatches);
+        // An entry larger than the max bytes is sent alone
+        batcher.add(5, 1000);
+        assertEquals(Arrays.asList(5), sentBatches.get(2));
+    }
+
+    @Test
+    public void testLingerOfSentBatchIgnored() {
+        AddRequestBatcher<Integer> batcher = newBatcher(1000, 100);
+        batcher.add(1, 100);
+        batcher.flush();
+        batcher.add(2, 100);
+        assertEquals(2, lingerTasks.size());
+
+        // The linger of the first batch must not send the second one early
+        lingerTasks.get(0).run();
+        assertEquals(Arrays.asList(Arrays.asList(1)), sentBatches);
+        lingerTasks.get(1).run();
+        assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(2)), sentBatches);
+
+        // Nothing left to send
+        batcher.flush();
+        assertEquals(2, sentBatches.size());
+    }
+
+    @Test
+    public void testNoLinger() {
+        AddRequestBatcher<Integer> batcher = newBatcher(1000, 0);
+        batcher.add(1, 100);
+        batcher.add(2, 100);
+        assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(2)), sentBatches);
+        assertEquals(0, lingerTasks.size());
+    }
+
+    @Test
+    public void testSentRightAwayWhenLingerRejected() {
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any()))
+                .thenThrow(new RejectedExecutionException("shutdown"));
+        AddRequestBatcher<Integer> batcher = newBatcher(1000, 100);
+        batcher.add(1, 100);
+        assertEquals(Arrays.asList(Arrays.asList(1)), sentBatches);
+    }
+}
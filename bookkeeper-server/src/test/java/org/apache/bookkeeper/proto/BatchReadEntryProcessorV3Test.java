@@ -0,0 +1,196 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link BatchReadEntryProcessorV3}.
+ */
+public class BatchReadEntryProcessorV3Test {
+
+    private static final long LEDGER_ID = 1;
+
+    private final List<ByteBuf> readEntries = new ArrayList<>();
+    private final AtomicReference<Object> sentResponse = new AtomicReference<>();
+    private final AtomicReference<ChannelFutureListener> writeListener = new AtomicReference<>();
+    private ChannelFuture writeFuture;
+    private Bookie bookie;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+    private int entrySize = 100;
+    private long lastEntry = 99;
+
+    @Before
+    public void setup() throws Exception {
+        bookie = mock(Bookie.class);
+        when(bookie.readEntries(eq(LEDGER_ID), any())).thenAnswer(invocation -> {
+            long[] entryIds = invocation.getArgument(1);
+            List<ByteBuf> entries = new ArrayList<>();
+            for (long entryId : entryIds) {
+                if (entryId > lastEntry) {
+                    if (entries.isEmpty()) {
+                        throw new Bookie.NoEntryException(LEDGER_ID, entryId);
+                    }
+                    break;
+                }
+                ByteBuf entry = Unpooled.directBuffer(entrySize).writeZero(entrySize);
+                readEntries.add(entry);
+                entries.add(entry);
+            }
+            return entries;
+        });
+        when(bookie.readLastAddConfirmed(anyLong())).thenReturn(lastEntry);
+
+        writeFuture = mock(ChannelFuture.class);
+        when(writeFuture.isSuccess()).thenReturn(true);
+        when(writeFuture.addListener(any())).thenAnswer(invocation -> {
+            writeListener.set(invocation.getArgument(0));
+            return writeFuture;
+        });
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.writeAndFlush(any())).thenAnswer(invocation -> {
+            sentResponse.set(invocation.getArgument(0));
+            return writeFuture;
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+        when(requestProcessor.getMaxBatchReadSize()).thenReturn(1024L * 1024);
+    }
+
+    private BatchReadResponse batchRead(BatchReadRequest.Builder batchReadRequest) {
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.BATCH_READ_ENTRY)
+                        .setTxnId(1))
+                .setBatchReadRequest(batchReadRequest.setLedgerId(LEDGER_ID))
+                .build();
+        new BatchReadEntryProcessorV3(request, requestHandler, requestProcessor).run();
+        return ((Response) sentResponse.get()).getBatchReadResponse();
+    }
+
+    private void completeWrite() throws Exception {
+        writeListener.get().operationComplete(writeFuture);
+    }
+
+    private void assertAllReleased() {
+        for (ByteBuf entry : readEntries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testBodiesReleasedOnceResponseWritten() throws Exception {
+        BatchReadResponse response = batchRead(BatchReadRequest.newBuilder().setFirstEntryId(0).setLastEntryId(9));
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(10, response.getEntryIdsCount());
+        assertEquals(10, response.getBodiesCount());
+        assertEquals(entrySize, response.getBodies(0).size());
+        assertEquals(lastEntry, response.getMaxLAC());
+
+        // The response wraps the entries, which must stay alive until it is written
+        assertEquals(10, readEntries.size());
+        for (ByteBuf entry : readEntries) {
+            assertEquals(1, entry.refCnt());
+        }
+        completeWrite();
+        assertAllReleased();
+    }
+
+    @Test
+    public void testStopsAtMaxSize() throws Exception {
+        entrySize = 1000;
+        BatchReadResponse response = batchRead(BatchReadRequest.newBuilder()
+                .setFirstEntryId(0).setLastEntryId(99).setMaxSize(5500));
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(5, response.getEntryIdsCount());
+        assertEquals(4, response.getEntryIds(4));
+
+        // The entries read but not returned are released right away
+        completeWrite();
+        assertAllReleased();
+    }
+
+    @Test
+    public void testStopsAtFirstMissingEntry() throws Exception {
+        lastEntry = 2;
+        BatchReadResponse response = batchRead(BatchReadRequest.newBuilder().addEntryIds(1).addEntryIds(2)
+                .addEntryIds(3).addEntryIds(4));
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(2, response.getEntryIdsCount());
+        completeWrite();
+        assertAllReleased();
+    }
+
+    @Test
+    public void testFirstEntryMissing() throws Exception {
+        lastEntry = -1;
+        BatchReadResponse response = batchRead(BatchReadRequest.newBuilder().setFirstEntryId(0).setLastEntryId(9));
+        assertEquals(StatusCode.ENOENTRY, response.getStatus());
+        assertEquals(0, response.getEntryIdsCount());
+        assertFalse(response.hasMaxLAC());
+        completeWrite();
+    }
+
+    @Test
+    public void testEmptyRequest() throws Exception {
+        BatchReadResponse response = batchRead(BatchReadRequest.newBuilder());
+        assertEquals(StatusCode.EBADREQ, response.getStatus());
+    }
+}
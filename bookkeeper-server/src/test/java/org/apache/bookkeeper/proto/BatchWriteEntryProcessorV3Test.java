@@ -0,0 +1,196 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link BatchWriteEntryProcessorV3}.
+ */
+public class BatchWriteEntryProcessorV3Test {
+
+    private final List<WriteCallback> addCallbacks = new ArrayList<>();
+    private final List<ByteBuf> addedEntries = new ArrayList<>();
+    private final AtomicReference<Object> sentResponse = new AtomicReference<>();
+    private Bookie bookie;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+
+    @Before
+    public void setup() throws Exception {
+        bookie = mock(Bookie.class);
+        doAnswer(invocation -> {
+            addedEntries.add(invocation.getArgument(0));
+            addCallbacks.add(invocation.getArgument(2));
+            return null;
+        }).when(bookie).addEntry(any(), anyBoolean(), any(), any(), any());
+
+        ChannelFuture writeFuture = mock(ChannelFuture.class);
+        when(writeFuture.isSuccess()).thenReturn(true);
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.writeAndFlush(any())).thenAnswer(invocation -> {
+            sentResponse.set(invocation.getArgument(0));
+            return writeFuture;
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+    }
+
+    private static AddRequest addRequest(long ledgerId, long entryId) {
+        return AddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMasterKey(ByteString.copyFromUtf8("key"))
+                .setBody(ByteString.copyFromUtf8("entry-" + ledgerId + "-" + entryId))
+                .build();
+    }
+
+    private static BatchWriteEntryProcessorV3 newProcessor(BookieRequestHandler requestHandler,
+                                                           BookieRequestProcessor requestProcessor,
+                                                           AddRequest... addRequests) {
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.BATCH_ADD_ENTRY)
+                        .setTxnId(1))
+                .setBatchAddRequest(BatchAddRequest.newBuilder().addAllAddRequests(Arrays.asList(addRequests)))
+                .build();
+        return new BatchWriteEntryProcessorV3(request, requestHandler, requestProcessor);
+    }
+
+    private void completeAdd(int index, int rc) {
+        addCallbacks.get(index).writeComplete(rc, 0, index, null, null);
+    }
+
+    @Test
+    public void testResponseSentOnceAllEntriesAdded() throws Exception {
+        newProcessor(requestHandler, requestProcessor,
+                addRequest(1, 0), addRequest(2, 0), addRequest(1, 1)).run();
+        assertEquals(3, addCallbacks.size());
+        assertEquals("entry-1-0", addedEntries.get(0).toString(StandardCharsets.UTF_8));
+
+        // The entries of each ledger are added together: (1, 0), (1, 1), then (2, 0)
+        assertEquals("entry-2-0", addedEntries.get(2).toString(StandardCharsets.UTF_8));
+        completeAdd(1, BookieProtocol.EOK);
+        completeAdd(0, BookieProtocol.EOK);
+        assertNull(sentResponse.get());
+        completeAdd(2, BookieProtocol.EIO);
+
+        Response response = (Response) sentResponse.get();
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(OperationType.BATCH_ADD_ENTRY, response.getHeader().getOperation());
+        BatchAddResponse batchAddResponse = response.getBatchAddResponse();
+        assertEquals(3, batchAddResponse.getAddResponsesCount());
+        // The responses are in the order of the request
+        assertEquals(1, batchAddResponse.getAddResponses(0).getLedgerId());
+        assertEquals(StatusCode.EOK, batchAddResponse.getAddResponses(0).getStatus());
+        assertEquals(2, batchAddResponse.getAddResponses(1).getLedgerId());
+        assertEquals(StatusCode.EIO, batchAddResponse.getAddResponses(1).getStatus());
+        assertEquals(1, batchAddResponse.getAddResponses(2).getEntryId());
+        assertEquals(StatusCode.EOK, batchAddResponse.getAddResponses(2).getStatus());
+    }
+
+    @Test
+    public void testEntriesGroupedByLedgerInOrder() throws Exception {
+        BatchWriteEntryProcessorV3 processor = newProcessor(requestHandler, requestProcessor,
+                addRequest(1, 0), addRequest(2, 0), addRequest(1, 1), addRequest(3, 5), addRequest(2, 1));
+        Map<Long, List<Integer>> entriesByLedger = processor.getEntriesByLedger();
+        assertEquals(Arrays.asList(1L, 2L, 3L), new ArrayList<>(entriesByLedger.keySet()));
+        assertEquals(Arrays.asList(0, 2), entriesByLedger.get(1L));
+        assertEquals(Arrays.asList(1, 4), entriesByLedger.get(2L));
+        assertEquals(Arrays.asList(3), entriesByLedger.get(3L));
+    }
+
+    @Test
+    public void testRejectedEntriesFailed() throws Exception {
+        BatchWriteEntryProcessorV3 processor = newProcessor(requestHandler, requestProcessor,
+                addRequest(1, 0), addRequest(2, 0));
+        processor.addEntries(Arrays.asList(0));
+        processor.failEntries(Arrays.asList(1), StatusCode.ETOOMANYREQUESTS);
+        assertNull(sentResponse.get());
+        completeAdd(0, BookieProtocol.EOK);
+
+        BatchAddResponse batchAddResponse = ((Response) sentResponse.get()).getBatchAddResponse();
+        assertEquals(StatusCode.EOK, batchAddResponse.getAddResponses(0).getStatus());
+        assertEquals(StatusCode.ETOOMANYREQUESTS, batchAddResponse.getAddResponses(1).getStatus());
+    }
+
+    @Test
+    public void testReadOnlyBookie() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        newProcessor(requestHandler, requestProcessor, addRequest(1, 0), addRequest(1, 1)).run();
+        assertEquals(0, addCallbacks.size());
+
+        BatchAddResponse batchAddResponse = ((Response) sentResponse.get()).getBatchAddResponse();
+        assertEquals(2, batchAddResponse.getAddResponsesCount());
+        assertEquals(StatusCode.EREADONLY, batchAddResponse.getAddResponses(0).getStatus());
+        assertEquals(StatusCode.EREADONLY, batchAddResponse.getAddResponses(1).getStatus());
+    }
+
+    @Test
+    public void testEmptyRequest() throws Exception {
+        newProcessor(requestHandler, requestProcessor).run();
+        Response response = (Response) sentResponse.get();
+        assertEquals(StatusCode.EBADREQ, response.getStatus());
+        assertEquals(0, response.getBatchAddResponse().getAddResponsesCount());
+    }
+}
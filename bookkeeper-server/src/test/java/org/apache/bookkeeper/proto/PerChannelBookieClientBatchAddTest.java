@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the add batching of {@link PerChannelBookieClient}.
+ */
+public class PerChannelBookieClientBatchAddTest {
+
+    private static final int ENTRY_SIZE = 10;
+    private static final byte[] MASTER_KEY = "key".getBytes();
+
+    private OrderedExecutor executor;
+    private EventLoopGroup eventLoopGroup;
+    private EmbeddedChannel channel;
+    private PerChannelBookieClient client;
+
+    @Before
+    public void setup() throws Exception {
+        executor = OrderedExecutor.newBuilder().numThreads(2).name("test").build();
+        eventLoopGroup = new NioEventLoopGroup(1);
+        ClientConfiguration conf = new ClientConfiguration()
+                .setAddEntryBatchingEnabled(true)
+                .setAddEntryBatchMaxBytes(3 * ENTRY_SIZE)
+                // long enough for the batches of the tests to be sent only once full
+                .setAddEntryBatchLingerMicros(TimeUnit.SECONDS.toMicros(30));
+        client = new PerChannelBookieClient(conf, executor, eventLoopGroup, BookieId.parse("bookie:3181"),
+                NullStatsLogger.INSTANCE, null, null, null, mock(BookieAddressResolver.class));
+        channel = new EmbeddedChannel();
+        client.channel = channel;
+    }
+
+    @After
+    public void teardown() throws Exception {
+        channel.finishAndReleaseAll();
+        eventLoopGroup.shutdownGracefully().sync();
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Integer> addEntry(long ledgerId, long entryId, ByteBufList toSend, int options) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        client.addEntry(ledgerId, MASTER_KEY, entryId, toSend,
+                (rc, lid, eid, addr, ctx) -> result.complete(rc), null, options, false, WriteFlag.NONE);
+        return result;
+    }
+
+    private CompletableFuture<Integer> addEntry(long ledgerId, long entryId) {
+        return addEntry(ledgerId, entryId, ByteBufList.get(Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE)), 0);
+    }
+
+    private static AddResponse addResponse(long ledgerId, long entryId, StatusCode status) {
+        return AddResponse.newBuilder().setLedgerId(ledgerId).setEntryId(entryId).setStatus(status).build();
+    }
+
+    @Test
+    public void testBatchCompletesEachEntry() throws Exception {
+        ByteBufList entry = ByteBufList.get(Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE));
+        CompletableFuture<Integer> add1 = addEntry(1, 0, entry, 0);
+        CompletableFuture<Integer> add2 = addEntry(2, 0);
+        assertNull(channel.readOutbound());
+        // The batch holds the entry until it is written
+        assertEquals(2, entry.refCnt());
+
+        CompletableFuture<Integer> add3 = addEntry(1, 1);
+        Request request = channel.readOutbound();
+        assertEquals(OperationType.BATCH_ADD_ENTRY, request.getHeader().getOperation());
+        assertEquals(3, request.getBatchAddRequest().getAddRequestsCount());
+        assertEquals(2, request.getBatchAddRequest().getAddRequests(1).getLedgerId());
+        assertEquals(1, request.getBatchAddRequest().getAddRequests(2).getEntryId());
+        assertEquals(1, entry.refCnt());
+
+        client.channelRead(null, Response.newBuilder()
+                .setHeader(request.getHeader())
+                .setStatus(StatusCode.EOK)
+                .setBatchAddResponse(BatchAddResponse.newBuilder()
+                        .addAddResponses(addResponse(1, 0, StatusCode.EOK))
+                        .addAddResponses(addResponse(2, 0, StatusCode.EFENCED))
+                        .addAddResponses(addResponse(1, 1, StatusCode.EOK)))
+                .build());
+        assertEquals(BKException.Code.OK, (int) add1.get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.LedgerFencedException, (int) add2.get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.OK, (int) add3.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBatchFailureFailsAllEntries() throws Exception {
+        CompletableFuture<Integer> add1 = addEntry(1, 0);
+        CompletableFuture<Integer> add2 = addEntry(2, 0);
+        CompletableFuture<Integer> add3 = addEntry(3, 0);
+        Request request = channel.readOutbound();
+
+        // An old bookie rejects the unknown request
+        client.channelRead(null, Response.newBuilder()
+                .setHeader(request.getHeader())
+                .setStatus(StatusCode.EBADREQ)
+                .build());
+        assertEquals(BKException.Code.WriteException, (int) add1.get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.WriteException, (int) add2.get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.WriteException, (int) add3.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHighPriorityAddNotBatched() throws Exception {
+        CompletableFuture<Integer> add1 = addEntry(1, 0);
+        CompletableFuture<Integer> recoveryAdd = addEntry(2, 0,
+                ByteBufList.get(Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE)),
+                BookieProtocol.FLAG_HIGH_PRIORITY | BookieProtocol.FLAG_RECOVERY_ADD);
+
+        // The pending batch, a single entry here, is sent first to keep the order of the adds
+        Request first = channel.readOutbound();
+        assertEquals(OperationType.ADD_ENTRY, first.getHeader().getOperation());
+        assertEquals(1, first.getAddRequest().getLedgerId());
+        assertFalse(first.getHeader().hasPriority());
+        Request second = channel.readOutbound();
+        assertEquals(OperationType.ADD_ENTRY, second.getHeader().getOperation());
+        assertEquals(2, second.getAddRequest().getLedgerId());
+        assertEquals(100, second.getHeader().getPriority());
+
+        client.channelRead(null, Response.newBuilder()
+                .setHeader(first.getHeader())
+                .setStatus(StatusCode.EOK)
+                .setAddResponse(addResponse(1, 0, StatusCode.EOK))
+                .build());
+        client.channelRead(null, Response.newBuilder()
+                .setHeader(second.getHeader())
+                .setStatus(StatusCode.EOK)
+                .setAddResponse(addResponse(2, 0, StatusCode.EOK))
+                .build());
+        assertEquals(BKException.Code.OK, (int) add1.get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.OK, (int) recoveryAdd.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBatchedEntriesFailedOnClose() throws Exception {
+        CompletableFuture<Integer> add1 = addEntry(1, 0);
+        CompletableFuture<Integer> add2 = addEntry(2, 0);
+        client.close();
+        assertEquals(BKException.Code.ClientClosedException, (int) add1.get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.ClientClosedException, (int) add2.get(10, TimeUnit.SECONDS));
+    }
+}
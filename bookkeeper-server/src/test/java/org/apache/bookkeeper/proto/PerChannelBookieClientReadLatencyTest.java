@@ -0,0 +1,112 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the read latency average of {@link PerChannelBookieClient}.
+ */
+public class PerChannelBookieClientReadLatencyTest {
+
+    private static final int NUM_THREADS = 4;
+    // Few enough updates for the average not to converge, so that each lost update changes it
+    private static final int UPDATES_PER_THREAD = 30;
+    private static final int ROUNDS = 100;
+
+    private OrderedExecutor executor;
+    private EventLoopGroup eventLoopGroup;
+
+    @Before
+    public void setup() {
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("test").build();
+        eventLoopGroup = new NioEventLoopGroup(1);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        eventLoopGroup.shutdownGracefully().sync();
+        executor.shutdown();
+    }
+
+    private PerChannelBookieClient newClient() throws Exception {
+        return new PerChannelBookieClient(executor, eventLoopGroup, BookieId.parse("bookie:3181"),
+                mock(BookieAddressResolver.class));
+    }
+
+    @Test
+    public void testMovingAverage() throws Exception {
+        PerChannelBookieClient client = newClient();
+        assertEquals(0, client.getReadLatencyEwmaNanos());
+        client.updateReadLatencyEwma(1000);
+        assertEquals(1000, client.getReadLatencyEwmaNanos());
+        client.updateReadLatencyEwma(2000);
+        assertEquals(1100, client.getReadLatencyEwmaNanos());
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        // The same updates applied by a single thread
+        PerChannelBookieClient expected = newClient();
+        expected.updateReadLatencyEwma(1_000_000_000);
+        for (int i = 0; i < NUM_THREADS * UPDATES_PER_THREAD; i++) {
+            expected.updateReadLatencyEwma(1_000);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // The read callbacks of the ledgers of a channel run on different threads
+            PerChannelBookieClient client = newClient();
+            client.updateReadLatencyEwma(1_000_000_000);
+            CyclicBarrier start = new CyclicBarrier(NUM_THREADS);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        client.updateReadLatencyEwma(1_000);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(expected.getReadLatencyEwmaNanos(), client.getReadLatencyEwmaNanos());
+        }
+    }
+}
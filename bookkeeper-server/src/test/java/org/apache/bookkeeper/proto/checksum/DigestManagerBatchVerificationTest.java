@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto.checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DigestManager#verifyDigestsAndReturnData(LedgerEntries)}.
+ */
+public class DigestManagerBatchVerificationTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 5;
+
+    private static ByteBuf packageEntry(DigestManager dm, long entryId) {
+        ByteBuf data = Unpooled.copiedBuffer("entry-" + entryId, StandardCharsets.UTF_8);
+        ByteBufList packaged = (ByteBufList) dm.computeDigestAndPackageForSending(entryId, entryId - 1,
+                data.readableBytes(), data, new byte[0], 0);
+        ByteBuf buffer = Unpooled.buffer();
+        for (int i = 0; i < packaged.size(); i++) {
+            buffer.writeBytes(packaged.getBuffer(i), 0, packaged.getBuffer(i).readableBytes());
+        }
+        packaged.release();
+        return buffer;
+    }
+
+    private static LedgerEntries packageEntries(DigestManager dm) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf buffer = packageEntry(dm, entryId);
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, buffer.readableBytes(), buffer));
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+
+    private static void verifyBatch(DigestType digestType) throws Exception {
+        DigestManager dm = DigestManager.instantiate(LEDGER_ID, "password".getBytes(StandardCharsets.UTF_8),
+                digestType, UnpooledByteBufAllocator.DEFAULT, false);
+        try (LedgerEntries entries = packageEntries(dm)) {
+            assertTrue(dm.verifyDigestsAndReturnData(entries).isEmpty());
+            for (LedgerEntry entry : entries) {
+                assertEquals("entry-" + entry.getEntryId(),
+                        entry.getEntryBuffer().toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testVerifyBatchCrc32c() throws Exception {
+        verifyBatch(DigestType.CRC32C);
+    }
+
+    @Test
+    public void testVerifyBatchCrc32() throws Exception {
+        verifyBatch(DigestType.CRC32);
+    }
+
+    @Test
+    public void testVerifyBatchHmac() throws Exception {
+        verifyBatch(DigestType.HMAC);
+    }
+
+    @Test
+    public void testMismatchesReported() throws Exception {
+        DigestManager dm = DigestManager.instantiate(LEDGER_ID, "password".getBytes(StandardCharsets.UTF_8),
+                DigestType.CRC32C, UnpooledByteBufAllocator.DEFAULT, false);
+        try (LedgerEntries entries = packageEntries(dm)) {
+            // corrupt the data of entry 1, and put the buffer of entry 2 at entry 3
+            ByteBuf corrupted = entries.getEntry(1).getEntryBuffer();
+            corrupted.setByte(corrupted.writerIndex() - 1, corrupted.getByte(corrupted.writerIndex() - 1) + 1);
+            ((LedgerEntryImpl) entries.getEntry(3)).setEntryBuf(packageEntry(dm, 2));
+
+            assertEquals(Arrays.asList(1L, 3L), dm.verifyDigestsAndReturnData(entries));
+            // the mismatched entries are left unchanged, the others point to their data
+            assertEquals(0, entries.getEntry(1).getEntryBuffer().readerIndex());
+            assertEquals(0, entries.getEntry(3).getEntryBuffer().readerIndex());
+            assertEquals("entry-4", entries.getEntry(4).getEntryBuffer().toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testTruncatedEntry() throws Exception {
+        DigestManager dm = DigestManager.instantiate(LEDGER_ID, "password".getBytes(StandardCharsets.UTF_8),
+                DigestType.CRC32C, UnpooledByteBufAllocator.DEFAULT, false);
+        try (LedgerEntries entries = packageEntries(dm)) {
+            ((LedgerEntryImpl) entries.getEntry(0)).setEntryBuf(Unpooled.buffer(8).writeLong(LEDGER_ID));
+            assertEquals(Arrays.asList(0L), dm.verifyDigestsAndReturnData(entries));
+        }
+    }
+}
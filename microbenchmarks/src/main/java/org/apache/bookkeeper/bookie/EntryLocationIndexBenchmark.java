@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.EntryLocationIndex;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageRocksDB;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageSortedRuns;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks comparing the entry location index backed by RocksDB with the pure Java sorted runs
+ * storage.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryLocationIndexBenchmark {
+
+    private static final int LEDGERS = 1000;
+    private static final int ENTRIES_PER_LEDGER = 10_000;
+    private static final int BATCH_SIZE = 10_000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({ "rocksdb", "sortedruns" })
+        private String storage;
+
+        private File dir;
+        private EntryLocationIndex index;
+        private long nextLedgerId = LEDGERS;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("entry-location-index").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+
+            KeyValueStorageFactory factory;
+            if ("rocksdb".equals(storage)) {
+                factory = (basePath, subPath, dbConfigType, c) ->
+                        new KeyValueStorageRocksDB(basePath, subPath, dbConfigType, c);
+            } else {
+                factory = (basePath, subPath, dbConfigType, c) ->
+                        new KeyValueStorageSortedRuns(basePath, subPath, dbConfigType, c);
+            }
+            index = new EntryLocationIndex(conf, factory, dir.getAbsolutePath(), NullStatsLogger.INSTANCE);
+
+            for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+                try (Batch batch = index.newBatch()) {
+                    for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                        index.addLocation(batch, ledgerId, entryId, location(ledgerId, entryId));
+                    }
+                    batch.flush();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            index.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) | (entryId * 128);
+    }
+
+    /**
+     * Mimics the flush of the write cache: a batch of consecutive entries of a new ledger.
+     */
+    @Benchmark
+    @Threads(1)
+    public void addLocationBatch(TestState s) throws IOException {
+        long ledgerId = s.nextLedgerId++;
+        try (Batch batch = s.index.newBatch()) {
+            for (long entryId = 0; entryId < BATCH_SIZE; entryId++) {
+                s.index.addLocation(batch, ledgerId, entryId, location(ledgerId, entryId));
+            }
+            batch.flush();
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long getLocation(TestState s) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return s.index.getLocation(random.nextInt(LEDGERS), random.nextInt(ENTRIES_PER_LEDGER));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks comparing the read of batches of aligned ranges with O_DIRECT, as done by the direct entry
+ * logger for a multi-entry read, using one pread per range or a single io_uring submission.
+ *
+ * <p>The file is created in the directory of the {@code java.io.tmpdir} property, which should be on the
+ * disk to test and support O_DIRECT (i.e. not tmpfs). io_uring requires Linux 5.1 or later.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class NativeIOReadBenchmark {
+
+    private static final int ALIGNMENT = 4096;
+    private static final long FILE_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({ "1", "4", "8" })
+        private int batchSize;
+
+        @Param({ "4096", "65536" })
+        private int rangeSize;
+
+        private final NativeIO nativeIO = new NativeIOImpl();
+        private File file;
+        private int fd;
+        private long ring;
+        private long[] pointers;
+        private int[] sizes;
+        private long[] offsets;
+        private long[] results;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            file = File.createTempFile("native-io-read", ".log");
+            int writeFd = nativeIO.open(file.getAbsolutePath(),
+                    NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+            int writeSize = 1024 * 1024;
+            long writeBuffer = nativeIO.posix_memalign(ALIGNMENT, writeSize);
+            for (long position = 0; position < FILE_SIZE; position += writeSize) {
+                nativeIO.pwrite(writeFd, writeBuffer, writeSize, position);
+            }
+            nativeIO.free(writeBuffer);
+            nativeIO.fsync(writeFd);
+            nativeIO.close(writeFd);
+
+            fd = nativeIO.open(file.getAbsolutePath(), NativeIO.O_RDONLY | NativeIO.O_DIRECT, 00644);
+            ring = nativeIO.io_uring_setup(batchSize);
+
+            pointers = new long[batchSize];
+            sizes = new int[batchSize];
+            offsets = new long[batchSize];
+            results = new long[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                pointers[i] = nativeIO.posix_memalign(ALIGNMENT, rangeSize);
+                sizes[i] = rangeSize;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            nativeIO.io_uring_close(ring);
+            nativeIO.close(fd);
+            for (long pointer : pointers) {
+                nativeIO.free(pointer);
+            }
+            file.delete();
+        }
+
+        // Ranges spread over the file, like the runs of entries of a ledger interleaved with other ledgers
+        void nextOffsets() {
+            long ranges = FILE_SIZE / rangeSize;
+            for (int i = 0; i < batchSize; i++) {
+                offsets[i] = ThreadLocalRandom.current().nextLong(ranges) * rangeSize;
+            }
+        }
+    }
+
+    @Benchmark
+    public void pread(TestState s) throws IOException {
+        s.nextOffsets();
+        for (int i = 0; i < s.batchSize; i++) {
+            s.nativeIO.pread(s.fd, s.pointers[i], s.sizes[i], s.offsets[i]);
+        }
+    }
+
+    @Benchmark
+    public void ioUring(TestState s) throws IOException {
+        s.nextOffsets();
+        s.nativeIO.io_uring_pread(s.ring, s.fd, s.pointers, s.sizes, s.offsets, s.results, s.batchSize);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks comparing the write of batches of aligned buffers with O_DIRECT, as done by the direct
+ * entry logger, using one pwrite per buffer or a single io_uring submission.
+ *
+ * <p>The file is created in the directory of the {@code java.io.tmpdir} property, which should be on the
+ * disk to test and support O_DIRECT (i.e. not tmpfs). io_uring requires Linux 5.1 or later.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class NativeIOWriteBenchmark {
+
+    private static final int ALIGNMENT = 4096;
+    private static final long MAX_FILE_SIZE = 1024L * 1024 * 1024;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({ "1", "4", "8" })
+        private int batchSize;
+
+        @Param({ "65536", "1048576" })
+        private int bufferSize;
+
+        private final NativeIO nativeIO = new NativeIOImpl();
+        private File file;
+        private int fd;
+        private long ring;
+        private long[] pointers;
+        private int[] sizes;
+        private long[] offsets;
+        private long[] results;
+        private long position;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            file = File.createTempFile("native-io-write", ".log");
+            fd = nativeIO.open(file.getAbsolutePath(),
+                    NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+            ring = nativeIO.io_uring_setup(batchSize);
+
+            pointers = new long[batchSize];
+            sizes = new int[batchSize];
+            offsets = new long[batchSize];
+            results = new long[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                pointers[i] = nativeIO.posix_memalign(ALIGNMENT, bufferSize);
+                sizes[i] = bufferSize;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            nativeIO.io_uring_close(ring);
+            nativeIO.close(fd);
+            for (long pointer : pointers) {
+                nativeIO.free(pointer);
+            }
+            file.delete();
+        }
+
+        void nextOffsets() {
+            for (int i = 0; i < batchSize; i++) {
+                if (position + bufferSize > MAX_FILE_SIZE) {
+                    position = 0;
+                }
+                offsets[i] = position;
+                position += bufferSize;
+            }
+        }
+    }
+
+    @Benchmark
+    public void pwrite(TestState s) throws IOException {
+        s.nextOffsets();
+        for (int i = 0; i < s.batchSize; i++) {
+            s.nativeIO.pwrite(s.fd, s.pointers[i], s.sizes[i], s.offsets[i]);
+        }
+    }
+
+    @Benchmark
+    public void ioUring(TestState s) throws IOException {
+        s.nextOffsets();
+        s.nativeIO.io_uring_pwrite(s.ring, s.fd, s.pointers, s.sizes, s.offsets, s.results, s.batchSize);
+    }
+}
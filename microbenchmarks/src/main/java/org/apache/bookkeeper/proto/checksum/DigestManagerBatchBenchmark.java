@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks comparing the digest verification of the entries of a read one at a time and by batch.
+ * To run:
+ * build project from command line.
+ * execute ./run.sh
+ */
+public class DigestManagerBatchBenchmark {
+
+    /**
+     * MyState.
+     */
+    @State(Scope.Thread)
+    public static class MyState {
+
+        @Param({"64", "1024", "4086", "8192"})
+        public int entrySize;
+
+        @Param({"8", "64"})
+        public int batchSize;
+
+        private DigestManager dm;
+
+        public ByteBuf[] buffers;
+        public LedgerEntries entries;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            final byte[] password = "password".getBytes(StandardCharsets.UTF_8);
+
+            dm = DigestManager.instantiate(ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE),
+                    password, DigestType.CRC32C, PooledByteBufAllocator.DEFAULT, false);
+
+            buffers = new ByteBuf[batchSize];
+            List<LedgerEntry> entryList = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                ByteBuf data = ByteBufAllocator.DEFAULT.directBuffer(entrySize, entrySize);
+                data.writeBytes(DigestManagerBenchmark.randomBytes(entrySize));
+
+                // the entry as received from a bookie: the digest header followed by the data
+                ByteBufList packaged = (ByteBufList) dm.computeDigestAndPackageForSending(i, i - 1,
+                        (long) entrySize * (i + 1), data, new byte[0], 0);
+                buffers[i] = ByteBufAllocator.DEFAULT.directBuffer();
+                for (int j = 0; j < packaged.size(); j++) {
+                    buffers[i].writeBytes(packaged.getBuffer(j), 0, packaged.getBuffer(j).readableBytes());
+                }
+                packaged.release();
+                entryList.add(LedgerEntryImpl.create(dm.ledgerId, i, entrySize, buffers[i]));
+            }
+            entries = LedgerEntriesImpl.create(entryList);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(1)
+    public void verifyDigests(MyState state) throws Exception {
+        for (int i = 0; i < state.batchSize; i++) {
+            state.buffers[i].readerIndex(0);
+            state.dm.verifyDigestAndReturnData(i, state.buffers[i]);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(1)
+    public List<Long> verifyDigestsBatch(MyState state) {
+        for (int i = 0; i < state.batchSize; i++) {
+            state.buffers[i].readerIndex(0);
+        }
+        return state.dm.verifyDigestsAndReturnData(state.entries);
+    }
+}
@@ -41,6 +41,14 @@ public interface NativeIO {
 
     int fsync(int fd) throws NativeIOException;
 
+    /**
+     * Like {@link #fsync}, but doesn't flush the metadata of the file which is not needed to read the data back,
+     * like its modification time. Falls back to fsync where fdatasync is not available.
+     */
+    default int fdatasync(int fd) throws NativeIOException {
+        return fsync(fd);
+    }
+
     /**
      * fallocate is a linux-only syscall, so callers must handle the possibility that it does
      * not exist.
@@ -64,4 +72,48 @@ public interface NativeIO {
     long pread(int fd, long pointer, long size, long offset) throws NativeIOException;
 
     int close(int fd) throws NativeIOException;
+
+    /**
+     * io_uring is a linux-only interface, available from kernel 5.1 and often disabled in containers, so
+     * callers must handle the possibility that it does not exist and fall back to {@link #pwrite}.
+     *
+     * @param entries the min number of operations that can be submitted at once
+     * @return a handle to the io_uring instance, which must be used by one thread at a time
+     */
+    default long io_uring_setup(int entries) throws NativeIOException {
+        throw new NativeIOException("io_uring is not available");
+    }
+
+    /**
+     * Write a batch of buffers with io_uring, submitting them with a single syscall, and wait for all the
+     * writes to complete.
+     *
+     * <p>The call only returns once every submitted write completed, even if it fails, so the buffers can be
+     * released afterwards. A failure of the ring itself leaves it broken: all the following calls fail and
+     * it can only be closed.
+     *
+     * @param results the number of bytes written by each write, or -errno if it failed
+     * @return the number of writes
+     */
+    default int io_uring_pwrite(long ring, int fd, long[] pointers, int[] sizes, long[] offsets,
+                                long[] results, int count) throws NativeIOException {
+        throw new NativeIOException("io_uring is not available");
+    }
+
+    /**
+     * Read a batch of buffers with io_uring, submitting them with a single syscall, and wait for all the
+     * reads to complete. Like {@link #io_uring_pwrite}, the call only returns once every submitted read
+     * completed, and a failure of the ring itself leaves it broken.
+     *
+     * @param results the number of bytes read by each read, which is short at the end of the file, or -errno
+     *                if it failed
+     * @return the number of reads
+     */
+    default int io_uring_pread(long ring, int fd, long[] pointers, int[] sizes, long[] offsets,
+                               long[] results, int count) throws NativeIOException {
+        throw new NativeIOException("io_uring is not available");
+    }
+
+    default void io_uring_close(long ring) throws NativeIOException {
+    }
 }
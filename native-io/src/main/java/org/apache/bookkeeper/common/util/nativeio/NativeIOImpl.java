@@ -35,6 +35,11 @@ public class NativeIOImpl implements NativeIO {
         return NativeIOJni.fsync(fd);
     }
 
+    @Override
+    public int fdatasync(int fd) throws NativeIOException {
+        return NativeIOJni.fdatasync(fd);
+    }
+
     @Override
     public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
         return NativeIOJni.fallocate(fd, mode, offset, len);
@@ -74,4 +79,26 @@ public class NativeIOImpl implements NativeIO {
     public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
         return NativeIOJni.pread(fd, pointer, size, offset);
     }
+
+    @Override
+    public long io_uring_setup(int entries) throws NativeIOException {
+        return NativeIOJni.io_uring_setup(entries);
+    }
+
+    @Override
+    public int io_uring_pwrite(long ring, int fd, long[] pointers, int[] sizes, long[] offsets,
+                               long[] results, int count) throws NativeIOException {
+        return NativeIOJni.io_uring_pwrite(ring, fd, pointers, sizes, offsets, results, count);
+    }
+
+    @Override
+    public int io_uring_pread(long ring, int fd, long[] pointers, int[] sizes, long[] offsets,
+                              long[] results, int count) throws NativeIOException {
+        return NativeIOJni.io_uring_pread(ring, fd, pointers, sizes, offsets, results, count);
+    }
+
+    @Override
+    public void io_uring_close(long ring) throws NativeIOException {
+        NativeIOJni.io_uring_close(ring);
+    }
 }
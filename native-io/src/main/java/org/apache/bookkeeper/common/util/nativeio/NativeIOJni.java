@@ -28,6 +28,8 @@ class NativeIOJni {
 
     static native int fsync(int fd) throws NativeIOException;
 
+    static native int fdatasync(int fd) throws NativeIOException;
+
     /**
      * fallocate is a linux-only syscall, so callers must handle the possibility that it does
      * not exist.
@@ -48,6 +50,16 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    static native long io_uring_setup(int entries) throws NativeIOException;
+
+    static native int io_uring_pwrite(long ring, int fd, long[] pointers, int[] sizes, long[] offsets,
+                                      long[] results, int count) throws NativeIOException;
+
+    static native int io_uring_pread(long ring, int fd, long[] pointers, int[] sizes, long[] offsets,
+                                     long[] results, int count) throws NativeIOException;
+
+    static native void io_uring_close(long ring) throws NativeIOException;
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
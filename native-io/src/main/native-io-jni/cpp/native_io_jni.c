@@ -22,10 +22,26 @@
 
 #include <errno.h>
 #include <fcntl.h>
+#include <stdint.h>
 #include <stdlib.h>
 #include <string.h>
 #include <unistd.h>
 
+#ifdef __linux__
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include <sys/uio.h>
+#include <time.h>
+#if defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#include <linux/io_uring.h>
+#if defined(__NR_io_uring_setup) && defined(__NR_io_uring_enter)
+#define HAVE_IO_URING 1
+#endif
+#endif
+#endif
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 #ifdef _WIN32
@@ -174,6 +190,28 @@ Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_fsync(JNIEnv * env,
     return res;
 }
 
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    fdatasync
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_fdatasync(JNIEnv * env,
+                                                                   jclass clazz,
+                                                                   jint fd) {
+#ifdef __linux__
+    int res = fdatasync(fd);
+#else
+    int res = fsync(fd);
+#endif
+
+    if (res == -1) {
+      throwExceptionWithErrno(env, "Failed to fdatasync");
+    }
+
+    return res;
+}
+
 /*
  * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
  * Method:    fallocate
@@ -311,3 +349,347 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+#ifdef HAVE_IO_URING
+
+/*
+ * A minimal io_uring instance, driven with the raw syscalls so that the library
+ * does not depend on liburing. It is not thread safe, callers must serialize the
+ * access to each instance.
+ *
+ * Once an operation fails at the ring level, the ring is broken: every following
+ * call fails with the same errno, and the ring can only be closed.
+ */
+struct uring {
+    int fd;
+    int broken_errno;
+    unsigned sq_entries;
+    unsigned *sq_head;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_sqe *sqes;
+    struct io_uring_cqe *cqes;
+    void *sq_ptr;
+    size_t sq_size;
+    void *cq_ptr;
+    size_t cq_size;
+    size_t sqes_size;
+};
+
+static void uring_unmap(struct uring *r) {
+    if (r->sqes != NULL && r->sqes != MAP_FAILED) {
+        munmap(r->sqes, r->sqes_size);
+    }
+    if (r->cq_ptr != NULL && r->cq_ptr != MAP_FAILED) {
+        munmap(r->cq_ptr, r->cq_size);
+    }
+    if (r->sq_ptr != NULL && r->sq_ptr != MAP_FAILED) {
+        munmap(r->sq_ptr, r->sq_size);
+    }
+}
+
+/*
+ * Reap the available completions, storing the results of the operations of the
+ * current round, whose user_data is in [first, first + submitted), in res.
+ * Returns the number of completions of the current round reaped. Any other
+ * completion sets *unexpected.
+ */
+static unsigned uring_reap(struct uring *r, jlong *res, unsigned first, unsigned submitted, int *unexpected) {
+    unsigned head = *r->cq_head;
+    unsigned cqTail = __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE);
+    unsigned reaped = 0;
+    while (head != cqTail) {
+        struct io_uring_cqe *cqe = &r->cqes[head & *r->cq_mask];
+        if (cqe->user_data >= (__u64) first && cqe->user_data < (__u64) first + submitted) {
+            res[cqe->user_data] = cqe->res;
+            reaped++;
+        } else {
+            *unexpected = 1;
+        }
+        head++;
+    }
+    __atomic_store_n(r->cq_head, head, __ATOMIC_RELEASE);
+    return reaped;
+}
+
+/*
+ * Submit count reads or writes, at most sq_entries at a time, and wait for all of
+ * them to complete. The result of each operation is stored in res, as the number of
+ * bytes transferred or -errno. Returns 0, or -1 with errno set if the ring failed.
+ *
+ * The iovecs and the buffers are in use by the kernel until the operations
+ * complete, so this never returns before every submitted operation completed, even
+ * when the ring fails: the caller is then free to release them.
+ */
+static int uring_rw(struct uring *r, int fd, __u8 opcode, struct iovec *iovs,
+                    jlong *offsets, jlong *res, unsigned count) {
+    if (r->broken_errno != 0) {
+        errno = r->broken_errno;
+        return -1;
+    }
+
+    unsigned done = 0;
+    while (done < count) {
+        unsigned n = count - done;
+        if (n > r->sq_entries) {
+            n = r->sq_entries;
+        }
+
+        unsigned tail = *r->sq_tail;
+        for (unsigned i = 0; i < n; i++) {
+            unsigned idx = tail & *r->sq_mask;
+            struct io_uring_sqe *sqe = &r->sqes[idx];
+            memset(sqe, 0, sizeof(*sqe));
+            sqe->opcode = opcode;
+            sqe->fd = fd;
+            sqe->addr = (__u64) (uintptr_t) &iovs[done + i];
+            sqe->len = 1;
+            sqe->off = (__u64) offsets[done + i];
+            sqe->user_data = done + i;
+            r->sq_array[idx] = idx;
+            tail++;
+        }
+        __atomic_store_n(r->sq_tail, tail, __ATOMIC_RELEASE);
+
+        unsigned submitted = 0;
+        int submitErrno = 0;
+        while (submitted < n) {
+            long ret = syscall(__NR_io_uring_enter, r->fd, n - submitted, 0, 0, NULL, 0);
+            if (ret < 0) {
+                if (errno == EINTR || errno == EAGAIN) {
+                    continue;
+                }
+                submitErrno = errno;
+                break;
+            } else if (ret == 0) {
+                submitErrno = EIO;
+                break;
+            }
+            submitted += (unsigned) ret;
+        }
+        if (submitted < n) {
+            // Take back the entries the kernel did not consume, since they point
+            // to memory that is released when returning to java
+            __atomic_store_n(r->sq_tail, tail - (n - submitted), __ATOMIC_RELEASE);
+        }
+
+        // Always reap everything that was submitted, the buffers are in use until then
+        unsigned reaped = 0;
+        int waitErrno = 0;
+        while (reaped < submitted) {
+            int unexpected = 0;
+            reaped += uring_reap(r, res, done, submitted, &unexpected);
+            if (unexpected && waitErrno == 0) {
+                // Not part of this batch, the ring can't be trusted anymore
+                waitErrno = EIO;
+            }
+            if (reaped >= submitted) {
+                break;
+            }
+
+            if (waitErrno == 0) {
+                long ret = syscall(__NR_io_uring_enter, r->fd, 0, submitted - reaped,
+                                   IORING_ENTER_GETEVENTS, NULL, 0);
+                if (ret < 0 && errno != EINTR && errno != EAGAIN) {
+                    waitErrno = errno;
+                }
+            } else {
+                // Waiting through the ring failed, poll the completion queue instead.
+                // The completions are still posted, returning from the sleep also
+                // runs the pending task work of the ring.
+                struct timespec pause = { 0, 100000 };
+                nanosleep(&pause, NULL);
+            }
+        }
+
+        if (submitErrno == 0) {
+            submitErrno = waitErrno;
+        }
+        if (submitErrno != 0) {
+            r->broken_errno = submitErrno;
+            errno = submitErrno;
+            return -1;
+        }
+        done += n;
+    }
+    return 0;
+}
+
+static jint uring_rw_java(JNIEnv *env, jlong ring, jint fd, __u8 opcode,
+                          jlongArray pointers, jintArray sizes, jlongArray offsets,
+                          jlongArray results, jint count, const char *errorMessage) {
+    struct uring *r = (struct uring *) ring;
+    if (count <= 0) {
+        return 0;
+    }
+
+    size_t n = (size_t) count;
+    struct iovec *iovs = malloc(n * sizeof(struct iovec));
+    jlong *ptrs = malloc(n * sizeof(jlong));
+    jint *lens = malloc(n * sizeof(jint));
+    jlong *offs = malloc(n * sizeof(jlong));
+    jlong *res = malloc(n * sizeof(jlong));
+    int ret = -1;
+    if (iovs == NULL || ptrs == NULL || lens == NULL || offs == NULL || res == NULL) {
+        errno = ENOMEM;
+        throwExceptionWithErrno(env, errorMessage);
+        goto out;
+    }
+
+    (*env)->GetLongArrayRegion(env, pointers, 0, count, ptrs);
+    (*env)->GetIntArrayRegion(env, sizes, 0, count, lens);
+    (*env)->GetLongArrayRegion(env, offsets, 0, count, offs);
+    if ((*env)->ExceptionCheck(env)) {
+        goto out;
+    }
+
+    for (size_t i = 0; i < n; i++) {
+        if (lens[i] < 0) {
+            errno = EINVAL;
+            throwExceptionWithErrno(env, errorMessage);
+            goto out;
+        }
+        iovs[i].iov_base = (void *) (intptr_t) ptrs[i];
+        iovs[i].iov_len = (size_t) lens[i];
+        res[i] = 0;
+    }
+
+    if (uring_rw(r, fd, opcode, iovs, offs, res, (unsigned) count) != 0) {
+        throwExceptionWithErrno(env, errorMessage);
+        goto out;
+    }
+
+    (*env)->SetLongArrayRegion(env, results, 0, count, res);
+    ret = count;
+
+out:
+    free(iovs);
+    free(ptrs);
+    free(lens);
+    free(offs);
+    free(res);
+    return ret;
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_setup
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1setup
+    (JNIEnv *env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+
+    int fd = (int) syscall(__NR_io_uring_setup, entries, &p);
+    if (fd < 0) {
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        return 0;
+    }
+
+    struct uring *r = calloc(1, sizeof(struct uring));
+    if (r == NULL) {
+        close(fd);
+        errno = ENOMEM;
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        return 0;
+    }
+    r->fd = fd;
+    r->sq_entries = p.sq_entries;
+    r->sq_size = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    r->cq_size = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    r->sqes_size = p.sq_entries * sizeof(struct io_uring_sqe);
+
+    r->sq_ptr = mmap(NULL, r->sq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                     fd, IORING_OFF_SQ_RING);
+    r->cq_ptr = mmap(NULL, r->cq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                     fd, IORING_OFF_CQ_RING);
+    r->sqes = mmap(NULL, r->sqes_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                   fd, IORING_OFF_SQES);
+    if (r->sq_ptr == MAP_FAILED || r->cq_ptr == MAP_FAILED || r->sqes == MAP_FAILED) {
+        int mmapErrno = errno;
+        uring_unmap(r);
+        close(fd);
+        free(r);
+        errno = mmapErrno;
+        throwExceptionWithErrno(env, "Failed to map io_uring");
+        return 0;
+    }
+
+    r->sq_head = (unsigned *) ((char *) r->sq_ptr + p.sq_off.head);
+    r->sq_tail = (unsigned *) ((char *) r->sq_ptr + p.sq_off.tail);
+    r->sq_mask = (unsigned *) ((char *) r->sq_ptr + p.sq_off.ring_mask);
+    r->sq_array = (unsigned *) ((char *) r->sq_ptr + p.sq_off.array);
+    r->cq_head = (unsigned *) ((char *) r->cq_ptr + p.cq_off.head);
+    r->cq_tail = (unsigned *) ((char *) r->cq_ptr + p.cq_off.tail);
+    r->cq_mask = (unsigned *) ((char *) r->cq_ptr + p.cq_off.ring_mask);
+    r->cqes = (struct io_uring_cqe *) ((char *) r->cq_ptr + p.cq_off.cqes);
+
+    return (jlong) r;
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_pwrite
+ * Signature: (JI[J[I[J[JI)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1pwrite
+    (JNIEnv *env, jclass clazz, jlong ring, jint fd, jlongArray pointers, jintArray sizes,
+     jlongArray offsets, jlongArray results, jint count) {
+#ifdef HAVE_IO_URING
+    return uring_rw_java(env, ring, fd, IORING_OP_WRITEV, pointers, sizes, offsets, results, count,
+                         "Failed to write on file with io_uring");
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_pread
+ * Signature: (JI[J[I[J[JI)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1pread
+    (JNIEnv *env, jclass clazz, jlong ring, jint fd, jlongArray pointers, jintArray sizes,
+     jlongArray offsets, jlongArray results, jint count) {
+#ifdef HAVE_IO_URING
+    return uring_rw_java(env, ring, fd, IORING_OP_READV, pointers, sizes, offsets, results, count,
+                         "Failed to read from file with io_uring");
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_close
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1close
+    (JNIEnv *env, jclass clazz, jlong ring) {
+#ifdef HAVE_IO_URING
+    struct uring *r = (struct uring *) ring;
+    uring_unmap(r);
+    int res = close(r->fd);
+    free(r);
+    if (res == -1) {
+        throwExceptionWithErrno(env, "Failed to close io_uring");
+    }
+#endif
+}
@@ -16,7 +16,9 @@ package org.apache.bookkeeper.tools.perf.journal;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FILE_WRITE_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
 
 import com.beust.jcommander.Parameter;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -29,6 +31,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
@@ -50,6 +53,7 @@ import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.Stats;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -145,6 +149,30 @@ public class JournalWriter implements Runnable {
         )
         public boolean journalSyncEnabled = false;
 
+        @Parameter(
+            names = {
+                "--direct-io"
+            },
+            description = "Write the journal with direct I/O"
+        )
+        public boolean journalDirectIO = false;
+
+        @Parameter(
+            names = {
+                "--compression"
+            },
+            description = "Compress the journal group commits, with journal format version 7"
+        )
+        public boolean journalCompression = false;
+
+        @Parameter(
+            names = {
+                "--compressible-payload"
+            },
+            description = "Write JSON like records instead of random bytes"
+        )
+        public boolean compressiblePayload = false;
+
         @Parameter(
             names = {
                 "-gci", "--group-commit-interval-ms"
@@ -193,6 +221,9 @@ public class JournalWriter implements Runnable {
         TimeUnit.SECONDS.toMillis(120000), 5
     );
     private final AtomicBoolean isDone = new AtomicBoolean(false);
+    // bytes appended to the journals, and bytes written to the journal files after compression
+    private volatile Counter journalWriteBytes;
+    private volatile Counter journalFileWriteBytes;
 
     JournalWriter(CompositeConfiguration conf, Flags flags) {
         this.conf = new ServerConfiguration();
@@ -226,7 +257,8 @@ public class JournalWriter implements Runnable {
 
         StatsLogger statsLogger = Stats.get().getStatsLogger("")
             .scope(BOOKIE_SCOPE);
-
+        journalWriteBytes = statsLogger.scope(JOURNAL_SCOPE).getCounter(JOURNAL_WRITE_BYTES);
+        journalFileWriteBytes = statsLogger.scope(JOURNAL_SCOPE).getCounter(JOURNAL_FILE_WRITE_BYTES);
 
         ByteBufAllocator allocator = getAllocator(conf);
         DiskChecker checker = new DiskChecker(
@@ -267,6 +299,7 @@ public class JournalWriter implements Runnable {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             isDone.set(true);
             printAggregatedStats(cumulativeRecorder);
+            printJournalBytesStats();
         }));
 
         ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor();
@@ -353,8 +386,11 @@ public class JournalWriter implements Runnable {
         long totalWritten = 0L;
         long totalBytesWritten = 0L;
         final int numJournals = journals.length;
-        byte[] payload = new byte[flags.recordSize];
-        ThreadLocalRandom.current().nextBytes(payload);
+        byte[] payload = flags.compressiblePayload
+            ? compressiblePayload(flags.recordSize) : new byte[flags.recordSize];
+        if (!flags.compressiblePayload) {
+            ThreadLocalRandom.current().nextBytes(payload);
+        }
         ByteBuf payloadBuf = Unpooled.wrappedBuffer(payload);
         long[] entryIds = new long[numLedgersForThisThread];
         Arrays.fill(entryIds, 0L);
@@ -419,6 +455,7 @@ public class JournalWriter implements Runnable {
     void markPerfDone() throws Exception {
         log.info("------------------- DONE -----------------------");
         printAggregatedStats(cumulativeRecorder);
+        printJournalBytesStats();
         isDone.set(true);
         Thread.sleep(5000);
         System.exit(0);
@@ -476,6 +513,11 @@ public class JournalWriter implements Runnable {
         conf.setNumJournalCallbackThreads(flags.numJournalCallbackThreads);
         conf.setJournalQueueSize(flags.journalQueueSize);
         conf.setJournalSyncData(flags.journalSyncEnabled);
+        conf.setJournalDirectIO(flags.journalDirectIO);
+        if (flags.journalCompression) {
+            conf.setJournalFormatVersionToWrite(7);
+            conf.setJournalCompressionEnabled(true);
+        }
         conf.setLedgerDirNames(flags.journalDirs.toArray(new String[0]));
         conf.setStatsProviderClass(PrometheusMetricsProvider.class);
         File[] currentDirs = BookieImpl.getCurrentDirectories(conf.getLedgerDirs());
@@ -486,6 +528,33 @@ public class JournalWriter implements Runnable {
         }
     }
 
+    // JSON like records, with repeated keys and random values
+    private static byte[] compressiblePayload(int size) {
+        StringBuilder sb = new StringBuilder(size + 128);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (sb.length() < size) {
+            sb.append("{\"id\":").append(random.nextInt(1000000))
+                .append(",\"user\":\"user-").append(random.nextInt(1000))
+                .append("\",\"event\":\"page_view\",\"active\":").append(random.nextBoolean())
+                .append(",\"score\":").append(random.nextInt(100)).append("}\n");
+        }
+        return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    private void printJournalBytesStats() {
+        Counter writeBytes = journalWriteBytes;
+        Counter fileWriteBytes = journalFileWriteBytes;
+        if (writeBytes == null || fileWriteBytes == null) {
+            return;
+        }
+        long appended = writeBytes.get();
+        long written = fileWriteBytes.get();
+        log.info("Journal bytes --- appended: {} MB - written to files: {} MB - ratio: {}",
+                throughputFormat.format(appended / 1024.0 / 1024.0),
+                throughputFormat.format(written / 1024.0 / 1024.0),
+                dec.format(appended > 0 ? (double) written / appended : 1.0));
+    }
+
     private static ByteBufAllocator getAllocator(ServerConfiguration conf) {
         return ByteBufAllocatorBuilder.create()
                 .poolingPolicy(conf.getAllocatorPoolingPolicy())